@@ -3,21 +3,26 @@ package codeu.controller;
 import codeu.model.data.Conversation;
 import codeu.model.data.Message;
 import codeu.model.data.User;
-import codeu.model.data.Activity;
+import codeu.model.data.FeedEntry;
 import codeu.model.store.basic.ConversationStore;
 import codeu.model.store.basic.MessageStore;
 import codeu.model.store.basic.UserStore;
+import codeu.model.store.basic.ActivityCursor;
 import codeu.model.store.basic.ActivityStore;
+import codeu.model.store.basic.FeedStore;
 import java.io.IOException;
-import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 
 public class ActivityFeedServlet extends HttpServlet {
+
+	/* The number of activities shown on one page of the feed. */
+	static final int ACTIVITIES_PER_PAGE = 50;
 	
 	/** Store class that gives access to Conversations. */
 	private ConversationStore conversationStore;
@@ -31,6 +36,9 @@ public class ActivityFeedServlet extends HttpServlet {
 	/* Stores class that gives access to Activities. */
 	private ActivityStore activityStore;
 
+	/* Store class that gives access to the personalized feeds of logged-in users. */
+	private FeedStore feedStore;
+
 	/*
 	 * Sets the ConversationStore used by this servlet. This function provides a common setup method
 	 * for use by the test framework or the servlet's init() function.
@@ -61,6 +69,14 @@ public class ActivityFeedServlet extends HttpServlet {
 	void setActivityStore(ActivityStore activityStore) {
 		this.activityStore = activityStore;
 	}
+
+	/*
+	 * Sets the FeedStore used by this servlet. This function provides a common setup method for
+	 * use by the test framework or the servlet's init() function.
+	 */
+	void setFeedStore(FeedStore feedStore) {
+		this.feedStore = feedStore;
+	}
 	
 	@Override
 	public void init() throws ServletException {
@@ -69,12 +85,38 @@ public class ActivityFeedServlet extends HttpServlet {
 		setMessageStore(MessageStore.getInstance());
 		setUserStore(UserStore.getInstance());
 		setActivityStore(ActivityStore.getInstance());
+		setFeedStore(FeedStore.getInstance());
 	}
 	
+	/*
+	 * Shows one page of the feed, newest first. The before parameter, if present, is the cursor of the
+	 * oldest activity on the previous page, and the page of activities older than it is shown.
+	 * Logged-in users see their personalized feed: their own activity and the activity in their
+	 * conversations. Everyone else sees all activity.
+	 */
 	@Override
 	public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
 		
-		List<Activity> activities = activityStore.getAllActivities();
+		ActivityCursor before = null;
+		String beforeParameter = request.getParameter("before");
+		if (beforeParameter != null) {
+			try {
+				before = ActivityCursor.parse(beforeParameter);
+			} catch (IllegalArgumentException e) {
+				before = null;
+			}
+		}
+		HttpSession session = request.getSession(false);
+		UUID userId = session == null ? null : (UUID) session.getAttribute("id");
+		List<FeedEntry> activities = userId == null
+				? activityStore.feedPage(before, ACTIVITIES_PER_PAGE)
+				: feedStore.feedPage(userId, before, ACTIVITIES_PER_PAGE);
+
+		//a full page means there may be older activities, so link to them from the oldest one shown
+		if (activities.size() == ACTIVITIES_PER_PAGE) {
+			request.setAttribute("olderActivitiesCursor",
+					ActivityCursor.of(activities.get(activities.size() - 1).getActivity()).toString());
+		}
 		request.setAttribute("activities", activities);
 		request.getRequestDispatcher("/WEB-INF/view/activityfeed.jsp").forward(request, response);
 	}
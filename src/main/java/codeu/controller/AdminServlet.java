@@ -16,18 +16,11 @@ package codeu.controller;
 
 import codeu.model.data.Tictactoe;
 import codeu.model.data.User;
-import codeu.model.data.Conversation;
-import codeu.model.data.Message;
+import codeu.model.store.basic.ActiveUsers;
+import codeu.model.store.basic.SiteStatistics;
 import codeu.model.store.basic.UserStore;
 import java.util.List;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-import codeu.model.store.basic.ConversationStore;
-import codeu.model.store.basic.MessageStore;
-import java.time.Instant;
-
-import java.time.temporal.ChronoUnit;
+import java.util.UUID;
 
 import java.io.IOException;
 import javax.servlet.ServletException;
@@ -42,8 +35,10 @@ public class AdminServlet extends HttpServlet {
 
   /** Store class that gives access to Users. */
   private UserStore userStore;
-  private ConversationStore convoStore;
-  private MessageStore messageStore;
+  /** Site-wide totals and recent activity, kept up to date by the stores. */
+  private SiteStatistics siteStatistics;
+  /** Approximate counts of the Users active recently. */
+  private ActiveUsers activeUsers;
 	// Setting the game
 
   /**
@@ -54,8 +49,8 @@ public class AdminServlet extends HttpServlet {
   public void init() throws ServletException {
 	super.init();
 	setUserStore(UserStore.getInstance());
-	setConversationStore(ConversationStore.getInstance());
-	setMessageStore(MessageStore.getInstance());
+	setSiteStatistics(SiteStatistics.getInstance());
+	setActiveUsers(ActiveUsers.getInstance());
   }
 
   /**
@@ -66,12 +61,20 @@ public class AdminServlet extends HttpServlet {
 	this.userStore = userStore;
   }
 
-  void setConversationStore(ConversationStore convoStore) {
-	this.convoStore = convoStore;
+  /**
+   * Sets the SiteStatistics shown by this servlet. This function provides a common setup method for
+   * use by the test framework or the servlet's init() function.
+   */
+  void setSiteStatistics(SiteStatistics siteStatistics) {
+	this.siteStatistics = siteStatistics;
   }
 
-  void setMessageStore(MessageStore messageStore) {
-	this.messageStore = messageStore;
+  /**
+   * Sets the ActiveUsers shown by this servlet. This function provides a common setup method for use
+   * by the test framework or the servlet's init() function.
+   */
+  void setActiveUsers(ActiveUsers activeUsers) {
+	this.activeUsers = activeUsers;
   }
   /**
    * This function fires when a user requests the /ladmin URL. It simply forwards the request to
@@ -104,50 +107,32 @@ public class AdminServlet extends HttpServlet {
 		    request.getRequestDispatcher("/WEB-INF/view/admin.jsp").forward(request, response);
 	}
 
+	/**
+	 * Puts the site statistics in the session for admin.jsp. They are read from SiteStatistics,
+	 * which keeps them up to date as things are added, so this takes constant time.
+	 */
 	public void refreshStats(HttpServletRequest request, HttpServletResponse response)
 		throws IOException, ServletException {
-			List<User> totalUsers = userStore.getUsers();
-			List<Conversation> totalConvos = convoStore.getAllConversations();
-			List<Message> totalMessages = messageStore.getAllMessages();
 			List<String> administrators = userStore.getAdmins();
 
-			int numTotalUsers = totalUsers.size();
-			int numTotalConvos = totalConvos.size();
-			int numTotalMessages = totalMessages.size();
-
 			//Getting most active user
-			// List<Message> activeMessages = new ArrayList();
-			Map<String, Integer> msgFrequency = new HashMap<String, Integer>();
-			//Determining the bounds for what "recent" means
-			//In this case "recent" means at most 24 hours ago.
-			Instant lowerBound = Instant.now().minus(24, ChronoUnit.HOURS);
-			for(Message message: totalMessages){
-				if(message.getCreationTime().isAfter(lowerBound)){
-					//found an active message, now get the user
-			        String author = userStore.getUser(message.getAuthorId()).getName();
-			        if (msgFrequency.get(author) == null){
-			        	msgFrequency.put(author, 1);
-			        } else {
-			        	msgFrequency.put(author, msgFrequency.get(author) + 1);
-			        }
-				}
-			}
-			// now we have to get the user that corresponds with largest number
-			String mostActiveUser = null;
-			int mostMessages = 0; //Setting the minimum
-			for(Map.Entry<String, Integer> entry: msgFrequency.entrySet()) {
-				if(entry.getValue() > mostMessages){
-					mostActiveUser = entry.getKey();
-					mostMessages = entry.getValue();
-				}
-			}
-			if(mostActiveUser == null){
-				mostActiveUser = "There hasn't been an active user in the past 24 hours!";
-			}
-			request.getSession().setAttribute("numUsers", numTotalUsers);
-			request.getSession().setAttribute("numConvos", numTotalConvos);
-			request.getSession().setAttribute("numMessages", numTotalMessages);
+			//"Recent" means at most SiteStatistics.WINDOW, 24 hours, ago.
+			UUID mostActiveId = siteStatistics.getMostActiveAuthor();
+			User mostActive = mostActiveId == null ? null : userStore.getUser(mostActiveId);
+			String mostActiveUser = mostActive == null
+					? "There hasn't been an active user in the past 24 hours!"
+					: mostActive.getName();
+
+			request.getSession().setAttribute("numUsers", siteStatistics.getUserCount());
+			request.getSession().setAttribute("numConvos", siteStatistics.getConversationCount());
+			request.getSession().setAttribute("numMessages", siteStatistics.getMessageCount());
 			request.getSession().setAttribute("mostActiveUser", mostActiveUser);
+			request.getSession().setAttribute(
+					"activeUsersHour", activeUsers.getActiveUserCount(ActiveUsers.Window.HOUR));
+			request.getSession().setAttribute(
+					"activeUsersDay", activeUsers.getActiveUserCount(ActiveUsers.Window.DAY));
+			request.getSession().setAttribute(
+					"activeUsersWeek", activeUsers.getActiveUserCount(ActiveUsers.Window.WEEK));
 			request.getSession().setAttribute("numAdministrators", administrators.size());
 			request.getSession().setAttribute("getAllAdmin", administrators);
 		}
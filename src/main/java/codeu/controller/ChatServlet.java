@@ -18,17 +18,21 @@ import codeu.model.data.Conversation;
 import codeu.model.data.Group;
 import org.javatuples.Pair;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import codeu.model.data.Message;
 import codeu.model.data.User;
 import codeu.model.data.Activity;
 import codeu.model.data.Activity.ActivityType;
+import codeu.model.store.basic.ActiveUsers;
 import codeu.model.store.basic.ConversationStore;
 import codeu.model.store.basic.GroupConversationStore;
+import codeu.model.store.basic.MessageCursor;
 import codeu.model.store.basic.MessageStore;
 import codeu.model.store.basic.UserStore;
 import codeu.model.store.basic.ActivityStore;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
@@ -50,6 +54,9 @@ import com.google.appengine.api.blobstore.BlobstoreServiceFactory;
 /** Servlet class responsible for the chat page. */
 public class ChatServlet extends HttpServlet {
 
+  /** The number of messages rendered on the chat page and returned per page of older history. */
+  static final int MESSAGES_PER_PAGE = 50;
+
   /** Store class that gives access to Group Conversations. */
   private GroupConversationStore groupConversationStore;
 
@@ -65,6 +72,9 @@ public class ChatServlet extends HttpServlet {
   /** Store class that gives access to Activities. */
   private ActivityStore activityStore;
 
+  /** Counts the Users active recently, for the admin page. */
+  private ActiveUsers activeUsers;
+
   /** Set up state for handling chat requests. */
   @Override
   public void init() throws ServletException {
@@ -74,6 +84,7 @@ public class ChatServlet extends HttpServlet {
 		setActivityStore(ActivityStore.getInstance());
     setMessageStore(MessageStore.getInstance());
     setUserStore(UserStore.getInstance());
+    setActiveUsers(ActiveUsers.getInstance());
   }
 
   /**
@@ -116,10 +127,20 @@ public class ChatServlet extends HttpServlet {
     this.userStore = userStore;
   }
 
+  /**
+  * Sets the ActiveUsers that chat posts are counted in. This function provides a common setup
+  * method for use by the test framework or the servlet's init() function.
+  */
+  void setActiveUsers(ActiveUsers activeUsers) {
+    this.activeUsers = activeUsers;
+  }
+
   /**
   * This function fires when a user navigates to the chat page. It gets the conversation title from
-  * the URL, finds the corresponding Conversation, and fetches the messages in that Conversation.
-  * It then forwards to chat.jsp for rendering.
+  * the URL, finds the corresponding Conversation, and fetches the newest page of messages in that
+  * Conversation. It then forwards to chat.jsp for rendering. If the request has a before=<cursor>
+  * parameter, it instead writes the page of messages older than that cursor as JSON, which the
+  * chat page fetches when the user scrolls back through history.
   */
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response)
@@ -127,14 +148,105 @@ public class ChatServlet extends HttpServlet {
     String requestUrl = request.getRequestURI();
     String conversationTitle = requestUrl.substring("/chat/".length());
     Conversation conversation = conversationStore.getConversationWithTitle(conversationTitle);
+
+    String beforeParameter = request.getParameter("before");
+    if (beforeParameter != null) {
+      writeOlderMessages(request, response, conversation, beforeParameter);
+      return;
+    }
+
 		UUID conversationId = conversation.getId();
-		List<Message> messages = messageStore.getMessagesInConversation(conversationId);
+		List<Message> messages =
+				messageStore.getMessagesInConversation(conversationId, null, MESSAGES_PER_PAGE);
 		request.setAttribute("messages", messages);
 		request.setAttribute("conversation", conversation);
+		request.setAttribute("olderMessagesCursor", olderMessagesCursor(messages));
+		request.setAttribute(
+				"newestMessageCursor",
+				messages.isEmpty() ? null : MessageCursor.of(messages.get(messages.size() - 1)).toString());
 
     request.getRequestDispatcher("/WEB-INF/view/chat.jsp").forward(request, response);
   }
 
+  /**
+  * Writes the page of messages before a cursor as JSON, in the form
+  * {"messages": [...], "olderMessagesCursor": cursor}.
+  * The cursor is null once there are no older messages.
+  */
+  private void writeOlderMessages(
+      HttpServletRequest request,
+      HttpServletResponse response,
+      Conversation conversation,
+      String beforeParameter)
+      throws IOException {
+    if (conversation == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    if (!isVisibleTo(conversation, (UUID) request.getSession().getAttribute("id"))) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+    MessageCursor before;
+    try {
+      before = MessageCursor.parse(beforeParameter);
+    } catch (IllegalArgumentException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid cursor");
+      return;
+    }
+
+    List<Message> messages =
+        messageStore.getMessagesInConversation(conversation.getId(), before, MESSAGES_PER_PAGE);
+    String olderMessagesCursor = olderMessagesCursor(messages);
+
+    response.setContentType("application/json");
+    response.setCharacterEncoding("UTF-8");
+    PrintWriter out = response.getWriter();
+    out.print("{\"messages\":");
+    writeMessages(out, messages, userStore);
+    out.print(",\"olderMessagesCursor\":" + Json.quote(olderMessagesCursor) + "}");
+  }
+
+  /**
+  * Writes a list of messages as a JSON array of {"id", "author", "text", "creationTime"} objects,
+  * where author is the sender's username.
+  */
+  static void writeMessages(PrintWriter out, List<Message> messages, UserStore userStore) {
+    out.print('[');
+    for (int i = 0; i < messages.size(); i++) {
+      Message message = messages.get(i);
+      User author = userStore.getUser(message.getAuthorId());
+      if (i > 0) {
+        out.print(',');
+      }
+      out.print("{\"id\":" + Json.quote(message.getId().toString()));
+      out.print(",\"author\":" + Json.quote(author == null ? null : author.getName()));
+      out.print(",\"text\":" + Json.quote(message.getText()));
+      out.print(",\"creationTime\":" + Json.quote(message.getCreationTime().toString()) + "}");
+    }
+    out.print(']');
+  }
+
+  /** Returns whether a user may read a Conversation, following the check in chat.jsp. */
+  static boolean isVisibleTo(Conversation conversation, UUID userId) {
+    String visibility = conversation.getConversationVisibility();
+    if (!visibility.equals("GROUP") && !visibility.equals("DIRECT")) {
+      return true;
+    }
+    return userId != null && conversation.isAccessAllowed(userId);
+  }
+
+  /**
+  * Returns the cursor for the page before a page of messages, or null if the page wasn't full and
+  * so reached the start of the Conversation.
+  */
+  private static String olderMessagesCursor(List<Message> messages) {
+    if (messages.size() < MESSAGES_PER_PAGE) {
+      return null;
+    }
+    return MessageCursor.of(messages.get(0)).toString();
+  }
+
   /**
   * This function fires when a user submits the form on the chat page. It gets the logged-in
   * username from the session, the conversation title from the URL, and the chat message from the
@@ -171,6 +283,7 @@ public class ChatServlet extends HttpServlet {
       response.sendRedirect("/conversations");
       return;
     }
+    activeUsers.userActive(user.getId());
 
 		//check if there was any media uploaded
 		BlobKey msgMedia = null;
@@ -197,7 +310,6 @@ public class ChatServlet extends HttpServlet {
 				int checkedUsers = 0;
 				if(request.getParameter("addUsers") != null){
 					addUsers = true;
-					checkedUsers = (int) request.getSession().getAttribute("addUserCounter");//the number of checked users
 
 					if(conversation.getConversationVisibility().equals("DIRECT")){
 						request.getSession().setAttribute("addedDirectMessageRecipient", "true");
@@ -208,17 +320,30 @@ public class ChatServlet extends HttpServlet {
 					removeUsers = true;
 					checkedUsers = (int) request.getSession().getAttribute("removeUserCounter");//the number of checked users
 				}
-				// getting the actual Users from number of ints checked in the chat.jsp
 				HashSet<String> mutableUsers = new HashSet<String>();
-				for(int i = 0; i <= checkedUsers; i++){
-					String counter = Integer.toString(i);
-					mutableUsers.add(request.getParameter(counter));
+				if(addUsers){
+					// the names picked with the user search in chat.jsp, one member parameter each
+					String[] members = request.getParameterValues("member");
+					if(members != null){
+						mutableUsers.addAll(Arrays.asList(members));
+					}
+				}
+				else{
+					// getting the actual Users from number of ints checked in the chat.jsp
+					for(int i = 0; i <= checkedUsers; i++){
+						String counter = Integer.toString(i);
+						mutableUsers.add(request.getParameter(counter));
+					}
 				}
 				// Now do something with it!
 				for(String userName: mutableUsers){
 					if(userName != null){
 						// checks if the user is already allowed, do nothing; if not then add permission
 						User allowedUser = userStore.getUser(userName);
+						if(allowedUser == null){
+							// a name typed into the user search that isn't registered
+							continue;
+						}
 						if(addUsers){
 							conversation.addMember(allowedUser);
 						}
@@ -260,8 +385,8 @@ public class ChatServlet extends HttpServlet {
 		  messageStore.addMessage(message);
 
       // old way to add msg to activitystore, keeping for ref
-      Activity msgActivity = new Activity(ActivityType.MESSAGE, UUID.randomUUID(), message.getAuthorId(), message.getId(), message.getCreationTime());
-      activityStore.addActivity(msgActivity);
+      Activity msgActivity = new Activity(ActivityType.MESSAGE, UUID.randomUUID(), message.getAuthorId(), message.getId(), message.getCreationTime(), message.getConversationId());
+      activityStore.addActivity(msgActivity, conversation);
 
       response.sendRedirect("/chat/" + conversationTitle);
     }
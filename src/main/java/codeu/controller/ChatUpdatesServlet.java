@@ -0,0 +1,250 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import codeu.metrics.Metrics;
+import codeu.model.data.Conversation;
+import codeu.model.data.Message;
+import codeu.model.store.basic.ConversationStore;
+import codeu.model.store.basic.MessageCursor;
+import codeu.model.store.basic.MessageStore;
+import codeu.model.store.basic.UserStore;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet class that the chat page polls for new messages. A GET of
+ * /chat-updates/<title>?after=<cursor> returns only the messages sent after the cursor, so a poll
+ * costs time and bandwidth proportional to the number of new messages instead of the size of the
+ * conversation's history. Without a cursor, as when the page was opened on an empty conversation,
+ * it returns the conversation's first messages.
+ *
+ * <p>Responses carry an ETag naming the conversation's newest message. A client that repeats a poll
+ * with If-None-Match gets an empty 304 response while nothing has changed.
+ *
+ * <p>With wait=true the request is a long poll: if there is nothing new it is suspended with
+ * startAsync(), holding no thread, until MessageStore reports a new message in the conversation or
+ * LONG_POLL_TIMEOUT_MILLIS passes. It is then dispatched back to this servlet to write its answer,
+ * so one sent message wakes every waiting client at once.
+ */
+public class ChatUpdatesServlet extends HttpServlet {
+
+  /** How long a long poll waits for a new message before answering that there is none. */
+  static final long LONG_POLL_TIMEOUT_MILLIS = 25000;
+
+  /** Store class that gives access to Conversations. */
+  private ConversationStore conversationStore;
+
+  /** Store class that gives access to Messages. */
+  private MessageStore messageStore;
+
+  /** Store class that gives access to Users. */
+  private UserStore userStore;
+
+  /** The number of long polls suspended and registered with MessageStore. */
+  private final AtomicInteger waitingPolls = new AtomicInteger();
+
+  /** Set up state for handling poll requests. */
+  @Override
+  public void init() throws ServletException {
+    super.init();
+    setConversationStore(ConversationStore.getInstance());
+    setMessageStore(MessageStore.getInstance());
+    setUserStore(UserStore.getInstance());
+    Metrics.getInstance().registerGauge("codeu_long_polls_waiting",
+        "Long polls suspended waiting for a new message.", null, null, waitingPolls::get);
+  }
+
+  /**
+   * Sets the ConversationStore used by this servlet. This function provides a common setup method
+   * for use by the test framework or the servlet's init() function.
+   */
+  void setConversationStore(ConversationStore conversationStore) {
+    this.conversationStore = conversationStore;
+  }
+
+  /**
+   * Sets the MessageStore used by this servlet. This function provides a common setup method for
+   * use by the test framework or the servlet's init() function.
+   */
+  void setMessageStore(MessageStore messageStore) {
+    this.messageStore = messageStore;
+  }
+
+  /**
+   * Sets the UserStore used by this servlet. This function provides a common setup method for use
+   * by the test framework or the servlet's init() function.
+   */
+  void setUserStore(UserStore userStore) {
+    this.userStore = userStore;
+  }
+
+  /** Returns the number of long polls waiting for a new message. */
+  int getWaitingPollCount() {
+    return waitingPolls.get();
+  }
+
+  /**
+   * Writes the messages after the cursor in the after parameter as JSON, in the form
+   * {"messages": [...], "newestMessageCursor": cursor}, where the cursor is the one to pass on the
+   * next poll. At most ChatServlet.MESSAGES_PER_PAGE messages are returned at once.
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws IOException, ServletException {
+    String requestUrl = request.getRequestURI();
+    String conversationTitle = requestUrl.substring("/chat-updates/".length());
+    Conversation conversation = conversationStore.getConversationWithTitle(conversationTitle);
+    if (conversation == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    if (!ChatServlet.isVisibleTo(conversation, (UUID) request.getSession().getAttribute("id"))) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+    String afterParameter = request.getParameter("after");
+    MessageCursor after = null;
+    try {
+      if (afterParameter != null && !afterParameter.isEmpty()) {
+        after = MessageCursor.parse(afterParameter);
+      }
+    } catch (IllegalArgumentException e) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid cursor");
+      return;
+    }
+
+    if ("true".equals(request.getParameter("wait"))
+        && request.getDispatcherType() != DispatcherType.ASYNC
+        && request.isAsyncSupported()
+        && !hasMessagesAfter(conversation.getId(), after)) {
+      waitForMessage(request, conversation.getId(), after);
+      return;
+    }
+
+    // The response for a given cursor only changes when a newer message arrives, so the newest
+    // message identifies it.
+    List<Message> newest = messageStore.getMessagesInConversation(conversation.getId(), null, 1);
+    String etag =
+        newest.isEmpty() ? "\"empty\"" : "\"" + MessageCursor.of(newest.get(0)) + "\"";
+    response.setHeader("ETag", etag);
+    response.setHeader("Cache-Control", "no-cache");
+    if (etag.equals(request.getHeader("If-None-Match"))) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    List<Message> messages =
+        messageStore.getMessagesInConversationAfter(
+            conversation.getId(), after, ChatServlet.MESSAGES_PER_PAGE);
+    MessageCursor newestMessageCursor =
+        messages.isEmpty() ? after : MessageCursor.of(messages.get(messages.size() - 1));
+    String newestMessageCursorString =
+        newestMessageCursor == null ? null : newestMessageCursor.toString();
+
+    response.setContentType("application/json");
+    response.setCharacterEncoding("UTF-8");
+    PrintWriter out = response.getWriter();
+    out.print("{\"messages\":");
+    ChatServlet.writeMessages(out, messages, userStore);
+    out.print(",\"newestMessageCursor\":" + Json.quote(newestMessageCursorString) + "}");
+  }
+
+  private boolean hasMessagesAfter(UUID conversationId, MessageCursor after) {
+    return !messageStore.getMessagesInConversationAfter(conversationId, after, 1).isEmpty();
+  }
+
+  /** Suspends a long poll until a message arrives after the cursor or the poll times out. */
+  private void waitForMessage(
+      HttpServletRequest request, UUID conversationId, MessageCursor after) {
+    AsyncContext asyncContext = request.startAsync();
+    asyncContext.setTimeout(LONG_POLL_TIMEOUT_MILLIS);
+    LongPoll longPoll = new LongPoll(asyncContext, conversationId);
+    asyncContext.addListener(longPoll);
+    waitingPolls.incrementAndGet();
+    messageStore.addMessageListener(conversationId, longPoll);
+    // A message sent before the listener was registered would otherwise be missed until timeout.
+    if (hasMessagesAfter(conversationId, after)) {
+      longPoll.wake();
+    }
+  }
+
+  /**
+   * A suspended long poll. It is woken exactly once, by a new message or by its timeout, and then
+   * unregisters itself and dispatches the request back to doGet() on a container thread.
+   */
+  private class LongPoll implements MessageStore.MessageListener, AsyncListener {
+
+    private final AsyncContext asyncContext;
+    private final UUID conversationId;
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    LongPoll(AsyncContext asyncContext, UUID conversationId) {
+      this.asyncContext = asyncContext;
+      this.conversationId = conversationId;
+    }
+
+    void wake() {
+      if (finish()) {
+        asyncContext.dispatch();
+      }
+    }
+
+    /** Returns true the first time it is called, after unregistering this poll. */
+    private boolean finish() {
+      if (!finished.compareAndSet(false, true)) {
+        return false;
+      }
+      messageStore.removeMessageListener(conversationId, this);
+      waitingPolls.decrementAndGet();
+      return true;
+    }
+
+    @Override
+    public void messageAdded(Message message) {
+      wake();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+      wake();
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+      finish();
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+      finish();
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {}
+  }
+}
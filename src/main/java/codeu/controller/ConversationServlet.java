@@ -27,12 +27,14 @@ import codeu.model.data.Activity.ActivityType;
 import codeu.model.store.basic.GroupConversationStore;
 import codeu.model.store.basic.UserStore;
 import codeu.model.store.basic.ActivityStore;
+import codeu.model.store.basic.TrendingConversations;
 import java.io.IOException;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.HashSet;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.List;
 import java.util.UUID;
@@ -58,6 +60,9 @@ import com.google.appengine.api.datastore.Entity;
 /** Servlet class responsible for the conversations page. */
 public class ConversationServlet extends HttpServlet {
 
+  /** The most Conversations listed as hot now. */
+  static final int HOT_CONVERSATIONS = 5;
+
   /** Store class that gives access to Users. */
   private UserStore userStore;
 
@@ -70,6 +75,9 @@ public class ConversationServlet extends HttpServlet {
   /** Store class that gives access to Activity */
   private ActivityStore activityStore;
 
+  /** Finds the Conversations with the most Messages right now. */
+  private TrendingConversations trendingConversations;
+
 	/** Blobs for the avatarImage!!! */
 	private BlobstoreService blobstoreService = BlobstoreServiceFactory.getBlobstoreService();
 	private ImagesService imagesService = ImagesServiceFactory.getImagesService();
@@ -85,6 +93,7 @@ public class ConversationServlet extends HttpServlet {
     setConversationStore(ConversationStore.getInstance());
     setGroupConversationStore(GroupConversationStore.getInstance());
     setActivityStore(ActivityStore.getInstance());
+    setTrendingConversations(TrendingConversations.getInstance());
   }
 
   /**
@@ -111,9 +120,18 @@ public class ConversationServlet extends HttpServlet {
 		this.activityStore = activityStore;
   }
 
+  /**
+  * Sets the TrendingConversations used by this servlet. This function provides a common setup
+  * method for use by the test framework or the servlet's init() function.
+  */
+  void setTrendingConversations(TrendingConversations trendingConversations) {
+    this.trendingConversations = trendingConversations;
+  }
+
   /**
   * This function fires when a user navigates to the conversations page. It gets all of the
-  * conversations from the model and forwards to conversations.jsp for rendering the list.
+  * conversations from the model and forwards to conversations.jsp for rendering the list, headed
+  * by the busiest conversations the user can see.
   */
   @Override
   public void doGet(HttpServletRequest request, HttpServletResponse response)
@@ -126,9 +144,30 @@ public class ConversationServlet extends HttpServlet {
 		// blobstoreService.serve(blobKey, res);
     request.setAttribute("conversations", conversations);
 		request.setAttribute("groups", groups);
+    request.setAttribute(
+        "hotConversations", hotConversations((UUID) request.getSession().getAttribute("id")));
     request.getRequestDispatcher("/WEB-INF/view/conversations.jsp").forward(request, response);
   }
 
+  /**
+   * Returns up to HOT_CONVERSATIONS of the busiest Conversations visible to a user, busiest first,
+   * each mapped to its recent rate of Messages per minute. Takes time proportional to the number
+   * of Conversations TrendingConversations tracks, not to the number of Conversations.
+   */
+  private Map<Conversation, Double> hotConversations(UUID userId) {
+    Map<Conversation, Double> hotConversations = new LinkedHashMap<>();
+    for (TrendingConversations.Trend trend : trendingConversations.getTrending(Integer.MAX_VALUE)) {
+      Conversation conversation = conversationStore.getConversation(trend.getConversationId());
+      if (conversation != null && ChatServlet.isVisibleTo(conversation, userId)) {
+        hotConversations.put(conversation, trend.getMessagesPerMinute());
+        if (hotConversations.size() == HOT_CONVERSATIONS) {
+          break;
+        }
+      }
+    }
+    return hotConversations;
+  }
+
   /**
    * This function fires when a user submits the form on the conversations page. It gets the
    * logged-in username from the session and the new conversation title from the submitted form
@@ -323,7 +362,7 @@ public class ConversationServlet extends HttpServlet {
 			// response.sendRedirect("/chat/" + conversationTitle);
 
 			Activity convoActivity = new Activity(ActivityType.CONVERSATION, UUID.randomUUID(), conversation.getOwnerId(), conversation.getId(), conversation.getCreationTime());
-      activityStore.addActivity(convoActivity);
+      activityStore.addActivity(convoActivity, conversation);
 
 			response.sendRedirect("/chat/" + conversationTitle);
 	}
@@ -0,0 +1,61 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+/** Helpers for the small JSON responses written by the servlets in this package. */
+final class Json {
+
+  private Json() {}
+
+  /** Returns a string as a quoted JSON string literal, or {@code null} for a null string. */
+  static String quote(String value) {
+    if (value == null) {
+      return "null";
+    }
+    StringBuilder quoted = new StringBuilder(value.length() + 2);
+    quoted.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+        case '"':
+          quoted.append("\\\"");
+          break;
+        case '\\':
+          quoted.append("\\\\");
+          break;
+        case '\n':
+          quoted.append("\\n");
+          break;
+        case '\r':
+          quoted.append("\\r");
+          break;
+        case '\t':
+          quoted.append("\\t");
+          break;
+        case '<':
+          // Keeps "</script>" inert if the JSON is ever inlined into a page.
+          quoted.append("\\u003c");
+          break;
+        default:
+          if (c < 0x20) {
+            quoted.append(String.format("\\u%04x", (int) c));
+          } else {
+            quoted.append(c);
+          }
+      }
+    }
+    return quoted.append('"').toString();
+  }
+}
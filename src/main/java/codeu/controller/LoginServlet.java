@@ -15,6 +15,7 @@
 package codeu.controller;
 
 import codeu.model.data.User;
+import codeu.model.store.basic.ActiveUsers;
 import codeu.model.store.basic.UserStore;
 import java.io.IOException;
 import java.util.UUID;
@@ -30,6 +31,10 @@ public class LoginServlet extends HttpServlet {
 
 	/** Store class that gives access to Users. */
 	private UserStore userStore;
+
+	/** Counts the Users active recently, for the admin page. */
+	private ActiveUsers activeUsers;
+
 	/**
 	 * Set up state for handling login-related requests. This method is only called when running in a
 	 * server, not when running in a test.
@@ -38,6 +43,7 @@ public class LoginServlet extends HttpServlet {
 	public void init() throws ServletException {
 		super.init();
 		setUserStore(UserStore.getInstance());
+		setActiveUsers(ActiveUsers.getInstance());
 	}
 
 	/**
@@ -48,6 +54,14 @@ public class LoginServlet extends HttpServlet {
 		this.userStore = userStore;
 	}
 
+	/**
+	 * Sets the ActiveUsers that logins are counted in. This function provides a common setup method
+	 * for use by the test framework or the servlet's init() function.
+	 */
+	void setActiveUsers(ActiveUsers activeUsers) {
+		this.activeUsers = activeUsers;
+	}
+
 	/**
 	 * This function fires when a user requests the /login URL. It simply forwards the request to
 	 * login.jsp.
@@ -87,6 +101,7 @@ public class LoginServlet extends HttpServlet {
 			return;
 		}
 
+		activeUsers.userActive(uuid);
 		boolean admin = user.getType();
 
 		if(admin){
@@ -0,0 +1,102 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import codeu.metrics.Metrics;
+import java.io.IOException;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Filter that records the latency and response status of every request in Metrics, by route. The
+ * route is the request method and the servlet path, so /chat/a and /chat/b both count as
+ * "GET /chat".
+ *
+ * <p>A request that goes asynchronous, such as a long poll of /chat-updates, is recorded when it
+ * completes, so its latency includes the time it spent waiting.
+ */
+public class MetricsFilter implements Filter {
+
+  private Metrics metrics;
+
+  @Override
+  public void init(FilterConfig filterConfig) throws ServletException {
+    setMetrics(Metrics.getInstance());
+  }
+
+  /**
+   * Sets the Metrics recorded into by this filter. This function provides a common setup method for
+   * use by the test framework or the filter's init() function.
+   */
+  void setMetrics(Metrics metrics) {
+    this.metrics = metrics;
+  }
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    if (!(request instanceof HttpServletRequest) || !(response instanceof HttpServletResponse)) {
+      chain.doFilter(request, response);
+      return;
+    }
+    HttpServletRequest httpRequest = (HttpServletRequest) request;
+    HttpServletResponse httpResponse = (HttpServletResponse) response;
+    String route = httpRequest.getMethod() + " " + httpRequest.getServletPath();
+    long start = System.nanoTime();
+    boolean threw = true;
+    try {
+      chain.doFilter(request, response);
+      threw = false;
+    } finally {
+      if (!threw && request.isAsyncStarted()) {
+        request.getAsyncContext().addListener(new AsyncListener() {
+          @Override
+          public void onComplete(AsyncEvent event) {
+            record(route, httpResponse.getStatus(), start);
+          }
+
+          @Override
+          public void onTimeout(AsyncEvent event) {}
+
+          @Override
+          public void onError(AsyncEvent event) {}
+
+          @Override
+          public void onStartAsync(AsyncEvent event) {}
+        });
+      } else {
+        // An exception escaping the chain becomes a 500, whatever status was set before it.
+        int status =
+            threw ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : httpResponse.getStatus();
+        record(route, status, start);
+      }
+    }
+  }
+
+  private void record(String route, int status, long startNanos) {
+    metrics.recordRequest(route, status, System.nanoTime() - startNanos);
+  }
+
+  @Override
+  public void destroy() {}
+}
@@ -0,0 +1,234 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import codeu.metrics.LatencyHistogram;
+import codeu.metrics.Metrics;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet class that exports the application's metrics. A GET of /admin/metrics returns them as
+ * JSON, with latency percentiles in milliseconds, for people; a GET of /metrics returns them in the
+ * Prometheus text format, with cumulative histogram buckets in seconds, for a scraper.
+ *
+ * <p>Only a logged-in administrator may read either. A scraper, which has no session, may instead
+ * send "Authorization: Bearer <token>" with the token set in the codeu.metrics.token system
+ * property; without that property, token access is off.
+ */
+public class MetricsServlet extends HttpServlet {
+
+  /** The metrics exported by this servlet. */
+  private Metrics metrics;
+
+  /** The token a scraper may present instead of an admin session, or null if there is none. */
+  private String token;
+
+  /** Set up state for handling metrics requests. */
+  @Override
+  public void init() throws ServletException {
+    super.init();
+    setMetrics(Metrics.getInstance());
+    setToken(System.getProperty("codeu.metrics.token"));
+  }
+
+  /**
+   * Sets the Metrics exported by this servlet. This function provides a common setup method for use
+   * by the test framework or the servlet's init() function.
+   */
+  void setMetrics(Metrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /** Sets the token a scraper may present instead of an admin session, or null to allow none. */
+  void setToken(String token) {
+    this.token = token == null || token.isEmpty() ? null : token;
+  }
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws IOException, ServletException {
+    if (!isAuthorized(request)) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+    response.setHeader("Cache-Control", "no-cache");
+    response.setCharacterEncoding("UTF-8");
+    if ("/metrics".equals(request.getServletPath())) {
+      response.setContentType("text/plain; version=0.0.4");
+      writePrometheus(response.getWriter());
+    } else {
+      response.setContentType("application/json");
+      writeJson(response.getWriter());
+    }
+  }
+
+  private boolean isAuthorized(HttpServletRequest request) {
+    if (request.getSession().getAttribute("admin") != null) {
+      return true;
+    }
+    String authorization = request.getHeader("Authorization");
+    if (token == null || authorization == null || !authorization.startsWith("Bearer ")) {
+      return false;
+    }
+    // Compares in constant time, so response times don't reveal how much of a guess was right.
+    return MessageDigest.isEqual(
+        authorization.substring("Bearer ".length()).getBytes(StandardCharsets.UTF_8),
+        token.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Writes the metrics as JSON, in the form {"requests": {route: {..., "statuses": {...}}},
+   * "datastore": {operation: {..., "errors": n}}, "gauges": [{"name", "labels", "value"}]}.
+   */
+  void writeJson(PrintWriter out) {
+    SortedMap<String, SortedMap<Integer, Long>> responseCounts = metrics.getResponseCounts();
+    out.print("{\"requests\":{");
+    String separator = "";
+    for (Map.Entry<String, LatencyHistogram.Snapshot> route :
+        metrics.getRequestLatencies().entrySet()) {
+      out.print(separator + Json.quote(route.getKey()) + ":{");
+      writeJsonLatencies(out, route.getValue());
+      out.print(",\"statuses\":{");
+      String statusSeparator = "";
+      SortedMap<Integer, Long> statuses = responseCounts.get(route.getKey());
+      if (statuses != null) {
+        for (Map.Entry<Integer, Long> status : statuses.entrySet()) {
+          out.print(statusSeparator + "\"" + status.getKey() + "\":" + status.getValue());
+          statusSeparator = ",";
+        }
+      }
+      out.print("}}");
+      separator = ",";
+    }
+
+    out.print("},\"datastore\":{");
+    SortedMap<String, Long> errors = metrics.getDatastoreErrors();
+    separator = "";
+    for (Map.Entry<String, LatencyHistogram.Snapshot> operation :
+        metrics.getDatastoreLatencies().entrySet()) {
+      out.print(separator + Json.quote(operation.getKey()) + ":{");
+      writeJsonLatencies(out, operation.getValue());
+      out.print(",\"errors\":" + errors.getOrDefault(operation.getKey(), 0L) + "}");
+      separator = ",";
+    }
+
+    out.print("},\"gauges\":[");
+    separator = "";
+    for (Metrics.Gauge gauge : metrics.getGauges()) {
+      out.print(separator + "{\"name\":" + Json.quote(gauge.getName()) + ",\"labels\":{");
+      if (gauge.getLabelName() != null) {
+        out.print(Json.quote(gauge.getLabelName()) + ":" + Json.quote(gauge.getLabelValue()));
+      }
+      out.print("},\"value\":" + gauge.getValue() + "}");
+      separator = ",";
+    }
+    out.print("]}");
+  }
+
+  private static void writeJsonLatencies(PrintWriter out, LatencyHistogram.Snapshot latencies) {
+    long count = latencies.getCount();
+    out.print("\"count\":" + count);
+    out.print(",\"meanMillis\":"
+        + millis(count == 0 ? 0 : latencies.getSumNanos() / count));
+    out.print(",\"p50Millis\":" + millis(latencies.percentileNanos(0.50)));
+    out.print(",\"p95Millis\":" + millis(latencies.percentileNanos(0.95)));
+    out.print(",\"p99Millis\":" + millis(latencies.percentileNanos(0.99)));
+    out.print(",\"maxMillis\":" + millis(latencies.getMaxNanos()));
+  }
+
+  /** Writes the metrics in the Prometheus text exposition format. */
+  void writePrometheus(PrintWriter out) {
+    writeHistograms(out, "codeu_http_request_duration_seconds",
+        "Time to handle a request, by route.", "route", metrics.getRequestLatencies());
+
+    out.print("# HELP codeu_http_responses_total Responses sent, by route and status.\n");
+    out.print("# TYPE codeu_http_responses_total counter\n");
+    for (Map.Entry<String, SortedMap<Integer, Long>> route :
+        metrics.getResponseCounts().entrySet()) {
+      for (Map.Entry<Integer, Long> status : route.getValue().entrySet()) {
+        out.print("codeu_http_responses_total{route=" + label(route.getKey())
+            + ",status=\"" + status.getKey() + "\"} " + status.getValue() + "\n");
+      }
+    }
+
+    writeHistograms(out, "codeu_datastore_operation_duration_seconds",
+        "Time taken by a Datastore call, by operation.", "operation",
+        metrics.getDatastoreLatencies());
+
+    out.print("# HELP codeu_datastore_errors_total Datastore calls that failed, by operation.\n");
+    out.print("# TYPE codeu_datastore_errors_total counter\n");
+    for (Map.Entry<String, Long> operation : metrics.getDatastoreErrors().entrySet()) {
+      out.print("codeu_datastore_errors_total{operation=" + label(operation.getKey()) + "} "
+          + operation.getValue() + "\n");
+    }
+
+    String previousName = null;
+    for (Metrics.Gauge gauge : metrics.getGauges()) {
+      if (!gauge.getName().equals(previousName)) {
+        out.print("# HELP " + gauge.getName() + " " + gauge.getHelp() + "\n");
+        out.print("# TYPE " + gauge.getName() + " gauge\n");
+        previousName = gauge.getName();
+      }
+      String labels = gauge.getLabelName() == null
+          ? ""
+          : "{" + gauge.getLabelName() + "=" + label(gauge.getLabelValue()) + "}";
+      out.print(gauge.getName() + labels + " " + gauge.getValue() + "\n");
+    }
+  }
+
+  private static void writeHistograms(PrintWriter out, String name, String help, String labelName,
+      SortedMap<String, LatencyHistogram.Snapshot> histograms) {
+    out.print("# HELP " + name + " " + help + "\n");
+    out.print("# TYPE " + name + " histogram\n");
+    for (Map.Entry<String, LatencyHistogram.Snapshot> histogram : histograms.entrySet()) {
+      String labels = labelName + "=" + label(histogram.getKey());
+      LatencyHistogram.Snapshot latencies = histogram.getValue();
+      // Prometheus buckets are cumulative; the +Inf bucket and the count are the same total.
+      long cumulative = 0;
+      for (int i = 0; i < latencies.boundCount(); i++) {
+        cumulative += latencies.bucketCount(i);
+        out.print(name + "_bucket{" + labels + ",le=\"" + seconds(latencies.boundNanos(i))
+            + "\"} " + cumulative + "\n");
+      }
+      cumulative += latencies.bucketCount(latencies.boundCount());
+      out.print(name + "_bucket{" + labels + ",le=\"+Inf\"} " + cumulative + "\n");
+      out.print(name + "_sum{" + labels + "} " + seconds(latencies.getSumNanos()) + "\n");
+      out.print(name + "_count{" + labels + "} " + cumulative + "\n");
+    }
+  }
+
+  /** Returns a Prometheus label value, quoted and escaped. */
+  private static String label(String value) {
+    return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+  }
+
+  private static String seconds(long nanos) {
+    return Double.toString(nanos / 1e9);
+  }
+
+  private static String millis(long nanos) {
+    return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+  }
+}
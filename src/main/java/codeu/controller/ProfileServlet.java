@@ -4,6 +4,7 @@ import codeu.model.data.User;
 import codeu.model.data.Message;
 import codeu.model.data.Profile;
 import codeu.model.store.basic.UserStore;
+import codeu.model.store.basic.MessageCursor;
 import codeu.model.store.basic.MessageStore;
 import codeu.model.store.basic.ProfileStore;
 import java.io.IOException;
@@ -19,6 +20,9 @@ import org.jsoup.Jsoup;
 import org.jsoup.safety.Whitelist;
 
 public class ProfileServlet extends HttpServlet {
+	/** The number of sent messages shown on one page of a profile. */
+	static final int MESSAGES_PER_PAGE = 50;
+
 	/** Store class that gives access to Messages. */
 	private MessageStore messageStore;
 	/** Store class that gives access to Users. */
@@ -82,8 +86,23 @@ public class ProfileServlet extends HttpServlet {
 			}
 		}
 
-		//creates arrayList of all messages sent by user whose profile is being displayed
-		List<Message> messages = messageStore.getMessagesByUser(user.getId());
+		//gets one page of the messages sent by user whose profile is being displayed, newest first
+		//unless the request asks for the page before an older message
+		MessageCursor before = null;
+		String beforeParameter = request.getParameter("before");
+		if (beforeParameter != null) {
+			try {
+				before = MessageCursor.parse(beforeParameter);
+			} catch (IllegalArgumentException e) {
+				before = null;
+			}
+		}
+		List<Message> messages = messageStore.getMessagesByUser(user.getId(), before, MESSAGES_PER_PAGE);
+
+		//a full page means there may be older messages, so link to them from the oldest one shown
+		if (messages != null && messages.size() == MESSAGES_PER_PAGE) {
+			request.setAttribute("olderMessagesCursor", MessageCursor.of(messages.get(0)).toString());
+		}
 
 		request.setAttribute("about", about);
 		request.setAttribute("currentProfile", currentProfile);
@@ -1,8 +1,10 @@
 package codeu.controller;
 
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.time.Instant;
 import java.util.UUID;
+import java.util.regex.Pattern;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -24,6 +26,9 @@ import com.google.appengine.api.datastore.Entity;
 
 public class RegisterServlet extends HttpServlet {
 
+	/** Usernames must be at least 5 characters and cannot contain spaces. */
+	private static final Pattern USERNAME_PATTERN = Pattern.compile("^(?=\\S+$).{5,}$");
+
 	/** Store class that gives access to Users. */
 	private UserStore userStore;
 
@@ -58,20 +63,52 @@ public class RegisterServlet extends HttpServlet {
 		this.activityStore = activityStore;
 	}
 
+	/**
+	 * This function fires when a user navigates to the register page, and forwards to register.jsp.
+	 * If the request has a username=<name> parameter, it instead writes whether that username is
+	 * valid and free as JSON, which the register page fetches as the user types. That takes one
+	 * lookup in UserStore's name index and doesn't touch the session, so it stays cheap at typing
+	 * rate.
+	 */
 	@Override
 	public void doGet(HttpServletRequest request, HttpServletResponse response)
 			throws IOException, ServletException {
+		String username = request.getParameter("username");
+		if (username != null) {
+			writeAvailability(response, username);
+			return;
+		}
 		request.getRequestDispatcher("/WEB-INF/view/register.jsp").forward(request, response);
 	}
 
+	/** Writes {"username", "valid", "available"} for a username as JSON. */
+	private void writeAvailability(HttpServletResponse response, String username)
+			throws IOException {
+		boolean valid = isValidUsername(username);
+		boolean available = valid && !userStore.isUserRegistered(username);
+
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		// another user can take the name at any time
+		response.setHeader("Cache-Control", "no-cache");
+		PrintWriter out = response.getWriter();
+		out.print("{\"username\":" + Json.quote(username)
+				+ ",\"valid\":" + valid
+				+ ",\"available\":" + available + "}");
+	}
+
+	/** Returns true if a username meets the rules for new usernames. */
+	static boolean isValidUsername(String username) {
+		return USERNAME_PATTERN.matcher(username).matches();
+	}
+
 	@Override
 	public void doPost(HttpServletRequest request, HttpServletResponse response)
 			throws IOException, ServletException {
 
 		String username = request.getParameter("username");
 
-		// username at least 5 chars and cannot contain spaces
-		if (!username.matches("^(?=\\S+$).{5,}$")) {
+		if (!isValidUsername(username)) {
 			request.setAttribute("error", "Invalid username");
 			request.getRequestDispatcher("/WEB-INF/view/register.jsp").forward(request, response);
 			return;
@@ -0,0 +1,162 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import codeu.metrics.Metrics;
+import codeu.model.data.Conversation;
+import codeu.model.data.Message;
+import codeu.model.store.basic.ConversationStore;
+import codeu.model.store.basic.MessageSearchIndex;
+import codeu.model.store.basic.MessageStore;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet class responsible for the message search page. A GET of /search?q=<words> lists the
+ * Messages containing every word, best match first, from the Conversations the user can see. With
+ * conversation=<title> only that Conversation is searched.
+ */
+public class SearchServlet extends HttpServlet {
+
+  /** The most Messages listed for one search. */
+  static final int MAX_RESULTS = 50;
+
+  /** Finds the Messages containing the searched words. */
+  private MessageSearchIndex messageSearchIndex;
+
+  /** Store class that gives access to Messages. */
+  private MessageStore messageStore;
+
+  /** Store class that gives access to Conversations. */
+  private ConversationStore conversationStore;
+
+  /**
+   * The number of search results whose Message could not be found, which means the index and
+   * MessageStore disagree.
+   */
+  private final AtomicLong unresolvedResults = new AtomicLong();
+
+  /** Set up state for handling search requests. */
+  @Override
+  public void init() throws ServletException {
+    super.init();
+    setMessageSearchIndex(MessageSearchIndex.getInstance());
+    setMessageStore(MessageStore.getInstance());
+    setConversationStore(ConversationStore.getInstance());
+    Metrics.getInstance().registerGauge("codeu_search_unresolved_results",
+        "Search results whose Message could not be found.", null, null, unresolvedResults::get);
+  }
+
+  /**
+   * Sets the MessageSearchIndex used by this servlet. This function provides a common setup method
+   * for use by the test framework or the servlet's init() function.
+   */
+  void setMessageSearchIndex(MessageSearchIndex messageSearchIndex) {
+    this.messageSearchIndex = messageSearchIndex;
+  }
+
+  /**
+   * Sets the MessageStore used by this servlet. This function provides a common setup method for
+   * use by the test framework or the servlet's init() function.
+   */
+  void setMessageStore(MessageStore messageStore) {
+    this.messageStore = messageStore;
+  }
+
+  /**
+   * Sets the ConversationStore used by this servlet. This function provides a common setup method
+   * for use by the test framework or the servlet's init() function.
+   */
+  void setConversationStore(ConversationStore conversationStore) {
+    this.conversationStore = conversationStore;
+  }
+
+  /** Returns the number of search results so far whose Message could not be found. */
+  long getUnresolvedResultCount() {
+    return unresolvedResults.get();
+  }
+
+  /**
+   * This function fires when a user searches from the search box. It looks the words up in the
+   * MessageSearchIndex, keeping only Messages in Conversations the user is allowed to see, and
+   * forwards the Messages found to search.jsp.
+   */
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws IOException, ServletException {
+    String query = request.getParameter("q");
+    if (query == null || query.trim().isEmpty()) {
+      request.getRequestDispatcher("/WEB-INF/view/search.jsp").forward(request, response);
+      return;
+    }
+    request.setAttribute("query", query);
+
+    UUID scopeId = null;
+    String conversationTitle = request.getParameter("conversation");
+    if (conversationTitle != null) {
+      Conversation scope = conversationStore.getConversationWithTitle(conversationTitle);
+      if (scope == null) {
+        request.setAttribute("error", "That conversation was not found.");
+        request.getRequestDispatcher("/WEB-INF/view/search.jsp").forward(request, response);
+        return;
+      }
+      scopeId = scope.getId();
+    }
+    UUID onlyConversationId = scopeId;
+    UUID userId = (UUID) request.getSession().getAttribute("id");
+
+    List<MessageSearchIndex.Result> results =
+        messageSearchIndex.search(
+            query,
+            conversationId -> {
+              if (onlyConversationId != null && !onlyConversationId.equals(conversationId)) {
+                return false;
+              }
+              Conversation conversation = conversationStore.getConversation(conversationId);
+              return conversation != null && ChatServlet.isVisibleTo(conversation, userId);
+            },
+            MAX_RESULTS);
+
+    List<Message> messages = new ArrayList<>();
+    Map<UUID, Conversation> conversations = new HashMap<>();
+    int unresolved = 0;
+    for (MessageSearchIndex.Result result : results) {
+      Conversation conversation = conversationStore.getConversation(result.getConversationId());
+      Message message = messageStore.getMessage(result.getConversationId(), result.getPosition());
+      if (message == null) {
+        unresolved++;
+      } else if (conversation != null) {
+        messages.add(message);
+        conversations.put(conversation.getId(), conversation);
+      }
+    }
+    if (unresolved > 0) {
+      unresolvedResults.addAndGet(unresolved);
+      System.err.println("Search found " + unresolved + " Messages missing from MessageStore");
+    }
+    request.setAttribute("messages", messages);
+    request.setAttribute("conversations", conversations);
+    request.getRequestDispatcher("/WEB-INF/view/search.jsp").forward(request, response);
+  }
+}
@@ -1,18 +1,37 @@
 package codeu.controller;
 
+import codeu.metrics.Metrics;
 import codeu.model.data.Conversation;
 import codeu.model.data.Message;
 import codeu.model.data.User;
 import codeu.model.data.Activity;
+import codeu.model.data.Activity.ActivityType;
 import codeu.model.data.Profile;
 import codeu.model.store.basic.ConversationStore;
+import codeu.model.store.basic.GroupConversationStore;
+import codeu.model.store.basic.MessageSearchIndex;
 import codeu.model.store.basic.MessageStore;
 import codeu.model.store.basic.UserStore;
 import codeu.model.store.basic.ActivityStore;
 import codeu.model.store.basic.ProfileStore;
+import codeu.model.store.basic.SiteStatistics;
+import codeu.model.store.basic.TrendingConversations;
 import codeu.model.store.persistence.PersistentDataStoreException;
 import codeu.model.store.persistence.PersistentStorageAgent;
+import com.google.appengine.api.ThreadManager;
+import java.time.Instant;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
 import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 
@@ -22,33 +41,210 @@ import javax.servlet.ServletContextListener;
  */
 public class ServerStartupListener implements ServletContextListener {
 
-	/** Loads data from Datastore. */
-	@Override
-	public void contextInitialized(ServletContextEvent sce) {
-		try {
-			List<User> users = PersistentStorageAgent.getInstance().loadUsers();
-			UserStore.getInstance().setUsers(users);
+	/** The most loads made at startup, and so the number of threads making them. */
+	private static final int LOAD_THREADS = 7;
 
-			List<Conversation> conversations = PersistentStorageAgent.getInstance().loadConversations();
-			ConversationStore.getInstance().setConversations(conversations);
+	/**
+	 * Rough heap cost of one object of each kind, in bytes, counting its fields, its strings and its
+	 * entries in the store's indexes. These are estimates for spotting growth, not measurements.
+	 */
+	private static final int USER_BYTES = 450;
+	private static final int CONVERSATION_BYTES = 700;
+	private static final int GROUP_BYTES = 600;
+	private static final int MESSAGE_BYTES = 450;
+	private static final int ACTIVITY_BYTES = 250;
+	private static final int PROFILE_BYTES = 150;
 
-			List<Message> messages = PersistentStorageAgent.getInstance().loadMessages();
-			MessageStore.getInstance().setMessages(messages);
+	/** The number of Messages read and indexed at a time when building the search index lazily. */
+	private static final int SEARCH_BATCH_SIZE = 1000;
 
-			List<Activity> activities = PersistentStorageAgent.getInstance().loadActivities();
-			ActivityStore.getInstance().setActivities(activities);
+	/**
+	 * Loads data from Datastore, first giving entities written by older versions the properties that
+	 * the loads query on and the Conversation of each Message Activity. Each kind is loaded on its
+	 * own thread, so startup takes about as long as the largest load instead of the sum of all of
+	 * them. The stores are only populated once every load has finished. If the codeu.writeBehind system property is true, also switches
+	 * PersistentStorageAgent to write-behind mode, sized by the codeu.writeBehind.capacity,
+	 * codeu.writeBehind.batchSize and codeu.writeBehind.flushMillis properties. If the
+	 * codeu.lazyMessages property is true, Messages are not loaded up front; MessageStore loads each
+	 * Conversation on first access and keeps at most codeu.lazyMessages.maxResident of them cached;
+	 * only the last day's Messages, which SiteStatistics and TrendingConversations need, are loaded,
+	 * and the total comes from Datastore's kind statistics plus a count of newer keys. The
+	 * MessageSearchIndex is built from every Message, read SEARCH_BATCH_SIZE at a time, so only one
+	 * batch is held at once.
+	 * If the codeu.boundedActivities property is true, only the newest
+	 * codeu.boundedActivities.capacity Activities are loaded and held; older ones are read from
+	 * Datastore when the feed is paged back to them. Also registers the gauges exported by
+	 * MetricsServlet.
+	 */
+	@Override
+	public void contextInitialized(ServletContextEvent sce) {
+		registerGauges(Metrics.getInstance());
+		if (Boolean.getBoolean("codeu.writeBehind")) {
+			PersistentStorageAgent.getInstance().enableWriteBehind(
+					Integer.getInteger("codeu.writeBehind.capacity", 1000),
+					Integer.getInteger("codeu.writeBehind.batchSize", 100),
+					Long.getLong("codeu.writeBehind.flushMillis", 500L));
+		}
+		boolean boundedActivities = Boolean.getBoolean("codeu.boundedActivities");
+		int activityCapacity = Integer.getInteger("codeu.boundedActivities.capacity", 1000);
+		if (boundedActivities) {
+			ActivityStore.getInstance().enableBoundedMode(activityCapacity);
+		}
+		boolean lazyMessages = Boolean.getBoolean("codeu.lazyMessages");
+		if (lazyMessages) {
+			MessageStore.getInstance().enableLazyLoading(
+					Integer.getInteger("codeu.lazyMessages.maxResident", 50000));
+		}
+
+		// Datastore calls need the App Engine environment of the current request, which only
+		// threads from the request thread factory inherit.
+		ExecutorService executor =
+				Executors.newFixedThreadPool(LOAD_THREADS, ThreadManager.currentRequestThreadFactory());
+		PersistentStorageAgent persistentStorageAgent = PersistentStorageAgent.getInstance();
+		long start = System.nanoTime();
+		try {
+			persistentStorageAgent.backfillCreationNanos();
+			persistentStorageAgent.backfillActivityConversations();
+			Future<List<User>> users = submitLoad(executor, "users", persistentStorageAgent::loadUsers);
+			Future<List<Conversation>> conversations =
+					submitLoad(executor, "conversations", persistentStorageAgent::loadConversations);
+			Future<List<Message>> messages = lazyMessages
+					? null
+					: submitLoad(executor, "messages", persistentStorageAgent::loadMessages);
+			Future<List<Message>> recentMessages = lazyMessages
+					? submitLoad(executor, "recent messages",
+							() -> persistentStorageAgent.loadMessagesSince(
+									Instant.now().minus(SiteStatistics.WINDOW)))
+					: null;
+			Future<Integer> messageCount =
+					lazyMessages ? executor.submit(persistentStorageAgent::countMessages) : null;
+			Future<MessageSearchIndex.Rebuild> searchIndex = lazyMessages
+					? executor.submit(() -> buildSearchIndex(persistentStorageAgent))
+					: null;
+			Future<List<Activity>> activities = boundedActivities
+					? submitLoad(executor, "activities",
+							() -> persistentStorageAgent.loadActivities(null, null, activityCapacity))
+					: submitLoad(executor, "activities", persistentStorageAgent::loadActivities);
+			Future<List<Profile>> profiles =
+					submitLoad(executor, "profiles", persistentStorageAgent::loadProfiles);
 
-			List<Profile> profiles = PersistentStorageAgent.getInstance().loadProfiles();
-			ProfileStore.getInstance().setProfiles(profiles);
+			UserStore.getInstance().setUsers(users.get());
+			ConversationStore.getInstance().setConversations(conversations.get());
+			if (messages != null) {
+				MessageStore.getInstance().setMessages(messages.get());
+			} else {
+				SiteStatistics.getInstance().setMessages(messageCount.get(), recentMessages.get());
+				TrendingConversations.getInstance().setMessages(recentMessages.get());
+				searchIndex.get().finish();
+			}
+			ActivityStore.getInstance().setActivities(activities.get(),
+					conversationOf(conversations.get(), messages == null ? null : messages.get()));
+			ProfileStore.getInstance().setProfiles(profiles.get());
 
-		} catch (PersistentDataStoreException e) {
+			System.out.println("Datastore load finished in " + elapsedMillis(start) + " ms");
+		} catch (ExecutionException | PersistentDataStoreException e) {
 			System.err.println("Server didn't start correctly. An error occurred during Datastore load!");
 			System.err.println("This is usually caused by loading data that's in an invalid format.");
 			System.err.println("Check the stack trace to see exactly what went wrong.");
-			throw new RuntimeException(e);
+			throw new RuntimeException(e instanceof ExecutionException ? e.getCause() : e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted during Datastore load", e);
+		} finally {
+			executor.shutdownNow();
 		}
 	}
 
+	/**
+	 * Registers gauges for the size and estimated heap use of each store, the size of the search
+	 * index and the JVM heap.
+	 */
+	private static void registerGauges(Metrics metrics) {
+		registerStoreGauges(metrics, "users", USER_BYTES,
+				() -> UserStore.getInstance().getUsers().size());
+		registerStoreGauges(metrics, "conversations", CONVERSATION_BYTES,
+				() -> ConversationStore.getInstance().getAllConversations().size());
+		registerStoreGauges(metrics, "groups", GROUP_BYTES,
+				() -> GroupConversationStore.getInstance().getAllGroupConversations().size());
+		registerStoreGauges(metrics, "messages", MESSAGE_BYTES,
+				() -> MessageStore.getInstance().getResidentMessageCount());
+		registerStoreGauges(metrics, "activities", ACTIVITY_BYTES,
+				() -> ActivityStore.getInstance().getResidentActivityCount());
+		registerStoreGauges(metrics, "profiles", PROFILE_BYTES,
+				() -> ProfileStore.getInstance().getAllProfiles().size());
+		metrics.registerGauge("codeu_search_indexed_messages", "Messages in the search index.",
+				null, null, () -> MessageSearchIndex.getInstance().getIndexedMessageCount());
+		Runtime runtime = Runtime.getRuntime();
+		metrics.registerGauge("jvm_heap_used_bytes", "Heap in use by the JVM.", null, null,
+				() -> runtime.totalMemory() - runtime.freeMemory());
+		metrics.registerGauge("jvm_heap_max_bytes", "The most heap the JVM will use.", null, null,
+				runtime::maxMemory);
+	}
+
+	private static void registerStoreGauges(
+			Metrics metrics, String store, int bytesPerObject, IntSupplier size) {
+		metrics.registerGauge("codeu_store_size", "Objects held in memory by each store.",
+				"store", store, size::getAsInt);
+		metrics.registerGauge("codeu_store_estimated_bytes",
+				"Estimated heap used by the objects in each store.", "store", store,
+				() -> (long) size.getAsInt() * bytesPerObject);
+	}
+
+	/**
+	 * Returns a function finding the Conversation an Activity happened in, for rebuilding the
+	 * personalized feeds. Activities record their Conversation; for the few whose Message was gone
+	 * when that was backfilled, the loaded Messages are searched, if any are.
+	 */
+	private static Function<Activity, Conversation> conversationOf(
+			List<Conversation> conversations, List<Message> messages) {
+		Map<UUID, Conversation> conversationsById = new HashMap<>();
+		for (Conversation conversation : conversations) {
+			conversationsById.put(conversation.getId(), conversation);
+		}
+		Map<UUID, UUID> conversationIdsByMessage = new HashMap<>();
+		if (messages != null) {
+			for (Message message : messages) {
+				conversationIdsByMessage.put(message.getId(), message.getConversationId());
+			}
+		}
+		return activity -> {
+			UUID conversationId = activity.getConversationId();
+			if (conversationId == null && activity.getType() == ActivityType.MESSAGE) {
+				conversationId = conversationIdsByMessage.get(activity.getActivityId());
+			}
+			return conversationId == null ? null : conversationsById.get(conversationId);
+		};
+	}
+
+	/** Indexes every Message in Datastore a batch at a time, logging how long it took. */
+	private static MessageSearchIndex.Rebuild buildSearchIndex(
+			PersistentStorageAgent persistentStorageAgent) throws PersistentDataStoreException {
+		long start = System.nanoTime();
+		MessageSearchIndex.Rebuild rebuild = MessageSearchIndex.getInstance().rebuild();
+		persistentStorageAgent.scanMessages(SEARCH_BATCH_SIZE, rebuild::add);
+		System.out.println("Indexed messages for search in " + elapsedMillis(start) + " ms");
+		return rebuild;
+	}
+
+	/** Starts loading one kind on the executor, logging how long the load took. */
+	private static <T> Future<List<T>> submitLoad(
+			ExecutorService executor, String kind, Callable<List<T>> load) {
+		return executor.submit(() -> {
+			long start = System.nanoTime();
+			List<T> loaded = load.call();
+			System.out.println(
+					"Loaded " + loaded.size() + " " + kind + " in " + elapsedMillis(start) + " ms");
+			return loaded;
+		});
+	}
+
+	private static long elapsedMillis(long startNanos) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+	}
+
+	/** Persists any writes still buffered in write-behind mode before the server stops. */
 	@Override
-	public void contextDestroyed(ServletContextEvent sce) {}
+	public void contextDestroyed(ServletContextEvent sce) {
+		PersistentStorageAgent.getInstance().shutdown();
+	}
 }
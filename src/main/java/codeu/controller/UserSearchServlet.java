@@ -0,0 +1,98 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.controller;
+
+import codeu.model.data.User;
+import codeu.model.store.basic.UserStore;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet class for username typeahead. A GET of /users/search?prefix=<prefix>&limit=<n> returns
+ * the first n Users, by name, whose names start with the prefix, ignoring case, as
+ * {"users": [{"id", "name"}]}. The chat page uses it to find Users to add to a Conversation
+ * instead of listing every User. Only signed-in users can search.
+ */
+public class UserSearchServlet extends HttpServlet {
+
+  /** The number of Users returned when the request doesn't give a limit. */
+  static final int DEFAULT_LIMIT = 10;
+
+  /** The most Users returned for one request. */
+  static final int MAX_LIMIT = 50;
+
+  /** Store class that gives access to Users. */
+  private UserStore userStore;
+
+  /** Set up state for handling search requests. */
+  @Override
+  public void init() throws ServletException {
+    super.init();
+    setUserStore(UserStore.getInstance());
+  }
+
+  /**
+   * Sets the UserStore used by this servlet. This function provides a common setup method for use
+   * by the test framework or the servlet's init() function.
+   */
+  void setUserStore(UserStore userStore) {
+    this.userStore = userStore;
+  }
+
+  @Override
+  public void doGet(HttpServletRequest request, HttpServletResponse response)
+      throws IOException, ServletException {
+    if (request.getSession().getAttribute("user") == null) {
+      response.sendError(HttpServletResponse.SC_UNAUTHORIZED);
+      return;
+    }
+    String prefix = request.getParameter("prefix");
+    if (prefix == null || prefix.isEmpty()) {
+      response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing prefix");
+      return;
+    }
+    int limit = DEFAULT_LIMIT;
+    String limitParameter = request.getParameter("limit");
+    if (limitParameter != null) {
+      try {
+        limit = Math.max(1, Math.min(MAX_LIMIT, Integer.parseInt(limitParameter)));
+      } catch (NumberFormatException e) {
+        response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid limit");
+        return;
+      }
+    }
+
+    List<User> users = userStore.searchUsersByName(prefix, limit);
+
+    response.setContentType("application/json");
+    response.setCharacterEncoding("UTF-8");
+    PrintWriter out = response.getWriter();
+    out.print("{\"users\":[");
+    for (int i = 0; i < users.size(); i++) {
+      User user = users.get(i);
+      if (i > 0) {
+        out.print(',');
+      }
+      out.print("{\"id\":" + Json.quote(user.getId().toString())
+          + ",\"name\":" + Json.quote(user.getName()) + "}");
+    }
+    out.print("]}");
+  }
+}
@@ -0,0 +1,128 @@
+package codeu.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts latencies into fixed buckets. Recording is a couple of LongAdder increments, so it can sit
+ * on every request without contention; percentiles are estimated from the bucket counts and are
+ * only as fine as the bucket bounds.
+ */
+public class LatencyHistogram {
+
+  /** Upper bounds of the buckets, in nanoseconds. A last, unbounded bucket follows them. */
+  static final long[] BUCKET_BOUNDS_NANOS = {
+    millis(1), millis(2.5), millis(5), millis(10), millis(25), millis(50), millis(100),
+    millis(250), millis(500), millis(1000), millis(2500), millis(5000), millis(10000)
+  };
+
+  private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS_NANOS.length + 1];
+  private final LongAdder count = new LongAdder();
+  private final LongAdder sumNanos = new LongAdder();
+  private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+  public LatencyHistogram() {
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new LongAdder();
+    }
+  }
+
+  /** Records one latency. Negative latencies, from a clock step, are counted as zero. */
+  public void record(long nanos) {
+    nanos = Math.max(0, nanos);
+    int bucket = 0;
+    while (bucket < BUCKET_BOUNDS_NANOS.length && nanos > BUCKET_BOUNDS_NANOS[bucket]) {
+      bucket++;
+    }
+    buckets[bucket].increment();
+    count.increment();
+    sumNanos.add(nanos);
+    maxNanos.accumulate(nanos);
+  }
+
+  /**
+   * Returns the current counts. Latencies recorded while this runs may be missing from some of
+   * the counts, so the total and the buckets can disagree by a few.
+   */
+  public Snapshot snapshot() {
+    long[] counts = new long[buckets.length];
+    for (int i = 0; i < buckets.length; i++) {
+      counts[i] = buckets[i].sum();
+    }
+    return new Snapshot(counts, count.sum(), sumNanos.sum(), maxNanos.get());
+  }
+
+  private static long millis(double millis) {
+    return (long) (millis * TimeUnit.MILLISECONDS.toNanos(1));
+  }
+
+  /** The counts of a LatencyHistogram at one moment. */
+  public static class Snapshot {
+
+    private final long[] bucketCounts;
+    private final long count;
+    private final long sumNanos;
+    private final long maxNanos;
+
+    Snapshot(long[] bucketCounts, long count, long sumNanos, long maxNanos) {
+      this.bucketCounts = bucketCounts;
+      this.count = count;
+      this.sumNanos = sumNanos;
+      this.maxNanos = maxNanos;
+    }
+
+    /** Returns the number of bucket bounds; there is one more bucket than this. */
+    public int boundCount() {
+      return BUCKET_BOUNDS_NANOS.length;
+    }
+
+    /** Returns the upper bound of a bucket, in nanoseconds. */
+    public long boundNanos(int bucket) {
+      return BUCKET_BOUNDS_NANOS[bucket];
+    }
+
+    /** Returns the number of latencies in a bucket; the last bucket has no upper bound. */
+    public long bucketCount(int bucket) {
+      return bucketCounts[bucket];
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getSumNanos() {
+      return sumNanos;
+    }
+
+    public long getMaxNanos() {
+      return maxNanos;
+    }
+
+    /**
+     * Returns an estimate of a percentile, in nanoseconds: the upper bound of the bucket holding
+     * it, or the largest latency seen if that is the unbounded bucket. Returns 0 if nothing has
+     * been recorded.
+     *
+     * @param quantile the percentile as a fraction, between 0 and 1
+     */
+    public long percentileNanos(double quantile) {
+      long total = 0;
+      for (long bucketCount : bucketCounts) {
+        total += bucketCount;
+      }
+      if (total == 0) {
+        return 0;
+      }
+      long rank = (long) Math.ceil(quantile * total);
+      long seen = 0;
+      for (int i = 0; i < BUCKET_BOUNDS_NANOS.length; i++) {
+        seen += bucketCounts[i];
+        if (seen >= rank) {
+          return Math.min(BUCKET_BOUNDS_NANOS[i], maxNanos);
+        }
+      }
+      return maxNanos;
+    }
+  }
+}
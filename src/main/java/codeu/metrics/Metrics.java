@@ -0,0 +1,202 @@
+package codeu.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Holds the application's metrics: a latency histogram and status counts per request route, a
+ * latency histogram and error count per Datastore operation, and gauges that are read when the
+ * metrics are exported. Recording is lock-free, so it is cheap enough for every request and every
+ * Datastore call.
+ *
+ * <p>This is a singleton; the single instance is accessed through getInstance().
+ */
+public class Metrics {
+
+  /**
+   * The most routes tracked separately. Requests for paths that no servlet maps can name any route,
+   * so once this many have been seen, new ones are counted under OTHER_ROUTE.
+   */
+  static final int MAX_ROUTES = 200;
+
+  /** The route that requests are counted under once MAX_ROUTES routes have been seen. */
+  static final String OTHER_ROUTE = "other";
+
+  private static volatile Metrics instance;
+
+  /** Returns the singleton instance of Metrics that the application records into. */
+  public static Metrics getInstance() {
+    if (instance == null) {
+      synchronized (Metrics.class) {
+        if (instance == null) {
+          instance = new Metrics();
+        }
+      }
+    }
+    return instance;
+  }
+
+  /** Instance getter function used for testing, returning a new, empty Metrics. */
+  public static Metrics getTestInstance() {
+    return new Metrics();
+  }
+
+  private final ConcurrentMap<String, LatencyHistogram> requestLatencies =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, ConcurrentMap<Integer, LongAdder>> responseCounts =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, LatencyHistogram> datastoreLatencies =
+      new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, LongAdder> datastoreErrors = new ConcurrentHashMap<>();
+
+  /** Registered gauges, by name and then labels, so they export in a stable order. */
+  private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+
+  /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
+  private Metrics() {}
+
+  /**
+   * Records one handled request.
+   *
+   * @param route the method and servlet path, such as "GET /chat"
+   * @param status the response status code
+   * @param nanos how long the request took
+   */
+  public void recordRequest(String route, int status, long nanos) {
+    if (!requestLatencies.containsKey(route) && requestLatencies.size() >= MAX_ROUTES) {
+      route = OTHER_ROUTE;
+    }
+    requestLatencies.computeIfAbsent(route, r -> new LatencyHistogram()).record(nanos);
+    responseCounts
+        .computeIfAbsent(route, r -> new ConcurrentHashMap<>())
+        .computeIfAbsent(status, s -> new LongAdder())
+        .increment();
+  }
+
+  /**
+   * Records one Datastore call.
+   *
+   * @param operation the kind of call, such as "load.users" or "write.message"
+   * @param nanos how long the call took
+   * @param failed whether the call threw
+   */
+  public void recordDatastore(String operation, long nanos, boolean failed) {
+    datastoreLatencies.computeIfAbsent(operation, o -> new LatencyHistogram()).record(nanos);
+    // Created on success too, so every operation exports an error count, even if it is zero.
+    LongAdder errors = datastoreErrors.computeIfAbsent(operation, o -> new LongAdder());
+    if (failed) {
+      errors.increment();
+    }
+  }
+
+  /**
+   * Registers a gauge, replacing any registered before with the same name and label. The supplier
+   * is called each time the metrics are exported, so it should be cheap.
+   *
+   * @param name the metric name, such as "codeu_store_size"
+   * @param help a one-line description of the metric
+   * @param labelName the name of the gauge's one label, or null for none
+   * @param labelValue the value of that label, or null for none
+   */
+  public void registerGauge(
+      String name, String help, String labelName, String labelValue, LongSupplier value) {
+    Gauge gauge = new Gauge(name, help, labelName, labelValue, value);
+    gauges.put(name + '\u0000' + (labelValue == null ? "" : labelValue), gauge);
+  }
+
+  /** Returns the request latencies recorded so far, by route. */
+  public SortedMap<String, LatencyHistogram.Snapshot> getRequestLatencies() {
+    return snapshot(requestLatencies);
+  }
+
+  /** Returns the number of responses sent so far, by route and then status code. */
+  public SortedMap<String, SortedMap<Integer, Long>> getResponseCounts() {
+    SortedMap<String, SortedMap<Integer, Long>> counts = new TreeMap<>();
+    for (Map.Entry<String, ConcurrentMap<Integer, LongAdder>> route : responseCounts.entrySet()) {
+      SortedMap<Integer, Long> byStatus = new TreeMap<>();
+      for (Map.Entry<Integer, LongAdder> status : route.getValue().entrySet()) {
+        byStatus.put(status.getKey(), status.getValue().sum());
+      }
+      counts.put(route.getKey(), byStatus);
+    }
+    return counts;
+  }
+
+  /** Returns the Datastore call latencies recorded so far, by operation. */
+  public SortedMap<String, LatencyHistogram.Snapshot> getDatastoreLatencies() {
+    return snapshot(datastoreLatencies);
+  }
+
+  /** Returns the number of failed Datastore calls so far, by operation. */
+  public SortedMap<String, Long> getDatastoreErrors() {
+    SortedMap<String, Long> errors = new TreeMap<>();
+    for (Map.Entry<String, LongAdder> operation : datastoreErrors.entrySet()) {
+      errors.put(operation.getKey(), operation.getValue().sum());
+    }
+    return errors;
+  }
+
+  /** Returns the registered gauges, sorted by name and label. */
+  public List<Gauge> getGauges() {
+    return Collections.unmodifiableList(new ArrayList<>(gauges.values()));
+  }
+
+  private static SortedMap<String, LatencyHistogram.Snapshot> snapshot(
+      Map<String, LatencyHistogram> histograms) {
+    SortedMap<String, LatencyHistogram.Snapshot> snapshots = new TreeMap<>();
+    for (Map.Entry<String, LatencyHistogram> histogram : histograms.entrySet()) {
+      snapshots.put(histogram.getKey(), histogram.getValue().snapshot());
+    }
+    return snapshots;
+  }
+
+  /** A value read when the metrics are exported, such as the size of a store. */
+  public static class Gauge {
+
+    private final String name;
+    private final String help;
+    private final String labelName;
+    private final String labelValue;
+    private final LongSupplier value;
+
+    Gauge(String name, String help, String labelName, String labelValue, LongSupplier value) {
+      this.name = name;
+      this.help = help;
+      this.labelName = labelName;
+      this.labelValue = labelValue;
+      this.value = value;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getHelp() {
+      return help;
+    }
+
+    /** Returns the name of the gauge's label, or null if it has none. */
+    public String getLabelName() {
+      return labelName;
+    }
+
+    /** Returns the value of the gauge's label, or null if it has none. */
+    public String getLabelValue() {
+      return labelValue;
+    }
+
+    /** Reads the gauge's current value. */
+    public long getValue() {
+      return value.getAsLong();
+    }
+  }
+}
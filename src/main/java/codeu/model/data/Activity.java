@@ -4,8 +4,6 @@ package codeu.model.data;
 
 import java.time.Instant;
 import java.util.UUID;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 
 public class Activity {
 	/*
@@ -35,21 +33,37 @@ public class Activity {
 	public final UUID ownerId; //user that "owns" this activity
 	public final UUID activityId; //id of the new user/convo/msg
 	public final Instant creation;
+	public final UUID conversationId; //conversation the activity happened in, or null if none
+
+	/* The formatted creation time, computed on first use; an Activity never changes */
+	private volatile String creationTimeFormatted;
 
 	/*
-	* Constructs a new activity
+	* Constructs a new activity. A conversation activity happened in the conversation it created;
+	* other activities happened in none.
 	*
 	* @param type is the type of activity made
 	* @param id is the ID of who ever made the activity
 	* @param creation is the creation time of this activity
 	*/
 	public Activity(ActivityType type, UUID id, UUID ownerId, UUID activityId, Instant creation) {
+		this(type, id, ownerId, activityId, creation,
+				type == ActivityType.CONVERSATION ? activityId : null);
+	}
+
+	/*
+	* Constructs a new activity that happened in a conversation, such as a message being sent
+	*
+	* @param conversationId is the ID of the conversation, or null if none
+	*/
+	public Activity(ActivityType type, UUID id, UUID ownerId, UUID activityId, Instant creation,
+			UUID conversationId) {
 		this.type = type;
 		this.id = id;
 		this.ownerId = ownerId;
 		this.activityId = activityId;
 		this.creation = creation;
-
+		this.conversationId = conversationId;
 	}
 
 	/* Returns the activity type */
@@ -71,16 +85,23 @@ public class Activity {
 		return activityId;
 	}
 
+	/* Returns the ID of the conversation this activity happened in, or null if none */
+	public UUID getConversationId() {
+		return conversationId;
+	}
+
 	/* Returns the creation time of this activity */
 	public Instant getCreationTime() {
 		return creation;
 	}
 
+	/* Returns the creation time of this activity, formatted for display */
 	public String getCreationTimeFormatted() {
-		DateTimeFormatter formatter = DateTimeFormatter
-				.ofPattern("MM/dd/yyyy h:m a zzz ")
-				.withZone(ZoneId.systemDefault());
-
-		return formatter.format(creation);
+		String formatted = creationTimeFormatted;
+		if (formatted == null) {
+			formatted = TimestampFormatter.format(creation, TimestampFormatter.ACTIVITY_PATTERN);
+			creationTimeFormatted = formatted;
+		}
+		return formatted;
 	}
 }
@@ -21,7 +21,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.io.Serializable;
 import java.time.Duration;
 import java.lang.Object;
@@ -35,13 +37,16 @@ import com.google.appengine.api.blobstore.BlobstoreServiceFactory;
 /**
  * Class representing a conversation, which can be thought of as a chat room. Conversations are
  * created by a User and contain Messages.
+ *
+ * <p>Conversations are shared between concurrent requests, so the member and voter sets are
+ * concurrent sets: they can be iterated while another request adds or removes a member.
  */
 public class Conversation {
   private final UUID id;
   private final UUID ownerId;
   private final Instant creationTime;
   private String title;
-  private HashSet<UUID> members;
+  private volatile Set<UUID> members;
 
   public enum Type {
 	  //denotes a hybrid conversation or only one that allows either messages only or img only
@@ -73,6 +78,16 @@ public class Conversation {
 		}
   };
 
+  /**
+   * Receives notice of changes to the members of a Conversation, so that indexes over
+   * Conversation membership can be kept up to date.
+   */
+  public interface MembershipListener {
+    void memberAdded(Conversation conversation, UUID memberId);
+
+    void memberRemoved(Conversation conversation, UUID memberId);
+  }
+
   public final Type type;
   public final Visibility visibility;
   public String avatarImageURL;
@@ -81,7 +96,8 @@ public class Conversation {
   public final Instant deletionInstant;
   public int totalPoints;
   public String description;
-	public HashSet<UUID> haveVoted;
+	public final Set<UUID> haveVoted;
+	private volatile MembershipListener membershipListener;
 
 
   /**
@@ -112,7 +128,7 @@ public class Conversation {
     this.title = title;
 		this.creationTime = creationTime;
 		this.type = type;
-		this.members = members;
+		this.members = newConcurrentSet(members);
 		this.visibility = visibility;
 		this.avatarImageURL = avatarImageURL;
 		this.isActive = true;
@@ -129,7 +145,7 @@ public class Conversation {
 
 		this.totalPoints = 0;
 		this.description = description;
-		this.haveVoted = new HashSet<UUID>();
+		this.haveVoted = ConcurrentHashMap.newKeySet();
 
   }
 
@@ -154,23 +170,45 @@ public class Conversation {
     return creationTime;
   }
 
-  /** Returns the arraylist members of a conversation **/
-  public HashSet getMembers() {
+  /** Returns the set of members of a conversation **/
+  public Set<UUID> getMembers() {
 		return members;
   }
 
   public void addMember(User user){
 		UUID id = user.getId();
-		members.add(id);
+		if(members.add(id) && membershipListener != null){
+			membershipListener.memberAdded(this, id);
+		}
   }
 
   public void removeMember(User user){
 		UUID id = user.getId();
-		members.remove(id);
+		if(members.remove(id) && membershipListener != null){
+			membershipListener.memberRemoved(this, id);
+		}
   }
 
-	public void setMembers(HashSet newMembers){
-		members = newMembers;
+	public void setMembers(Set<UUID> newMembers){
+		Set<UUID> oldMembers = members;
+		members = newConcurrentSet(newMembers);
+		if(membershipListener != null){
+			for(UUID id : oldMembers){
+				if(!members.contains(id)){
+					membershipListener.memberRemoved(this, id);
+				}
+			}
+			for(UUID id : members){
+				if(!oldMembers.contains(id)){
+					membershipListener.memberAdded(this, id);
+				}
+			}
+		}
+	}
+
+	/** Sets the listener notified when members are added to or removed from this Conversation. */
+	public void setMembershipListener(MembershipListener membershipListener){
+		this.membershipListener = membershipListener;
 	}
 
 	public String getDescription(){
@@ -227,15 +265,15 @@ public class Conversation {
 	}
 
 	/* This stuff deals with the points of a conversation */
-	public int getTotalPoints() {
+	public synchronized int getTotalPoints() {
 		return totalPoints;
 	}
 
-	public void setTotalPoints(int points){
+	public synchronized void setTotalPoints(int points){
 		totalPoints = points;
 	}
 
-	public HashSet getVoters(){
+	public Set<UUID> getVoters(){
 		return haveVoted;
 	}
 
@@ -243,32 +281,30 @@ public class Conversation {
 	public boolean isAccessAllowed(UUID id){
 		// doing this by User's UUID, if the nil uuid is present, then the convo is public
 		UUID pub = UUID.fromString("00000000-0000-0000-0000-000000000000");
-		if(members.contains(pub)){
-			return true;
-		}
-		for(UUID iterableUser : members){
-			if(iterableUser.equals(id)) {
-				return true;
-			}
-		}
-		return false;
+		Set<UUID> members = this.members;
+		return members.contains(pub) || members.contains(id);
 	}
 
-	public void upVote(UUID id){
+	public synchronized void upVote(UUID id){
 		// How to make it so that every user has only one point?
-		// make a HashSet called haveVoted, update that with the id's of people that have have voted
-		if(!haveVoted.contains(id)){
+		// make a set called haveVoted, update that with the id's of people that have have voted
+		if(haveVoted.add(id)){
 			totalPoints++;
-			haveVoted.add(id);
 		}
 	}
 
-	public void downVote(UUID id){
-		if(haveVoted.contains(id)){
+	public synchronized void downVote(UUID id){
+		if(haveVoted.remove(id)){
 			totalPoints--;
-			haveVoted.remove(id);
 		}
 	}
 
+	/** Copies a set of user IDs into a set that is safe to share between requests. */
+	private static Set<UUID> newConcurrentSet(Set<UUID> ids){
+		Set<UUID> copy = ConcurrentHashMap.newKeySet();
+		copy.addAll(ids);
+		return copy;
+	}
+
 
 }
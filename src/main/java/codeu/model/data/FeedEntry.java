@@ -0,0 +1,94 @@
+/* Used Activity.java as a reference */
+
+package codeu.model.data;
+
+import codeu.model.data.Activity.ActivityType;
+import java.time.Instant;
+import java.util.UUID;
+
+/*
+ * A ready-to-render row of the activity feed: an Activity together with its owner's username and
+ * its formatted creation time. Both are worked out once, when the entry is built, so rendering a
+ * page of the feed needs no store lookups.
+ */
+public class FeedEntry {
+
+	/*
+	 * The current username of an Activity owner. All the entries owned by a User share one OwnerName,
+	 * so renaming the User updates every one of them at once.
+	 */
+	public static final class OwnerName {
+		private volatile String name;
+
+		public OwnerName(String name) {
+			this.name = name;
+		}
+
+		public String get() {
+			return name;
+		}
+
+		public void set(String name) {
+			this.name = name;
+		}
+	}
+
+	private final Activity activity;
+	private final OwnerName ownerName;
+	private final String formattedTime;
+	private final UUID conversationId;
+
+	/*
+	 * Constructs a new feed entry for an activity that happened in no conversation
+	 *
+	 * @param activity is the activity this entry shows
+	 * @param ownerName is the name of the user who owns the activity
+	 */
+	public FeedEntry(Activity activity, OwnerName ownerName) {
+		this(activity, ownerName, null);
+	}
+
+	/*
+	 * Constructs a new feed entry
+	 *
+	 * @param activity is the activity this entry shows
+	 * @param ownerName is the name of the user who owns the activity
+	 * @param conversationId is the conversation the activity happened in, or null if none
+	 */
+	public FeedEntry(Activity activity, OwnerName ownerName, UUID conversationId) {
+		this.activity = activity;
+		this.ownerName = ownerName;
+		this.formattedTime = activity.getCreationTimeFormatted();
+		this.conversationId = conversationId;
+	}
+
+	/* Returns the activity this entry shows */
+	public Activity getActivity() {
+		return activity;
+	}
+
+	/* Returns the activity type */
+	public ActivityType getType() {
+		return activity.getType();
+	}
+
+	/* Returns the name of the user who owns the activity, or null if that user doesn't exist */
+	public String getOwnerName() {
+		return ownerName.get();
+	}
+
+	/* Returns the creation time of the activity */
+	public Instant getCreationTime() {
+		return activity.getCreationTime();
+	}
+
+	/* Returns the creation time of the activity, formatted for display */
+	public String getFormattedTime() {
+		return formattedTime;
+	}
+
+	/* Returns the ID of the conversation the activity happened in, or null if none is known */
+	public UUID getConversationId() {
+		return conversationId;
+	}
+}
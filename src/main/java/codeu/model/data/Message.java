@@ -20,9 +20,8 @@ import java.util.UUID;
 import java.util.Arrays;
 import java.util.List;
 import org.javatuples.Pair;
-import java.util.HashSet;
-import java.time.format.DateTimeFormatter;
-import java.time.ZoneId;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.google.appengine.api.datastore.Blob;
 import com.google.appengine.api.blobstore.BlobKey;
@@ -38,11 +37,13 @@ public class Message {
 	private String messageType;
   private final Pair content;
   private final Instant creationTime;
-	private HashSet<UUID> haveVoted;
+	private final Set<UUID> haveVoted;
 	private int totalPoints;
 	private String text;
 	private BlobKey blob;
 	private BlobKey media;
+	/** The formatted creation time, computed on first use; the creation time never changes. */
+	private volatile String formattedTime;
 
   /**
    * Constructs a new Message.
@@ -54,7 +55,7 @@ public class Message {
    * @param content a 2-tuple containing either <null, media>; <text, null>; or <text,media>; which denotes a message content.
    * @param creationTime the creation time of this Message
 	 * @param totalPoints the net points for a given message
-	 * @param haveVoted a HashSet containing the UUID objects of the Users that have voted
+	 * @param haveVoted a concurrent set containing the UUID objects of the Users that have voted
    */
 
   public Message(UUID id, UUID conversation, UUID author, Pair content, Instant creationTime) {
@@ -63,7 +64,7 @@ public class Message {
     this.author = author;
     this.creationTime = creationTime;
 		this.content = content;
-		this.haveVoted = new HashSet<UUID>();
+		this.haveVoted = ConcurrentHashMap.newKeySet();
 		this.totalPoints = 0;
 		this.text = (String) content.getValue0();
 		this.blob = (BlobKey) content.getValue1();
@@ -123,23 +124,21 @@ public class Message {
     return creationTime;
   }
 
-	public HashSet getVoters(){
+	public Set<UUID> getVoters(){
 		return haveVoted;
 	}
 
-	public void upVote(UUID id){
+	public synchronized void upVote(UUID id){
 		// How to make it so that every user has only one point?
-		// make a HashSet called haveVoted, update that with the id's of people that have have voted
-		if(!haveVoted.contains(id)){
+		// make a set called haveVoted, update that with the id's of people that have have voted
+		if(haveVoted.add(id)){
 			totalPoints++;
-			haveVoted.add(id);
 		}
 	}
 
-	public void downVote(UUID id){
-		if(haveVoted.contains(id)){
+	public synchronized void downVote(UUID id){
+		if(haveVoted.remove(id)){
 			totalPoints--;
-			haveVoted.remove(id);
 		}
 	}
 
@@ -165,14 +164,17 @@ public class Message {
 	// 	return contents;
 	// }
 
-	public int getTotalPoints(){
+	public synchronized int getTotalPoints(){
 		return totalPoints;
 	}
 
 /** Returns the formatted time of this message in the form of dd/MM/yyy h:m (time zone). */
   public String getFormattedTime() {
-    DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd/MM/yyyy h:m a z").withZone(ZoneId.systemDefault());
-    return formatter.format(creationTime);
-
+    String formatted = formattedTime;
+    if (formatted == null) {
+      formatted = TimestampFormatter.format(creationTime, TimestampFormatter.MESSAGE_PATTERN);
+      formattedTime = formatted;
+    }
+    return formatted;
   }
 }
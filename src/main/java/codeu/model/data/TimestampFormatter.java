@@ -0,0 +1,38 @@
+package codeu.model.data;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Formats creation times for display. DateTimeFormatter is immutable and thread-safe but costly to
+ * build from a pattern, so one is built per pattern and zone and then shared by every caller.
+ */
+public final class TimestampFormatter {
+
+  /** The pattern used for Activity creation times in the activity feed. */
+  public static final String ACTIVITY_PATTERN = "MM/dd/yyyy h:m a zzz ";
+
+  /** The pattern used for Message creation times on profile pages. */
+  public static final String MESSAGE_PATTERN = "dd/MM/yyyy h:m a z";
+
+  /** Shared formatters, by zone and then by pattern. */
+  private static final Map<ZoneId, Map<String, DateTimeFormatter>> formatters =
+      new ConcurrentHashMap<>();
+
+  private TimestampFormatter() {}
+
+  /** Returns the shared formatter for a pattern in a zone, building it on first use. */
+  public static DateTimeFormatter formatter(String pattern, ZoneId zone) {
+    return formatters
+        .computeIfAbsent(zone, z -> new ConcurrentHashMap<>())
+        .computeIfAbsent(pattern, p -> DateTimeFormatter.ofPattern(p).withZone(zone));
+  }
+
+  /** Formats an instant with a pattern in the system default zone. */
+  public static String format(Instant instant, String pattern) {
+    return formatter(pattern, ZoneId.systemDefault()).format(instant);
+  }
+}
@@ -0,0 +1,151 @@
+package codeu.model.store.basic;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.UUID;
+
+/**
+ * Approximate counts of the distinct Users active over the last hour, day and week, for the admin
+ * page. A User is active when they log in or post to a chat.
+ *
+ * <p>Each window is a ring of HyperLogLog sketches, one per bucket of time. When a bucket falls
+ * out of the window its sketch is cleared and reused, and a count merges the window's sketches.
+ * Each sketch is 256 bytes and there are 22 of them, so the counters take under 6 KB however many
+ * Users there are. That budget is paid for in two ways. Counts have a standard error of about 4.6%
+ * rather than the 3.3% of sketches four times the size. And buckets are coarse, so a window can
+ * overrun by up to one bucket: ten minutes for HOUR, four hours for DAY and a day for WEEK; finer
+ * buckets would mean more sketches. Counts start again from zero when the server starts.
+ *
+ * <p>This is a singleton; the single instance is accessed through getInstance().
+ */
+public class ActiveUsers {
+
+  /** The windows that active Users are counted over. */
+  public enum Window {
+    HOUR(Duration.ofHours(1), Duration.ofMinutes(10)),
+    DAY(Duration.ofDays(1), Duration.ofHours(4)),
+    WEEK(Duration.ofDays(7), Duration.ofDays(1));
+
+    private final Duration duration;
+    private final Duration bucket;
+
+    Window(Duration duration, Duration bucket) {
+      this.duration = duration;
+      this.bucket = bucket;
+    }
+
+    public Duration getDuration() {
+      return duration;
+    }
+  }
+
+  /** The precision of each HyperLogLog: 512 registers, for a standard error of about 4.6%. */
+  private static final int PRECISION = 9;
+
+  private static volatile ActiveUsers instance;
+
+  /**
+   * Returns the singleton instance of ActiveUsers that should be shared between all servlets. Do
+   * not call this function from a test; use getTestInstance() instead.
+   */
+  public static ActiveUsers getInstance() {
+    if (instance == null) {
+      synchronized (ActiveUsers.class) {
+        if (instance == null) {
+          instance = new ActiveUsers(Clock.systemUTC());
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Instance getter function used for testing. Supply a fixed or mock Clock.
+   *
+   * @param clock the clock that decides which activity is still in each window
+   */
+  public static ActiveUsers getTestInstance(Clock clock) {
+    return new ActiveUsers(clock);
+  }
+
+  private final Clock clock;
+
+  /** One sliding sketch per Window, indexed by ordinal. Guarded by this. */
+  private final SlidingSketch[] sketches;
+
+  /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
+  private ActiveUsers(Clock clock) {
+    this.clock = clock;
+    Window[] windows = Window.values();
+    sketches = new SlidingSketch[windows.length];
+    for (Window window : windows) {
+      sketches[window.ordinal()] = new SlidingSketch(window, clock.millis());
+    }
+  }
+
+  /** Counts a User as active now. */
+  public synchronized void userActive(UUID userId) {
+    long hash = Hashing.hash(userId);
+    long now = clock.millis();
+    for (SlidingSketch sketch : sketches) {
+      sketch.add(hash, now);
+    }
+  }
+
+  /**
+   * Returns the approximate number of distinct Users active over a window. The window's start
+   * moves in steps of one bucket, so this covers at least the window and at most one bucket more:
+   * ten minutes for HOUR, four hours for DAY and a day for WEEK.
+   */
+  public synchronized long getActiveUserCount(Window window) {
+    return sketches[window.ordinal()].count(clock.millis());
+  }
+
+  /** A window's ring of sketches, one per bucket of time, with the current bucket last. */
+  private static class SlidingSketch {
+
+    private final long bucketMillis;
+    private final HyperLogLog[] buckets;
+
+    /** The current bucket, in buckets since the epoch. */
+    private long currentBucket;
+
+    SlidingSketch(Window window, long nowMillis) {
+      bucketMillis = window.bucket.toMillis();
+      // one more than fit in the window, as the current bucket is only partly over
+      buckets = new HyperLogLog[(int) (window.duration.toMillis() / bucketMillis) + 1];
+      for (int i = 0; i < buckets.length; i++) {
+        buckets[i] = new HyperLogLog(PRECISION);
+      }
+      currentBucket = Math.floorDiv(nowMillis, bucketMillis);
+    }
+
+    void add(long hash, long nowMillis) {
+      advance(nowMillis);
+      buckets[(int) Math.floorMod(currentBucket, buckets.length)].add(hash);
+    }
+
+    long count(long nowMillis) {
+      advance(nowMillis);
+      HyperLogLog union = new HyperLogLog(PRECISION);
+      for (HyperLogLog bucket : buckets) {
+        union.addAll(bucket);
+      }
+      return union.estimate();
+    }
+
+    /** Moves up to the current bucket, clearing the buckets that fall out of the window. */
+    private void advance(long nowMillis) {
+      long now = Math.floorDiv(nowMillis, bucketMillis);
+      if (now <= currentBucket) {
+        return;
+      }
+      // Each bucket entered reuses the sketch of the bucket that just left the window.
+      long first = Math.max(currentBucket + 1, now - buckets.length + 1);
+      for (long bucket = first; bucket <= now; bucket++) {
+        buckets[(int) Math.floorMod(bucket, buckets.length)].clear();
+      }
+      currentBucket = now;
+    }
+  }
+}
@@ -0,0 +1,108 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.basic;
+
+import codeu.model.data.Activity;
+import codeu.model.data.FeedEntry;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Comparator;
+import java.util.UUID;
+
+/**
+ * Position of an Activity in the activity feed, used to page through it. Activities are ordered by
+ * creation time and then by ID, so a cursor stays exact even when two Activities share a creation
+ * time. Its string form is {@code <creation time>_<activity ID>}.
+ */
+public final class ActivityCursor implements Comparable<ActivityCursor> {
+
+  /** The order of the feed, oldest first: by creation time, then by Activity ID. */
+  static final Comparator<FeedEntry> FEED_ORDER =
+      Comparator.comparing(FeedEntry::getCreationTime)
+          .thenComparing(entry -> entry.getActivity().getId());
+
+  private final Instant creationTime;
+  private final UUID activityId;
+
+  private ActivityCursor(Instant creationTime, UUID activityId) {
+    this.creationTime = creationTime;
+    this.activityId = activityId;
+  }
+
+  /** Returns the cursor positioned at an Activity. */
+  public static ActivityCursor of(Activity activity) {
+    return new ActivityCursor(activity.getCreationTime(), activity.getId());
+  }
+
+  /**
+   * Parses the string form of a cursor.
+   *
+   * @throws IllegalArgumentException if the string is not a cursor
+   */
+  public static ActivityCursor parse(String cursor) {
+    int separator = cursor.indexOf('_');
+    if (separator < 0) {
+      throw new IllegalArgumentException("Not an activity cursor: " + cursor);
+    }
+    try {
+      return new ActivityCursor(
+          Instant.parse(cursor.substring(0, separator)),
+          UUID.fromString(cursor.substring(separator + 1)));
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException("Not an activity cursor: " + cursor, e);
+    }
+  }
+
+  /** Returns the creation time of the Activity this cursor is positioned at. */
+  public Instant getCreationTime() {
+    return creationTime;
+  }
+
+  /** Returns the ID of the Activity this cursor is positioned at. */
+  public UUID getActivityId() {
+    return activityId;
+  }
+
+  /** Compares this cursor with a feed entry's position, in feed order. */
+  int compareTo(FeedEntry entry) {
+    int byTime = creationTime.compareTo(entry.getCreationTime());
+    return byTime != 0 ? byTime : activityId.compareTo(entry.getActivity().getId());
+  }
+
+  @Override
+  public int compareTo(ActivityCursor other) {
+    int byTime = creationTime.compareTo(other.creationTime);
+    return byTime != 0 ? byTime : activityId.compareTo(other.activityId);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof ActivityCursor)) {
+      return false;
+    }
+    ActivityCursor other = (ActivityCursor) o;
+    return creationTime.equals(other.creationTime) && activityId.equals(other.activityId);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * creationTime.hashCode() + activityId.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return creationTime + "_" + activityId;
+  }
+}
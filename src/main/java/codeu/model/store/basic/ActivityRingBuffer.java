@@ -0,0 +1,165 @@
+package codeu.model.store.basic;
+
+import codeu.model.data.FeedEntry;
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Fixed-capacity buffer of the feed entries for the most recent Activities, sorted in
+ * ActivityCursor.FEED_ORDER, used by ActivityStore in bounded mode. Once full, adding an entry
+ * drops the oldest one, so the buffer never holds more than its capacity no matter how many
+ * Activities have been created.
+ *
+ * The entries are stored in a circular array starting at the oldest, so dropping the oldest is
+ * O(1). All methods are synchronized, and page() reads the entries and the oldest position held
+ * under one lock, so a reader completing a page from Datastore never races with eviction.
+ */
+class ActivityRingBuffer {
+
+  private final FeedEntry[] ring;
+
+  /* Index in ring of the oldest entry. */
+  private int head;
+
+  /* Number of entries in ring. */
+  private int size;
+
+  /* Whether entries older than the oldest held have been dropped, or were never added. */
+  private boolean dropped;
+
+  ActivityRingBuffer(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    ring = new FeedEntry[capacity];
+  }
+
+  /*
+   * Adds an entry in feed order. Returns false if the buffer was full, in which case
+   * either the oldest entry was dropped or, if the new one is older than everything held, the new
+   * one was not kept.
+   */
+  synchronized boolean add(FeedEntry entry) {
+    boolean full = size == ring.length;
+    if (full) {
+      dropped = true;
+      if (ActivityCursor.FEED_ORDER.compare(entry, get(0)) < 0) {
+        return false;
+      }
+      ring[head] = null;
+      head = (head + 1) % ring.length;
+      size--;
+    }
+    // Entries almost always arrive in order, so search for the insertion point from the end and
+    // shift the few newer ones up.
+    int index = size;
+    while (index > 0 && ActivityCursor.FEED_ORDER.compare(get(index - 1), entry) > 0) {
+      set(index, get(index - 1));
+      index--;
+    }
+    set(index, entry);
+    size++;
+    return !full;
+  }
+
+  /*
+   * Returns the newest {@code limit} entries held that are positioned strictly before
+   * {@code before}, or the newest overall if it is null, newest first. Callers must hold the lock.
+   */
+  private List<FeedEntry> newestBefore(ActivityCursor before, int limit) {
+    int end = before == null ? size : indexOfFirstAtOrAfter(before);
+    List<FeedEntry> page = new ArrayList<>();
+    for (int i = end - 1; i >= 0 && page.size() < limit; i--) {
+      page.add(get(i));
+    }
+    return page;
+  }
+
+  /*
+   * Returns the newest {@code limit} entries held that are positioned strictly before
+   * {@code before}, together with the position of the oldest entry held at that moment and whether
+   * older entries have been dropped.
+   */
+  synchronized Page page(ActivityCursor before, int limit) {
+    return new Page(
+        newestBefore(before, limit),
+        size == 0 ? null : ActivityCursor.of(get(0).getActivity()),
+        dropped);
+  }
+
+  /*
+   * Records that entries older than any added may exist elsewhere, as when the buffer is filled to
+   * capacity from a larger history.
+   */
+  synchronized void markDropped() {
+    dropped = true;
+  }
+
+  /* Returns a copy of the entries held, oldest first. */
+  synchronized List<FeedEntry> snapshot() {
+    List<FeedEntry> snapshot = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      snapshot.add(get(i));
+    }
+    return snapshot;
+  }
+
+  synchronized int size() {
+    return size;
+  }
+
+  int capacity() {
+    return ring.length;
+  }
+
+  /* A page of entries read from the buffer, with the state of the buffer when it was read. */
+  static final class Page {
+    private final List<FeedEntry> entries;
+    private final ActivityCursor oldestHeld;
+    private final boolean dropped;
+
+    private Page(List<FeedEntry> entries, ActivityCursor oldestHeld, boolean dropped) {
+      this.entries = entries;
+      this.oldestHeld = oldestHeld;
+      this.dropped = dropped;
+    }
+
+    /* Returns the entries read, newest first. */
+    List<FeedEntry> getEntries() {
+      return entries;
+    }
+
+    /* Returns the position of the oldest entry held when the page was read, or null if none. */
+    ActivityCursor getOldestHeld() {
+      return oldestHeld;
+    }
+
+    /* Returns whether entries older than the oldest held had been dropped. */
+    boolean hasDropped() {
+      return dropped;
+    }
+  }
+
+  /* Returns the i-th oldest entry. */
+  private FeedEntry get(int i) {
+    return ring[(head + i) % ring.length];
+  }
+
+  private void set(int i, FeedEntry entry) {
+    ring[(head + i) % ring.length] = entry;
+  }
+
+  private int indexOfFirstAtOrAfter(ActivityCursor cursor) {
+    int low = 0;
+    int high = size;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (cursor.compareTo(get(mid)) > 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
@@ -3,18 +3,42 @@
 package codeu.model.store.basic;
 
 import codeu.model.data.Activity;
+import codeu.model.data.Conversation;
+import codeu.model.data.FeedEntry;
+import codeu.model.data.User;
+import codeu.model.store.persistence.PersistentDataStoreException;
 import codeu.model.store.persistence.PersistentStorageAgent;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /*
  * Store class that uses in-memory data structures to hold values and automatically loads from and
  * saves to PersistentStorageAgent. It's a singleton so all servlet classes can access the same
  * instance.
+ *
+ * Activities are kept in a list sorted by creation time and then by ID (ActivityCursor.FEED_ORDER),
+ * so the feed can be read a page at a time by binary search from an ActivityCursor. The list is
+ * guarded by its own monitor and readers get a snapshot copy, which makes the store safe to use
+ * from concurrent requests. Activities almost always arrive in time order, so adding one is an
+ * append.
+ *
+ * Each Activity is held as a FeedEntry carrying its owner's username and formatted time, built when
+ * the Activity is added, so pages of the feed render without looking anything up. Entries share one
+ * name per owner, which is kept current by listening for renames in UserStore. Each new entry is
+ * also published to FeedStore, which keeps the personalized feeds of the Users who should see it.
+ *
+ * After enableBoundedMode(), only the most recent Activities are held, in a fixed-capacity ring
+ * buffer. Pages that reach past the oldest of them are completed from Datastore with a time-range
+ * query, so heap use for the feed is capped however long the site has been running.
  */
 
 public class ActivityStore {
-  private static ActivityStore instance;
+  private static volatile ActivityStore instance;
 
   /*
    * Returns the singleton instance of ActivityStore that should be shared between all servlet
@@ -22,7 +46,16 @@ public class ActivityStore {
    */
   public static ActivityStore getInstance() {
     if (instance == null) {
-      instance = new ActivityStore(PersistentStorageAgent.getInstance());
+      synchronized (ActivityStore.class) {
+        if (instance == null) {
+          ActivityStore activityStore = new ActivityStore(PersistentStorageAgent.getInstance());
+          activityStore.setUserStore(UserStore.getInstance());
+          FeedStore feedStore = FeedStore.getInstance();
+          activityStore.setFeedStore(feedStore);
+          feedStore.setActivityStore(activityStore);
+          instance = activityStore;
+        }
+      }
     }
     return instance;
   }
@@ -42,29 +75,291 @@ public class ActivityStore {
    */
   private PersistentStorageAgent persistentStorageAgent;
 
-  /* The in-memory list of Activity. */
-  private List<Activity> activities;
+  /* The in-memory list of feed entries, in ascending order by creation time. */
+  private volatile List<FeedEntry> entries;
+
+  /* The most recent feed entries in bounded mode, or null if every Activity is held in memory. */
+  private volatile ActivityRingBuffer recentEntries;
+
+  /* Looks up the owners of new Activities, or null if owner names are not resolved. */
+  private volatile UserStore userStore;
+
+  /* Receives each new entry for the personalized feeds, or null if there are none. */
+  private volatile FeedStore feedStore;
+
+  /* The shared name of each Activity owner, by user ID. */
+  private final Map<UUID, FeedEntry.OwnerName> ownerNames = new ConcurrentHashMap<>();
 
   /* This class is a singleton, so its constructor is private. Call getInstance() instead. */
   private ActivityStore(PersistentStorageAgent persistentStorageAgent) {
     this.persistentStorageAgent = persistentStorageAgent;
-    activities = new ArrayList<>();
+    entries = new ArrayList<>();
+  }
+
+  /*
+   * Sets the UserStore used to find the names of Activity owners, and starts following its renames.
+   * Feed entries built before this is called have no owner name.
+   */
+  public void setUserStore(UserStore userStore) {
+    this.userStore = userStore;
+    ownerNames.clear();
+    userStore.addRenameListener(this::userRenamed);
+  }
+
+  /*
+   * Sets the FeedStore that new entries are published to. This function provides a common setup
+   * method for use by the test framework or getInstance().
+   */
+  public void setFeedStore(FeedStore feedStore) {
+    this.feedStore = feedStore;
+  }
+
+  /*
+   * Switches this store to bounded mode, holding at most {@code capacity} recent Activities in
+   * memory. Call this at startup, then setActivities() with the newest {@code capacity} Activities.
+   */
+  public void enableBoundedMode(int capacity) {
+    recentEntries = new ActivityRingBuffer(capacity);
+    entries = new ArrayList<>();
   }
 
-  /* Access the current set of activities known to the application. */
+  /*
+   * Access a snapshot of the current set of activities known to the application, oldest first. In
+   * bounded mode this is only the recent activities held in memory.
+   */
   public List<Activity> getAllActivities() {
-    return activities;
+    ActivityRingBuffer recentEntries = this.recentEntries;
+    if (recentEntries != null) {
+      return toActivities(recentEntries.snapshot());
+    }
+    List<FeedEntry> entries = this.entries;
+    synchronized (entries) {
+      return toActivities(entries);
+    }
+  }
+
+  /*
+   * Returns one page of the feed: the newest {@code limit} activities positioned strictly before
+   * {@code before}, newest first.
+   *
+   * @param before only activities before this cursor are returned, or null for the newest
+   *     activities
+   * @param limit the maximum number of activities to return
+   */
+  public List<Activity> page(ActivityCursor before, int limit) {
+    return toActivities(feedPage(before, limit));
+  }
+
+  /*
+   * Returns the same page of the feed as page(), as entries ready to render.
+   */
+  public List<FeedEntry> feedPage(ActivityCursor before, int limit) {
+    ActivityRingBuffer recentEntries = this.recentEntries;
+    if (recentEntries != null) {
+      return boundedPage(recentEntries, before, limit);
+    }
+    List<FeedEntry> entries = this.entries;
+    synchronized (entries) {
+      int end = before == null ? entries.size() : indexOfFirstAtOrAfter(entries, before);
+      int start = Math.max(0, end - limit);
+      List<FeedEntry> page = new ArrayList<>(entries.subList(start, end));
+      Collections.reverse(page);
+      return page;
+    }
+  }
+
+  /*
+   * Returns the number of activities held in memory: every activity, or in bounded mode only the
+   * recent ones.
+   */
+  public int getResidentActivityCount() {
+    ActivityRingBuffer recentEntries = this.recentEntries;
+    if (recentEntries != null) {
+      return recentEntries.size();
+    }
+    List<FeedEntry> entries = this.entries;
+    synchronized (entries) {
+      return entries.size();
+    }
   }
 
   /* Add a new activity to the current set of activities known to the application. */
   public void addActivity(Activity activity) {
-    System.out.println("ADDING ACTIVITY IN ACTIVITYSTORE");
-    activities.add(activity);
+    addActivity(activity, null);
+  }
+
+  /*
+   * Add a new activity that happened in a conversation, so that it also reaches the feeds of the
+   * conversation's members.
+   *
+   * @param conversation the conversation the activity happened in, or null if it happened in none
+   */
+  public void addActivity(Activity activity, Conversation conversation) {
+    FeedEntry entry = toFeedEntry(activity, conversation == null ? null : conversation.getId());
+    FeedStore feedStore = this.feedStore;
+    if (feedStore != null) {
+      feedStore.publish(entry, conversation);
+    }
+    ActivityRingBuffer recentEntries = this.recentEntries;
+    if (recentEntries != null) {
+      recentEntries.add(entry);
+      persistentStorageAgent.writeThrough(activity);
+      return;
+    }
+    List<FeedEntry> entries = this.entries;
+    synchronized (entries) {
+      int index = entries.size();
+      while (index > 0 && ActivityCursor.FEED_ORDER.compare(entries.get(index - 1), entry) > 0) {
+        index--;
+      }
+      entries.add(index, entry);
+    }
     persistentStorageAgent.writeThrough(activity);
   }
 
   /* Sets the List of Activities stored by this ActivityStore. */
   public void setActivities(List<Activity> activities) {
-    this.activities = activities;
+    setActivities(activities, activity -> null);
+  }
+
+  /*
+   * Sets the List of Activities stored by this ActivityStore, and rebuilds the personalized feeds
+   * from them.
+   *
+   * @param conversationOf returns the conversation an activity happened in, or null if it happened
+   *     in none or the conversation isn't known
+   */
+  public void setActivities(
+      List<Activity> activities, Function<Activity, Conversation> conversationOf) {
+    List<FeedEntry> held;
+    ActivityCursor horizon = null;
+    ActivityRingBuffer recentEntries = this.recentEntries;
+    if (recentEntries != null) {
+      ActivityRingBuffer loaded = new ActivityRingBuffer(recentEntries.capacity());
+      if (activities.size() >= loaded.capacity()) {
+        // Datastore may hold older Activities than the ones loaded.
+        loaded.markDropped();
+      }
+      for (Activity activity : activities) {
+        loaded.add(toFeedEntry(activity, conversationIdOf(conversationOf, activity)));
+      }
+      this.recentEntries = loaded;
+      held = loaded.snapshot();
+      ActivityRingBuffer.Page state = loaded.page(null, 0);
+      horizon = state.hasDropped() ? state.getOldestHeld() : null;
+    } else {
+      List<FeedEntry> sorted = new ArrayList<>(activities.size());
+      for (Activity activity : activities) {
+        sorted.add(toFeedEntry(activity, conversationIdOf(conversationOf, activity)));
+      }
+      sorted.sort(ActivityCursor.FEED_ORDER);
+      this.entries = sorted;
+      held = sorted;
+    }
+    FeedStore feedStore = this.feedStore;
+    if (feedStore != null) {
+      feedStore.clear(horizon);
+      for (FeedEntry entry : held) {
+        feedStore.publish(entry, conversationOf.apply(entry.getActivity()));
+      }
+    }
+  }
+
+  /*
+   * Reads a page from the ring buffer, then, if it is short and older Activities exist, fills the
+   * rest of it from Datastore with the activities positioned before the oldest one held. The page
+   * and the oldest position are read together, so an entry evicted in between can't be skipped.
+   */
+  private List<FeedEntry> boundedPage(
+      ActivityRingBuffer recentEntries, ActivityCursor before, int limit) {
+    ActivityRingBuffer.Page held = recentEntries.page(before, limit);
+    List<FeedEntry> page = held.getEntries();
+    if (page.size() == limit || !held.hasDropped()) {
+      return page;
+    }
+    ActivityCursor oldestHeld = held.getOldestHeld();
+    ActivityCursor archiveBefore =
+        oldestHeld == null || (before != null && before.compareTo(oldestHeld) < 0)
+            ? before
+            : oldestHeld;
+    try {
+      List<Activity> archived =
+          archiveBefore == null
+              ? persistentStorageAgent.loadActivities(null, null, limit - page.size())
+              : persistentStorageAgent.loadActivities(
+                  archiveBefore.getCreationTime(),
+                  archiveBefore.getActivityId(),
+                  limit - page.size());
+      for (Activity activity : archived) {
+        page.add(toFeedEntry(activity, activity.getConversationId()));
+      }
+    } catch (PersistentDataStoreException e) {
+      throw new RuntimeException("Couldn't load activities before " + archiveBefore, e);
+    }
+    return page;
+  }
+
+  private static UUID conversationIdOf(
+      Function<Activity, Conversation> conversationOf, Activity activity) {
+    Conversation conversation = conversationOf.apply(activity);
+    return conversation == null ? null : conversation.getId();
+  }
+
+  /*
+   * Builds the feed entry for an Activity, sharing its owner's name with the owner's other entries.
+   *
+   * @param conversationId the conversation the Activity happened in, or null if none is known
+   */
+  private FeedEntry toFeedEntry(Activity activity, UUID conversationId) {
+    FeedEntry.OwnerName ownerName =
+        ownerNames.computeIfAbsent(
+            activity.getOwnerId(),
+            ownerId -> {
+              UserStore userStore = this.userStore;
+              User owner = userStore == null ? null : userStore.getUser(ownerId);
+              return new FeedEntry.OwnerName(owner == null ? null : owner.getName());
+            });
+    if (ownerName.get() == null) {
+      // The owner may have been unknown when an earlier Activity was added; look again.
+      UserStore userStore = this.userStore;
+      User owner = userStore == null ? null : userStore.getUser(activity.getOwnerId());
+      if (owner != null) {
+        ownerName.set(owner.getName());
+      }
+    }
+    return new FeedEntry(activity, ownerName, conversationId);
+  }
+
+  private void userRenamed(User user) {
+    FeedEntry.OwnerName ownerName = ownerNames.get(user.getId());
+    if (ownerName != null) {
+      ownerName.set(user.getName());
+    }
+  }
+
+  private static List<Activity> toActivities(List<FeedEntry> entries) {
+    List<Activity> activities = new ArrayList<>(entries.size());
+    for (FeedEntry entry : entries) {
+      activities.add(entry.getActivity());
+    }
+    return activities;
+  }
+
+  /*
+   * Returns the index of the first entry at or after the given cursor, or the size of the list if
+   * there is none. Callers must hold the list's lock.
+   */
+  private static int indexOfFirstAtOrAfter(List<FeedEntry> entries, ActivityCursor cursor) {
+    int low = 0;
+    int high = entries.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (cursor.compareTo(entries.get(mid)) > 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
   }
 }
@@ -0,0 +1,169 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.basic;
+
+import codeu.model.data.Message;
+import codeu.model.store.persistence.PersistentDataStoreException;
+import codeu.model.store.persistence.PersistentStorageAgent;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Least-recently-used cache of the Messages in each Conversation, used by MessageStore when it
+ * loads Conversations lazily. A Conversation's Messages are loaded from Datastore the first time it
+ * is accessed. Once more than {@code maxResidentMessages} Messages are held, the least recently
+ * used Conversations are evicted and will be loaded again on their next access.
+ *
+ * <p>Each cached list is sorted by creation time and guarded by its own monitor, like the indexes in
+ * MessageStore. The cache's own bookkeeping is guarded by this object; Datastore loads happen
+ * outside that lock, so a slow load doesn't block readers of other Conversations.
+ */
+class ConversationMessageCache {
+
+  private final PersistentStorageAgent persistentStorageAgent;
+  private final int maxResidentMessages;
+
+  /** Cached Conversations, in access order, so the eldest entry is the least recently used. */
+  private final LinkedHashMap<UUID, List<Message>> messagesByConversation =
+      new LinkedHashMap<>(16, 0.75f, true);
+
+  /** Total number of Messages in messagesByConversation. */
+  private int residentMessages;
+
+  /**
+   * @param persistentStorageAgent loads a Conversation's Messages on a cache miss
+   * @param maxResidentMessages the number of Messages to keep before evicting Conversations
+   */
+  ConversationMessageCache(PersistentStorageAgent persistentStorageAgent, int maxResidentMessages) {
+    this.persistentStorageAgent = persistentStorageAgent;
+    this.maxResidentMessages = maxResidentMessages;
+  }
+
+  /**
+   * Returns the cached list of Messages in a Conversation, loading it if it isn't resident. Callers
+   * must hold the list's lock while reading it.
+   */
+  List<Message> get(UUID conversationId) {
+    synchronized (this) {
+      List<Message> cached = messagesByConversation.get(conversationId);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    return cache(conversationId, load(conversationId));
+  }
+
+  /**
+   * Adds a new Message to its Conversation's cached list, loading the Conversation first if it
+   * isn't resident. The Message must already have been handed to PersistentStorageAgent, so a load
+   * may or may not include it; it is only added once either way.
+   */
+  void add(Message message) {
+    UUID conversationId = message.getConversationId();
+    while (true) {
+      synchronized (this) {
+        List<Message> cached = messagesByConversation.get(conversationId);
+        if (cached != null) {
+          synchronized (cached) {
+            if (!contains(cached, message)) {
+              MessageStore.insertInOrder(cached, message);
+              residentMessages++;
+            }
+          }
+          evictFor(conversationId);
+          return;
+        }
+      }
+      cache(conversationId, load(conversationId));
+    }
+  }
+
+  /** Returns the number of Conversations currently cached. */
+  synchronized int size() {
+    return messagesByConversation.size();
+  }
+
+  /** Returns the number of Messages currently cached. */
+  synchronized int residentMessages() {
+    return residentMessages;
+  }
+
+  private List<Message> load(UUID conversationId) {
+    List<Message> loaded;
+    try {
+      loaded = new ArrayList<>(persistentStorageAgent.loadMessagesInConversation(conversationId));
+    } catch (PersistentDataStoreException e) {
+      throw new RuntimeException("Couldn't load the messages in " + conversationId, e);
+    }
+    // Datastore sorts by creation_nanos but doesn't break ties by ID; sort again for that.
+    loaded.sort(MessageStore.HISTORY_ORDER);
+    return loaded;
+  }
+
+  /**
+   * Caches a freshly loaded list, unless a concurrent load got there first, and returns whichever
+   * list ended up cached.
+   */
+  private synchronized List<Message> cache(UUID conversationId, List<Message> loaded) {
+    List<Message> cached = messagesByConversation.get(conversationId);
+    if (cached != null) {
+      return cached;
+    }
+    messagesByConversation.put(conversationId, loaded);
+    residentMessages += loaded.size();
+    evictFor(conversationId);
+    return loaded;
+  }
+
+  /**
+   * Evicts least recently used Conversations until the cache is within budget. The Conversation
+   * being accessed is never evicted, even if it alone exceeds the budget.
+   */
+  private void evictFor(UUID conversationId) {
+    Iterator<Map.Entry<UUID, List<Message>>> eldest =
+        messagesByConversation.entrySet().iterator();
+    while (residentMessages > maxResidentMessages && eldest.hasNext()) {
+      Map.Entry<UUID, List<Message>> entry = eldest.next();
+      if (entry.getKey().equals(conversationId)) {
+        continue;
+      }
+      synchronized (entry.getValue()) {
+        residentMessages -= entry.getValue().size();
+      }
+      eldest.remove();
+    }
+  }
+
+  /**
+   * Returns whether a sorted list already holds a Message. New Messages belong at the end, so only
+   * the tail positioned at or after the Message is searched.
+   */
+  private static boolean contains(List<Message> cached, Message message) {
+    for (int i = cached.size() - 1; i >= 0; i--) {
+      Message candidate = cached.get(i);
+      if (MessageStore.HISTORY_ORDER.compare(candidate, message) < 0) {
+        return false;
+      }
+      if (candidate.getId().equals(message.getId())) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -20,18 +20,26 @@ import codeu.model.data.Conversation.Visibility;
 import codeu.model.data.Group;
 import codeu.model.store.persistence.PersistentStorageAgent;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.UUID;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Store class that uses in-memory data structures to hold values and automatically loads from and
  * saves to PersistentStorageAgent. It's a singleton so all servlet classes can access the same
  * instance.
+ *
+ * <p>This class is safe to use from concurrent requests. The list of Conversations is copy-on-write,
+ * so callers can iterate it while Conversations are added.
  */
 public class ConversationStore {
 
   /** Singleton instance of ConversationStore. */
-  private static ConversationStore instance;
+  private static volatile ConversationStore instance;
 
   /**
    * Returns the singleton instance of ConversationStore that should be shared between all servlet
@@ -39,7 +47,14 @@ public class ConversationStore {
    */
   public static ConversationStore getInstance() {
     if (instance == null) {
-      instance = new ConversationStore(PersistentStorageAgent.getInstance());
+      synchronized (ConversationStore.class) {
+        if (instance == null) {
+          ConversationStore conversationStore =
+              new ConversationStore(PersistentStorageAgent.getInstance());
+          conversationStore.setSiteStatistics(SiteStatistics.getInstance());
+          instance = conversationStore;
+        }
+      }
     }
     return instance;
   }
@@ -61,12 +76,56 @@ public class ConversationStore {
   private PersistentStorageAgent persistentStorageAgent;
 
   /** The in-memory list of Conversations. */
-  private List<Conversation> conversations;
+  private volatile List<Conversation> conversations;
+
+  /** Index from title to Conversation. The first Conversation added with a title keeps it. */
+  private volatile Map<String, Conversation> conversationsByTitle;
+
+  /** Index from ID to Conversation. */
+  private volatile Map<UUID, Conversation> conversationsById;
+
+  /** Index from User ID to the non-public Conversations that User is a member of. */
+  private volatile Map<UUID, Set<Conversation>> privateConversationsByMember;
+
+  /** Kept up to date with the Conversations added, or null if there is none. */
+  private volatile SiteStatistics siteStatistics;
+
+  /** Listeners told of membership changes in non-public Conversations, after the index. */
+  private final List<Conversation.MembershipListener> membershipListeners =
+      new CopyOnWriteArrayList<>();
+
+  /** Keeps the membership index current as members join and leave Conversations. */
+  private final Conversation.MembershipListener membershipIndexer =
+      new Conversation.MembershipListener() {
+        @Override
+        public void memberAdded(Conversation conversation, UUID memberId) {
+          privateConversationsByMember
+              .computeIfAbsent(memberId, id -> ConcurrentHashMap.newKeySet())
+              .add(conversation);
+          for (Conversation.MembershipListener listener : membershipListeners) {
+            listener.memberAdded(conversation, memberId);
+          }
+        }
+
+        @Override
+        public void memberRemoved(Conversation conversation, UUID memberId) {
+          Set<Conversation> memberConversations = privateConversationsByMember.get(memberId);
+          if (memberConversations != null) {
+            memberConversations.remove(conversation);
+          }
+          for (Conversation.MembershipListener listener : membershipListeners) {
+            listener.memberRemoved(conversation, memberId);
+          }
+        }
+      };
 
   /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
   private ConversationStore(PersistentStorageAgent persistentStorageAgent) {
     this.persistentStorageAgent = persistentStorageAgent;
-    conversations = new ArrayList<>();
+    conversations = new CopyOnWriteArrayList<>();
+    conversationsByTitle = new ConcurrentHashMap<>();
+    conversationsById = new ConcurrentHashMap<>();
+    privateConversationsByMember = new ConcurrentHashMap<>();
   }
 
 /** Access the current set of conversations known to the application.
@@ -75,47 +134,96 @@ public class ConversationStore {
     return conversations;
   }
 
+  /**
+   * Sets the SiteStatistics kept up to date with the Conversations in this store. This function provides a
+   * common setup method for use by the test framework or getInstance().
+   */
+  public void setSiteStatistics(SiteStatistics siteStatistics) {
+    this.siteStatistics = siteStatistics;
+  }
+
   /** Add a new conversation to the current set of conversations known to the application. */
   public void addConversation(Conversation conversation) {
     conversations.add(conversation);
+    indexConversation(conversation);
+    SiteStatistics siteStatistics = this.siteStatistics;
+    if (siteStatistics != null) {
+      siteStatistics.conversationAdded();
+    }
     persistentStorageAgent.writeThrough(conversation);
   }
 
+  /**
+   * Registers a listener to be told whenever a member joins or leaves a non-public Conversation,
+   * including the members of each Conversation as it is added.
+   */
+  public void addMembershipListener(Conversation.MembershipListener listener) {
+    membershipListeners.add(listener);
+  }
+
   /** Check whether a Conversation title is already known to the application. */
   public boolean isTitleTaken(String title) {
-    // This approach will be pretty slow if we have many Conversations.
-    for (Conversation conversation : conversations) {
-      if (conversation.getTitle().equals(title)) {
-        return true;
-      }
-    }
-    return false;
+    return title != null && conversationsByTitle.containsKey(title);
   }
 
   /** Find and return the Conversation with the given title. */
   public Conversation getConversationWithTitle(String title) {
-    for (Conversation conversation : conversations) {
-      if (conversation.getTitle().equals(title)) {
-        return conversation;
-      }
+    if (title == null) {
+      return null;
     }
-    return null;
+    return conversationsByTitle.get(title);
   }
 
+  /** Find and return the Conversation with the given ID, or null if there is none. */
+  public Conversation getConversation(UUID id) {
+    if (id == null) {
+      return null;
+    }
+    return conversationsById.get(id);
+  }
+
+  /**
+   * Returns the non-public Conversations the given User is a member of, in ascending order by
+   * creation time.
+   */
 	public ArrayList getPrivateConversationsWithUser(UUID user){
 		ArrayList<Conversation> userConversations = new ArrayList<Conversation>();
-		for(Conversation conversation : conversations){
-			if(!(Visibility.valueOf(conversation.getConversationVisibility()) == Visibility.PUBLIC)){
-				if(conversation.getMembers().contains(user)){
-					userConversations.add(conversation);
-				}
-			}
+		Set<Conversation> memberConversations = privateConversationsByMember.get(user);
+		if(memberConversations != null){
+			userConversations.addAll(memberConversations);
+			userConversations.sort(Comparator.comparing(Conversation::getCreationTime));
 		}
 		return userConversations;
 	}
 
   /** Sets the List of Conversations stored by this ConversationStore. */
   public void setConversations(List<Conversation> conversations) {
-    this.conversations = conversations;
+    this.conversations = new CopyOnWriteArrayList<>(conversations);
+    conversationsByTitle = new ConcurrentHashMap<>();
+    conversationsById = new ConcurrentHashMap<>();
+    privateConversationsByMember = new ConcurrentHashMap<>();
+    for (Conversation conversation : conversations) {
+      indexConversation(conversation);
+    }
+    SiteStatistics siteStatistics = this.siteStatistics;
+    if (siteStatistics != null) {
+      siteStatistics.setConversationCount(conversations.size());
+    }
+  }
+
+  /**
+   * Adds a Conversation to the title, ID and membership indexes, and subscribes to its membership
+   * changes. Public Conversations are open to everyone, so they are not indexed by member.
+   */
+  private void indexConversation(Conversation conversation) {
+    conversationsByTitle.putIfAbsent(conversation.getTitle(), conversation);
+    conversationsById.putIfAbsent(conversation.getId(), conversation);
+    if (conversation.visibility != Visibility.PUBLIC) {
+      // Subscribe first, so a member who joins during the loop is indexed either way.
+      conversation.setMembershipListener(membershipIndexer);
+      for (UUID member : conversation.getMembers()) {
+        membershipIndexer.memberAdded(conversation, member);
+      }
+    }
   }
 }
@@ -0,0 +1,85 @@
+package codeu.model.store.basic;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/*
+ * Count-min sketch of weights keyed by UUID, used by TrendingConversations. It takes a fixed
+ * depth x width table of counters however many keys are added. An estimate is never below the
+ * true total of a key, and is above it only by the weight of keys that collide with it in every
+ * row.
+ *
+ * Adds use the conservative update: each row's counter is only raised as far as the new estimate,
+ * which keeps the overestimates smaller for the same memory. Not thread-safe.
+ */
+class CountMinSketch {
+
+  private final double[][] counters;
+  private final int width;
+
+  CountMinSketch(int depth, int width) {
+    if (depth <= 0 || width <= 0) {
+      throw new IllegalArgumentException("depth and width must be positive");
+    }
+    this.counters = new double[depth][width];
+    this.width = width;
+  }
+
+  /* Adds weight to a key and returns its new estimate. */
+  double add(UUID key, double weight) {
+    long hash1 = hash1(key);
+    long hash2 = hash2(hash1);
+    double estimate = estimate(hash1, hash2) + weight;
+    for (int row = 0; row < counters.length; row++) {
+      int column = column(hash1, hash2, row);
+      if (counters[row][column] < estimate) {
+        counters[row][column] = estimate;
+      }
+    }
+    return estimate;
+  }
+
+  /* Returns the estimated total weight added to a key. */
+  double estimate(UUID key) {
+    long hash1 = hash1(key);
+    return estimate(hash1, hash2(hash1));
+  }
+
+  /* Multiplies every counter by a factor, as when rescaling decayed weights. */
+  void scale(double factor) {
+    for (double[] row : counters) {
+      for (int column = 0; column < row.length; column++) {
+        row[column] *= factor;
+      }
+    }
+  }
+
+  /* Sets every counter back to zero. */
+  void clear() {
+    for (double[] row : counters) {
+      Arrays.fill(row, 0);
+    }
+  }
+
+  private double estimate(long hash1, long hash2) {
+    double estimate = Double.MAX_VALUE;
+    for (int row = 0; row < counters.length; row++) {
+      estimate = Math.min(estimate, counters[row][column(hash1, hash2, row)]);
+    }
+    return estimate;
+  }
+
+  /* Picks a column per row by double hashing, from two independent 64-bit hashes of the key. */
+  private int column(long hash1, long hash2, int row) {
+    return (int) Math.floorMod(hash1 + row * hash2, (long) width);
+  }
+
+  private static long hash1(UUID key) {
+    return Hashing.hash(key);
+  }
+
+  private static long hash2(long hash1) {
+    // odd, so that the rows step through different columns
+    return Hashing.mix(hash1 ^ 0x9E3779B97F4A7C15L) | 1;
+  }
+}
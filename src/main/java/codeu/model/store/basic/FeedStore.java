@@ -0,0 +1,362 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.basic;
+
+import codeu.model.data.Conversation;
+import codeu.model.data.Conversation.Visibility;
+import codeu.model.data.FeedEntry;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Store class that holds each User's personalized activity feed: their own activity plus the
+ * activity in the Conversations they are a member of. It's a singleton so all servlet classes can
+ * access the same instance. Feeds are built from the entries ActivityStore publishes and are not
+ * persisted; they are rebuilt from the Activities loaded at startup.
+ *
+ * <p>Most Conversations are small, so an Activity in one is fanned out on write: its entry is added
+ * to the bounded inbox of every member, and reading a feed is a read of one inbox. Fanning out to
+ * every member of a large Conversation would make each message cost thousands of inserts, so
+ * Conversations with more than {@code fanOutLimit} members, and public Conversations, which every
+ * User is a member of, keep one bounded timeline each instead. Reading a feed merges the User's
+ * inbox with the public timeline and the timelines of the large Conversations they belong to, so a
+ * read costs O(page size) for each of those few sources, however many Conversations the User is in.
+ *
+ * <p>Inboxes and timelines are bounded, so they drop their oldest entries as new ones arrive, and
+ * after a restart in bounded mode they hold only what ActivityStore republished. Below the newest
+ * such horizon among a User's sources, their feed is no longer complete, so a page that reaches it
+ * continues from the shared feed in ActivityStore, keeping the entries the User can see: their own,
+ * and those in public Conversations or Conversations they are a member of. That scan is not
+ * O(page size): for a User in a few quiet Conversations, most of the shared feed is someone else's.
+ * So one page scans at most {@code MAX_SCAN_BATCHES} batches of the shared feed, and past that it
+ * comes back short, which ends paging there. The full history stays readable in the shared feed.
+ *
+ * <p>This class is safe to use from concurrent requests. Inboxes and timelines are
+ * ActivityRingBuffers, which synchronize themselves.
+ */
+public class FeedStore {
+
+  /** The default number of entries kept in each inbox and timeline. */
+  static final int DEFAULT_CAPACITY = 200;
+
+  /** The default member count above which a Conversation is fanned out on read. */
+  static final int DEFAULT_FAN_OUT_LIMIT = 100;
+
+  /** The most batches of the shared feed one page scans past the horizon. */
+  static final int MAX_SCAN_BATCHES = 10;
+
+  /** Singleton instance of FeedStore. */
+  private static volatile FeedStore instance;
+
+  /**
+   * Returns the singleton instance of FeedStore that should be shared between all servlet classes.
+   * Do not call this function from a test; use getTestInstance() instead.
+   */
+  public static FeedStore getInstance() {
+    if (instance == null) {
+      synchronized (FeedStore.class) {
+        if (instance == null) {
+          FeedStore feedStore = new FeedStore(DEFAULT_CAPACITY, DEFAULT_FAN_OUT_LIMIT);
+          feedStore.setConversationStore(ConversationStore.getInstance());
+          instance = feedStore;
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Instance getter function used for testing.
+   *
+   * @param capacity the number of entries kept in each inbox and timeline
+   * @param fanOutLimit the member count above which a Conversation is fanned out on read
+   */
+  public static FeedStore getTestInstance(int capacity, int fanOutLimit) {
+    return new FeedStore(capacity, fanOutLimit);
+  }
+
+  private final int capacity;
+  private final int fanOutLimit;
+
+  /** Each User's inbox of fanned-out entries, by User ID. */
+  private final Map<UUID, ActivityRingBuffer> inboxes = new ConcurrentHashMap<>();
+
+  /** The entries of every public Conversation. */
+  private volatile ActivityRingBuffer publicTimeline;
+
+  /** The timelines of the large non-public Conversations, by Conversation ID. */
+  private final Map<UUID, ActivityRingBuffer> roomTimelines = new ConcurrentHashMap<>();
+
+  /** Index from User ID to the IDs of the large non-public Conversations that User is in. */
+  private final Map<UUID, Set<UUID>> largeRoomsByMember = new ConcurrentHashMap<>();
+
+  /** Looks up the Conversations of entries read from ActivityStore, or null if not set. */
+  private volatile ConversationStore conversationStore;
+
+  /** The shared feed that pages continue from past the horizon, or null if there is none. */
+  private volatile ActivityStore activityStore;
+
+  /** The oldest position republished by the last clear(), or null if everything was. */
+  private volatile ActivityCursor rebuiltFrom;
+
+  /** Keeps largeRoomsByMember current as members join and leave large Conversations. */
+  private final Conversation.MembershipListener largeRoomIndexer =
+      new Conversation.MembershipListener() {
+        @Override
+        public void memberAdded(Conversation conversation, UUID memberId) {
+          if (roomTimelines.containsKey(conversation.getId())) {
+            largeRoomsByMember
+                .computeIfAbsent(memberId, id -> ConcurrentHashMap.newKeySet())
+                .add(conversation.getId());
+          }
+        }
+
+        @Override
+        public void memberRemoved(Conversation conversation, UUID memberId) {
+          Set<UUID> rooms = largeRoomsByMember.get(memberId);
+          if (rooms != null) {
+            rooms.remove(conversation.getId());
+          }
+        }
+      };
+
+  /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
+  private FeedStore(int capacity, int fanOutLimit) {
+    this.capacity = capacity;
+    this.fanOutLimit = fanOutLimit;
+    publicTimeline = new ActivityRingBuffer(capacity);
+  }
+
+  /**
+   * Sets the ConversationStore whose membership changes keep the large Conversation index current.
+   * This function provides a common setup method for use by the test framework or getInstance().
+   */
+  public void setConversationStore(ConversationStore conversationStore) {
+    this.conversationStore = conversationStore;
+    conversationStore.addMembershipListener(largeRoomIndexer);
+  }
+
+  /**
+   * Sets the ActivityStore that feed pages continue from once they reach the oldest entry kept for
+   * a User. This function provides a common setup method for use by the test framework or
+   * ActivityStore.getInstance(); FeedStore.getInstance() can't call ActivityStore.getInstance(),
+   * which calls it.
+   */
+  public void setActivityStore(ActivityStore activityStore) {
+    this.activityStore = activityStore;
+  }
+
+  /**
+   * Adds an entry to the feeds of everyone who should see it: its owner and, if the Activity
+   * happened in a Conversation, that Conversation's members.
+   *
+   * @param entry the entry to add
+   * @param conversation the Conversation the Activity happened in, or null if it happened in none
+   */
+  public void publish(FeedEntry entry, Conversation conversation) {
+    UUID ownerId = entry.getActivity().getOwnerId();
+    if (conversation == null) {
+      inbox(ownerId).add(entry);
+      return;
+    }
+    if (conversation.visibility == Visibility.PUBLIC) {
+      publicTimeline.add(entry);
+      return;
+    }
+    Set<UUID> members = memberIds(conversation);
+    ActivityRingBuffer roomTimeline = roomTimelines.get(conversation.getId());
+    if (roomTimeline == null && members.size() > fanOutLimit) {
+      roomTimeline = startRoomTimeline(conversation, members);
+    }
+    if (roomTimeline != null) {
+      roomTimeline.add(entry);
+      if (!members.contains(ownerId)) {
+        inbox(ownerId).add(entry);
+      }
+      return;
+    }
+    inbox(ownerId).add(entry);
+    for (UUID memberId : members) {
+      if (!memberId.equals(ownerId)) {
+        inbox(memberId).add(entry);
+      }
+    }
+  }
+
+  /**
+   * Returns one page of a User's feed: the newest {@code limit} entries positioned strictly before
+   * {@code before}, newest first. Past the horizon, the page may hold fewer than {@code limit}
+   * entries even though older ones exist; see the class comment.
+   *
+   * @param userId the User whose feed is read
+   * @param before only entries before this cursor are returned, or null for the newest
+   * @param limit the maximum number of entries to return
+   */
+  public List<FeedEntry> feedPage(UUID userId, ActivityCursor before, int limit) {
+    List<ActivityRingBuffer.Page> sources = new ArrayList<>();
+    ActivityRingBuffer inbox = inboxes.get(userId);
+    if (inbox != null) {
+      sources.add(inbox.page(before, limit));
+    }
+    sources.add(publicTimeline.page(before, limit));
+    Set<UUID> largeRooms = largeRoomsByMember.get(userId);
+    if (largeRooms != null) {
+      for (UUID roomId : largeRooms) {
+        ActivityRingBuffer roomTimeline = roomTimelines.get(roomId);
+        if (roomTimeline != null) {
+          sources.add(roomTimeline.page(before, limit));
+        }
+      }
+    }
+
+    ActivityCursor horizon = rebuiltFrom;
+    List<List<FeedEntry>> pages = new ArrayList<>(sources.size());
+    for (ActivityRingBuffer.Page source : sources) {
+      pages.add(source.getEntries());
+      ActivityCursor oldestHeld = source.getOldestHeld();
+      if (source.hasDropped() && (horizon == null || oldestHeld.compareTo(horizon) > 0)) {
+        horizon = oldestHeld;
+      }
+    }
+    List<FeedEntry> page = merge(pages, limit);
+    ActivityStore activityStore = this.activityStore;
+    if (horizon == null || activityStore == null) {
+      return page;
+    }
+
+    // Only the entries at or after the horizon are known to be complete.
+    int complete = 0;
+    while (complete < page.size() && horizon.compareTo(page.get(complete)) <= 0) {
+      complete++;
+    }
+    if (complete == limit) {
+      return page;
+    }
+    page = new ArrayList<>(page.subList(0, complete));
+    ActivityCursor cursor = before == null || before.compareTo(horizon) > 0 ? horizon : before;
+    int batchSize = Math.max(limit, capacity);
+    for (int batches = 0; page.size() < limit && batches < MAX_SCAN_BATCHES; batches++) {
+      List<FeedEntry> batch = activityStore.feedPage(cursor, batchSize);
+      for (FeedEntry entry : batch) {
+        if (page.size() < limit && isVisibleTo(entry, userId)) {
+          page.add(entry);
+        }
+      }
+      if (batch.size() < batchSize) {
+        break;
+      }
+      cursor = ActivityCursor.of(batch.get(batch.size() - 1).getActivity());
+    }
+    return page;
+  }
+
+  /**
+   * Discards every feed, as before ActivityStore republishes the Activities loaded at startup.
+   *
+   * @param rebuiltFrom the position of the oldest Activity that will be republished, if older ones
+   *     exist that won't be, or null if every Activity will be
+   */
+  public void clear(ActivityCursor rebuiltFrom) {
+    inboxes.clear();
+    roomTimelines.clear();
+    largeRoomsByMember.clear();
+    publicTimeline = new ActivityRingBuffer(capacity);
+    this.rebuiltFrom = rebuiltFrom;
+  }
+
+  /**
+   * Returns whether a User may see an entry read from the shared feed: it is their own, or it
+   * happened in a public Conversation or one they are a member of.
+   */
+  private boolean isVisibleTo(FeedEntry entry, UUID userId) {
+    if (entry.getActivity().getOwnerId().equals(userId)) {
+      return true;
+    }
+    ConversationStore conversationStore = this.conversationStore;
+    UUID conversationId = entry.getConversationId();
+    if (conversationStore == null || conversationId == null) {
+      return false;
+    }
+    Conversation conversation = conversationStore.getConversation(conversationId);
+    return conversation != null
+        && (conversation.visibility == Visibility.PUBLIC
+            || conversation.getMembers().contains(userId));
+  }
+
+  private ActivityRingBuffer inbox(UUID userId) {
+    return inboxes.computeIfAbsent(userId, id -> new ActivityRingBuffer(capacity));
+  }
+
+  /**
+   * Switches a Conversation that has outgrown fan-out on write to its own timeline, indexing its
+   * current members once. Later joins and leaves arrive through largeRoomIndexer.
+   */
+  private ActivityRingBuffer startRoomTimeline(Conversation conversation, Set<UUID> members) {
+    ActivityRingBuffer created = new ActivityRingBuffer(capacity);
+    ActivityRingBuffer roomTimeline = roomTimelines.putIfAbsent(conversation.getId(), created);
+    if (roomTimeline != null) {
+      return roomTimeline;
+    }
+    for (UUID memberId : members) {
+      largeRoomIndexer.memberAdded(conversation, memberId);
+    }
+    return created;
+  }
+
+  /** Returns a snapshot of a Conversation's members, which may change while it is published. */
+  private static Set<UUID> memberIds(Conversation conversation) {
+    return new HashSet<>(conversation.getMembers());
+  }
+
+  /**
+   * Merges lists sorted newest first in feed order into one list of at most {@code limit} entries,
+   * newest first. An entry that reached the User through two sources appears once.
+   */
+  private static List<FeedEntry> merge(List<List<FeedEntry>> sources, int limit) {
+    if (sources.size() == 1) {
+      return sources.get(0);
+    }
+    int[] positions = new int[sources.size()];
+    Set<UUID> seen = new HashSet<>();
+    List<FeedEntry> page = new ArrayList<>(limit);
+    while (page.size() < limit) {
+      int newestSource = -1;
+      FeedEntry newest = null;
+      for (int i = 0; i < sources.size(); i++) {
+        List<FeedEntry> source = sources.get(i);
+        if (positions[i] < source.size()) {
+          FeedEntry candidate = source.get(positions[i]);
+          if (newest == null || ActivityCursor.FEED_ORDER.compare(candidate, newest) > 0) {
+            newest = candidate;
+            newestSource = i;
+          }
+        }
+      }
+      if (newest == null) {
+        break;
+      }
+      positions[newestSource]++;
+      if (seen.add(newest.getActivity().getId())) {
+        page.add(newest);
+      }
+    }
+    return page;
+  }
+}
@@ -18,8 +18,8 @@ import codeu.model.data.Group;
 import codeu.model.data.User;
 import codeu.model.data.Conversation;
 import codeu.model.store.persistence.PersistentStorageAgent;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Store class that uses in-memory data structures to hold values and automatically loads from and
@@ -29,7 +29,7 @@ import java.util.List;
 public class GroupConversationStore {
 
   /** Singleton instance of ConversationStore. */
-  private static GroupConversationStore instance;
+  private static volatile GroupConversationStore instance;
 
   /**
    * Returns the singleton instance of ConversationStore that should be shared between all servlet
@@ -37,7 +37,11 @@ public class GroupConversationStore {
    */
   public static GroupConversationStore getInstance() {
     if (instance == null) {
-      instance = new GroupConversationStore(PersistentStorageAgent.getInstance());
+      synchronized (GroupConversationStore.class) {
+        if (instance == null) {
+          instance = new GroupConversationStore(PersistentStorageAgent.getInstance());
+        }
+      }
     }
     return instance;
   }
@@ -58,12 +62,12 @@ public class GroupConversationStore {
   private PersistentStorageAgent persistentStorageAgent;
 
   /** The in-memory list of Conversations. */
-  private List<Group> groupConversations;
+  private volatile List<Group> groupConversations;
 
   /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
   private GroupConversationStore(PersistentStorageAgent persistentStorageAgent) {
     this.persistentStorageAgent = persistentStorageAgent;
-    groupConversations = new ArrayList<>();
+    groupConversations = new CopyOnWriteArrayList<>();
   }
 
 /** Access the current set of conversations known to the application. */
@@ -100,6 +104,6 @@ public class GroupConversationStore {
 
   /** Sets the List of Conversations stored by this ConversationStore. */
   public void setGroupConversations(List<Group> groupConversations) {
-    this.groupConversations = groupConversations;
+    this.groupConversations = new CopyOnWriteArrayList<>(groupConversations);
   }
 }
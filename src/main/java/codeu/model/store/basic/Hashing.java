@@ -0,0 +1,27 @@
+package codeu.model.store.basic;
+
+import java.util.UUID;
+
+/**
+ * 64-bit hashing of UUIDs for the sketches in this package. UUIDs are random already, but not all
+ * of their bits are, so they are mixed before use.
+ */
+final class Hashing {
+
+  private Hashing() {}
+
+  /** Hashes a UUID so that every bit of the result depends on every bit of the UUID. */
+  static long hash(UUID key) {
+    return mix(key.getMostSignificantBits() ^ Long.rotateLeft(key.getLeastSignificantBits(), 32));
+  }
+
+  /** The finalizer of MurmurHash3, which spreads every input bit over the whole output. */
+  static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
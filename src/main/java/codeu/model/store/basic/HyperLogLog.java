@@ -0,0 +1,107 @@
+package codeu.model.store.basic;
+
+import java.util.Arrays;
+
+/**
+ * HyperLogLog sketch of the number of distinct 64-bit hashes added, used by ActiveUsers. It takes
+ * 2^precision four-bit registers, packed two to a byte, however many hashes are added, and its
+ * estimates have a relative standard error of about 1.04 / sqrt(2^precision).
+ *
+ * <p>The first precision bits of a hash pick a register, which keeps the most leading zeros seen in
+ * the remaining bits. Sketches with the same precision combine by taking the larger of each pair
+ * of registers, giving the sketch of the union. Not thread-safe.
+ *
+ * <p>A four-bit register holds ranks up to {@code MAX_RANK}, where a byte would hold every rank a
+ * 64-bit hash can have. A rank above it is about as likely as one hash in 2^15 reaching a register,
+ * so the cap only biases estimates of many millions of hashes, far more Users than this site has.
+ */
+class HyperLogLog {
+
+  /** The largest rank a register holds; higher ranks are stored as this. */
+  private static final int MAX_RANK = 15;
+
+  private final int precision;
+  private final int registerCount;
+  private final byte[] registers;
+
+  HyperLogLog(int precision) {
+    if (precision < 4 || precision > 16) {
+      throw new IllegalArgumentException("precision must be between 4 and 16: " + precision);
+    }
+    this.precision = precision;
+    this.registerCount = 1 << precision;
+    this.registers = new byte[registerCount / 2];
+  }
+
+  /** Adds a hash. Adding the same hash again changes nothing. */
+  void add(long hash) {
+    int index = (int) (hash >>> (64 - precision));
+    // the marker bit caps the rank when the remaining bits are all zero
+    int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+    rank = Math.min(rank, MAX_RANK);
+    if (rank > register(index)) {
+      setRegister(index, rank);
+    }
+  }
+
+  /** Adds every hash added to another sketch of the same precision. */
+  void addAll(HyperLogLog other) {
+    if (other.precision != precision) {
+      throw new IllegalArgumentException("precisions differ");
+    }
+    for (int i = 0; i < registerCount; i++) {
+      int rank = other.register(i);
+      if (rank > register(i)) {
+        setRegister(i, rank);
+      }
+    }
+  }
+
+  /** Forgets every hash added. */
+  void clear() {
+    Arrays.fill(registers, (byte) 0);
+  }
+
+  /** Returns the estimated number of distinct hashes added. */
+  long estimate() {
+    int m = registerCount;
+    double sum = 0;
+    int zeros = 0;
+    for (int i = 0; i < m; i++) {
+      int rank = register(i);
+      sum += 1.0 / (1L << rank);
+      if (rank == 0) {
+        zeros++;
+      }
+    }
+    double estimate = alpha(m) * m * m / sum;
+    if (estimate <= 2.5 * m && zeros > 0) {
+      // few distinct hashes: count the empty registers instead, which is more accurate here
+      estimate = m * Math.log((double) m / zeros);
+    }
+    return Math.round(estimate);
+  }
+
+  /** Returns the rank held by a register: the low four bits of its byte if even, else the high. */
+  private int register(int index) {
+    return (registers[index >>> 1] >>> ((index & 1) << 2)) & 0xF;
+  }
+
+  private void setRegister(int index, int rank) {
+    int shift = (index & 1) << 2;
+    registers[index >>> 1] = (byte) ((registers[index >>> 1] & ~(0xF << shift)) | (rank << shift));
+  }
+
+  private static double alpha(int m) {
+    switch (m) {
+      case 16:
+        return 0.673;
+      case 32:
+        return 0.697;
+      case 64:
+        return 0.709;
+      default:
+        return 0.7213 / (1 + 1.079 / m);
+    }
+  }
+}
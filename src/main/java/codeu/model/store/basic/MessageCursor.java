@@ -0,0 +1,106 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.basic;
+
+import codeu.model.data.Message;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.UUID;
+
+/**
+ * Position of a Message in a Conversation's history, used to page through it. Messages are ordered
+ * by creation time and then by ID, so a cursor stays exact even when two Messages share a creation
+ * time. Its string form is {@code <creation time>_<message ID>}.
+ */
+public final class MessageCursor implements Comparable<MessageCursor> {
+
+  private final Instant creationTime;
+  private final UUID messageId;
+
+  private MessageCursor(Instant creationTime, UUID messageId) {
+    this.creationTime = creationTime;
+    this.messageId = messageId;
+  }
+
+  /** Returns the cursor positioned at a Message. */
+  public static MessageCursor of(Message message) {
+    return new MessageCursor(message.getCreationTime(), message.getId());
+  }
+
+  /** Returns the cursor positioned at the Message with a creation time and ID. */
+  static MessageCursor of(Instant creationTime, UUID messageId) {
+    return new MessageCursor(creationTime, messageId);
+  }
+
+  /**
+   * Parses the string form of a cursor.
+   *
+   * @throws IllegalArgumentException if the string is not a cursor
+   */
+  public static MessageCursor parse(String cursor) {
+    int separator = cursor.indexOf('_');
+    if (separator < 0) {
+      throw new IllegalArgumentException("Not a message cursor: " + cursor);
+    }
+    try {
+      return new MessageCursor(
+          Instant.parse(cursor.substring(0, separator)),
+          UUID.fromString(cursor.substring(separator + 1)));
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException("Not a message cursor: " + cursor, e);
+    }
+  }
+
+  /** Returns the creation time of the Message this cursor is positioned at. */
+  public Instant getCreationTime() {
+    return creationTime;
+  }
+
+  /** Returns the ID of the Message this cursor is positioned at. */
+  public UUID getMessageId() {
+    return messageId;
+  }
+
+  /** Compares this cursor with a Message's position, in history order. */
+  int compareTo(Message message) {
+    int byTime = creationTime.compareTo(message.getCreationTime());
+    return byTime != 0 ? byTime : messageId.compareTo(message.getId());
+  }
+
+  @Override
+  public int compareTo(MessageCursor other) {
+    int byTime = creationTime.compareTo(other.creationTime);
+    return byTime != 0 ? byTime : messageId.compareTo(other.messageId);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (!(o instanceof MessageCursor)) {
+      return false;
+    }
+    MessageCursor other = (MessageCursor) o;
+    return creationTime.equals(other.creationTime) && messageId.equals(other.messageId);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * creationTime.hashCode() + messageId.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return creationTime + "_" + messageId;
+  }
+}
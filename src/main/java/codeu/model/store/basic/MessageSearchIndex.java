@@ -0,0 +1,469 @@
+package codeu.model.store.basic;
+
+import codeu.model.data.Message;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Full-text index of the text of every Message. Text is split into terms at every character that
+ * isn't a letter or digit, and lower-cased. Each term maps to a PostingList of the Messages it is
+ * in, compressed as varint gaps, so the index takes a few bytes per word rather than a copy of the
+ * text. Only IDs, creation times and Conversations are kept per Message, so it works the same when
+ * MessageStore only holds some Messages in memory. Creation times are kept to the nanosecond, as
+ * MessageStore finds a Message by its exact (time, ID) position.
+ *
+ * <p>A search finds the Messages containing every term of the query, by walking the terms'
+ * PostingLists together, and ranks them by BM25 relevance, newest first among equals. The lists are
+ * append-only, so a search only holds the lock long enough to note where they end, and searches and
+ * new Messages don't wait on each other.
+ *
+ * <p>This is a singleton; the single instance is accessed through getInstance().
+ */
+public class MessageSearchIndex {
+
+  /** Queries are cut to this many distinct terms. */
+  public static final int MAX_QUERY_TERMS = 10;
+
+  /** Longer runs of letters and digits, such as encoded data, aren't indexed. */
+  static final int MAX_TERM_LENGTH = 40;
+
+  /** BM25 term frequency saturation. */
+  private static final double K1 = 1.2;
+
+  /** BM25 document length normalization. */
+  private static final double B = 0.75;
+
+  /** setMessages() tokenizes in parallel, in chunks of at least this many Messages. */
+  static final int MIN_CHUNK_SIZE = 10000;
+
+  private static volatile MessageSearchIndex instance;
+
+  /**
+   * Returns the singleton instance of MessageSearchIndex that should be shared between all stores
+   * and servlets. Do not call this function from a test; use getTestInstance() instead.
+   */
+  public static MessageSearchIndex getInstance() {
+    if (instance == null) {
+      synchronized (MessageSearchIndex.class) {
+        if (instance == null) {
+          instance = new MessageSearchIndex();
+        }
+      }
+    }
+    return instance;
+  }
+
+  /** Instance getter function used for testing. */
+  public static MessageSearchIndex getTestInstance() {
+    return new MessageSearchIndex();
+  }
+
+  /** The indexed Messages and their terms. Guarded by this. */
+  private Index index = new Index(16);
+
+  /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
+  private MessageSearchIndex() {}
+
+  /** Indexes a new Message. Messages without text are skipped. */
+  public void messageAdded(Message message) {
+    if (message.getText() == null) {
+      return;
+    }
+    Map<String, Integer> termCounts = countTerms(message.getText());
+    synchronized (this) {
+      index.add(message, termCounts);
+    }
+  }
+
+  /**
+   * Rebuilds the index from the given Messages, as loaded from Datastore. The text is tokenized in
+   * parallel chunks, and then each term's lists from the chunks are joined, also in parallel.
+   */
+  public void setMessages(Collection<Message> messages) {
+    List<Message> withText =
+        messages.stream().filter(message -> message.getText() != null).collect(Collectors.toList());
+    Index rebuilt = new Index(Math.max(16, withText.size()));
+    for (Message message : withText) {
+      rebuilt.addDocument(message);
+    }
+
+    int chunkSize = Math.max(MIN_CHUNK_SIZE,
+        withText.size() / (4 * Runtime.getRuntime().availableProcessors()) + 1);
+    int chunks = (withText.size() + chunkSize - 1) / chunkSize;
+    // Each chunk numbers its Messages by their place in the whole list, and only writes the lengths
+    // of its own Messages.
+    List<Map<String, PostingList>> chunkPostings =
+        IntStream.range(0, chunks)
+            .parallel()
+            .mapToObj(
+                chunk -> {
+                  Map<String, PostingList> postings = new HashMap<>();
+                  int end = Math.min(withText.size(), (chunk + 1) * chunkSize);
+                  for (int document = chunk * chunkSize; document < end; document++) {
+                    Map<String, Integer> termCounts =
+                        countTerms(withText.get(document).getText());
+                    for (Map.Entry<String, Integer> termCount : termCounts.entrySet()) {
+                      postings
+                          .computeIfAbsent(termCount.getKey(), term -> new PostingList())
+                          .add(document, termCount.getValue());
+                    }
+                    rebuilt.lengths[document] = length(termCounts);
+                  }
+                  return postings;
+                })
+            .collect(Collectors.toList());
+
+    Set<String> terms = new LinkedHashSet<>();
+    for (Map<String, PostingList> postings : chunkPostings) {
+      terms.addAll(postings.keySet());
+    }
+    Map<String, PostingList> joined = new ConcurrentHashMap<>();
+    terms.parallelStream().forEach(term -> {
+      PostingList postingList = new PostingList();
+      for (Map<String, PostingList> postings : chunkPostings) {
+        PostingList chunkList = postings.get(term);
+        if (chunkList != null) {
+          postingList.addAll(chunkList);
+        }
+      }
+      joined.put(term, postingList);
+    });
+    rebuilt.postings.putAll(joined);
+    for (int length : rebuilt.lengths) {
+      rebuilt.totalLength += length;
+    }
+
+    synchronized (this) {
+      index = rebuilt;
+    }
+  }
+
+  /**
+   * Starts rebuilding the index from Messages read in batches, for when there are too many to load
+   * at once for setMessages(). Searches keep using the current index until Rebuild.finish().
+   */
+  public Rebuild rebuild() {
+    return new Rebuild();
+  }
+
+  /** Returns the number of Messages indexed. */
+  public synchronized int getIndexedMessageCount() {
+    return index.documentCount;
+  }
+
+  /**
+   * Returns up to {@code limit} Messages containing every term of a query, best match first.
+   *
+   * @param query the words to search for; terms past MAX_QUERY_TERMS are ignored
+   * @param conversationFilter accepts the IDs of the Conversations to search in; it is called once
+   *     per Conversation with a matching Message, outside any lock
+   */
+  public List<Result> search(String query, Predicate<UUID> conversationFilter, int limit) {
+    List<String> terms = new ArrayList<>(new LinkedHashSet<>(tokenize(query)));
+    if (terms.isEmpty() || limit <= 0) {
+      return new ArrayList<>();
+    }
+    terms = terms.subList(0, Math.min(terms.size(), MAX_QUERY_TERMS));
+
+    // Note where everything ends, and decode only that far without the lock.
+    View view;
+    TermReader[] readers = new TermReader[terms.size()];
+    synchronized (this) {
+      view = new View(index);
+      for (int i = 0; i < readers.length; i++) {
+        PostingList postingList = index.postings.get(terms.get(i));
+        if (postingList == null) {
+          return new ArrayList<>();
+        }
+        readers[i] = new TermReader(postingList);
+      }
+    }
+    // The rarest term leads, so the others are only checked at its few documents.
+    Arrays.sort(readers, Comparator.comparingInt(reader -> reader.documentFrequency));
+    for (TermReader reader : readers) {
+      reader.idf =
+          Math.log(1 + (view.documentCount - reader.documentFrequency + 0.5)
+              / (reader.documentFrequency + 0.5));
+    }
+    double averageLength = Math.max(1, (double) view.totalLength / view.documentCount);
+
+    // 0 if a Conversation hasn't been checked yet, 1 if it is searched and 2 if it isn't
+    byte[] searched = new byte[view.conversationCount];
+    PriorityQueue<Result> best = new PriorityQueue<>(Result.RANK.reversed());
+    PostingList.Reader lead = readers[0].reader;
+    candidates:
+    while (lead.next()) {
+      int document = lead.document();
+      for (int i = 1; i < readers.length; i++) {
+        if (!readers[i].reader.advanceTo(document)) {
+          break candidates;
+        }
+        if (readers[i].reader.document() != document) {
+          continue candidates;
+        }
+      }
+      int conversation = view.conversations[document];
+      if (searched[conversation] == 0) {
+        searched[conversation] =
+            conversationFilter.test(view.conversationIds[conversation]) ? (byte) 1 : (byte) 2;
+      }
+      if (searched[conversation] == 2) {
+        continue;
+      }
+
+      double lengthNorm = K1 * (1 - B + B * view.lengths[document] / averageLength);
+      double score = 0;
+      for (TermReader termReader : readers) {
+        int count = termReader.reader.count();
+        score += termReader.idf * count * (K1 + 1) / (count + lengthNorm);
+      }
+      best.add(new Result(view, document, score));
+      if (best.size() > limit) {
+        best.poll();
+      }
+    }
+
+    List<Result> results = new ArrayList<>(best);
+    results.sort(Result.RANK);
+    return results;
+  }
+
+  /** Splits text into lower-cased runs of letters and digits, skipping overlong ones. */
+  static List<String> tokenize(String text) {
+    List<String> terms = new ArrayList<>();
+    int start = -1;
+    for (int i = 0; i <= text.length(); i++) {
+      boolean inTerm = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+      if (inTerm && start < 0) {
+        start = i;
+      } else if (!inTerm && start >= 0) {
+        if (i - start <= MAX_TERM_LENGTH) {
+          terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+        }
+        start = -1;
+      }
+    }
+    return terms;
+  }
+
+  private static Map<String, Integer> countTerms(String text) {
+    Map<String, Integer> termCounts = new HashMap<>();
+    for (String term : tokenize(text)) {
+      termCounts.merge(term, 1, Integer::sum);
+    }
+    return termCounts;
+  }
+
+  private static int length(Map<String, Integer> termCounts) {
+    int length = 0;
+    for (int count : termCounts.values()) {
+      length += count;
+    }
+    return length;
+  }
+
+  /** An index being built by rebuild(), a batch of Messages at a time. Not thread-safe. */
+  public class Rebuild {
+
+    private final Index rebuilt = new Index(16);
+
+    private Rebuild() {}
+
+    /**
+     * Indexes a batch of Messages, tokenizing their text in parallel. Messages without text are
+     * skipped. Nothing is kept of the batch but the index.
+     */
+    public void add(List<Message> messages) {
+      List<Message> withText =
+          messages.stream()
+              .filter(message -> message.getText() != null)
+              .collect(Collectors.toList());
+      List<Map<String, Integer>> termCounts =
+          withText.parallelStream()
+              .map(message -> countTerms(message.getText()))
+              .collect(Collectors.toList());
+      for (int i = 0; i < withText.size(); i++) {
+        rebuilt.add(withText.get(i), termCounts.get(i));
+      }
+    }
+
+    /** Replaces the index with the rebuilt one. */
+    public void finish() {
+      synchronized (MessageSearchIndex.this) {
+        index = rebuilt;
+      }
+    }
+  }
+
+  /** A Message found by search(). */
+  public static class Result {
+
+    /** Best first: highest score, then newest. */
+    static final Comparator<Result> RANK =
+        Comparator.comparingDouble((Result result) -> result.score)
+            .thenComparing(result -> result.creationTime)
+            .reversed();
+
+    private final UUID conversationId;
+    private final UUID messageId;
+    private final Instant creationTime;
+    private final double score;
+
+    private Result(View view, int document, double score) {
+      this.conversationId = view.conversationIds[view.conversations[document]];
+      this.messageId = new UUID(view.idMost[document], view.idLeast[document]);
+      this.creationTime =
+          Instant.ofEpochSecond(view.creationSeconds[document], view.creationNanos[document]);
+      this.score = score;
+    }
+
+    public UUID getConversationId() {
+      return conversationId;
+    }
+
+    /** Returns the position of the Message, with which MessageStore can find it. */
+    public MessageCursor getPosition() {
+      return MessageCursor.of(creationTime, messageId);
+    }
+
+    public double getScore() {
+      return score;
+    }
+  }
+
+  /** A term's PostingList being decoded by a search. */
+  private static class TermReader {
+
+    final PostingList.Reader reader;
+    final int documentFrequency;
+    double idf;
+
+    TermReader(PostingList postingList) {
+      reader = new PostingList.Reader(postingList.buffer(), postingList.size());
+      documentFrequency = postingList.documentCount();
+    }
+  }
+
+  /**
+   * The indexed Messages, numbered in the order they were added, and their PostingLists. The
+   * per-Message arrays are only appended to, and replaced by larger copies when full. Not
+   * thread-safe.
+   */
+  private static class Index {
+
+    final Map<String, PostingList> postings = new HashMap<>();
+    final Map<UUID, Integer> conversationNumbers = new HashMap<>();
+    UUID[] conversationIds = new UUID[16];
+    int conversationCount;
+
+    long[] idMost;
+    long[] idLeast;
+    long[] creationSeconds;
+    int[] creationNanos;
+    int[] conversations;
+    int[] lengths;
+    int documentCount;
+    long totalLength;
+
+    Index(int capacity) {
+      idMost = new long[capacity];
+      idLeast = new long[capacity];
+      creationSeconds = new long[capacity];
+      creationNanos = new int[capacity];
+      conversations = new int[capacity];
+      lengths = new int[capacity];
+    }
+
+    /** Adds a Message's details, with no length yet, and returns its document number. */
+    int addDocument(Message message) {
+      if (documentCount == idMost.length) {
+        int capacity = documentCount * 2;
+        idMost = Arrays.copyOf(idMost, capacity);
+        idLeast = Arrays.copyOf(idLeast, capacity);
+        creationSeconds = Arrays.copyOf(creationSeconds, capacity);
+        creationNanos = Arrays.copyOf(creationNanos, capacity);
+        conversations = Arrays.copyOf(conversations, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+      }
+      int document = documentCount++;
+      idMost[document] = message.getId().getMostSignificantBits();
+      idLeast[document] = message.getId().getLeastSignificantBits();
+      creationSeconds[document] = message.getCreationTime().getEpochSecond();
+      creationNanos[document] = message.getCreationTime().getNano();
+      conversations[document] = conversationNumber(message.getConversationId());
+      return document;
+    }
+
+    /** Adds a Message and the counts of its terms. */
+    void add(Message message, Map<String, Integer> termCounts) {
+      int document = addDocument(message);
+      for (Map.Entry<String, Integer> termCount : termCounts.entrySet()) {
+        postings
+            .computeIfAbsent(termCount.getKey(), term -> new PostingList())
+            .add(document, termCount.getValue());
+      }
+      setLength(document, length(termCounts));
+    }
+
+    void setLength(int document, int length) {
+      lengths[document] = length;
+      totalLength += length;
+    }
+
+    private int conversationNumber(UUID conversationId) {
+      Integer number = conversationNumbers.get(conversationId);
+      if (number != null) {
+        return number;
+      }
+      if (conversationCount == conversationIds.length) {
+        conversationIds = Arrays.copyOf(conversationIds, conversationCount * 2);
+      }
+      conversationIds[conversationCount] = conversationId;
+      conversationNumbers.put(conversationId, conversationCount);
+      return conversationCount++;
+    }
+  }
+
+  /** The arrays of an Index as they were at one moment, readable without the lock. */
+  private static class View {
+
+    final long[] idMost;
+    final long[] idLeast;
+    final long[] creationSeconds;
+    final int[] creationNanos;
+    final int[] conversations;
+    final int[] lengths;
+    final int documentCount;
+    final long totalLength;
+    final UUID[] conversationIds;
+    final int conversationCount;
+
+    View(Index index) {
+      idMost = index.idMost;
+      idLeast = index.idLeast;
+      creationSeconds = index.creationSeconds;
+      creationNanos = index.creationNanos;
+      conversations = index.conversations;
+      lengths = index.lengths;
+      documentCount = index.documentCount;
+      totalLength = index.totalLength;
+      conversationIds = index.conversationIds;
+      conversationCount = index.conversationCount;
+    }
+  }
+}
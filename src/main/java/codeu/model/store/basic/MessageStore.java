@@ -15,20 +15,51 @@
 package codeu.model.store.basic;
 
 import codeu.model.data.Message;
+import codeu.model.store.persistence.PersistentDataStoreException;
 import codeu.model.store.persistence.PersistentStorageAgent;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 /**
  * Store class that uses in-memory data structures to hold values and automatically loads from and
  * saves to PersistentStorageAgent. It's a singleton so all servlet classes can access the same
  * instance.
+ *
+ * <p>This class is safe to use from concurrent requests. New Messages are appended without a global
+ * lock; each index list is guarded by its own monitor, so writers to different Conversations do not
+ * contend, and readers always get a snapshot copy.
+ *
+ * <p>By default every Message is held in memory. After enableLazyLoading(), a Conversation's
+ * Messages are instead loaded from Datastore on first access and kept in a bounded LRU cache, and
+ * queries by author go to Datastore, so heap use no longer grows with the message history.
  */
 public class MessageStore {
 
+  /**
+   * The order Messages are kept in: by creation time, then by ID so that Messages sent at the same
+   * instant still have a fixed position that a MessageCursor can point at.
+   */
+  static final Comparator<Message> HISTORY_ORDER =
+      Comparator.comparing(Message::getCreationTime).thenComparing(Message::getId);
+
+  /** Callback for code that waits on new Messages in a Conversation. */
+  public interface MessageListener {
+    /**
+     * Called on the thread that added the Message, after it is visible to readers of this store.
+     * Implementations should hand off any slow work instead of doing it here.
+     */
+    void messageAdded(Message message);
+  }
+
   /** Singleton instance of MessageStore. */
-  private static MessageStore instance;
+  private static volatile MessageStore instance;
 
   /**
    * Returns the singleton instance of MessageStore that should be shared between all servlet
@@ -36,7 +67,15 @@ public class MessageStore {
    */
   public static MessageStore getInstance() {
     if (instance == null) {
-      instance = new MessageStore(PersistentStorageAgent.getInstance());
+      synchronized (MessageStore.class) {
+        if (instance == null) {
+          MessageStore messageStore = new MessageStore(PersistentStorageAgent.getInstance());
+          messageStore.setSiteStatistics(SiteStatistics.getInstance());
+          messageStore.setTrendingConversations(TrendingConversations.getInstance());
+          messageStore.setMessageSearchIndex(MessageSearchIndex.getInstance());
+          instance = messageStore;
+        }
+      }
     }
     return instance;
   }
@@ -56,57 +95,417 @@ public class MessageStore {
    */
   private PersistentStorageAgent persistentStorageAgent;
 
-  /** The in-memory list of Messages. */
-  private List<Message> messages;
+  /** The in-memory list of Messages, in the order they were added. */
+  private volatile Queue<Message> messages;
+
+  /**
+   * Index from Conversation ID to the Messages in that Conversation, each list kept sorted in
+   * ascending order by creation time. Lets a chat page load cost time proportional to the size of
+   * that Conversation instead of the total number of Messages.
+   */
+  private volatile Map<UUID, List<Message>> messagesByConversation;
+
+  /** Index from author ID to the Messages that User sent, sorted by creation time. */
+  private volatile Map<UUID, List<Message>> messagesByAuthor;
+
+  /** Cache of recently used Conversations in lazy mode, or null if every Message is in memory. */
+  private volatile ConversationMessageCache conversationCache;
+
+  /** Kept up to date with the Messages added, or null if there is none. */
+  private volatile SiteStatistics siteStatistics;
+
+  /** Told of each Message added, to find the busiest Conversations, or null if there is none. */
+  private volatile TrendingConversations trendingConversations;
+
+  /** Indexes the text of each Message added, or null if there is none. */
+  private volatile MessageSearchIndex messageSearchIndex;
+
+  /** Listeners waiting on new Messages, by Conversation ID. Empty sets are removed. */
+  private final Map<UUID, Set<MessageListener>> listenersByConversation = new ConcurrentHashMap<>();
 
   /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
   private MessageStore(PersistentStorageAgent persistentStorageAgent) {
     this.persistentStorageAgent = persistentStorageAgent;
-    messages = new ArrayList<>();
+    messages = new ConcurrentLinkedQueue<>();
+    messagesByConversation = new ConcurrentHashMap<>();
+    messagesByAuthor = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Switches this store to lazy mode: Messages are no longer held in memory up front, but loaded a
+   * Conversation at a time when first accessed. Call this at startup instead of setMessages().
+   *
+   * @param maxResidentMessages the number of cached Messages above which the least recently used
+   *     Conversations are evicted
+   */
+  public void enableLazyLoading(int maxResidentMessages) {
+    conversationCache = new ConversationMessageCache(persistentStorageAgent, maxResidentMessages);
+    messages = new ConcurrentLinkedQueue<>();
+    messagesByConversation = new ConcurrentHashMap<>();
+    messagesByAuthor = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Sets the SiteStatistics kept up to date with the Messages in this store. This function provides a
+   * common setup method for use by the test framework or getInstance().
+   */
+  public void setSiteStatistics(SiteStatistics siteStatistics) {
+    this.siteStatistics = siteStatistics;
+  }
+
+  /**
+   * Sets the TrendingConversations told of the Messages in this store. This function provides a
+   * common setup method for use by the test framework or getInstance().
+   */
+  public void setTrendingConversations(TrendingConversations trendingConversations) {
+    this.trendingConversations = trendingConversations;
+  }
+
+  /**
+   * Sets the MessageSearchIndex that indexes the Messages in this store. This function provides a
+   * common setup method for use by the test framework or getInstance().
+   */
+  public void setMessageSearchIndex(MessageSearchIndex messageSearchIndex) {
+    this.messageSearchIndex = messageSearchIndex;
   }
 
   /** Add a new message to the current set of messages known to the application. */
   public void addMessage(Message message) {
+    SiteStatistics siteStatistics = this.siteStatistics;
+    if (siteStatistics != null) {
+      siteStatistics.messageAdded(message);
+    }
+    TrendingConversations trendingConversations = this.trendingConversations;
+    if (trendingConversations != null) {
+      trendingConversations.messageAdded(message);
+    }
+    MessageSearchIndex messageSearchIndex = this.messageSearchIndex;
+    if (messageSearchIndex != null) {
+      messageSearchIndex.messageAdded(message);
+    }
+    ConversationMessageCache conversationCache = this.conversationCache;
+    if (conversationCache != null) {
+      // Write first: a cache miss loads the Conversation through PersistentStorageAgent, which
+      // includes the Message once it is written, whether or not the write-behind buffer has put it.
+      persistentStorageAgent.writeThrough(message);
+      conversationCache.add(message);
+      notifyListeners(message);
+      return;
+    }
     messages.add(message);
+    indexMessage(message);
+    notifyListeners(message);
     persistentStorageAgent.writeThrough(message);
   }
 
+  /**
+   * Registers a listener to be called for each Message added to a Conversation, until it is
+   * removed. Adding one Message calls every listener on that Conversation once.
+   */
+  public void addMessageListener(UUID conversationId, MessageListener listener) {
+    listenersByConversation.compute(
+        conversationId,
+        (id, listeners) -> {
+          if (listeners == null) {
+            listeners = ConcurrentHashMap.newKeySet();
+          }
+          listeners.add(listener);
+          return listeners;
+        });
+  }
+
+  /** Removes a listener added with addMessageListener(). */
+  public void removeMessageListener(UUID conversationId, MessageListener listener) {
+    listenersByConversation.computeIfPresent(
+        conversationId,
+        (id, listeners) -> {
+          listeners.remove(listener);
+          return listeners.isEmpty() ? null : listeners;
+        });
+  }
+
+  /** Returns the number of listeners currently waiting on new Messages in a Conversation. */
+  public int getMessageListenerCount(UUID conversationId) {
+    Set<MessageListener> listeners = listenersByConversation.get(conversationId);
+    return listeners == null ? 0 : listeners.size();
+  }
+
+  private void notifyListeners(Message message) {
+    Set<MessageListener> listeners = listenersByConversation.get(message.getConversationId());
+    if (listeners == null) {
+      return;
+    }
+    for (MessageListener listener : listeners) {
+      try {
+        listener.messageAdded(message);
+      } catch (RuntimeException e) {
+        // One broken listener shouldn't fail the request that sent the Message.
+        System.err.println("Message listener failed for " + message.getId());
+        e.printStackTrace();
+      }
+    }
+  }
+
   public List getAllMessages(){
     /*
-    A simple getter method to return all the messages in MessageStore
+    A simple getter method to return a snapshot of all the messages in MessageStore.
+    In lazy mode this is a full Datastore query, so it should stay off hot paths.
     */
-    return messages;
+    if (conversationCache != null) {
+      try {
+        return persistentStorageAgent.loadMessages();
+      } catch (PersistentDataStoreException e) {
+        throw new RuntimeException("Couldn't load messages", e);
+      }
+    }
+    return new ArrayList<>(messages);
+  }
+
+  /**
+   * Returns the number of Messages held in memory: every Message, or in lazy mode only those in
+   * cached Conversations. Costs time proportional to the number of Conversations, not Messages.
+   */
+  public int getResidentMessageCount() {
+    ConversationMessageCache conversationCache = this.conversationCache;
+    if (conversationCache != null) {
+      return conversationCache.residentMessages();
+    }
+    int count = 0;
+    for (List<Message> conversationMessages : messagesByConversation.values()) {
+      synchronized (conversationMessages) {
+        count += conversationMessages.size();
+      }
+    }
+    return count;
   }
 
   /** Access the current set of Messages within the given Conversation. */
   public List<Message> getMessagesInConversation(UUID conversationId) {
+    ConversationMessageCache conversationCache = this.conversationCache;
+    List<Message> conversationMessages =
+        conversationCache != null
+            ? conversationCache.get(conversationId)
+            : messagesByConversation.get(conversationId);
+    if (conversationMessages == null) {
+      return new ArrayList<>();
+    }
+    synchronized (conversationMessages) {
+      return new ArrayList<>(conversationMessages);
+    }
+  }
 
-    List<Message> messagesInConversation = new ArrayList<>();
+  /**
+   * Returns one page of the history of a Conversation: the newest {@code limit} Messages positioned
+   * strictly before {@code before}, in history order. Found by binary search, so the cost doesn't
+   * depend on how old the Conversation is.
+   *
+   * @param before only Messages before this cursor are returned, or null for the newest Messages
+   * @param limit the maximum number of Messages to return
+   */
+  public List<Message> getMessagesInConversation(
+      UUID conversationId, MessageCursor before, int limit) {
+    ConversationMessageCache conversationCache = this.conversationCache;
+    List<Message> conversationMessages =
+        conversationCache != null
+            ? conversationCache.get(conversationId)
+            : messagesByConversation.get(conversationId);
+    if (conversationMessages == null) {
+      return new ArrayList<>();
+    }
+    synchronized (conversationMessages) {
+      int end =
+          before == null
+              ? conversationMessages.size()
+              : indexOfFirstAtOrAfter(conversationMessages, before);
+      int start = Math.max(0, end - limit);
+      return new ArrayList<>(conversationMessages.subList(start, end));
+    }
+  }
 
-    for (Message message : messages) {
-      if (message.getConversationId().equals(conversationId)) {
-        messagesInConversation.add(message);
+  /**
+   * Returns the Message at a position in a Conversation, or null if there is none. Found by binary
+   * search; in lazy mode the Conversation is loaded if it isn't cached.
+   */
+  public Message getMessage(UUID conversationId, MessageCursor position) {
+    ConversationMessageCache conversationCache = this.conversationCache;
+    List<Message> conversationMessages =
+        conversationCache != null
+            ? conversationCache.get(conversationId)
+            : messagesByConversation.get(conversationId);
+    if (conversationMessages == null) {
+      return null;
+    }
+    synchronized (conversationMessages) {
+      int index = indexOfFirstAtOrAfter(conversationMessages, position);
+      if (index == conversationMessages.size()
+          || position.compareTo(conversationMessages.get(index)) != 0) {
+        return null;
       }
+      return conversationMessages.get(index);
     }
+  }
 
-    return messagesInConversation;
+  /**
+   * Returns the Messages in a Conversation positioned strictly after {@code after}, oldest first,
+   * at most {@code limit} of them. Found by binary search, so the cost depends only on the number of
+   * new Messages.
+   *
+   * @param after only Messages after this cursor are returned, or null to start from the oldest
+   */
+  public List<Message> getMessagesInConversationAfter(
+      UUID conversationId, MessageCursor after, int limit) {
+    ConversationMessageCache conversationCache = this.conversationCache;
+    List<Message> conversationMessages =
+        conversationCache != null
+            ? conversationCache.get(conversationId)
+            : messagesByConversation.get(conversationId);
+    if (conversationMessages == null) {
+      return new ArrayList<>();
+    }
+    synchronized (conversationMessages) {
+      int start = after == null ? 0 : indexOfFirstAfter(conversationMessages, after);
+      int end = Math.min(conversationMessages.size(), start + limit);
+      return new ArrayList<>(conversationMessages.subList(start, end));
+    }
   }
 
   /** Returns all messages sent by a specific user in the form of an ArrayList. */
   public List<Message> getMessagesByUser(UUID userId) {
-    List<Message>  messagesByUser = new ArrayList<>();
+    if (conversationCache != null) {
+      return loadMessagesByAuthor(userId, null, Integer.MAX_VALUE);
+    }
+    List<Message> authorMessages = messagesByAuthor.get(userId);
+    if (authorMessages == null) {
+      return new ArrayList<>();
+    }
+    synchronized (authorMessages) {
+      return new ArrayList<>(authorMessages);
+    }
+  }
 
-    for (Message message : messages){
-      if (message.getAuthorId().equals(userId)){
-        messagesByUser.add(message);
-      }
+  /**
+   * Returns one page of the messages sent by a specific user: the newest {@code limit} messages
+   * positioned strictly before {@code before}, in history order.
+   *
+   * @param before only messages before this cursor are returned, or null for the newest messages
+   * @param limit the maximum number of messages to return
+   */
+  public List<Message> getMessagesByUser(UUID userId, MessageCursor before, int limit) {
+    if (conversationCache != null) {
+      return loadMessagesByAuthor(userId, before, limit);
+    }
+    List<Message> authorMessages = messagesByAuthor.get(userId);
+    if (authorMessages == null) {
+      return new ArrayList<>();
+    }
+    synchronized (authorMessages) {
+      int end =
+          before == null ? authorMessages.size() : indexOfFirstAtOrAfter(authorMessages, before);
+      int start = Math.max(0, end - limit);
+      return new ArrayList<>(authorMessages.subList(start, end));
     }
-    return messagesByUser;
   }
 
   /** Sets the List of Messages stored by this MessageStore. */
   public void setMessages(List<Message> messages) {
-    this.messages = messages;
+    Map<UUID, List<Message>> messagesByConversation = new ConcurrentHashMap<>();
+    Map<UUID, List<Message>> messagesByAuthor = new ConcurrentHashMap<>();
+    for (Message message : messages) {
+      indexMessage(messagesByConversation, messagesByAuthor, message);
+    }
+    this.messages = new ConcurrentLinkedQueue<>(messages);
+    this.messagesByConversation = messagesByConversation;
+    this.messagesByAuthor = messagesByAuthor;
+    SiteStatistics siteStatistics = this.siteStatistics;
+    if (siteStatistics != null) {
+      siteStatistics.setMessages(messages.size(), messages);
+    }
+    TrendingConversations trendingConversations = this.trendingConversations;
+    if (trendingConversations != null) {
+      trendingConversations.setMessages(messages);
+    }
+    MessageSearchIndex messageSearchIndex = this.messageSearchIndex;
+    if (messageSearchIndex != null) {
+      messageSearchIndex.setMessages(messages);
+    }
+  }
+
+  private List<Message> loadMessagesByAuthor(UUID userId, MessageCursor before, int limit) {
+    try {
+      return before == null
+          ? persistentStorageAgent.loadMessagesByAuthor(userId, null, null, limit)
+          : persistentStorageAgent.loadMessagesByAuthor(
+              userId, before.getCreationTime(), before.getMessageId(), limit);
+    } catch (PersistentDataStoreException e) {
+      throw new RuntimeException("Couldn't load the messages sent by " + userId, e);
+    }
+  }
+
+  /** Adds a Message to the conversation and author indexes. */
+  private void indexMessage(Message message) {
+    indexMessage(messagesByConversation, messagesByAuthor, message);
+  }
+
+  private static void indexMessage(
+      Map<UUID, List<Message>> messagesByConversation,
+      Map<UUID, List<Message>> messagesByAuthor,
+      Message message) {
+    insertInOrder(
+        messagesByConversation.computeIfAbsent(message.getConversationId(), id -> new ArrayList<>()),
+        message);
+    insertInOrder(
+        messagesByAuthor.computeIfAbsent(message.getAuthorId(), id -> new ArrayList<>()), message);
+  }
+
+  /**
+   * Adds a Message to an index list, keeping that list in HISTORY_ORDER. Messages almost always
+   * arrive in order, so the insertion point is searched from the end.
+   */
+  static void insertInOrder(List<Message> indexedMessages, Message message) {
+    synchronized (indexedMessages) {
+      int index = indexedMessages.size();
+      while (index > 0
+          && HISTORY_ORDER.compare(indexedMessages.get(index - 1), message) > 0) {
+        index--;
+      }
+      indexedMessages.add(index, message);
+    }
+  }
+
+  /**
+   * Returns the index of the first Message in an index list at or after the given cursor, or the
+   * size of the list if there is none. Callers must hold the list's lock.
+   */
+  private static int indexOfFirstAtOrAfter(List<Message> indexedMessages, MessageCursor cursor) {
+    int low = 0;
+    int high = indexedMessages.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (cursor.compareTo(indexedMessages.get(mid)) > 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Returns the index of the first Message in an index list strictly after the given cursor, or the
+   * size of the list if there is none. Callers must hold the list's lock.
+   */
+  private static int indexOfFirstAfter(List<Message> indexedMessages, MessageCursor cursor) {
+    int low = 0;
+    int high = indexedMessages.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (cursor.compareTo(indexedMessages.get(mid)) >= 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
   }
 
 }
@@ -0,0 +1,123 @@
+package codeu.model.store.basic;
+
+import java.util.Arrays;
+
+/**
+ * The documents containing one term in MessageSearchIndex, in increasing order of document number,
+ * each with the number of times the term occurs in it. Entries are appended as two varints: the gap
+ * since the previous document number, and the count. Gaps are small for common terms, so most
+ * entries take two or three bytes.
+ *
+ * <p>Entries are only ever appended, and a full buffer is replaced by a larger copy, so the first
+ * size() bytes of a buffer never change once written. A reader that took buffer() and size() under
+ * the index's lock can therefore decode them without it. Not otherwise thread-safe.
+ */
+class PostingList {
+
+  private byte[] buffer = new byte[8];
+  private int size;
+  private int documentCount;
+  private int lastDocument = -1;
+
+  /** Appends a document, which must be numbered higher than every document already added. */
+  void add(int document, int count) {
+    if (document <= lastDocument) {
+      throw new IllegalArgumentException(
+          "document " + document + " is not after " + lastDocument);
+    }
+    // at most five bytes for each varint
+    if (size + 10 > buffer.length) {
+      buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + 10));
+    }
+    writeVarint(document - lastDocument);
+    writeVarint(count);
+    lastDocument = document;
+    documentCount++;
+  }
+
+  /** Appends every entry of another list, whose documents must all be numbered higher. */
+  void addAll(PostingList other) {
+    Reader reader = new Reader(other.buffer, other.size);
+    while (reader.next()) {
+      add(reader.document(), reader.count());
+    }
+  }
+
+  /** Returns the number of documents in this list. */
+  int documentCount() {
+    return documentCount;
+  }
+
+  byte[] buffer() {
+    return buffer;
+  }
+
+  int size() {
+    return size;
+  }
+
+  private void writeVarint(int value) {
+    while ((value & ~0x7F) != 0) {
+      buffer[size++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    buffer[size++] = (byte) value;
+  }
+
+  /** Decodes the entries in the first size bytes of a buffer, in order. */
+  static class Reader {
+
+    private final byte[] buffer;
+    private final int size;
+    private int position;
+    private int document = -1;
+    private int count;
+
+    Reader(byte[] buffer, int size) {
+      this.buffer = buffer;
+      this.size = size;
+    }
+
+    /** Moves to the next entry, returning false if there are no more. */
+    boolean next() {
+      if (position >= size) {
+        return false;
+      }
+      document += readVarint();
+      count = readVarint();
+      return true;
+    }
+
+    /**
+     * Moves to the first entry for a document numbered at least target, returning false if there
+     * is none. Does not move back if the current entry is already there.
+     */
+    boolean advanceTo(int target) {
+      while (document < target) {
+        if (!next()) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    int document() {
+      return document;
+    }
+
+    int count() {
+      return count;
+    }
+
+    private int readVarint() {
+      int value = 0;
+      for (int shift = 0; ; shift += 7) {
+        byte b = buffer[position++];
+        value |= (b & 0x7F) << shift;
+        if (b >= 0) {
+          return value;
+        }
+      }
+    }
+  }
+}
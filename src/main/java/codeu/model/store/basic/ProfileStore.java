@@ -3,18 +3,21 @@ package codeu.model.store.basic;
 
 import codeu.model.data.Profile;
 import codeu.model.store.persistence.PersistentStorageAgent;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /*
  * Store class that uses in-memory data structures to hold values and automatically loads from and
  * saves to PersistentStorageAgent. It's a singleton so all servlet classes can access the same
  * instance.
+ *
+ * Profiles are created once per user, so the copy-on-write list keeps reads lock-free and safe
+ * during concurrent requests.
  */
 
 public class ProfileStore {
-  private static ProfileStore instance;
+  private static volatile ProfileStore instance;
 
   /*
    * Returns the singleton instance of ProfileStore that should be shared between all servlet
@@ -22,7 +25,11 @@ public class ProfileStore {
    */
   public static ProfileStore getInstance() {
     if (instance == null) {
-      instance = new ProfileStore(PersistentStorageAgent.getInstance());
+      synchronized (ProfileStore.class) {
+        if (instance == null) {
+          instance = new ProfileStore(PersistentStorageAgent.getInstance());
+        }
+      }
     }
     return instance;
   }
@@ -43,12 +50,12 @@ public class ProfileStore {
   private PersistentStorageAgent persistentStorageAgent;
 
   /* The in-memory list of Profiles. */
-  private List<Profile> profiles;
+  private volatile List<Profile> profiles;
 
   /* This class is a singleton, so its constructor is private. Call getInstance() instead. */
   private ProfileStore(PersistentStorageAgent persistentStorageAgent) {
     this.persistentStorageAgent = persistentStorageAgent;
-    profiles = new ArrayList<>();
+    profiles = new CopyOnWriteArrayList<>();
   }
 
   /* Access the current set of profiles known to the application. */
@@ -64,7 +71,7 @@ public class ProfileStore {
 
   /* Sets the List of Profiles stored by this profileStore. */
   public void setProfiles(List<Profile> profiles) {
-    this.profiles = profiles;
+    this.profiles = new CopyOnWriteArrayList<>(profiles);
   }
 
   /* Update an existing profile */
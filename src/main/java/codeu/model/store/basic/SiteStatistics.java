@@ -0,0 +1,239 @@
+package codeu.model.store.basic;
+
+import codeu.model.data.Message;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Site-wide statistics for the admin page, kept up to date as Users, Conversations and Messages are
+ * added instead of being recomputed from every stored object on request.
+ *
+ * <p>Besides the totals, it counts each author's Messages over the last WINDOW, in one bucket per
+ * minute. When a minute falls out of the window its bucket is subtracted from the counts. The
+ * authors are also grouped by their count, and the highest count is tracked, so the most active
+ * author is read in constant time. The highest count only falls as far as Messages expire, so
+ * keeping it current costs constant amortized time per Message.
+ *
+ * <p>This is a singleton; the single instance is accessed through getInstance().
+ */
+public class SiteStatistics {
+
+  /** How far back Messages count towards the most active author. */
+  public static final Duration WINDOW = Duration.ofHours(24);
+
+  /** The number of one-minute buckets in the window. */
+  private static final int BUCKETS = (int) WINDOW.toMinutes();
+
+  private static volatile SiteStatistics instance;
+
+  /**
+   * Returns the singleton instance of SiteStatistics that should be shared between all stores and
+   * servlets. Do not call this function from a test; use getTestInstance() instead.
+   */
+  public static SiteStatistics getInstance() {
+    if (instance == null) {
+      synchronized (SiteStatistics.class) {
+        if (instance == null) {
+          instance = new SiteStatistics(Clock.systemUTC());
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Instance getter function used for testing. Supply a fixed or mock Clock.
+   *
+   * @param clock the clock that decides which Messages are still in the window
+   */
+  public static SiteStatistics getTestInstance(Clock clock) {
+    return new SiteStatistics(clock);
+  }
+
+  private final Clock clock;
+
+  private final AtomicLong userCount = new AtomicLong();
+  private final AtomicLong conversationCount = new AtomicLong();
+  private final AtomicLong messageCount = new AtomicLong();
+
+  // The window state below is guarded by this.
+
+  /** Per-author Message counts for each minute in the window, indexed by minute modulo BUCKETS. */
+  private final Map<UUID, Integer>[] buckets;
+
+  /** The latest minute, in minutes since the epoch, that the window has been advanced to. */
+  private long currentMinute;
+
+  /** Each author's Message count over the window. Authors with no Messages are removed. */
+  private final Map<UUID, Integer> countsByAuthor = new HashMap<>();
+
+  /** The authors with each nonzero count. Empty sets are removed. */
+  private final Map<Integer, Set<UUID>> authorsByCount = new HashMap<>();
+
+  /** The highest count in countsByAuthor, or 0 if it is empty. */
+  private int maxCount;
+
+  /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
+  @SuppressWarnings("unchecked")
+  private SiteStatistics(Clock clock) {
+    this.clock = clock;
+    buckets = new Map[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets[i] = new HashMap<>();
+    }
+    currentMinute = nowMinute();
+  }
+
+  /** Counts a newly added User. */
+  public void userAdded() {
+    userCount.incrementAndGet();
+  }
+
+  /** Sets the total number of Users, as loaded from Datastore. */
+  public void setUserCount(long count) {
+    userCount.set(count);
+  }
+
+  /** Counts a newly added Conversation. */
+  public void conversationAdded() {
+    conversationCount.incrementAndGet();
+  }
+
+  /** Sets the total number of Conversations, as loaded from Datastore. */
+  public void setConversationCount(long count) {
+    conversationCount.set(count);
+  }
+
+  /** Counts a newly added Message, towards the total and its author's recent activity. */
+  public void messageAdded(Message message) {
+    messageCount.incrementAndGet();
+    synchronized (this) {
+      advance();
+      record(message);
+    }
+  }
+
+  /**
+   * Sets the total number of Messages and rebuilds the recent activity counts, as loaded from
+   * Datastore.
+   *
+   * @param count the total number of Messages
+   * @param messages the Messages to count recent activity from; any created before the window are
+   *     ignored, so this may be every Message or only the recent ones
+   */
+  public void setMessages(long count, Collection<Message> messages) {
+    messageCount.set(count);
+    synchronized (this) {
+      for (Map<UUID, Integer> bucket : buckets) {
+        bucket.clear();
+      }
+      countsByAuthor.clear();
+      authorsByCount.clear();
+      maxCount = 0;
+      currentMinute = nowMinute();
+      for (Message message : messages) {
+        record(message);
+      }
+    }
+  }
+
+  public long getUserCount() {
+    return userCount.get();
+  }
+
+  public long getConversationCount() {
+    return conversationCount.get();
+  }
+
+  public long getMessageCount() {
+    return messageCount.get();
+  }
+
+  /**
+   * Returns the ID of the author of the most Messages over the last WINDOW, or null if no Messages
+   * were sent in that time. Ties are broken arbitrarily.
+   */
+  public synchronized UUID getMostActiveAuthor() {
+    advance();
+    if (maxCount == 0) {
+      return null;
+    }
+    return authorsByCount.get(maxCount).iterator().next();
+  }
+
+  /** Returns the number of Messages the most active author sent over the last WINDOW. */
+  public synchronized int getMostActiveMessageCount() {
+    advance();
+    return maxCount;
+  }
+
+  private long nowMinute() {
+    return minuteOf(clock.millis());
+  }
+
+  private static long minuteOf(long epochMillis) {
+    return Math.floorDiv(epochMillis, Duration.ofMinutes(1).toMillis());
+  }
+
+  /** Moves the window up to the current minute, expiring the buckets that fall out of it. */
+  private void advance() {
+    long now = nowMinute();
+    if (now <= currentMinute) {
+      return;
+    }
+    // Each minute entered reuses the bucket of the minute that just left the window.
+    long first = Math.max(currentMinute + 1, now - BUCKETS + 1);
+    for (long minute = first; minute <= now; minute++) {
+      Map<UUID, Integer> bucket = buckets[(int) Math.floorMod(minute, BUCKETS)];
+      for (Map.Entry<UUID, Integer> expired : bucket.entrySet()) {
+        adjust(expired.getKey(), -expired.getValue());
+      }
+      bucket.clear();
+    }
+    currentMinute = now;
+  }
+
+  /**
+   * Adds a Message to its minute's bucket, if that minute is in the window. A Message stamped later
+   * than the current minute, from a clock running ahead, counts as sent now.
+   */
+  private void record(Message message) {
+    long minute = Math.min(currentMinute, minuteOf(message.getCreationTime().toEpochMilli()));
+    if (minute <= currentMinute - BUCKETS) {
+      return;
+    }
+    buckets[(int) Math.floorMod(minute, BUCKETS)].merge(message.getAuthorId(), 1, Integer::sum);
+    adjust(message.getAuthorId(), 1);
+  }
+
+  /** Changes an author's count, moving them between the count groups and keeping maxCount. */
+  private void adjust(UUID authorId, int delta) {
+    int previous = countsByAuthor.getOrDefault(authorId, 0);
+    int updated = previous + delta;
+    if (previous > 0) {
+      Set<UUID> authors = authorsByCount.get(previous);
+      authors.remove(authorId);
+      if (authors.isEmpty()) {
+        authorsByCount.remove(previous);
+      }
+    }
+    if (updated > 0) {
+      countsByAuthor.put(authorId, updated);
+      authorsByCount.computeIfAbsent(updated, c -> new LinkedHashSet<>()).add(authorId);
+      maxCount = Math.max(maxCount, updated);
+    } else {
+      countsByAuthor.remove(authorId);
+    }
+    // maxCount only falls as far as Messages have expired, so this loop is amortized constant.
+    while (maxCount > 0 && !authorsByCount.containsKey(maxCount)) {
+      maxCount--;
+    }
+  }
+}
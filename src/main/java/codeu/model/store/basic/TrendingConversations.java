@@ -0,0 +1,233 @@
+package codeu.model.store.basic;
+
+import codeu.model.data.Message;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Finds the Conversations with the most Messages right now. Each Message counts with a weight that
+ * halves every HALF_LIFE, so a Conversation's score is an exponentially decayed Message count and
+ * recent Messages outweigh old ones.
+ *
+ * <p>Scores are kept in a CountMinSketch, so memory stays fixed however many Conversations there
+ * are, and only the {@code capacity} highest are tracked by ID. Instead of decaying every score as
+ * time passes, each new Message is weighted up by how much later it came than a fixed landmark
+ * time; scores are divided by the same factor when read. Every score then decays at the same rate
+ * without being touched, so the ranking of the tracked Conversations only changes when one of them
+ * gets a Message, and the hot list is read in O(capacity).
+ *
+ * <p>This is a singleton; the single instance is accessed through getInstance().
+ */
+public class TrendingConversations {
+
+  /** How long it takes a Message's weight to halve. */
+  public static final Duration HALF_LIFE = Duration.ofMinutes(10);
+
+  /** The number of Conversations tracked by ID. */
+  static final int DEFAULT_CAPACITY = 50;
+
+  /**
+   * The lowest decayed Message count for a Conversation to be trending: about one Message in the
+   * last half-life.
+   */
+  static final double MIN_SCORE = 1;
+
+  private static final int SKETCH_DEPTH = 4;
+  private static final int SKETCH_WIDTH = 4096;
+
+  /** Messages loaded by setMessages() older than this many half-lives are skipped. */
+  private static final int LOADED_HALF_LIVES = 20;
+
+  /** Weights are rescaled once they reach this, well before a double overflows. */
+  private static final double MAX_WEIGHT = 1e100;
+
+  private static volatile TrendingConversations instance;
+
+  /**
+   * Returns the singleton instance of TrendingConversations that should be shared between all
+   * stores and servlets. Do not call this function from a test; use getTestInstance() instead.
+   */
+  public static TrendingConversations getInstance() {
+    if (instance == null) {
+      synchronized (TrendingConversations.class) {
+        if (instance == null) {
+          instance = new TrendingConversations(Clock.systemUTC(), DEFAULT_CAPACITY);
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Instance getter function used for testing.
+   *
+   * @param clock the clock that Message weights decay by
+   * @param capacity the number of Conversations tracked by ID
+   */
+  public static TrendingConversations getTestInstance(Clock clock, int capacity) {
+    return new TrendingConversations(clock, capacity);
+  }
+
+  private final Clock clock;
+  private final int capacity;
+
+  /** The decay rate, per millisecond. */
+  private final double decayPerMilli = Math.log(2) / HALF_LIFE.toMillis();
+
+  // The state below is guarded by this.
+
+  /** Weighted Message counts of every Conversation, scaled up relative to landmarkMillis. */
+  private final CountMinSketch sketch = new CountMinSketch(SKETCH_DEPTH, SKETCH_WIDTH);
+
+  /** The time at which a Message has weight 1. */
+  private long landmarkMillis;
+
+  /** The tracked Conversations, by ID. */
+  private final Map<UUID, Candidate> tracked = new HashMap<>();
+
+  /** The tracked Conversations, lowest score first. */
+  private final TreeSet<Candidate> ranked = new TreeSet<>(Candidate.ORDER);
+
+  /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
+  private TrendingConversations(Clock clock, int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    this.clock = clock;
+    this.capacity = capacity;
+    landmarkMillis = clock.millis();
+  }
+
+  /** Counts a new Message towards its Conversation's score. */
+  public synchronized void messageAdded(Message message) {
+    add(message.getConversationId(), message.getCreationTime());
+  }
+
+  /**
+   * Rebuilds the scores from the given Messages, as loaded from Datastore. Messages more than
+   * LOADED_HALF_LIVES half-lives old would add almost nothing and are skipped, so this may be only
+   * the recent ones.
+   */
+  public synchronized void setMessages(Collection<Message> messages) {
+    sketch.clear();
+    tracked.clear();
+    ranked.clear();
+    landmarkMillis = clock.millis();
+    Instant oldest = clock.instant().minus(HALF_LIFE.multipliedBy(LOADED_HALF_LIVES));
+    for (Message message : messages) {
+      if (message.getCreationTime().isAfter(oldest)) {
+        add(message.getConversationId(), message.getCreationTime());
+      }
+    }
+  }
+
+  /**
+   * Returns up to {@code limit} trending Conversations, busiest first. Only Conversations with
+   * about a Message in the last HALF_LIFE or more are returned.
+   */
+  public synchronized List<Trend> getTrending(int limit) {
+    double decay = Math.exp(-decayPerMilli * (clock.millis() - landmarkMillis));
+    List<Trend> trending = new ArrayList<>();
+    for (Iterator<Candidate> candidates = ranked.descendingIterator();
+        candidates.hasNext() && trending.size() < limit; ) {
+      Candidate candidate = candidates.next();
+      double score = candidate.score * decay;
+      if (score < MIN_SCORE) {
+        break;
+      }
+      trending.add(new Trend(candidate.conversationId, score * decayPerMilli * 60000));
+    }
+    return trending;
+  }
+
+  private void add(UUID conversationId, Instant creationTime) {
+    // A Message stamped in the future, from a clock running ahead, counts as sent now.
+    long millis = Math.min(creationTime.toEpochMilli(), clock.millis());
+    double weight = Math.exp(decayPerMilli * (millis - landmarkMillis));
+    if (weight > MAX_WEIGHT) {
+      rescale(millis);
+      weight = 1;
+    }
+    double score = sketch.add(conversationId, weight);
+
+    Candidate candidate = tracked.get(conversationId);
+    if (candidate != null) {
+      ranked.remove(candidate);
+      candidate.score = score;
+      ranked.add(candidate);
+      return;
+    }
+    if (tracked.size() >= capacity) {
+      Candidate lowest = ranked.first();
+      if (score <= lowest.score) {
+        return;
+      }
+      ranked.pollFirst();
+      tracked.remove(lowest.conversationId);
+    }
+    candidate = new Candidate(conversationId, score);
+    tracked.put(conversationId, candidate);
+    ranked.add(candidate);
+  }
+
+  /** Moves the landmark to the given time, dividing every stored score down to match. */
+  private void rescale(long newLandmarkMillis) {
+    double factor = Math.exp(-decayPerMilli * (newLandmarkMillis - landmarkMillis));
+    sketch.scale(factor);
+    // Scores that underflow to the same value can swap order, so re-sort rather than edit in place.
+    List<Candidate> candidates = new ArrayList<>(ranked);
+    ranked.clear();
+    for (Candidate candidate : candidates) {
+      candidate.score *= factor;
+      ranked.add(candidate);
+    }
+    landmarkMillis = newLandmarkMillis;
+  }
+
+  /** A tracked Conversation and its scaled score. */
+  private static class Candidate {
+
+    static final Comparator<Candidate> ORDER =
+        Comparator.<Candidate>comparingDouble(candidate -> candidate.score)
+            .thenComparing(candidate -> candidate.conversationId);
+
+    final UUID conversationId;
+    double score;
+
+    Candidate(UUID conversationId, double score) {
+      this.conversationId = conversationId;
+      this.score = score;
+    }
+  }
+
+  /** A trending Conversation and how busy it is. */
+  public static class Trend {
+
+    private final UUID conversationId;
+    private final double messagesPerMinute;
+
+    Trend(UUID conversationId, double messagesPerMinute) {
+      this.conversationId = conversationId;
+      this.messagesPerMinute = messagesPerMinute;
+    }
+
+    public UUID getConversationId() {
+      return conversationId;
+    }
+
+    /** Returns the Conversation's recent rate of Messages, weighted towards the newest. */
+    public double getMessagesPerMinute() {
+      return messagesPerMinute;
+    }
+  }
+}
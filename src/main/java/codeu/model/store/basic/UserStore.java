@@ -18,17 +18,31 @@ import codeu.model.data.User;
 import codeu.model.store.persistence.PersistentStorageAgent;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Store class that uses in-memory data structures to hold values and automatically loads from and
  * saves to PersistentStorageAgent. It's a singleton so all servlet classes can access the same
  * instance.
+ *
+ * <p>This class is safe to use from concurrent requests. Users are added rarely and read often, so
+ * the list of Users is copy-on-write and the indexes are concurrent maps.
  */
 public class UserStore {
 
+  /** Notified when an existing User's name changes. */
+  public interface RenameListener {
+    void userRenamed(User user);
+  }
+
   /** Singleton instance of UserStore. */
-  private static UserStore instance;
+  private static volatile UserStore instance;
 
   /**
    * Returns the singleton instance of UserStore that should be shared between all servlet classes.
@@ -36,7 +50,13 @@ public class UserStore {
    */
   public static UserStore getInstance() {
     if (instance == null) {
-      instance = new UserStore(PersistentStorageAgent.getInstance());
+      synchronized (UserStore.class) {
+        if (instance == null) {
+          UserStore userStore = new UserStore(PersistentStorageAgent.getInstance());
+          userStore.setSiteStatistics(SiteStatistics.getInstance());
+          instance = userStore;
+        }
+      }
     }
     return instance;
   }
@@ -56,16 +76,33 @@ public class UserStore {
   private PersistentStorageAgent persistentStorageAgent;
 
   /** The in-memory list of Users. */
-  private List<User> users;
+  private volatile List<User> users;
+  /** Index from username to User, kept consistent with the list of Users. */
+  private volatile Map<String, User> usersByName;
+  /** Index from User ID to User, kept consistent with the list of Users. */
+  private volatile Map<UUID, User> usersById;
+  /**
+   * Index from search key to User, kept consistent with the list of Users. It is sorted, so the
+   * Users whose names start with a prefix are next to each other.
+   */
+  private volatile NavigableMap<String, User> usersBySearchKey;
   /** The in-memory list of Admins. */
   private List<String> adminUsernames;
+  /** Listeners notified of renames by updateUser(). */
+  private final List<RenameListener> renameListeners = new CopyOnWriteArrayList<>();
+
+  /** Kept up to date with the Users added, or null if there is none. */
+  private volatile SiteStatistics siteStatistics;
 
   /** This class is a singleton, so its constructor is private. Call getInstance() instead. */
   private UserStore(PersistentStorageAgent persistentStorageAgent) {
     this.persistentStorageAgent = persistentStorageAgent;
-    users = new ArrayList<>();
+    users = new CopyOnWriteArrayList<>();
+    usersByName = new ConcurrentHashMap<>();
+    usersById = new ConcurrentHashMap<>();
+    usersBySearchKey = new ConcurrentSkipListMap<>();
 
-    adminUsernames = new ArrayList<>();
+    adminUsernames = new CopyOnWriteArrayList<>();
     adminUsernames.add("Claguemeister");
     adminUsernames.add("Cristameister");
     adminUsernames.add("Gonzalomeister");
@@ -77,13 +114,10 @@ public class UserStore {
    * @return null if username does not match any existing User.
    */
   public User getUser(String username) {
-    // This approach will be pretty slow if we have many users.
-    for (User user : users) {
-      if (user.getName().equals(username)) {
-        return user;
-      }
+    if (username == null) {
+      return null;
     }
-    return null;
+    return usersByName.get(username);
   }
 
   public List<User> getUsers(){
@@ -99,12 +133,34 @@ public class UserStore {
    * @return null if the UUID does not match any existing User.
    */
   public User getUser(UUID id) {
-    for (User user : users) {
-      if (user.getId().equals(id)) {
-        return user;
+    if (id == null) {
+      return null;
+    }
+    return usersById.get(id);
+  }
+
+  /**
+   * Returns up to {@code limit} Users whose names start with a prefix, ignoring case, sorted by
+   * name. This takes time logarithmic in the number of Users plus linear in the number returned.
+   */
+  public List<User> searchUsersByName(String prefix, int limit) {
+    String start = prefix.toLowerCase(Locale.ROOT);
+    List<User> matches = new ArrayList<>();
+    for (Map.Entry<String, User> entry : usersBySearchKey.tailMap(start).entrySet()) {
+      if (matches.size() >= limit || !entry.getKey().startsWith(start)) {
+        break;
       }
+      matches.add(entry.getValue());
     }
-    return null;
+    return matches;
+  }
+
+  /**
+   * Sets the SiteStatistics kept up to date with the Users in this store. This function provides a
+   * common setup method for use by the test framework or getInstance().
+   */
+  public void setSiteStatistics(SiteStatistics siteStatistics) {
+    this.siteStatistics = siteStatistics;
   }
 
   /**
@@ -112,25 +168,50 @@ public class UserStore {
    * to add a new user, not to update an existing user.
    */
   public void addUser(User user) {
-    users.add(user);
+    synchronized (this) {
+      users.add(user);
+      indexUser(user);
+    }
+    SiteStatistics siteStatistics = this.siteStatistics;
+    if (siteStatistics != null) {
+      siteStatistics.userAdded();
+    }
     persistentStorageAgent.writeThrough(user);
   }
 
   /**
-   * Update an existing User.
+   * Update an existing User. The indexes are repointed at the given object, so a User whose name
+   * changed is found under the new name only.
    */
   public void updateUser(User user) {
+    User previous;
+    synchronized (this) {
+      previous = usersById.get(user.getId());
+      if (previous != null) {
+        usersByName.remove(previous.getName(), previous);
+        usersBySearchKey.remove(searchKey(previous.getName()), previous);
+        users.set(users.indexOf(previous), user);
+      } else {
+        users.add(user);
+      }
+      indexUser(user);
+    }
+    if (previous != null && !previous.getName().equals(user.getName())) {
+      for (RenameListener listener : renameListeners) {
+        listener.userRenamed(user);
+      }
+    }
     persistentStorageAgent.writeThrough(user);
   }
 
+  /** Registers a listener to be notified whenever updateUser() changes a User's name. */
+  public void addRenameListener(RenameListener listener) {
+    renameListeners.add(listener);
+  }
+
   /** Return true if the given username is known to the application. */
   public boolean isUserRegistered(String username) {
-    for (User user : users) {
-      if (user.getName().equals(username)) {
-        return true;
-      }
-    }
-    return false;
+    return username != null && usersByName.containsKey(username);
   }
 
   /* Return true if the given username is known to be an admin. */
@@ -157,6 +238,38 @@ public class UserStore {
    * is loaded from Datastore.
    */
   public void setUsers(List<User> users) {
-    this.users = users;
+    Map<String, User> usersByName = new ConcurrentHashMap<>();
+    Map<UUID, User> usersById = new ConcurrentHashMap<>();
+    NavigableMap<String, User> usersBySearchKey = new ConcurrentSkipListMap<>();
+    for (User user : users) {
+      usersByName.put(user.getName(), user);
+      usersById.put(user.getId(), user);
+      usersBySearchKey.put(searchKey(user.getName()), user);
+    }
+    synchronized (this) {
+      this.users = new CopyOnWriteArrayList<>(users);
+      this.usersByName = usersByName;
+      this.usersById = usersById;
+      this.usersBySearchKey = usersBySearchKey;
+    }
+    SiteStatistics siteStatistics = this.siteStatistics;
+    if (siteStatistics != null) {
+      siteStatistics.setUserCount(users.size());
+    }
+  }
+
+  /** Adds a User to the name, ID and search indexes. */
+  private void indexUser(User user) {
+    usersByName.put(user.getName(), user);
+    usersById.put(user.getId(), user);
+    usersBySearchKey.put(searchKey(user.getName()), user);
+  }
+
+  /**
+   * Returns the key of a username in the search index: the name in lower case, so that searches
+   * ignore case, followed by the exact name, so that names differing only in case both fit.
+   */
+  private static String searchKey(String name) {
+    return name.toLowerCase(Locale.ROOT) + '\0' + name;
   }
 }
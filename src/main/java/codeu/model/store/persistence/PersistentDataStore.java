@@ -29,17 +29,29 @@ import codeu.model.store.persistence.PersistentDataStoreException;
 import com.google.appengine.api.datastore.AsyncDatastoreService;
 import com.google.appengine.api.datastore.DatastoreServiceFactory;
 import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.EntityNotFoundException;
+import com.google.appengine.api.datastore.FetchOptions;
+import com.google.appengine.api.datastore.Key;
+import com.google.appengine.api.datastore.KeyFactory;
 import com.google.appengine.api.datastore.PreparedQuery;
 import com.google.appengine.api.datastore.Query;
+import com.google.appengine.api.datastore.Query.CompositeFilterOperator;
+import com.google.appengine.api.datastore.Query.Filter;
+import com.google.appengine.api.datastore.Query.FilterOperator;
+import com.google.appengine.api.datastore.Query.FilterPredicate;
 import com.google.appengine.api.datastore.Query.SortDirection;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.lang.InterruptedException;
 import java.util.concurrent.ExecutionException;
 
@@ -54,9 +66,17 @@ import com.google.appengine.api.blobstore.BlobstoreServiceFactory;
  * This class handles all interactions with Google App Engine's Datastore service. On startup it
  * sets the state of the applications's data objects from the current contents of its Datastore. It
  * also performs writes of new of modified objects back to the Datastore.
+ *
+ * <p>Message and Activity entities carry their creation time twice: as the creation_time string
+ * that is read back, and as creation_nanos, nanoseconds since the epoch, which every time-range
+ * filter and sort uses. Instant strings don't sort in time order, since a whole second prints
+ * without a fraction and fractions print with varying lengths.
  */
 public class PersistentDataStore {
 
+  /** The number of entities read or written per call by backfillCreationNanos(). */
+  private static final int BACKFILL_BATCH_SIZE = 500;
+
   // Handle to Google AppEngine's Datastore service.
   private AsyncDatastoreService datastore;
 
@@ -232,73 +252,271 @@ public class PersistentDataStore {
    *     Datastore service
    */
   public List<Message> loadMessages() throws PersistentDataStoreException {
-
-    List<Message> messages = new ArrayList<>();
-
     // Retrieve all messages from the datastore.
-    Query query = new Query("chat-messages").addSort("creation_time", SortDirection.ASCENDING);
+    Query query = new Query("chat-messages").addSort("creation_nanos", SortDirection.ASCENDING);
+    return loadMessages(query, FetchOptions.Builder.withDefaults());
+  }
+
+  /**
+   * Reads every Message from the Datastore service in ascending order by creation time and hands
+   * them to {@code batches} batchSize at a time, fetching entities in chunks of the same size. Unlike
+   * loadMessages(), only one batch is held at a time, for callers that look at each Message once.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the load from the
+   *     Datastore service
+   */
+  public void scanMessages(int batchSize, Consumer<List<Message>> batches)
+      throws PersistentDataStoreException {
+    Query query = new Query("chat-messages").addSort("creation_nanos", SortDirection.ASCENDING);
     PreparedQuery results = datastore.prepare(query);
 
-    for (Entity entity : results.asIterable()) {
-      try {
-        UUID uuid = UUID.fromString((String) entity.getProperty("uuid"));
-        UUID conversationUuid = UUID.fromString((String) entity.getProperty("conv_uuid"));
-        UUID authorUuid = UUID.fromString((String) entity.getProperty("author_uuid"));
-        Instant creationTime = Instant.parse((String) entity.getProperty("creation_time"));
-        String pairContents = (String) entity.getProperty("content");
-
-				List<String> contentsList = Arrays.asList(pairContents.split(","));
-				// BlobKey media = new BlobKey(contentsList.get(1));
-				Pair content = null;
-				if(contentsList.size() < 2){ //This is to accomodate for the legacy version!
-					content = new Pair<String, BlobKey>(contentsList.get(0), null);
-				} else{ //This is the revamped version
-					BlobKey blob = new BlobKey(contentsList.get(1));
-					content = new Pair<String, BlobKey>(contentsList.get(0), blob);
-				}
+    List<Message> batch = new ArrayList<>(batchSize);
+    for (Entity entity : results.asIterable(FetchOptions.Builder.withChunkSize(batchSize))) {
+      batch.add(toMessage(entity));
+      if (batch.size() == batchSize) {
+        batches.accept(batch);
+        batch = new ArrayList<>(batchSize);
+      }
+    }
+    if (!batch.isEmpty()) {
+      batches.accept(batch);
+    }
+  }
 
-        Message message = new Message(uuid, conversationUuid, authorUuid, content, creationTime);
+  /**
+   * Loads the Message objects in one Conversation from the Datastore service and returns them in a
+   * List, sorted in ascending order by creation time. Needs the conv_uuid + creation_nanos index
+   * from datastore-indexes.xml.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the load from the
+   *     Datastore service
+   */
+  public List<Message> loadMessagesInConversation(UUID conversationId)
+      throws PersistentDataStoreException {
+    Query query =
+        new Query("chat-messages")
+            .setFilter(
+                new FilterPredicate("conv_uuid", FilterOperator.EQUAL, conversationId.toString()))
+            .addSort("creation_nanos", SortDirection.ASCENDING);
+    return loadMessages(query, FetchOptions.Builder.withDefaults());
+  }
+
+  /**
+   * Loads the newest {@code limit} Message objects sent by one User positioned strictly before the
+   * Message created at {@code before} with ID {@code beforeId}, sorted in ascending order by
+   * creation time and then by ID. Needs the author_uuid + creation_nanos index from
+   * datastore-indexes.xml.
+   *
+   * <p>Datastore can only filter on the creation time, so Messages sharing the cursor's creation
+   * time are filtered here, and Messages sharing the oldest loaded creation time are all read
+   * before the page is cut, so that none of them is skipped by the next page.
+   *
+   * @param before only messages positioned before this creation time and {@code beforeId} are
+   *     loaded, or null for the newest messages
+   * @throws PersistentDataStoreException if an error was detected during the load from the
+   *     Datastore service
+   */
+  public List<Message> loadMessagesByAuthor(
+      UUID authorId, Instant before, UUID beforeId, int limit)
+      throws PersistentDataStoreException {
+    Filter filter = new FilterPredicate("author_uuid", FilterOperator.EQUAL, authorId.toString());
+    if (before != null) {
+      filter =
+          CompositeFilterOperator.and(
+              filter,
+              new FilterPredicate(
+                  "creation_nanos", FilterOperator.LESS_THAN_OR_EQUAL, toEpochNanos(before)));
+    }
+    Query query =
+        new Query("chat-messages")
+            .setFilter(filter)
+            .addSort("creation_nanos", SortDirection.DESCENDING);
 
+    List<Message> messages = new ArrayList<>();
+    for (Entity entity : datastore.prepare(query).asIterable(FetchOptions.Builder.withDefaults())) {
+      Message message = toMessage(entity);
+      if (messages.size() >= limit
+          && message.getCreationTime().isBefore(
+              messages.get(messages.size() - 1).getCreationTime())) {
+        break;
+      }
+      if (before == null
+          || message.getCreationTime().isBefore(before)
+          || message.getId().compareTo(beforeId) < 0) {
         messages.add(message);
-      } catch (Exception e) {
-        // In a production environment, errors should be very rare. Errors which may
-        // occur include network errors, Datastore service errors, authorization errors,
-        // database entity definition mismatches, or service mismatches.
-        throw new PersistentDataStoreException(e);
       }
     }
+    messages.sort(Comparator.comparing(Message::getCreationTime).thenComparing(Message::getId));
+    return new ArrayList<>(messages.subList(Math.max(0, messages.size() - limit), messages.size()));
+  }
+
+  /**
+   * Loads the Message objects created at or after {@code since}, sorted in ascending order by
+   * creation time. Uses the built-in creation_nanos index.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the load from the
+   *     Datastore service
+   */
+  public List<Message> loadMessagesSince(Instant since) throws PersistentDataStoreException {
+    Query query =
+        new Query("chat-messages")
+            .setFilter(
+                new FilterPredicate(
+                    "creation_nanos", FilterOperator.GREATER_THAN_OR_EQUAL, toEpochNanos(since)))
+            .addSort("creation_nanos", SortDirection.ASCENDING);
+    return loadMessages(query, FetchOptions.Builder.withDefaults());
+  }
+
+  /**
+   * Counts the Message entities in the Datastore service without reading every key. Datastore's
+   * built-in statistics, which it recomputes offline roughly once a day, give the count as of their
+   * timestamp, and only the Messages created since then are counted with a keys-only query. Without
+   * statistics, as in a new or local datastore, every key is counted instead. The statistics are
+   * not transactional, so the result is an estimate until the next time they are recomputed.
+   *
+   * @throws PersistentDataStoreException if an error was detected during the count
+   */
+  public int countMessages() throws PersistentDataStoreException {
+    try {
+      List<Entity> stats =
+          datastore
+              .prepare(
+                  new Query("__Stat_Kind__")
+                      .setFilter(
+                          new FilterPredicate("kind_name", FilterOperator.EQUAL, "chat-messages")))
+              .asList(FetchOptions.Builder.withLimit(1));
+      if (stats.isEmpty()) {
+        return datastore
+            .prepare(new Query("chat-messages").setKeysOnly())
+            .countEntities(FetchOptions.Builder.withDefaults());
+      }
+      Entity stat = stats.get(0);
+      long counted = ((Number) stat.getProperty("count")).longValue();
+      Instant countedAt = ((Date) stat.getProperty("timestamp")).toInstant();
+      int since =
+          datastore
+              .prepare(
+                  new Query("chat-messages")
+                      .setKeysOnly()
+                      .setFilter(
+                          new FilterPredicate(
+                              "creation_nanos",
+                              FilterOperator.GREATER_THAN_OR_EQUAL,
+                              toEpochNanos(countedAt))))
+              .countEntities(FetchOptions.Builder.withDefaults());
+      return (int) Math.min(Integer.MAX_VALUE, counted + since);
+    } catch (Exception e) {
+      throw new PersistentDataStoreException(e);
+    }
+  }
+
+  private List<Message> loadMessages(Query query, FetchOptions fetchOptions)
+      throws PersistentDataStoreException {
+
+    List<Message> messages = new ArrayList<>();
+
+    PreparedQuery results = datastore.prepare(query);
+
+    for (Entity entity : results.asIterable(fetchOptions)) {
+      messages.add(toMessage(entity));
+    }
 
     return messages;
   }
 
+  static Message toMessage(Entity entity) throws PersistentDataStoreException {
+    try {
+      UUID uuid = UUID.fromString((String) entity.getProperty("uuid"));
+      UUID conversationUuid = UUID.fromString((String) entity.getProperty("conv_uuid"));
+      UUID authorUuid = UUID.fromString((String) entity.getProperty("author_uuid"));
+      Instant creationTime = Instant.parse((String) entity.getProperty("creation_time"));
+      String pairContents = (String) entity.getProperty("content");
+
+			List<String> contentsList = Arrays.asList(pairContents.split(","));
+			// BlobKey media = new BlobKey(contentsList.get(1));
+			Pair content = null;
+			if(contentsList.size() < 2){ //This is to accomodate for the legacy version!
+				content = new Pair<String, BlobKey>(contentsList.get(0), null);
+			} else{ //This is the revamped version
+				BlobKey blob = new BlobKey(contentsList.get(1));
+				content = new Pair<String, BlobKey>(contentsList.get(0), blob);
+			}
+
+      return new Message(uuid, conversationUuid, authorUuid, content, creationTime);
+    } catch (Exception e) {
+      // In a production environment, errors should be very rare. Errors which may
+      // occur include network errors, Datastore service errors, authorization errors,
+      // database entity definition mismatches, or service mismatches.
+      throw new PersistentDataStoreException(e);
+    }
+  }
+
   /**
 	 * Loads all Activity objects from the Datastore service and returns them in a List, sorted in
-	 * ascending order by creation time.
+	 * descending order by creation time.
 	 * @throws PersistentDataStoreException if an error was detected during the load from the
 	 *			Datastore service
 	 */
 
 	public List<Activity> loadActivities() throws PersistentDataStoreException {
-	List<Activity> activities = new ArrayList<>();
+		return loadActivities(null, null, Integer.MAX_VALUE);
+	}
 
-		// Retrieve all activities from the datastore.
-		Query query = new Query("chat-activities").addSort("creation_time", SortDirection.DESCENDING);
+	/**
+	 * Loads the newest {@code limit} Activity objects positioned strictly before the Activity created
+	 * at {@code before} with ID {@code beforeId} from the Datastore service and returns them in a
+	 * List, sorted in descending order by creation time and then by ID. As in
+	 * loadMessagesByAuthor(), Activities sharing the cursor's creation time are filtered here, and
+	 * all those sharing the oldest loaded creation time are read before the page is cut.
+	 *
+	 * @param before only activities positioned before this creation time and {@code beforeId} are
+	 *			loaded, or null for the newest activities
+	 * @throws PersistentDataStoreException if an error was detected during the load from the
+	 *			Datastore service
+	 */
+	public List<Activity> loadActivities(Instant before, UUID beforeId, int limit)
+			throws PersistentDataStoreException {
+		List<Activity> activities = new ArrayList<>();
+
+		// Retrieve the activities in the time range from the datastore.
+		Query query = new Query("chat-activities").addSort("creation_nanos", SortDirection.DESCENDING);
+		if (before != null) {
+			query.setFilter(
+					new FilterPredicate(
+							"creation_nanos", FilterOperator.LESS_THAN_OR_EQUAL, toEpochNanos(before)));
+		}
 		PreparedQuery results = datastore.prepare(query);
 
-		for(Entity entity : results.asIterable()) {
+		for(Entity entity : results.asIterable(FetchOptions.Builder.withDefaults())) {
+			Activity activity;
 			try {
 				ActivityType type = ActivityType.valueOf((String) entity.getProperty("activity_type"));
 				UUID uuid = UUID.fromString((String) entity.getProperty("uuid"));
 				UUID ownerId = UUID.fromString((String) entity.getProperty("ownerId"));
         UUID activityId = UUID.fromString((String) entity.getProperty("activityId"));
 				Instant creationTime = Instant.parse((String) entity.getProperty("creation_time"));
-				Activity activity = new Activity(type, uuid, ownerId, activityId, creationTime);
-				activities.add(activity);
+				String conversationId = (String) entity.getProperty("conversation_id");
+				activity = conversationId == null
+						? new Activity(type, uuid, ownerId, activityId, creationTime)
+						: new Activity(type, uuid, ownerId, activityId, creationTime,
+								UUID.fromString(conversationId));
 			} catch (Exception e) {
 				throw new PersistentDataStoreException(e);
 			}
+			if (activities.size() >= limit
+					&& activity.getCreationTime().isBefore(
+							activities.get(activities.size() - 1).getCreationTime())) {
+				break;
+			}
+			if (before == null
+					|| activity.getCreationTime().isBefore(before)
+					|| activity.getId().compareTo(beforeId) < 0) {
+				activities.add(activity);
+			}
 		}
-		return activities;
+		activities.sort(
+				Comparator.comparing(Activity::getCreationTime).thenComparing(Activity::getId).reversed());
+		return new ArrayList<>(activities.subList(0, Math.min(limit, activities.size())));
 	}
 
   /**
@@ -343,6 +561,12 @@ public class PersistentDataStore {
 
   /** Write a User object to the Datastore service. */
   public void writeThrough(User user) throws InterruptedException, ExecutionException {
+    Future result = datastore.put(toEntity(user));
+    result.get();
+  }
+
+  /** Builds the Datastore entity for a User object. */
+  Entity toEntity(User user) {
     Entity userEntity = new Entity("chat-users", user.getId().toString());
     userEntity.setProperty("uuid", user.getId().toString());
     userEntity.setProperty("profile_uuid", user.getProfileID().toString());
@@ -350,37 +574,53 @@ public class PersistentDataStore {
     userEntity.setProperty("password_hash", user.getPasswordHash());
     userEntity.setProperty("is_admin", String.valueOf(user.getType()));
     userEntity.setProperty("creation_time", user.getCreationTime().toString());
-    Future result = datastore.put(userEntity);
-    result.get();
+    return userEntity;
   }
 
   /** Write a Message object to the Datastore service. */
   public void writeThrough(Message message) throws InterruptedException, ExecutionException {
+    Future result = datastore.put(toEntity(message));
+    result.get();
+  }
+
+  /** Builds the Datastore entity for a Message object. */
+  Entity toEntity(Message message) {
     Entity messageEntity = new Entity("chat-messages", message.getId().toString());
     messageEntity.setProperty("uuid", message.getId().toString());
     messageEntity.setProperty("conv_uuid", message.getConversationId().toString());
     messageEntity.setProperty("author_uuid", message.getAuthorId().toString());
     messageEntity.setProperty("content", message.getEncodedPair()); //gonna be "String,blobkeyString"
     messageEntity.setProperty("creation_time", message.getCreationTime().toString());
-    Future result = datastore.put(messageEntity);
-    result.get();
+    messageEntity.setProperty("creation_nanos", toEpochNanos(message.getCreationTime()));
+    return messageEntity;
   }
 
   /** Write a Group object to the Datastore service. */
   public void writeThrough(Group group) throws InterruptedException, ExecutionException {
+    Future result = datastore.put(toEntity(group));
+    result.get();
+  }
+
+  /** Builds the Datastore entity for a Group object. */
+  Entity toEntity(Group group) {
     Entity groupEntity = new Entity("chat-group", group.getId().toString());
     groupEntity.setProperty("UUID", group.getId().toString());
     groupEntity.setProperty("owner", group.getOwnerId().toString());
     groupEntity.setProperty("Title", group.getTitle());
     groupEntity.setProperty("creation", group.getCreationTime().toString());
 	  groupEntity.setProperty("users", group.getAllUsers().toString());
-    Future result = datastore.put(groupEntity);
-    result.get();
+    return groupEntity;
   }
 
 
   /** Write a Conversation object to the Datastore service. */
   public void writeThrough(Conversation conversation) throws InterruptedException, ExecutionException {
+    Future result = datastore.put(toEntity(conversation));
+    result.get();
+  }
+
+  /** Builds the Datastore entity for a Conversation object. */
+  Entity toEntity(Conversation conversation) {
     Entity conversationEntity = new Entity("chat-conversations", conversation.getId().toString());
     conversationEntity.setProperty("uuid", conversation.getId().toString());
     conversationEntity.setProperty("owner_uuid", conversation.getOwnerId().toString());
@@ -396,24 +636,37 @@ public class PersistentDataStore {
 		conversationEntity.setProperty("description", conversation.getDescription()); //returns String
 		conversationEntity.setProperty("members", conversation.getMembers().toString());
 		conversationEntity.setProperty("haveVoted", conversation.getVoters().toString());
-		Future result = datastore.put(conversationEntity);
-    result.get();
+		return conversationEntity;
 	}
 
   /** Write an Activity object to the Datastore service. */
   public void writeThrough(Activity activity) throws InterruptedException, ExecutionException {
+    Future result = datastore.put(toEntity(activity));
+    result.get();
+  }
+
+  /** Builds the Datastore entity for an Activity object. */
+  Entity toEntity(Activity activity) {
 	  Entity activityEntity = new Entity("chat-activities", activity.getId().toString());
 	  activityEntity.setProperty("activity_type", activity.getType().toString());
 	  activityEntity.setProperty("uuid", activity.getId().toString());
 	  activityEntity.setProperty("ownerId", activity.getOwnerId().toString());
     activityEntity.setProperty("activityId", activity.getActivityId().toString());
 	  activityEntity.setProperty("creation_time", activity.getCreationTime().toString());
-	  Future result = datastore.put(activityEntity);
-    result.get();
+	  activityEntity.setProperty("creation_nanos", toEpochNanos(activity.getCreationTime()));
+	  if (activity.getConversationId() != null) {
+	    activityEntity.setProperty("conversation_id", activity.getConversationId().toString());
+	  }
+	  return activityEntity;
   }
 
   /** Write a Profile object to the Datastore service. */
   public void writeThrough(Profile profile) {
+    datastore.put(toEntity(profile));
+  }
+
+  /** Builds the Datastore entity for a Profile object. */
+  Entity toEntity(Profile profile) {
     Entity profileEntity = new Entity("chat-profiles", profile.getId().toString());
     profileEntity.setProperty("uuid", profile.getId().toString());
     profileEntity.setProperty("creation_time", profile.getCreationTime().toString());
@@ -427,6 +680,137 @@ public class PersistentDataStore {
     // profileEntity.setProperty("points", profile.getPoints());
     // profileEntity.setProperty("pinned_convos", profile.getPinnedConvos().toString());
     // profileEntity.setProperty("about_me", profile.getAboutMe());
-    datastore.put(profileEntity);
+    return profileEntity;
+  }
+
+  /**
+   * Write a batch of entities to the Datastore service with a single multi-entity put, waiting for
+   * the put to complete.
+   */
+  public void writeThrough(List<Entity> entities) throws InterruptedException, ExecutionException {
+    Future result = datastore.put(entities);
+    result.get();
+  }
+
+  /**
+   * Adds the creation_nanos property to the Message and Activity entities written before it
+   * existed, so that time-range queries find them. The first complete run is recorded in a
+   * chat-migrations entity, and later calls return after reading it.
+   *
+   * @throws PersistentDataStoreException if an error was detected while reading or writing the
+   *     Datastore service
+   */
+  public void backfillCreationNanos() throws PersistentDataStoreException {
+    Key done = KeyFactory.createKey("chat-migrations", "creation_nanos");
+    try {
+      if (migrated(done)) {
+        return;
+      }
+      for (String kind : Arrays.asList("chat-messages", "chat-activities")) {
+        List<Entity> batch = new ArrayList<>();
+        for (Entity entity :
+            datastore
+                .prepare(new Query(kind))
+                .asIterable(FetchOptions.Builder.withChunkSize(BACKFILL_BATCH_SIZE))) {
+          if (entity.hasProperty("creation_nanos")) {
+            continue;
+          }
+          entity.setProperty(
+              "creation_nanos",
+              toEpochNanos(Instant.parse((String) entity.getProperty("creation_time"))));
+          batch.add(entity);
+          if (batch.size() == BACKFILL_BATCH_SIZE) {
+            writeThrough(batch);
+            batch.clear();
+          }
+        }
+        if (!batch.isEmpty()) {
+          writeThrough(batch);
+        }
+      }
+      datastore.put(new Entity(done)).get();
+    } catch (Exception e) {
+      throw new PersistentDataStoreException(e);
+    }
+  }
+
+  /**
+   * Adds the conversation_id property to the Message Activity entities written before it existed,
+   * taking it from each Activity's Message, so that feeds rebuilt from Datastore reach every member
+   * of the Conversation. Activities whose Message is gone are left without one. As with
+   * backfillCreationNanos(), the first complete run is recorded in a chat-migrations entity.
+   *
+   * @throws PersistentDataStoreException if an error was detected while reading or writing the
+   *     Datastore service
+   */
+  public void backfillActivityConversations() throws PersistentDataStoreException {
+    Key done = KeyFactory.createKey("chat-migrations", "conversation_id");
+    try {
+      if (migrated(done)) {
+        return;
+      }
+      List<Entity> batch = new ArrayList<>();
+      for (Entity entity :
+          datastore
+              .prepare(new Query("chat-activities"))
+              .asIterable(FetchOptions.Builder.withChunkSize(BACKFILL_BATCH_SIZE))) {
+        if (entity.hasProperty("conversation_id")
+            || !ActivityType.MESSAGE.toString().equals(entity.getProperty("activity_type"))) {
+          continue;
+        }
+        batch.add(entity);
+        if (batch.size() == BACKFILL_BATCH_SIZE) {
+          setConversationIds(batch);
+          batch.clear();
+        }
+      }
+      if (!batch.isEmpty()) {
+        setConversationIds(batch);
+      }
+      datastore.put(new Entity(done)).get();
+    } catch (Exception e) {
+      throw new PersistentDataStoreException(e);
+    }
+  }
+
+  /** Copies each Message Activity's Conversation from its Message, with one batch get and put. */
+  private void setConversationIds(List<Entity> activities)
+      throws InterruptedException, ExecutionException {
+    List<Key> messageKeys = new ArrayList<>();
+    for (Entity activity : activities) {
+      messageKeys.add(
+          KeyFactory.createKey("chat-messages", (String) activity.getProperty("activityId")));
+    }
+    Map<Key, Entity> messages = datastore.get(messageKeys).get();
+    List<Entity> updated = new ArrayList<>();
+    for (int i = 0; i < activities.size(); i++) {
+      Entity message = messages.get(messageKeys.get(i));
+      if (message != null) {
+        activities.get(i).setProperty("conversation_id", message.getProperty("conv_uuid"));
+        updated.add(activities.get(i));
+      }
+    }
+    if (!updated.isEmpty()) {
+      writeThrough(updated);
+    }
+  }
+
+  /** Returns whether the migration recorded by a chat-migrations key has completed. */
+  private boolean migrated(Key done) throws InterruptedException, ExecutionException {
+    try {
+      datastore.get(done).get();
+      return true;
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof EntityNotFoundException) {
+        return false;
+      }
+      throw e;
+    }
+  }
+
+  /** Returns the number of nanoseconds from the epoch to an instant, for creation_nanos. */
+  static long toEpochNanos(Instant instant) {
+    return Math.addExact(
+        Math.multiplyExact(instant.getEpochSecond(), 1_000_000_000L), instant.getNano());
   }
 }
@@ -21,33 +21,53 @@ import codeu.model.data.Activity;
 import codeu.model.data.Group;
 import codeu.model.data.Profile;
 
+import codeu.metrics.Metrics;
 import codeu.model.store.persistence.PersistentDataStore;
+import com.google.appengine.api.datastore.Entity;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Consumer;
 
 import java.lang.InterruptedException;
 import java.util.concurrent.ExecutionException;
 
 /**
  * This class is the interface between the application and PersistentDataStore, which handles
- * interactions with Google App Engine's Datastore service. Currently this class simply passes
- * function calls through to PersistentDataStore, but this could be modified to make asynchronous
- * calls or to point to a different backend storage system.
+ * interactions with Google App Engine's Datastore service. By default this class simply passes
+ * function calls through to PersistentDataStore. When write-behind mode is enabled, writes are
+ * instead buffered and persisted in batches by a WriteBehindQueue, so requests no longer wait on
+ * Datastore puts.
  *
  * <p>This is a singleton; the single instance is accessed through getInstance().
  */
 public class PersistentStorageAgent {
 
-	private static PersistentStorageAgent instance;
+	private static volatile PersistentStorageAgent instance;
 
 	private final PersistentDataStore persistentDataStore;
 
+	/** Records how long each Datastore call takes. */
+	private final Metrics metrics = Metrics.getInstance();
+
+	/** Buffers writes when write-behind mode is enabled, or null to write through directly. */
+	private volatile WriteBehindQueue writeBehindQueue;
+
 	/**
 	 * Access the persistent storage agent, in order to perform object-level loads and/or stores. Do
 	 * not call this function from a test; use getTestInstance() instead.
 	 */
 	public static PersistentStorageAgent getInstance() {
 		if (instance == null) {
-			instance = new PersistentStorageAgent(new PersistentDataStore());
+			synchronized (PersistentStorageAgent.class) {
+				if (instance == null) {
+					instance = new PersistentStorageAgent(new PersistentDataStore());
+				}
+			}
 		}
 		return instance;
 	}
@@ -66,6 +86,59 @@ public class PersistentStorageAgent {
 		this.persistentDataStore = persistentDataStore;
 	}
 
+	/**
+	 * Switches this agent to write-behind mode: writes are buffered and persisted by a background
+	 * thread as batched puts. The thread writes a batch when batchSize entities are waiting or when
+	 * the oldest has waited flushIntervalMillis. When capacity entities are waiting, writers block
+	 * until the buffer drains. Call shutdown() before the application stops so buffered writes are
+	 * not lost.
+	 *
+	 * <p>The background thread outlives the request that started it, which the App Engine standard
+	 * environment only allows on manually or basically scaled instances.
+	 */
+	public synchronized void enableWriteBehind(int capacity, int batchSize, long flushIntervalMillis) {
+		if (writeBehindQueue != null) {
+			return;
+		}
+		WriteBehindQueue queue =
+				new WriteBehindQueue(persistentDataStore, capacity, batchSize, flushIntervalMillis);
+		queue.start();
+		writeBehindQueue = queue;
+		metrics.registerGauge("codeu_write_behind_pending",
+				"Entities waiting in the write-behind buffer.", null, null, queue::size);
+		metrics.registerGauge("codeu_write_behind_dropped",
+				"Entities the write-behind buffer gave up on after repeated failed puts.", null, null,
+				queue::droppedCount);
+	}
+
+	/** Switches this agent to write-behind mode using the given queue. Used for testing. */
+	synchronized void enableWriteBehind(WriteBehindQueue queue) {
+		writeBehindQueue = queue;
+	}
+
+	/**
+	 * Writes all buffered entities and waits for them to be persisted. Does nothing in
+	 * write-through mode.
+	 */
+	public void flush() {
+		WriteBehindQueue queue = writeBehindQueue;
+		if (queue != null) {
+			queue.flush();
+		}
+	}
+
+	/**
+	 * Stops write-behind mode, persisting anything still buffered. Later writes go straight
+	 * through.
+	 */
+	public synchronized void shutdown() {
+		WriteBehindQueue queue = writeBehindQueue;
+		writeBehindQueue = null;
+		if (queue != null) {
+			queue.shutdown();
+		}
+	}
+
 	/**
 	 * Retrieve all User objects from the Datastore service. The returned list may be empty.
 	 *
@@ -73,7 +146,7 @@ public class PersistentStorageAgent {
 	 *		 Datastore service
 	 */
 	public List<User> loadUsers() throws PersistentDataStoreException {
-		return persistentDataStore.loadUsers();
+		return timed("load.users", () -> persistentDataStore.loadUsers());
 	}
 
 	/**
@@ -83,7 +156,7 @@ public class PersistentStorageAgent {
 	 *		 Datastore service
 	 */
 	public List<Conversation> loadConversations() throws PersistentDataStoreException {
-		return persistentDataStore.loadConversations();
+		return timed("load.conversations", () -> persistentDataStore.loadConversations());
 	}
 
 	/**
@@ -93,7 +166,8 @@ public class PersistentStorageAgent {
 	*     Datastore service
 	*/
 	public List<Group> loadGroupConversations() throws PersistentDataStoreException {
-		return persistentDataStore.loadGroupConversations();
+		return timed("load.groupConversations",
+				() -> persistentDataStore.loadGroupConversations());
 	}
 
 	/**
@@ -103,9 +177,24 @@ public class PersistentStorageAgent {
 	*		Datastore service
 	*/
 	public List<Activity> loadActivities() throws PersistentDataStoreException {
-		return persistentDataStore.loadActivities();
+		return timed("load.activities", () -> persistentDataStore.loadActivities());
   	}
 
+	/**
+	* Retrieve the newest {@code limit} Activity objects positioned before the Activity created at
+	* {@code before} with ID {@code beforeId}, or the newest overall if {@code before} is null,
+	* sorted newest first. The returned list may be empty.
+	*
+	* @throws PersistentDataStoreException if an error was detected during the load from the
+	*		Datastore service
+	*/
+	public List<Activity> loadActivities(Instant before, UUID beforeId, int limit)
+			throws PersistentDataStoreException {
+		return timed(
+				"load.activityPage",
+				() -> persistentDataStore.loadActivities(before, beforeId, limit));
+	}
+
 	/**
 	 * Retrieve all Message objects from the Datastore service. The returned list may be empty.
 	 *
@@ -113,7 +202,120 @@ public class PersistentStorageAgent {
 	 *		 Datastore service
 	 */
 	 public List<Message> loadMessages() throws PersistentDataStoreException {
-		 return persistentDataStore.loadMessages();
+		 return timed("load.messages", () -> persistentDataStore.loadMessages());
+	}
+
+	/**
+	 * Reads every Message from the Datastore service, sorted by creation time, and hands them to
+	 * {@code batches} batchSize at a time without keeping them.
+	 *
+	 * @throws PersistentDataStoreException if an error was detected during the load from the
+	 *		 Datastore service
+	 */
+	public void scanMessages(int batchSize, Consumer<List<Message>> batches)
+			throws PersistentDataStoreException {
+		timed("scan.messages", () -> {
+			persistentDataStore.scanMessages(batchSize, batches);
+			return null;
+		});
+	}
+
+	/**
+	 * Retrieve the Message objects in one Conversation from the Datastore service, sorted by creation
+	 * time. The returned list may be empty. In write-behind mode it also includes the Messages still
+	 * in the buffer, so a Conversation loaded before they are flushed doesn't lose them.
+	 *
+	 * @throws PersistentDataStoreException if an error was detected during the load from the
+	 *		 Datastore service
+	 */
+	public List<Message> loadMessagesInConversation(UUID conversationId)
+			throws PersistentDataStoreException {
+		List<Message> messages = timed("load.messagesInConversation",
+				() -> persistentDataStore.loadMessagesInConversation(conversationId));
+		WriteBehindQueue queue = writeBehindQueue;
+		if (queue == null) {
+			return messages;
+		}
+		List<Entity> unwritten = queue.unwritten("chat-messages");
+		if (unwritten.isEmpty()) {
+			return messages;
+		}
+		// A Message whose put just succeeded may be both loaded and still buffered.
+		Set<UUID> loaded = new HashSet<>();
+		for (Message message : messages) {
+			loaded.add(message.getId());
+		}
+		List<Message> merged = new ArrayList<>(messages);
+		for (Entity entity : unwritten) {
+			if (conversationId.toString().equals(entity.getProperty("conv_uuid"))) {
+				Message message = PersistentDataStore.toMessage(entity);
+				if (loaded.add(message.getId())) {
+					merged.add(message);
+				}
+			}
+		}
+		merged.sort(Comparator.comparing(Message::getCreationTime));
+		return merged;
+	}
+
+	/**
+	 * Retrieve the newest {@code limit} Message objects sent by one User positioned before the
+	 * Message created at {@code before} with ID {@code beforeId}, or the newest overall if
+	 * {@code before} is null, sorted by creation time and then by ID.
+	 *
+	 * @throws PersistentDataStoreException if an error was detected during the load from the
+	 *		 Datastore service
+	 */
+	public List<Message> loadMessagesByAuthor(
+			UUID authorId, Instant before, UUID beforeId, int limit)
+			throws PersistentDataStoreException {
+		return timed("load.messagesByAuthor",
+				() -> persistentDataStore.loadMessagesByAuthor(authorId, before, beforeId, limit));
+	}
+
+	/**
+	 * Retrieve the Message objects created at or after {@code since}, sorted by creation time.
+	 *
+	 * @throws PersistentDataStoreException if an error was detected during the load from the
+	 *		 Datastore service
+	 */
+	public List<Message> loadMessagesSince(Instant since) throws PersistentDataStoreException {
+		return timed("load.messagesSince", () -> persistentDataStore.loadMessagesSince(since));
+	}
+
+	/**
+	 * Count the Message objects in the Datastore service without loading them.
+	 *
+	 * @throws PersistentDataStoreException if an error was detected during the count
+	 */
+	public int countMessages() throws PersistentDataStoreException {
+		return timed("count.messages", () -> persistentDataStore.countMessages());
+	}
+
+	/**
+	 * Add the numeric creation time used by time-range queries to Message and Activity entities
+	 * written without it. Only the first run does any work.
+	 *
+	 * @throws PersistentDataStoreException if an error was detected during the backfill
+	 */
+	public void backfillCreationNanos() throws PersistentDataStoreException {
+		timed("backfill.creationNanos", () -> {
+			persistentDataStore.backfillCreationNanos();
+			return null;
+		});
+	}
+
+	/**
+	 * Add the Conversation of each Message Activity to the Activity entities written without it.
+	 * Only the first run does any work.
+	 *
+	 * @throws PersistentDataStoreException if an error was detected during the backfill
+	 */
+	public void backfillActivityConversations() throws PersistentDataStoreException {
+		timed("backfill.activityConversations", () -> {
+			persistentDataStore.backfillActivityConversations();
+			return null;
+		});
 	}
 
 	/**
@@ -123,56 +325,130 @@ public class PersistentStorageAgent {
 	 *   Datastore Service
 	 */
 	 public List<Profile> loadProfiles() throws PersistentDataStoreException {
-		 return persistentDataStore.loadProfiles();
+		 return timed("load.profiles", () -> persistentDataStore.loadProfiles());
 	 }
 
 	/** Write a User object to the Datastore service. */
 	public void writeThrough(User user) {
-		try {
-		persistentDataStore.writeThrough(user);
+		if (writeBehindQueue != null && enqueue(persistentDataStore.toEntity(user))) {
+			return;
 		}
-		catch(InterruptedException e) {}
-		catch(ExecutionException e) {}
+		writeNow("write.user", () -> persistentDataStore.writeThrough(user));
 	}
 
 	/** Write a Conversation object to the Datastore service. */
 	public void writeThrough(Conversation conversation) {
-		try {
-		persistentDataStore.writeThrough(conversation);
+		if (writeBehindQueue != null && enqueue(persistentDataStore.toEntity(conversation))) {
+			return;
 		}
-		catch(InterruptedException e) {}
-		catch(ExecutionException e) {}
+		writeNow("write.conversation", () -> persistentDataStore.writeThrough(conversation));
 	}
 
   /** Write a Group Conversation object to the Datastore service. */
 	public void writeThrough(Group groupConversation) {
-		try {
-		persistentDataStore.writeThrough(groupConversation);
+		if (writeBehindQueue != null && enqueue(persistentDataStore.toEntity(groupConversation))) {
+			return;
 		}
-		catch(InterruptedException e) {}
-		catch(ExecutionException e) {}
+		writeNow("write.groupConversation", () -> persistentDataStore.writeThrough(groupConversation));
 	}
 
 	/** Write a Conversation object to the Datastore service. */
 	public void writeThrough(Message message) {
-		try {
-		persistentDataStore.writeThrough(message);
+		if (writeBehindQueue != null && enqueue(persistentDataStore.toEntity(message))) {
+			return;
 		}
-		catch(InterruptedException e) {}
-		catch(ExecutionException e) {}
+		writeNow("write.message", () -> persistentDataStore.writeThrough(message));
 	}
 
 	/** Write an Activity object to the Datastore service. */
 	public void writeThrough(Activity activity) {
-		try {
-			persistentDataStore.writeThrough(activity);
+		if (writeBehindQueue != null && enqueue(persistentDataStore.toEntity(activity))) {
+			return;
 		}
-		catch(InterruptedException e) {}
-		catch(ExecutionException e) {}
+		writeNow("write.activity", () -> persistentDataStore.writeThrough(activity));
 	}
 
 	/** Write a Profile object to the Datastore service. */
 	public void writeThrough(Profile profile) {
-		persistentDataStore.writeThrough(profile);
+		if (writeBehindQueue != null && enqueue(persistentDataStore.toEntity(profile))) {
+			return;
+		}
+		writeNow("write.profile", () -> persistentDataStore.writeThrough(profile));
+	}
+
+	/** A Datastore load, run and timed by timed(). */
+	private interface Load<T> {
+		T call() throws PersistentDataStoreException;
+	}
+
+	/** A Datastore write, run and timed by timedWrite(). */
+	private interface Write {
+		void run() throws InterruptedException, ExecutionException;
+	}
+
+	/** Runs a load, recording its latency and whether it failed under the given operation name. */
+	private <T> T timed(String operation, Load<T> load) throws PersistentDataStoreException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			T loaded = load.call();
+			failed = false;
+			return loaded;
+		} finally {
+			metrics.recordDatastore(operation, System.nanoTime() - start, failed);
+		}
+	}
+
+	/** Runs a write, recording its latency and whether it failed under the given operation name. */
+	private void timedWrite(String operation, Write write)
+			throws InterruptedException, ExecutionException {
+		long start = System.nanoTime();
+		boolean failed = true;
+		try {
+			write.run();
+			failed = false;
+		} finally {
+			metrics.recordDatastore(operation, System.nanoTime() - start, failed);
+		}
+	}
+
+	/**
+	 * Runs a write on the calling thread, recording it like timedWrite(). The write runs with the
+	 * thread's interrupt flag clear, since a pending interrupt would make the put's Future.get() fail
+	 * at once without waiting for it; the flag is set again afterwards. A failed write is logged.
+	 */
+	private void writeNow(String operation, Write write) {
+		boolean interrupted = Thread.interrupted();
+		try {
+			timedWrite(operation, write);
+		} catch (InterruptedException e) {
+			interrupted = true;
+			System.err.println("Interrupted while waiting for " + operation);
+		} catch (ExecutionException e) {
+			System.err.println(operation + " failed: " + e.getMessage());
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Hands an entity to the write-behind queue, if write-behind mode is enabled. Returns false if
+	 * the caller should write the object through to Datastore itself, including when the caller is
+	 * interrupted while waiting for room in the buffer; the interrupt flag is then set again.
+	 */
+	private boolean enqueue(Entity entity) {
+		WriteBehindQueue queue = writeBehindQueue;
+		if (queue == null) {
+			return false;
+		}
+		try {
+			queue.enqueue(entity);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
 	}
 }
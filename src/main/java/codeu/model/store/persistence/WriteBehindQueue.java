@@ -0,0 +1,377 @@
+// Copyright 2017 Google Inc.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//    http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package codeu.model.store.persistence;
+
+import codeu.metrics.Metrics;
+import com.google.appengine.api.ThreadManager;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.api.datastore.Key;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffers entities on their way to the Datastore service and writes them as batched multi-entity
+ * puts, so that a request only pays for handing its entity to the buffer instead of for a Datastore
+ * round trip.
+ *
+ * <p>A flusher thread writes a batch as soon as {@code batchSize} entities are waiting, or once the
+ * oldest waiting entity has been buffered for {@code flushIntervalMillis}. When the buffer is full,
+ * {@link #enqueue} blocks until the flusher catches up, which slows callers down instead of letting
+ * the backlog grow without bound.
+ *
+ * <p>A failed batched put is retried {@code MAX_ATTEMPTS} times with doubling backoff, then each
+ * entity is put on its own, so one bad entity doesn't sink the batch. Entities whose own put also
+ * fails go back in the buffer for a later batch, up to {@code MAX_REQUEUES} times; after that, or
+ * if the buffer is full, they are dropped, logged and counted by {@link #droppedCount}, which
+ * PersistentStorageAgent exports as a gauge. An entity is only put while it is the newest version
+ * of its key handed to {@link #enqueue}, so a retried entity never overwrites a later update.
+ *
+ * <p>Datastore calls need an App Engine environment, which a plain thread doesn't have, so the
+ * flusher comes from ThreadManager's background thread factory unless a test supplies another.
+ */
+class WriteBehindQueue {
+
+  /** The number of times a batched put is tried before falling back to per-entity puts. */
+  static final int MAX_ATTEMPTS = 3;
+
+  /** The wait before the first retry of a batched put; each later retry waits twice as long. */
+  static final long RETRY_BACKOFF_MILLIS = 100;
+
+  /** The number of times an entity whose put failed goes back in the buffer before it's dropped. */
+  static final int MAX_REQUEUES = 3;
+
+  private final PersistentDataStore persistentDataStore;
+  private final BlockingQueue<Entity> pending;
+  private final int batchSize;
+  private final long flushIntervalMillis;
+  private final ThreadFactory threadFactory;
+
+  /** Records how long each batched put takes. */
+  private final Metrics metrics = Metrics.getInstance();
+
+  /** Serializes the puts made by the flusher thread and by flush(). */
+  private final Object writeLock = new Object();
+
+  /** How many times each entity waiting in the buffer has failed to be put. Guarded by writeLock. */
+  private final Map<Entity, Integer> failedPuts = new IdentityHashMap<>();
+
+  /** The number of entities given up on. */
+  private final AtomicLong dropped = new AtomicLong();
+
+  /**
+   * The newest entity enqueued for each key that hasn't been put yet. An entity with a key is
+   * only put while it is the one mapped here.
+   */
+  private final Map<Key, Entity> newest = new ConcurrentHashMap<>();
+
+  private Thread flusher;
+  private volatile boolean running;
+
+  /**
+   * Constructs a new WriteBehindQueue whose flusher is an App Engine background thread. The
+   * flusher thread is not started until start() is called.
+   *
+   * @param persistentDataStore the store that performs the batched puts
+   * @param capacity the maximum number of entities waiting to be written
+   * @param batchSize the maximum number of entities written by a single put
+   * @param flushIntervalMillis how long an entity may wait before its batch is written
+   */
+  WriteBehindQueue(
+      PersistentDataStore persistentDataStore,
+      int capacity,
+      int batchSize,
+      long flushIntervalMillis) {
+    this(persistentDataStore, capacity, batchSize, flushIntervalMillis,
+        ThreadManager.backgroundThreadFactory());
+  }
+
+  /**
+   * Constructs a new WriteBehindQueue whose flusher is made by the given factory. Used for testing.
+   *
+   * @param threadFactory makes the flusher thread, which must be able to call Datastore
+   */
+  WriteBehindQueue(
+      PersistentDataStore persistentDataStore,
+      int capacity,
+      int batchSize,
+      long flushIntervalMillis,
+      ThreadFactory threadFactory) {
+    this.persistentDataStore = persistentDataStore;
+    this.pending = new ArrayBlockingQueue<>(capacity);
+    this.batchSize = batchSize;
+    this.flushIntervalMillis = flushIntervalMillis;
+    this.threadFactory = threadFactory;
+  }
+
+  /** Starts the flusher thread. */
+  synchronized void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    flusher = threadFactory.newThread(this::runFlusher);
+    flusher.setName("datastore-write-behind");
+    flusher.start();
+  }
+
+  /**
+   * Adds an entity to the buffer, blocking while the buffer is full.
+   *
+   * @throws InterruptedException if interrupted while waiting for room in the buffer
+   */
+  void enqueue(Entity entity) throws InterruptedException {
+    Key key = entity.getKey();
+    if (key != null) {
+      newest.put(key, entity);
+    }
+    try {
+      pending.put(entity);
+    } catch (InterruptedException e) {
+      // The caller writes this version itself, so the buffered older ones are stale.
+      forgetNewest(entity);
+      throw e;
+    }
+  }
+
+  /** Returns the number of entities waiting to be written. */
+  int size() {
+    return pending.size();
+  }
+
+  /**
+   * Returns the entities of a kind that have been enqueued but may not have been put yet, so that
+   * loads can include them. An entity stays here until its put succeeds or it is dropped.
+   */
+  List<Entity> unwritten(String kind) {
+    List<Entity> entities = new ArrayList<>();
+    for (Entity entity : newest.values()) {
+      if (entity.getKind().equals(kind)) {
+        entities.add(entity);
+      }
+    }
+    return entities;
+  }
+
+  /** Returns the number of entities that could not be written and were dropped. */
+  long droppedCount() {
+    return dropped.get();
+  }
+
+  /** Writes every buffered entity on the calling thread and returns once they are persisted. */
+  void flush() {
+    List<Entity> batch = new ArrayList<>();
+    while (pending.drainTo(batch, batchSize) > 0) {
+      write(batch);
+      batch.clear();
+    }
+  }
+
+  /** Stops the flusher thread, then writes whatever is still buffered. */
+  void shutdown() {
+    Thread stopping;
+    synchronized (this) {
+      running = false;
+      stopping = flusher;
+      flusher = null;
+    }
+    if (stopping != null) {
+      stopping.interrupt();
+      try {
+        stopping.join(TimeUnit.SECONDS.toMillis(30));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    flush();
+  }
+
+  private void runFlusher() {
+    List<Entity> batch = new ArrayList<>();
+    try {
+      while (running) {
+        Entity first = pending.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        while (batch.size() < batchSize) {
+          long remaining = deadline - System.nanoTime();
+          if (remaining <= 0) {
+            break;
+          }
+          Entity next = pending.poll(remaining, TimeUnit.NANOSECONDS);
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+        write(batch);
+        batch.clear();
+      }
+    } catch (InterruptedException e) {
+      // shutdown() interrupts the flusher; don't lose the batch it was collecting.
+      write(batch);
+    }
+  }
+
+  /**
+   * Writes one batch. If the same entity was written twice while buffered, only the latest version
+   * is put. A batch that keeps failing is put one entity at a time, and the entities that still
+   * fail are buffered again or dropped.
+   */
+  private void write(List<Entity> batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    Map<Key, Entity> latest = new LinkedHashMap<>();
+    List<Entity> entities = new ArrayList<>();
+    List<Entity> superseded = new ArrayList<>();
+    for (Entity entity : batch) {
+      if (entity.getKey() == null) {
+        entities.add(entity);
+      } else if (newest.get(entity.getKey()) != entity) {
+        // a newer version is buffered or has been put
+        superseded.add(entity);
+      } else {
+        Entity older = latest.remove(entity.getKey());
+        if (older != null) {
+          superseded.add(older);
+        }
+        latest.put(entity.getKey(), entity);
+      }
+    }
+    entities.addAll(latest.values());
+
+    synchronized (writeLock) {
+      succeeded(superseded);
+      // Runs with the interrupt flag clear, since Future.get() would throw at once if it were set,
+      // and restores it afterwards.
+      boolean interrupted = Thread.interrupted();
+      try {
+        long backoffMillis = RETRY_BACKOFF_MILLIS;
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+          Exception failure = put("write.batch", entities);
+          if (failure == null) {
+            succeeded(entities);
+            return;
+          }
+          if (failure instanceof InterruptedException) {
+            interrupted = true;
+          }
+          System.err.println(
+              "Write-behind put of " + entities.size() + " entities failed (attempt " + attempt
+                  + " of " + MAX_ATTEMPTS + "): " + failure.getMessage());
+          if (attempt < MAX_ATTEMPTS && !interrupted) {
+            try {
+              Thread.sleep(backoffMillis);
+            } catch (InterruptedException e) {
+              // Shutting down: skip the remaining waits, but still try to persist the batch.
+              interrupted = true;
+            }
+            backoffMillis *= 2;
+          }
+        }
+        for (Entity entity : entities) {
+          Exception failure = put("write.entity", Collections.singletonList(entity));
+          if (failure == null) {
+            succeeded(Collections.singletonList(entity));
+          } else {
+            if (failure instanceof InterruptedException) {
+              interrupted = true;
+            }
+            failed(entity, failure);
+          }
+        }
+      } finally {
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
+
+  /** Puts entities, recording the call under an operation name. Returns the failure, or null. */
+  private Exception put(String operation, List<Entity> entities) {
+    long start = System.nanoTime();
+    boolean failed = true;
+    try {
+      persistentDataStore.writeThrough(entities);
+      failed = false;
+      return null;
+    } catch (InterruptedException | ExecutionException | RuntimeException e) {
+      return e;
+    } finally {
+      metrics.recordDatastore(operation, System.nanoTime() - start, failed);
+    }
+  }
+
+  /**
+   * Forgets entities that have been put or replaced by a newer version. Callers must hold
+   * writeLock.
+   */
+  private void succeeded(List<Entity> entities) {
+    for (Entity entity : entities) {
+      failedPuts.remove(entity);
+      forgetNewest(entity);
+    }
+  }
+
+  /**
+   * Forgets an entity as the newest version of its key, unless a newer one has replaced it.
+   * Entities with the same key are equal, so this compares them by identity.
+   */
+  private void forgetNewest(Entity entity) {
+    if (entity.getKey() != null) {
+      newest.computeIfPresent(entity.getKey(), (key, current) -> current == entity ? null : current);
+    }
+  }
+
+  /**
+   * Buffers an entity whose put failed for another try, or drops it once it has failed
+   * MAX_REQUEUES times or the buffer is full. An entity replaced by a newer version while it was
+   * being put is forgotten instead, since buffering it again would put it after the newer one.
+   * Callers must hold writeLock.
+   */
+  private void failed(Entity entity, Exception failure) {
+    Key key = entity.getKey();
+    if (key != null && newest.get(key) != entity) {
+      failedPuts.remove(entity);
+      return;
+    }
+    int failures = failedPuts.getOrDefault(entity, 0) + 1;
+    if (failures <= MAX_REQUEUES && pending.offer(entity)) {
+      failedPuts.put(entity, failures);
+      return;
+    }
+    failedPuts.remove(entity);
+    forgetNewest(entity);
+    dropped.incrementAndGet();
+    System.err.println(
+        "Write-behind dropped entity " + entity.getKey() + " after " + failures
+            + " failed puts: " + failure.getMessage());
+  }
+}
@@ -1,11 +1,9 @@
 <%@ page import="java.util.List" %>
-<%@ page import="codeu.model.data.Activity" %>
-<%@ page import="codeu.model.store.basic.ActivityStore" %>
-<%@ page import="codeu.model.store.basic.UserStore" %>
+<%@ page import="codeu.model.data.FeedEntry" %>
 <%@ page import="codeu.model.data.Activity.ActivityType" %>
 
 <%
-List<Activity> activities = (List<Activity>) request.getAttribute("activities");
+List<FeedEntry> activities = (List<FeedEntry>) request.getAttribute("activities");
 %>
 <!DOCTYPE>
 <html>
@@ -52,7 +50,7 @@ List<Activity> activities = (List<Activity>) request.getAttribute("activities");
 							<i class="material-icons">search</i>
 						</label>
 						<div class="mdl-textfield__expandable-holder">
-							<input class="mdl-textfield__input" type="text" id="search-field">
+							<form action="/search" method="GET"><input class="mdl-textfield__input" type="text" id="search-field" name="q"></form>
 						</div>
 					</div>
 					  <!-- Navigation -->
@@ -101,26 +99,23 @@ List<Activity> activities = (List<Activity>) request.getAttribute("activities");
 					} else {
 					%>
 						<%
-						for(Activity activity : activities) {
+						for(FeedEntry activity : activities) {
 							if(activity != null) {
 								if(activity.getType().equals(ActivityType.USER)) {
 								%>
-									<span><b><%=activity.getCreationTimeFormatted()%></b> New user has been created! Welcome, <%=UserStore.getInstance()
-									.getUser(activity.getOwnerId()).getName()%></span>
+									<span><b><%=activity.getFormattedTime()%></b> New user has been created! Welcome, <%=activity.getOwnerName()%></span>
 									<hr/>
 								<%
 								}
 								else if(activity.getType().equals(ActivityType.CONVERSATION)) {
 								%>
-									<span><b><%=activity.getCreationTimeFormatted()%></b>New conversation has been created by <%=UserStore.getInstance()
-									.getUser(activity.getOwnerId()).getName()%></span>
+									<span><b><%=activity.getFormattedTime()%></b>New conversation has been created by <%=activity.getOwnerName()%></span>
 									<hr/>
 								<%
 								}
 								else if(activity.getType().equals(ActivityType.MESSAGE)) {
 								%>
-									<span><b><%=activity.getCreationTimeFormatted()%></b>New message has been sent by <%=UserStore.getInstance()
-									.getUser(activity.getOwnerId()).getName()%></span>
+									<span><b><%=activity.getFormattedTime()%></b>New message has been sent by <%=activity.getOwnerName()%></span>
 									<hr/>
 								<%
 								}
@@ -130,6 +125,9 @@ List<Activity> activities = (List<Activity>) request.getAttribute("activities");
 					<%
 					}
 					%>
+					<% if(request.getAttribute("olderActivitiesCursor") != null){ %>
+						<a href="/activityfeed?before=<%=request.getAttribute("olderActivitiesCursor")%>">Older activities</a>
+					<% } %>
 					<hr/>
 				</div>
 			</div>
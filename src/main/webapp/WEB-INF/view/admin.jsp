@@ -59,7 +59,7 @@
 						<i class="material-icons">search</i>
 					</label>
 					<div class="mdl-textfield__expandable-holder">
-						<input class="mdl-textfield__input" type="text" id="search-field">
+						<form action="/search" method="GET"><input class="mdl-textfield__input" type="text" id="search-field" name="q"></form>
 					</div>
 				</div>
 				  <!-- Navigation -->
@@ -146,6 +146,17 @@
 									</span>
 								</li>
 							<% } %>
+
+							<% if(request.getSession().getAttribute("activeUsersHour")!= null){ %>
+								<li class="mdl-list__item">
+									<span class="mdl-list__item-primary-content">
+									<i class="material-icons mdl-list__item-icon">people</i>
+									Active Users: ~<%= request.getSession().getAttribute("activeUsersHour") %> in the last hour,
+									~<%= request.getSession().getAttribute("activeUsersDay") %> today,
+									~<%= request.getSession().getAttribute("activeUsersWeek") %> this week
+									</span>
+								</li>
+							<% } %>
 						</ul>
 
 						<form action="/admin" method="POST">
@@ -153,6 +164,7 @@
 								Get Stats
 							</button>
 						</form>
+						<p>Request latencies, Datastore timings and store sizes: <a href="/admin/metrics">/admin/metrics</a></p>
 					</div>
 
 					<div id="addAdmins">
@@ -16,6 +16,7 @@
 <%@ page import="java.util.List" %>
 <%@ page import="java.util.ArrayList" %>
 <%@ page import="java.util.HashSet" %>
+<%@ page import="java.util.Set" %>
 <%@ page import="java.time.Instant" %>
 
 <%@ page import="codeu.model.data.Conversation" %>
@@ -34,7 +35,7 @@ Conversation conversation = (Conversation) request.getAttribute("conversation");
 // Group group = (Group) request.getAttribute("group");
 //This is the user's ID
 UUID id = (UUID) request.getSession().getAttribute("id");
-HashSet<UUID> allowedUsers = (HashSet<UUID>) conversation.getMembers(); //have to instantiate the set of allowed users globally
+Set<UUID> allowedUsers = conversation.getMembers(); //have to instantiate the set of allowed users globally
 // ArrayList<UUID> allowedIds = null;
 
 String title = conversation.getTitle();
@@ -53,6 +54,8 @@ String title = conversation.getTitle();
 //need to distinguish between conversation or group
 String name = (String) request.getSession().getAttribute("user");
 List<Message> messages = (List<Message>) request.getAttribute("messages");
+String olderMessagesCursor = (String) request.getAttribute("olderMessagesCursor");
+String newestMessageCursor = (String) request.getAttribute("newestMessageCursor");
 %>
 
 <!DOCTYPE html>
@@ -93,16 +96,172 @@ List<Message> messages = (List<Message>) request.getAttribute("messages");
   </style>
 
   <script>
+    // suggest users whose names start with what was typed, once the user pauses typing
+    var userSearch;
+    function searchUsers(input) {
+      var picker = input.parentNode;
+      var results = picker.querySelector('.user-search-results');
+      var prefix = input.value.trim();
+      clearTimeout(userSearch);
+      if (!prefix) {
+        results.innerHTML = '';
+        return;
+      }
+      userSearch = setTimeout(function() {
+        var xhr = new XMLHttpRequest();
+        xhr.open('GET', '/users/search?limit=10&prefix=' + encodeURIComponent(prefix));
+        xhr.onload = function() {
+          if (xhr.status !== 200 || input.value.trim() !== prefix) {
+            return;
+          }
+          results.innerHTML = '';
+          JSON.parse(xhr.responseText).users.forEach(function(user) {
+            var item = document.createElement('li');
+            var link = document.createElement('a');
+            link.className = 'mdl-color-text--cyan';
+            link.href = '#';
+            link.textContent = user.name;
+            link.onclick = function() {
+              selectUser(picker, user.name);
+              input.value = '';
+              results.innerHTML = '';
+              return false;
+            };
+            item.appendChild(link);
+            results.appendChild(item);
+          });
+        };
+        xhr.send();
+      }, 200);
+    }
+
+    // add a user to the members to be submitted with the picker's form
+    function selectUser(picker, name) {
+      var selected = picker.querySelector('.user-search-selected');
+      var inputs = selected.querySelectorAll('input');
+      for (var i = 0; i < inputs.length; i++) {
+        if (inputs[i].value === name) {
+          return;
+        }
+      }
+      var item = document.createElement('li');
+      var hidden = document.createElement('input');
+      hidden.type = 'hidden';
+      hidden.name = 'member';
+      hidden.value = name;
+      var remove = document.createElement('a');
+      remove.href = '#';
+      remove.innerHTML = '<i class="material-icons">clear</i>';
+      remove.onclick = function() {
+        selected.removeChild(item);
+        return false;
+      };
+      item.appendChild(hidden);
+      item.appendChild(document.createTextNode(name + ' '));
+      item.appendChild(remove);
+      selected.appendChild(item);
+    }
+
     // scroll the chat div to the bottom
     function scrollChat() {
       var chatDiv = document.getElementById('chat');
       chatDiv.scrollTop = chatDiv.scrollHeight;
     }
+
+    // message text is stored HTML-escaped (ChatServlet strips every tag with Jsoup) and the page
+    // renders it as HTML, so decode its entities here to show the same text as the page does
+    function messageText(message) {
+      if (message.text == null) {
+        return '';
+      }
+      return new DOMParser().parseFromString(message.text, 'text/html').documentElement.textContent;
+    }
+
+    // build the list item for a message returned by the JSON endpoints
+    function messageItem(message) {
+      var item = document.createElement('li');
+      var name = document.createElement('strong');
+      var link = document.createElement('a');
+      link.className = 'mdl-color-text--cyan';
+      link.href = '/user/' + encodeURIComponent(message.author);
+      link.textContent = message.author;
+      name.appendChild(link);
+      name.appendChild(document.createTextNode(':'));
+      item.appendChild(name);
+      item.appendChild(document.createTextNode(' ' + messageText(message)));
+      return item;
+    }
+
+    // wait for messages sent since the newest one shown; the server holds the request open until
+    // one arrives or it times out, and then the next poll starts
+    function pollNewMessages() {
+      var chatDiv = document.getElementById('chat');
+      if (!chatDiv) {
+        return;
+      }
+      var url = '/chat-updates/' + encodeURIComponent(chatDiv.getAttribute('data-title'))
+          + '?wait=true&after=' + encodeURIComponent(chatDiv.getAttribute('data-newest-cursor'));
+      var xhr = new XMLHttpRequest();
+      xhr.open('GET', url);
+      xhr.onload = function() {
+        // a 304 means nothing changed since the last poll
+        if (xhr.status === 200) {
+          var page = JSON.parse(xhr.responseText);
+          var list = chatDiv.querySelector('ul');
+          var atBottom = chatDiv.scrollTop + chatDiv.clientHeight >= chatDiv.scrollHeight - 5;
+          for (var i = 0; i < page.messages.length; i++) {
+            list.appendChild(messageItem(page.messages[i]));
+          }
+          if (page.newestMessageCursor) {
+            chatDiv.setAttribute('data-newest-cursor', page.newestMessageCursor);
+          }
+          if (atBottom) {
+            scrollChat();
+          }
+        }
+        setTimeout(pollNewMessages, xhr.status === 200 || xhr.status === 304 ? 0 : 3000);
+      };
+      xhr.onerror = function() {
+        setTimeout(pollNewMessages, 3000);
+      };
+      xhr.send();
+    }
+
+    // fetch the page of messages before the cursor and add it above the ones already shown
+    function loadOlderMessages(button) {
+      button.disabled = true;
+      var url = '/chat/' + encodeURIComponent(button.getAttribute('data-title'))
+          + '?before=' + encodeURIComponent(button.getAttribute('data-cursor'));
+      var xhr = new XMLHttpRequest();
+      xhr.open('GET', url);
+      xhr.onload = function() {
+        if (xhr.status !== 200) {
+          button.disabled = false;
+          return;
+        }
+        var page = JSON.parse(xhr.responseText);
+        var chatDiv = document.getElementById('chat');
+        var list = chatDiv.querySelector('ul');
+        var oldHeight = chatDiv.scrollHeight;
+        for (var i = page.messages.length - 1; i >= 0; i--) {
+          list.insertBefore(messageItem(page.messages[i]), list.firstChild);
+        }
+        // keep the messages the user was looking at in place
+        chatDiv.scrollTop += chatDiv.scrollHeight - oldHeight;
+        if (page.olderMessagesCursor) {
+          button.setAttribute('data-cursor', page.olderMessagesCursor);
+          button.disabled = false;
+        } else {
+          button.parentNode.removeChild(button);
+        }
+      };
+      xhr.send();
+    }
   </script>
 
 </head>
 <%-- onload within the actual conversations created --%>
-<body onload="scrollChat()">
+<body onload="scrollChat(); pollNewMessages()">
 	<div class="mdl-layout mdl-js-layout mdl-layout--fixed-header">
 	  <div class="android-header mdl-layout__header mdl-layout__header--waterfall">
 		<div class="mdl-layout__header-row">
@@ -114,7 +273,7 @@ List<Message> messages = (List<Message>) request.getAttribute("messages");
 						<i class="material-icons">search</i>
 					</label>
 					<div class="mdl-textfield__expandable-holder">
-						<input class="mdl-textfield__input" type="text" id="search-field">
+						<form action="/search" method="GET"><input class="mdl-textfield__input" type="text" id="search-field" name="q"></form>
 					</div>
 				</div>
 				  <!-- Navigation -->
@@ -205,7 +364,7 @@ List<Message> messages = (List<Message>) request.getAttribute("messages");
 					<% } %>
 
 					<%if(request.getSession().getAttribute("addedDirectMessageRecipient") != null){ //This is the code to display the other person's name as the conversation title in DIRECT messages
-							HashSet<UUID> getMembers = (HashSet<UUID>) conversation.getMembers();
+							Set<UUID> getMembers = conversation.getMembers();
 							System.out.println(getMembers);
 							System.out.println(id);
 							for(UUID uuid: getMembers){
@@ -305,39 +464,12 @@ List<Message> messages = (List<Message>) request.getAttribute("messages");
 									</ul>
 									<hr/>
 									<h4>Add more members</h4>
-									<div id="addMembers">
-										<%  List<User> users = UserStore.getInstance().getUsers();
-											int addUserCounter = 0; // already initialized
-											%>
-											<ul class="mdl-list">
-											<% for(User registeredUser: users){
-												if(registeredUser.getId() != id && !conversation.isAccessAllowed(registeredUser.getId())){
-													String addUsername = registeredUser.getName();
-													 %>
-													<li class="mdl-list__item">
-														<span class="mdl-list__item-primary-content">
-															<i class="material-icons mdl-list__item-avatar">person_add</i>
-															<a class="mdl-color-text--cyan" href="/user/<%=addUsername%>"><%= addUsername %></a>
-														</span>
-														<span class="mdl-list__item-secondary-action">
-															<label class="mdl-checkbox mdl-js-checkbox mdl-js-ripple-effect" for="addMembers">
-																<input type="checkbox" name="<%=addUserCounter%>" value="<%=addUsername%>" id="addMembers"/>
-															</label>
-														</span>
-													</li>
-													<%
-													//TODO: make this more efficient for pete's sake :(
-													request.getSession().setAttribute("addUserCounter", addUserCounter);
-													addUserCounter++;%>
-													<%-- <li><a href="/user/<%=user.getName()%>"><%= user.getName() %></a> --%>
-												<% } %>
-										   <% }%>
-											</ul
-											<% if(addUserCounter == 0){ %>
-												<h3 style="color:green;">All users are currently in this group!</h3>
-											<% }%>
+									<div id="addMembers" class="user-search">
+										<input class="mdl-textfield__input" type="text" placeholder="Search users..." autocomplete="off" oninput="searchUsers(this)">
+										<ul class="user-search-results"></ul>
+										<ul class="user-search-selected"></ul>
 									<hr/>
-										<input class="mdl-button mdl-js-button mdl-button--raised mdl-button--accent" type="submit" name="addUsers" value="Add Checked Members">
+										<input class="mdl-button mdl-js-button mdl-button--raised mdl-button--accent" type="submit" name="addUsers" value="Add Selected Members">
 										<input class="mdl-button mdl-js-button mdl-button--raised mdl-button--accent" type="submit" name="removeUsers" value="Remove Checked Members">
 								</form>
 									</div>
@@ -350,43 +482,21 @@ List<Message> messages = (List<Message>) request.getAttribute("messages");
 						<% if(request.getSession().getAttribute("addedDirectMessageRecipient") == null ) { %>
 								<div id="selectDirectMessage">
 								<form action="/chat/<%= conversation.getTitle() %>" method="POST">
-								<%  List<User> users = UserStore.getInstance().getUsers();
-									int addUserCounter = 0; // already initialized
-									%>
-									<ul class="mdl-list">
-									<% for(User registeredUser: users){
-										if(registeredUser.getId() != id && !conversation.isAccessAllowed(registeredUser.getId())){
-											String addUsername = registeredUser.getName();
-											 %>
-											<li class="mdl-list__item">
-												<span class="mdl-list__item-primary-content">
-													<i class="material-icons mdl-list__item-avatar">person_add</i>
-													<a class="mdl-color-text--cyan" href="/user/<%=addUsername%>"><%= addUsername %></a>
-												</span>
-												<span class="mdl-list__item-secondary-action">
-													<label class="mdl-checkbox mdl-js-checkbox mdl-js-ripple-effect" for="addMembers">
-														<input type="checkbox" name="<%=addUserCounter%>" value="<%=addUsername%>" id="addMembers"/>
-													</label>
-												</span>
-											</li>
-											<%
-											//TODO: make this more efficient for pete's sake :(
-											request.getSession().setAttribute("addUserCounter", addUserCounter);
-											addUserCounter++;%>
-											<%-- <li><a href="/user/<%=user.getName()%>"><%= user.getName() %></a> --%>
-										<% } %>
-									 <% }%>
-									</ul
-									<% if(addUserCounter == 0){ %>
-										<h3 style="color:green;">All users are currently in this group!</h3>
-									<% }%>
+								<div class="user-search">
+									<input class="mdl-textfield__input" type="text" placeholder="Search users..." autocomplete="off" oninput="searchUsers(this)">
+									<ul class="user-search-results"></ul>
+									<ul class="user-search-selected"></ul>
+								</div>
 								<hr/>
 								<%-- <button class="mdl-button mdl-js-button mdl-button--raised mdl-button--accent" onclick=addDirectMessageRecipient()>Select User</button> --%>
-								<input class="mdl-button mdl-js-button mdl-button--raised mdl-button--accent" onclick=addDirectMessageRecipient() type="submit" name="addUsers" value="Add Checked Members">
+								<input class="mdl-button mdl-js-button mdl-button--raised mdl-button--accent" onclick=addDirectMessageRecipient() type="submit" name="addUsers" value="Add Selected Members">
 								</form>
 								</div>
 						<% } %>
-							<div id="chat">
+							<div id="chat" data-title="<%= conversation.getTitle() %>" data-newest-cursor="<%= newestMessageCursor == null ? "" : newestMessageCursor %>">
+							<% if (olderMessagesCursor != null) { %>
+								<button class="mdl-button mdl-js-button" data-title="<%= conversation.getTitle() %>" data-cursor="<%= olderMessagesCursor %>" onclick="loadOlderMessages(this)">Load older messages</button>
+							<% } %>
 							  <ul>
 							<%
 							  for (Message message : messages) {
@@ -400,7 +510,7 @@ List<Message> messages = (List<Message>) request.getAttribute("messages");
 											* text will be available.
 											*/
 									%>
-								  <li><strong><a class="mdl-color-text--cyan" href="/user/<%=author%>"><%= author %></a>:</strong> <%= message.getContent().getValue0() %></li>
+								  <li><strong><a class="mdl-color-text--cyan" href="/user/<%=author%>"><%= author %></a>:</strong> <%= message.getText() == null ? "" : message.getText() %></li>
 								<%
 							  }
 							%>
@@ -431,13 +541,16 @@ List<Message> messages = (List<Message>) request.getAttribute("messages");
 						<a href="" style="float: right">
 							<i class="material-icons mdl-list__item-avatar">autorenew</i>
 						</a></h1>
-							<div id="chat">
+							<div id="chat" data-title="<%= conversation.getTitle() %>" data-newest-cursor="<%= newestMessageCursor == null ? "" : newestMessageCursor %>">
+							<% if (olderMessagesCursor != null) { %>
+								<button class="mdl-button mdl-js-button" data-title="<%= conversation.getTitle() %>" data-cursor="<%= olderMessagesCursor %>" onclick="loadOlderMessages(this)">Load older messages</button>
+							<% } %>
 								<ul>
 							<%
 								for (Message message : messages) {
 									String author = UserStore.getInstance().getUser(message.getAuthorId()).getName();
 								%>
-									<li><strong><a class="mdl-color-text--cyan" href="/user/<%=author%>"><%= author %></a>:</strong> <%= message.getContent().getValue0() %></li>
+									<li><strong><a class="mdl-color-text--cyan" href="/user/<%=author%>"><%= author %></a>:</strong> <%= message.getText() == null ? "" : message.getText() %></li>
 								<%
 								}
 							%>
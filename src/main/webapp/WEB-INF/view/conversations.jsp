@@ -14,6 +14,7 @@
   limitations under the License.
 --%>
 <%@ page import="java.util.List" %>
+<%@ page import="java.util.Map" %>
 <%@ page import="java.util.UUID" %>
 <%@ page import="codeu.model.data.Conversation" %>
 <%@ page import="codeu.model.data.Conversation.Type" %>
@@ -68,7 +69,7 @@
 						<i class="material-icons">search</i>
 					</label>
 					<div class="mdl-textfield__expandable-holder">
-						<input class="mdl-textfield__input" type="text" id="search-field">
+						<form action="/search" method="GET"><input class="mdl-textfield__input" type="text" id="search-field" name="q"></form>
 					</div>
 				</div>
 				  <!-- Navigation -->
@@ -210,6 +211,27 @@
 		      <hr/>
 		    <% } %>
 
+		    <%
+		    Map<Conversation, Double> hotConversations =
+		      (Map<Conversation, Double>) request.getAttribute("hotConversations");
+		    if(hotConversations != null && !hotConversations.isEmpty()){
+		    %>
+		      <h1>Hot now</h1>
+		      <ul class="mdl-list--text-center">
+		      <% for(Map.Entry<Conversation, Double> hot : hotConversations.entrySet()){ %>
+		        <li class="mdl-list__item mdl-list__item--two-line">
+		          <span class="mdl-list__item-primary-content">
+		            <i class="material-icons mdl-list__item-avatar">whatshot</i>
+		            <span><%= hot.getKey().getTitle() %></span>
+		            <span class="mdl-list__item-sub-title"><%= String.format("%.1f", hot.getValue()) %> messages/min</span>
+		          </span>
+		          <a class="mdl-list__item-secondary-action mdl-list__item-avatar" href="/chat/<%= hot.getKey().getTitle() %>"><i class="material-icons">question_answer</i></a>
+		        </li>
+		      <% } %>
+		      </ul>
+		      <hr/>
+		    <% } %>
+
 		    <h1>Conversations</h1>
 
 		    <%
@@ -77,7 +77,7 @@
               <i class="material-icons">search</i>
             </label>
             <div class="mdl-textfield__expandable-holder">
-              <input class="mdl-textfield__input" type="text" id="search-field">
+              <form action="/search" method="GET"><input class="mdl-textfield__input" type="text" id="search-field" name="q"></form>
             </div>
           </div>
             <!-- Navigation -->
@@ -60,7 +60,7 @@ List<Message> messages = (List<Message>) request.getAttribute("messages");
 								<i class="material-icons">search</i>
 							</label>
 							<div class="mdl-textfield__expandable-holder">
-								<input class="mdl-textfield__input" type="text" id="search-field">
+								<form action="/search" method="GET"><input class="mdl-textfield__input" type="text" id="search-field" name="q"></form>
 							</div>
 						</div>
 						  <!-- Navigation -->
@@ -139,6 +139,9 @@ List<Message> messages = (List<Message>) request.getAttribute("messages");
 						}
 						%>
 					</ul>
+					<% if(request.getAttribute("olderMessagesCursor") != null){ %>
+						<a href="/user/<%=request.getAttribute("currentProfile")%>?before=<%=request.getAttribute("olderMessagesCursor")%>">Older messages</a>
+					<% } %>
 				</div>
 				<%} else{ %>
 					<h3> <%=request.getAttribute("currentProfile")%> Hasn't Sent Messages </h3>
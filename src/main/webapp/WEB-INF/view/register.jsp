@@ -73,7 +73,7 @@ limitations under the License.
 						<i class="material-icons">search</i>
 					</label>
 					<div class="mdl-textfield__expandable-holder">
-						<input class="mdl-textfield__input" type="text" id="search-field">
+						<form action="/search" method="GET"><input class="mdl-textfield__input" type="text" id="search-field" name="q"></form>
 					</div>
 				</div>
 				  <!-- Navigation -->
@@ -120,6 +120,7 @@ limitations under the License.
 						</div>
 					</br>
 						<sub style="color:teal"> At least 5 characters and must contain no spaces. </sub>
+						<sub id="usernameStatus"></sub>
 					<%-- <label for="username">Username: </label> --%>
 					<br/>
 						<div class="mdl-textfield mdl-js-textfield mdl-textfield--floating-label">
@@ -136,5 +137,42 @@ limitations under the License.
 					<br/>
 					<br>
 			</form>
+	<script>
+		// check the username with the server once the user pauses typing
+		var usernameCheck;
+		document.getElementById('username').addEventListener('input', function() {
+			var username = this.value;
+			var status = document.getElementById('usernameStatus');
+			clearTimeout(usernameCheck);
+			if (!username) {
+				status.textContent = '';
+				return;
+			}
+			usernameCheck = setTimeout(function() {
+				var xhr = new XMLHttpRequest();
+				xhr.open('GET', '/register?username=' + encodeURIComponent(username));
+				xhr.onload = function() {
+					if (xhr.status !== 200) {
+						return;
+					}
+					var result = JSON.parse(xhr.responseText);
+					if (result.username !== document.getElementById('username').value) {
+						return;
+					}
+					if (!result.valid) {
+						status.style.color = 'red';
+						status.textContent = ' Not a valid username.';
+					} else if (result.available) {
+						status.style.color = 'green';
+						status.textContent = ' Available!';
+					} else {
+						status.style.color = 'red';
+						status.textContent = ' That username is already taken.';
+					}
+				};
+				xhr.send();
+			}, 300);
+		});
+	</script>
 </body>
 </html>
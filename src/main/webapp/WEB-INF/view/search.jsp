@@ -0,0 +1,137 @@
+<%@ page import="java.util.List" %>
+<%@ page import="java.util.Map" %>
+<%@ page import="java.util.UUID" %>
+<%@ page import="codeu.model.data.Conversation" %>
+<%@ page import="codeu.model.data.Message" %>
+<%@ page import="codeu.model.data.User" %>
+<%@ page import="codeu.model.store.basic.UserStore" %>
+
+<%!
+/* Escapes the searched words before they are written back into the page. */
+private static String escape(String text) {
+	return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+}
+%>
+<%
+String query = (String) request.getAttribute("query");
+List<Message> messages = (List<Message>) request.getAttribute("messages");
+Map<UUID, Conversation> conversations = (Map<UUID, Conversation>) request.getAttribute("conversations");
+%>
+<!DOCTYPE>
+<html>
+	<head>
+		<link rel="stylesheet" href="/css/main.css">
+		<link rel="shortcut icon" href="/images/YACA.png" />
+		<link rel="stylesheet" href="https://fonts.googleapis.com/icon?family=Material+Icons">
+		<link rel="stylesheet" href="https://code.getmdl.io/1.3.0/material.cyan-yellow.min.css">
+		<script defer src="https://code.getmdl.io/1.3.0/material.min.js"></script>
+		<style>
+		.content-grid {
+			width:960px;
+			max-width: 960px;
+		}
+		.page-content{
+			width: 800px;
+			margin-top: 12%;
+			margin-left: auto;
+		    margin-right: auto;
+		}
+		#view-source {
+		  position: fixed;
+		  display: block;
+		  right: 0;
+		  bottom: 0;
+		  margin-right: 40px;
+		  margin-bottom: 40px;
+
+		  z-index: 900;
+		}
+		</style>
+	</head>
+
+	<body>
+		<div class="mdl-layout mdl-js-layout mdl-layout--fixed-header">
+		  <div class="android-header mdl-layout__header mdl-layout__header--waterfall">
+			<div class="mdl-layout__header-row">
+				<a class="mdl-navigation__link" href="/index.jsp"><span class="mdl-layout-title">YACA</span></a>
+				<!-- Image card -->
+					  <!-- Add spacer, to align navigation to the right in desktop -->
+				<div class="android-header-spacer mdl-layout-spacer"></div>
+					<div class="android-search-box mdl-textfield mdl-js-textfield mdl-textfield--expandable mdl-textfield--floating-label mdl-textfield--align-right mdl-textfield--full-width">
+						<label class="mdl-button mdl-js-button mdl-button--icon" for="search-field">
+							<i class="material-icons">search</i>
+						</label>
+						<div class="mdl-textfield__expandable-holder">
+							<form action="/search" method="GET"><input class="mdl-textfield__input" type="text" id="search-field" name="q"></form>
+						</div>
+					</div>
+					  <!-- Navigation -->
+					<div class="android-navigation-container">
+						<nav class="android-navigation mdl-navigation">
+							<a class="mdl-navigation__link mdl-typography--text-uppercase" href="/conversations">Conversations</a>
+							<% if(request.getSession().getAttribute("user") != null){ %>
+									<a class="mdl-navigation__link mdl-typography--text-uppercase">Hello <%= request.getSession().getAttribute("user") %>!</a>
+								<a></a>
+							<% } else{ %>
+								<a class="mdl-navigation__link mdl-typography--text-uppercase" href="/login">Login</a>
+							<% } %>
+							<%-- <% if(request.getSession().getAttribute("admin") != null) { %> --%>
+								<a class="mdl-navigation__link mdl-typography--text-uppercase" href="/admin">Admin</a>
+							<%-- <% } %> --%>
+							<a class="mdl-navigation__link mdl-typography--text-uppercase" href="/activityfeed">Activity Feed</a>
+							<% if(request.getSession().getAttribute("user") != null){ %>
+							<a class="mdl-navigation__link mdl-typography--text-uppercase" href ="/user/<%=request.getSession().getAttribute("user")%>">My Profile</a>
+							<% } %>
+							<% if(request.getSession().getAttribute("user") != null){ %>
+								<a class="mdl-navigation__link mdl-typography--text-uppercase" href="/logout">Logout</a>
+							<% } %>
+						</nav>
+					</div>
+					<span class="android-mobile-title mdl-layout-title">
+						<a class="mdl-navigation__link mdl-typography--text-uppercase" href="/about.jsp">
+						<img class="android-logo-image" src="/images/JavaChipsLogoMenu.png">
+						</a>
+					</span>
+				</div>
+			</div>
+		</div>
+		<main class="mdl-layout__content" style="display:-webkit-box;">
+		<div class="content-grid">
+			<div class="page-content">
+				<h1 id="container">
+					Search
+				</h1>
+				<form action="/search" method="GET">
+					<input type="text" name="q" value="<%= query == null ? "" : escape(query) %>">
+					<button class="mdl-button mdl-js-button mdl-button--raised mdl-button--accent" type="submit">Search</button>
+				</form>
+				<hr/>
+				<% if(request.getAttribute("error") != null){ %>
+					<h2 style="color:red"><%= request.getAttribute("error") %></h2>
+				<% } else if(query != null) { %>
+					<%
+					if(messages == null || messages.isEmpty()) {
+					%>
+						<p>No messages match <b><%= escape(query) %></b>.</p>
+					<%
+					} else {
+						for(Message message : messages) {
+							Conversation conversation = conversations.get(message.getConversationId());
+							User author = UserStore.getInstance().getUser(message.getAuthorId());
+							String authorName = author == null ? "" : author.getName();
+						%>
+							<span><b><%= message.getFormattedTime() %></b>
+								<a class="mdl-color-text--cyan" href="/chat/<%= conversation.getTitle() %>"><%= conversation.getTitle() %></a>
+							</span>
+							<p><strong><a class="mdl-color-text--cyan" href="/user/<%= authorName %>"><%= authorName %></a>:</strong> <%= message.getText() %></p>
+							<hr/>
+						<%
+						}
+					}
+					%>
+				<% } %>
+			</div>
+		</div>
+	</main>
+</body>
+</html>
@@ -0,0 +1,155 @@
+package codeu.model.store.persistence;
+
+import codeu.model.data.Activity;
+import codeu.model.data.Conversation;
+import codeu.model.data.Group;
+import codeu.model.data.Message;
+import codeu.model.data.Profile;
+import codeu.model.data.User;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * PersistentDataStore that keeps everything in memory, so benchmarks measure the stores and not
+ * Datastore. Written objects are kept by ID and the load methods return them, so a store can be
+ * loaded back from what it wrote.
+ */
+public class InMemoryDataStore extends PersistentDataStore {
+
+  private final Map<UUID, User> users = new ConcurrentHashMap<>();
+  private final Map<UUID, Conversation> conversations = new ConcurrentHashMap<>();
+  private final Map<UUID, Group> groups = new ConcurrentHashMap<>();
+  private final Map<UUID, Message> messages = new ConcurrentHashMap<>();
+  private final Map<UUID, Activity> activities = new ConcurrentHashMap<>();
+  private final Map<UUID, Profile> profiles = new ConcurrentHashMap<>();
+
+  /** Returns a PersistentStorageAgent that writes through to a new InMemoryDataStore. */
+  public static PersistentStorageAgent newAgent() {
+    return PersistentStorageAgent.getTestInstance(new InMemoryDataStore());
+  }
+
+  @Override
+  public List<User> loadUsers() {
+    return new ArrayList<>(users.values());
+  }
+
+  @Override
+  public List<Conversation> loadConversations() {
+    return new ArrayList<>(conversations.values());
+  }
+
+  @Override
+  public List<Group> loadGroupConversations() {
+    return new ArrayList<>(groups.values());
+  }
+
+  @Override
+  public List<Message> loadMessages() {
+    return new ArrayList<>(messages.values());
+  }
+
+  @Override
+  public void scanMessages(int batchSize, Consumer<List<Message>> batches) {
+    List<Message> sorted = messages.values().stream()
+        .sorted(Comparator.comparing(Message::getCreationTime))
+        .collect(Collectors.toList());
+    for (int start = 0; start < sorted.size(); start += batchSize) {
+      int end = Math.min(sorted.size(), start + batchSize);
+      batches.accept(new ArrayList<>(sorted.subList(start, end)));
+    }
+  }
+
+  @Override
+  public List<Message> loadMessagesInConversation(UUID conversationId) {
+    return messages.values().stream()
+        .filter(message -> message.getConversationId().equals(conversationId))
+        .sorted(Comparator.comparing(Message::getCreationTime))
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public List<Message> loadMessagesByAuthor(
+      UUID authorId, Instant before, UUID beforeId, int limit) {
+    Comparator<Message> historyOrder =
+        Comparator.comparing(Message::getCreationTime).thenComparing(Message::getId);
+    List<Message> newest = messages.values().stream()
+        .filter(message -> message.getAuthorId().equals(authorId))
+        .filter(message -> before == null
+            || message.getCreationTime().isBefore(before)
+            || (message.getCreationTime().equals(before) && message.getId().compareTo(beforeId) < 0))
+        .sorted(historyOrder.reversed())
+        .limit(limit)
+        .collect(Collectors.toList());
+    Collections.reverse(newest);
+    return newest;
+  }
+
+  @Override
+  public List<Activity> loadActivities() {
+    return loadActivities(null, null, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public List<Activity> loadActivities(Instant before, UUID beforeId, int limit) {
+    return activities.values().stream()
+        .filter(activity -> before == null
+            || activity.getCreationTime().isBefore(before)
+            || (activity.getCreationTime().equals(before)
+                && activity.getId().compareTo(beforeId) < 0))
+        .sorted(
+            Comparator.comparing(Activity::getCreationTime)
+                .thenComparing(Activity::getId)
+                .reversed())
+        .limit(limit)
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public void backfillCreationNanos() {}
+
+  @Override
+  public void backfillActivityConversations() {}
+
+  @Override
+  public List<Profile> loadProfiles() {
+    return new ArrayList<>(profiles.values());
+  }
+
+  @Override
+  public void writeThrough(User user) {
+    users.put(user.getId(), user);
+  }
+
+  @Override
+  public void writeThrough(Message message) {
+    messages.put(message.getId(), message);
+  }
+
+  @Override
+  public void writeThrough(Group group) {
+    groups.put(group.getId(), group);
+  }
+
+  @Override
+  public void writeThrough(Conversation conversation) {
+    conversations.put(conversation.getId(), conversation);
+  }
+
+  @Override
+  public void writeThrough(Activity activity) {
+    activities.put(activity.getId(), activity);
+  }
+
+  @Override
+  public void writeThrough(Profile profile) {
+    profiles.put(profile.getId(), profile);
+  }
+}
@@ -0,0 +1,77 @@
+package codeu.perf;
+
+import codeu.model.data.Activity;
+import codeu.model.data.User;
+import codeu.model.store.basic.ActivityCursor;
+import codeu.model.store.basic.ActivityStore;
+import codeu.model.store.persistence.InMemoryDataStore;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Feed pages and inserts in ActivityStore at 1k, 100k and 1M elements. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ActivityStoreBenchmark {
+
+  /** The number of Activities read per page, as ActivityFeedServlet reads them. */
+  private static final int PAGE = 50;
+
+  /** The number of elements in the store. */
+  @Param({"1000", "100000", "1000000"})
+  int size;
+
+  private List<User> owners;
+  private List<Activity> activities;
+  private int[] picks;
+  private int cursor;
+  private int added;
+  private ActivityStore activityStore;
+
+  @Setup(Level.Trial)
+  public void setUpData() {
+    Fixtures fixtures = new Fixtures(17);
+    owners = fixtures.users(Math.max(1, size / 100));
+    activities = fixtures.activities(size, owners);
+    picks = Picks.of(fixtures, size);
+  }
+
+  /** Inserts grow the store, so every iteration starts again from the same activities. */
+  @Setup(Level.Iteration)
+  public void setUpStore() {
+    activityStore = ActivityStore.getTestInstance(InMemoryDataStore.newAgent());
+    activityStore.setActivities(activities);
+    added = 0;
+  }
+
+  @Benchmark
+  public List<Activity> newestPage() {
+    return activityStore.page(null, PAGE);
+  }
+
+  @Benchmark
+  public List<Activity> olderPage() {
+    ActivityCursor before = ActivityCursor.of(activities.get(picks[cursor++ & Picks.MASK]));
+    return activityStore.page(before, PAGE);
+  }
+
+  @Benchmark
+  public void addActivity() {
+    activityStore.addActivity(new Fixtures(added).activity(size + added++, owners));
+  }
+}
@@ -0,0 +1,77 @@
+package codeu.perf;
+
+import codeu.model.data.Conversation;
+import codeu.model.data.User;
+import codeu.model.store.basic.ConversationStore;
+import codeu.model.store.persistence.InMemoryDataStore;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups and inserts in ConversationStore at 1k, 100k and 1M elements, with one User for every ten
+ * Conversations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ConversationStoreBenchmark {
+
+  /** The number of elements in the store. */
+  @Param({"1000", "100000", "1000000"})
+  int size;
+
+  private List<User> users;
+  private List<Conversation> conversations;
+  private int[] picks;
+  private int cursor;
+  private int added;
+  private ConversationStore conversationStore;
+
+  @Setup(Level.Trial)
+  public void setUpData() {
+    Fixtures fixtures = new Fixtures(17);
+    users = fixtures.users(size / 10);
+    conversations = fixtures.conversations(size, users);
+    picks = Picks.of(fixtures, size);
+  }
+
+  /** Inserts grow the store, so every iteration starts again from the same conversations. */
+  @Setup(Level.Iteration)
+  public void setUpStore() {
+    conversationStore = ConversationStore.getTestInstance(InMemoryDataStore.newAgent());
+    conversationStore.setConversations(conversations);
+    added = 0;
+  }
+
+  @Benchmark
+  public Conversation getConversationWithTitle() {
+    return conversationStore.getConversationWithTitle(
+        conversations.get(picks[cursor++ & Picks.MASK]).getTitle());
+  }
+
+  @Benchmark
+  public List<?> getPrivateConversationsWithUser() {
+    return conversationStore.getPrivateConversationsWithUser(
+        users.get(picks[cursor++ & Picks.MASK] % users.size()).getId());
+  }
+
+  @Benchmark
+  public void addConversation() {
+    conversationStore.addConversation(new Fixtures(added).conversation(size + added++, users));
+  }
+}
@@ -0,0 +1,118 @@
+package codeu.perf;
+
+import codeu.model.data.Activity;
+import codeu.model.data.Activity.ActivityType;
+import codeu.model.data.Conversation;
+import codeu.model.data.Conversation.Type;
+import codeu.model.data.Conversation.Visibility;
+import codeu.model.data.Message;
+import codeu.model.data.Profile;
+import codeu.model.data.User;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import org.javatuples.Pair;
+
+/**
+ * Builds the data the benchmarks load into the stores. Everything is derived from a fixed seed and
+ * a fixed start time, so every run of a benchmark at a given size works on the same data.
+ */
+final class Fixtures {
+
+  /** The creation time of the first object; each later one is a second newer. */
+  static final Instant EPOCH = Instant.parse("2018-01-01T00:00:00Z");
+
+  private final Random random;
+
+  Fixtures(long seed) {
+    random = new Random(seed);
+  }
+
+  UUID uuid() {
+    return new UUID(random.nextLong(), random.nextLong());
+  }
+
+  /** Returns a number in [0, bound), for picking existing keys in a reproducible order. */
+  int nextIndex(int bound) {
+    return random.nextInt(bound);
+  }
+
+  List<User> users(int count) {
+    List<User> users = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      users.add(user(i));
+    }
+    return users;
+  }
+
+  User user(int i) {
+    return new User(uuid(), uuid(), "user_" + i, "password_hash", false, EPOCH.plusSeconds(i));
+  }
+
+  /**
+   * Returns {@code count} Conversations. One in ten is a group Conversation with two of the given
+   * members; the rest are public.
+   */
+  List<Conversation> conversations(int count, List<User> members) {
+    List<Conversation> conversations = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      conversations.add(conversation(i, members));
+    }
+    return conversations;
+  }
+
+  Conversation conversation(int i, List<User> members) {
+    HashSet<UUID> memberIds = new HashSet<>();
+    Visibility visibility = Visibility.PUBLIC;
+    if (i % 10 == 0 && !members.isEmpty()) {
+      visibility = Visibility.GROUP;
+      memberIds.add(members.get(nextIndex(members.size())).getId());
+      memberIds.add(members.get(nextIndex(members.size())).getId());
+    } else {
+      memberIds.add(new UUID(0, 0));
+    }
+    return new Conversation(uuid(), members.isEmpty() ? uuid() : members.get(0).getId(),
+        "conversation_" + i, EPOCH.plusSeconds(i), memberIds, Type.TEXT, visibility, "fakeURL",
+        "365/DAYS", "description " + i);
+  }
+
+  /** Returns {@code count} Messages, spread evenly over the Conversations and authors. */
+  List<Message> messages(int count, List<Conversation> conversations, List<User> authors) {
+    List<Message> messages = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      messages.add(message(i, conversations, authors));
+    }
+    return messages;
+  }
+
+  Message message(int i, List<Conversation> conversations, List<User> authors) {
+    return new Message(uuid(), conversations.get(i % conversations.size()).getId(),
+        authors.get(i % authors.size()).getId(), new Pair<>("message " + i, null),
+        EPOCH.plusSeconds(i));
+  }
+
+  /** Returns {@code count} Activities, newest first, as Datastore loads them. */
+  List<Activity> activities(int count, List<User> owners) {
+    List<Activity> activities = new ArrayList<>(count);
+    for (int i = count - 1; i >= 0; i--) {
+      activities.add(activity(i, owners));
+    }
+    return activities;
+  }
+
+  Activity activity(int i, List<User> owners) {
+    return new Activity(ActivityType.MESSAGE, uuid(), owners.get(i % owners.size()).getId(),
+        uuid(), EPOCH.plusSeconds(i));
+  }
+
+  List<Profile> profiles(int count) {
+    List<Profile> profiles = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      profiles.add(new Profile(uuid(), EPOCH.plusSeconds(i)));
+    }
+    return profiles;
+  }
+}
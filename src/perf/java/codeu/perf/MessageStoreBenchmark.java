@@ -0,0 +1,83 @@
+package codeu.perf;
+
+import codeu.model.data.Conversation;
+import codeu.model.data.Message;
+import codeu.model.data.User;
+import codeu.model.store.basic.MessageStore;
+import codeu.model.store.persistence.InMemoryDataStore;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Lookups and inserts in MessageStore at 1k, 100k and 1M elements, with a hundred Messages in each
+ * Conversation and a hundred by each User.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class MessageStoreBenchmark {
+
+  /** The number of Messages read per page, as ChatServlet reads them. */
+  private static final int PAGE = 50;
+
+  /** The number of elements in the store. */
+  @Param({"1000", "100000", "1000000"})
+  int size;
+
+  private List<User> authors;
+  private List<Conversation> conversations;
+  private List<Message> messages;
+  private int[] picks;
+  private int cursor;
+  private int added;
+  private MessageStore messageStore;
+
+  @Setup(Level.Trial)
+  public void setUpData() {
+    Fixtures fixtures = new Fixtures(17);
+    authors = fixtures.users(size / 100);
+    conversations = fixtures.conversations(size / 100, authors);
+    messages = fixtures.messages(size, conversations, authors);
+    picks = Picks.of(fixtures, size);
+  }
+
+  /** Inserts grow the store, so every iteration starts again from the same messages. */
+  @Setup(Level.Iteration)
+  public void setUpStore() {
+    messageStore = MessageStore.getTestInstance(InMemoryDataStore.newAgent());
+    messageStore.setMessages(messages);
+    added = 0;
+  }
+
+  @Benchmark
+  public List<Message> newestPageInConversation() {
+    return messageStore.getMessagesInConversation(
+        messages.get(picks[cursor++ & Picks.MASK]).getConversationId(), null, PAGE);
+  }
+
+  @Benchmark
+  public List<Message> newestPageByUser() {
+    return messageStore.getMessagesByUser(
+        messages.get(picks[cursor++ & Picks.MASK]).getAuthorId(), null, PAGE);
+  }
+
+  @Benchmark
+  public void addMessage() {
+    messageStore.addMessage(new Fixtures(added).message(size + added++, conversations, authors));
+  }
+}
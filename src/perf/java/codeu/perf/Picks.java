@@ -0,0 +1,20 @@
+package codeu.perf;
+
+/** The indexes of the existing objects a benchmark looks up, in a fixed pseudo-random order. */
+final class Picks {
+
+  /** Lookups cycle through this many picks; a power of two so the cursor can be masked. */
+  static final int COUNT = 4096;
+
+  static final int MASK = COUNT - 1;
+
+  private Picks() {}
+
+  static int[] of(Fixtures fixtures, int size) {
+    int[] picks = new int[COUNT];
+    for (int i = 0; i < COUNT; i++) {
+      picks[i] = fixtures.nextIndex(size);
+    }
+    return picks;
+  }
+}
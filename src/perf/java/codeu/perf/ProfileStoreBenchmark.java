@@ -0,0 +1,64 @@
+package codeu.perf;
+
+import codeu.model.data.Profile;
+import codeu.model.store.basic.ProfileStore;
+import codeu.model.store.persistence.InMemoryDataStore;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Lookups and inserts in ProfileStore at 1k, 100k and 1M elements. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ProfileStoreBenchmark {
+
+  /** The number of elements in the store. */
+  @Param({"1000", "100000", "1000000"})
+  int size;
+
+  private List<Profile> profiles;
+  private int[] picks;
+  private int cursor;
+  private int added;
+  private ProfileStore profileStore;
+
+  @Setup(Level.Trial)
+  public void setUpData() {
+    Fixtures fixtures = new Fixtures(17);
+    profiles = fixtures.profiles(size);
+    picks = Picks.of(fixtures, size);
+  }
+
+  /** Inserts grow the store, so every iteration starts again from the same profiles. */
+  @Setup(Level.Iteration)
+  public void setUpStore() {
+    profileStore = ProfileStore.getTestInstance(InMemoryDataStore.newAgent());
+    profileStore.setProfiles(profiles);
+    added = 0;
+  }
+
+  @Benchmark
+  public Profile getProfile() {
+    return profileStore.getProfile(profiles.get(picks[cursor++ & Picks.MASK]).getId());
+  }
+
+  @Benchmark
+  public void addProfile() {
+    profileStore.addProfile(new Profile(new Fixtures(added++).uuid(), Fixtures.EPOCH));
+  }
+}
@@ -0,0 +1,134 @@
+package codeu.perf;
+
+import codeu.model.data.Activity;
+import codeu.model.data.Activity.ActivityType;
+import codeu.model.data.Message;
+import codeu.model.data.TimestampFormatter;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.javatuples.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the ways of formatting the timestamps of a rendered page of rows: building a
+ * DateTimeFormatter for every row, as Activity and Message used to, formatting with the shared
+ * formatters in TimestampFormatter, and reading the string memoized on each Activity and Message.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimestampFormattingBenchmark {
+
+  @Param("10000")
+  int rows;
+
+  private List<Activity> activities;
+  private List<Message> messages;
+
+  /** Rows that have never been rendered, rebuilt before each iteration of the cold benchmarks. */
+  private List<Activity> freshActivities;
+  private List<Message> freshMessages;
+
+  @Setup(Level.Trial)
+  public void setUpRows() {
+    activities = newActivities(rows);
+    messages = newMessages(rows);
+    // render once, as the feed and profile pages would have
+    for (int i = 0; i < rows; i++) {
+      activities.get(i).getCreationTimeFormatted();
+      messages.get(i).getFormattedTime();
+    }
+  }
+
+  @Setup(Level.Iteration)
+  public void setUpFreshRows() {
+    freshActivities = newActivities(rows);
+    freshMessages = newMessages(rows);
+  }
+
+  /** The old path: a new formatter for every row. */
+  @Benchmark
+  public void formatterPerRow(Blackhole blackhole) {
+    for (int i = 0; i < rows; i++) {
+      blackhole.consume(
+          DateTimeFormatter.ofPattern(TimestampFormatter.ACTIVITY_PATTERN)
+              .withZone(ZoneId.systemDefault())
+              .format(activities.get(i).getCreationTime()));
+      blackhole.consume(
+          DateTimeFormatter.ofPattern(TimestampFormatter.MESSAGE_PATTERN)
+              .withZone(ZoneId.systemDefault())
+              .format(messages.get(i).getCreationTime()));
+    }
+  }
+
+  /** Every row formatted again, with the shared formatters. */
+  @Benchmark
+  public void sharedFormatter(Blackhole blackhole) {
+    for (int i = 0; i < rows; i++) {
+      blackhole.consume(
+          TimestampFormatter.format(
+              activities.get(i).getCreationTime(), TimestampFormatter.ACTIVITY_PATTERN));
+      blackhole.consume(
+          TimestampFormatter.format(
+              messages.get(i).getCreationTime(), TimestampFormatter.MESSAGE_PATTERN));
+    }
+  }
+
+  /** The first render of rows that have not been formatted yet. */
+  @Benchmark
+  public void memoizedFirstRender(Blackhole blackhole) {
+    for (int i = 0; i < rows; i++) {
+      blackhole.consume(freshActivities.get(i).getCreationTimeFormatted());
+      blackhole.consume(freshMessages.get(i).getFormattedTime());
+    }
+  }
+
+  /** A later render of the same rows, which reads the memoized strings. */
+  @Benchmark
+  public void memoizedRerender(Blackhole blackhole) {
+    for (int i = 0; i < rows; i++) {
+      blackhole.consume(activities.get(i).getCreationTimeFormatted());
+      blackhole.consume(messages.get(i).getFormattedTime());
+    }
+  }
+
+  private static List<Activity> newActivities(int rows) {
+    List<Activity> activities = new ArrayList<>(rows);
+    for (int i = 0; i < rows; i++) {
+      activities.add(
+          new Activity(ActivityType.MESSAGE, UUID.randomUUID(), UUID.randomUUID(),
+              UUID.randomUUID(), Instant.ofEpochSecond(1500000000L + i * 60L)));
+    }
+    return activities;
+  }
+
+  private static List<Message> newMessages(int rows) {
+    List<Message> messages = new ArrayList<>(rows);
+    for (int i = 0; i < rows; i++) {
+      messages.add(
+          new Message(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(),
+              new Pair<>("message " + i, null), Instant.ofEpochSecond(1500000000L + i * 60L)));
+    }
+    return messages;
+  }
+}
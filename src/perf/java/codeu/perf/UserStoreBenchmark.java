@@ -0,0 +1,69 @@
+package codeu.perf;
+
+import codeu.model.data.User;
+import codeu.model.store.basic.UserStore;
+import codeu.model.store.persistence.InMemoryDataStore;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Lookups and inserts in UserStore at 1k, 100k and 1M elements. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class UserStoreBenchmark {
+
+  /** The number of elements in the store. */
+  @Param({"1000", "100000", "1000000"})
+  int size;
+
+  private List<User> users;
+  private int[] picks;
+  private int cursor;
+  private int added;
+  private UserStore userStore;
+
+  @Setup(Level.Trial)
+  public void setUpData() {
+    Fixtures fixtures = new Fixtures(17);
+    users = fixtures.users(size);
+    picks = Picks.of(fixtures, size);
+  }
+
+  /** Inserts grow the store, so every iteration starts again from the same users. */
+  @Setup(Level.Iteration)
+  public void setUpStore() {
+    userStore = UserStore.getTestInstance(InMemoryDataStore.newAgent());
+    userStore.setUsers(users);
+    added = 0;
+  }
+
+  @Benchmark
+  public User getUserByName() {
+    return userStore.getUser(users.get(picks[cursor++ & Picks.MASK]).getName());
+  }
+
+  @Benchmark
+  public User getUserById() {
+    return userStore.getUser(users.get(picks[cursor++ & Picks.MASK]).getId());
+  }
+
+  @Benchmark
+  public void addUser() {
+    userStore.addUser(new Fixtures(added).user(size + added++));
+  }
+}
@@ -0,0 +1,172 @@
+package codeu.perf.load;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.DispatcherType;
+import javax.servlet.RequestDispatcher;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+
+/**
+ * Minimal in-process requests, responses and sessions for driving servlets without a container.
+ * Only the methods the servlets call do anything; the rest return null, zero or false. Forwards to
+ * JSPs are dropped, so a measured request covers the servlet, the stores and Datastore but not page
+ * rendering.
+ */
+final class FakeHttp {
+
+  private static final RequestDispatcher DROP_FORWARD =
+      proxy(RequestDispatcher.class, (proxy, method, args) -> null);
+
+  private static final PrintWriter DISCARD =
+      new PrintWriter(
+          new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) {}
+
+            @Override
+            public void flush() {}
+
+            @Override
+            public void close() {}
+          });
+
+  private FakeHttp() {}
+
+  /** Returns a new, empty session. */
+  static HttpSession session() {
+    Map<String, Object> attributes = new ConcurrentHashMap<>();
+    return proxy(
+        HttpSession.class,
+        (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getAttribute":
+              return attributes.get(args[0]);
+            case "setAttribute":
+              if (args[1] == null) {
+                attributes.remove(args[0]);
+              } else {
+                attributes.put((String) args[0], args[1]);
+              }
+              return null;
+            case "removeAttribute":
+              attributes.remove(args[0]);
+              return null;
+            case "invalidate":
+              attributes.clear();
+              return null;
+            default:
+              return defaultValue(method.getReturnType());
+          }
+        });
+  }
+
+  /**
+   * Returns a request.
+   *
+   * @param method the HTTP method
+   * @param uri the request URI, without a query string
+   * @param parameters the query or form parameters
+   * @param session the caller's session
+   */
+  static HttpServletRequest request(
+      String method, String uri, Map<String, String> parameters, HttpSession session) {
+    Map<String, Object> attributes = new ConcurrentHashMap<>();
+    Map<String, String> params = parameters == null ? Collections.emptyMap() : parameters;
+    return proxy(
+        HttpServletRequest.class,
+        (proxy, m, args) -> {
+          switch (m.getName()) {
+            case "getMethod":
+              return method;
+            case "getRequestURI":
+            case "getServletPath":
+              return uri;
+            case "getParameter":
+              return params.get(args[0]);
+            case "getSession":
+              return session;
+            case "getAttribute":
+              return attributes.get(args[0]);
+            case "setAttribute":
+              if (args[1] == null) {
+                attributes.remove(args[0]);
+              } else {
+                attributes.put((String) args[0], args[1]);
+              }
+              return null;
+            case "removeAttribute":
+              attributes.remove(args[0]);
+              return null;
+            case "getRequestDispatcher":
+              return DROP_FORWARD;
+            case "getDispatcherType":
+              return DispatcherType.REQUEST;
+            default:
+              return defaultValue(m.getReturnType());
+          }
+        });
+  }
+
+  /** A response that records its status and any redirect, and discards its body. */
+  static final class Response {
+
+    private volatile int status = HttpServletResponse.SC_OK;
+    private volatile String redirect;
+
+    final HttpServletResponse servletResponse =
+        proxy(
+            HttpServletResponse.class,
+            (proxy, method, args) -> {
+              switch (method.getName()) {
+                case "setStatus":
+                case "sendError":
+                  status = (Integer) args[0];
+                  return null;
+                case "sendRedirect":
+                  status = HttpServletResponse.SC_FOUND;
+                  redirect = (String) args[0];
+                  return null;
+                case "getStatus":
+                  return status;
+                case "getWriter":
+                  return DISCARD;
+                default:
+                  return defaultValue(method.getReturnType());
+              }
+            });
+
+    int status() {
+      return status;
+    }
+
+    /** Returns where the response redirected to, or null if it didn't. */
+    String redirect() {
+      return redirect;
+    }
+  }
+
+  private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+    return type.cast(
+        Proxy.newProxyInstance(FakeHttp.class.getClassLoader(), new Class<?>[] {type}, handler));
+  }
+
+  private static Object defaultValue(Class<?> type) {
+    if (type == boolean.class) {
+      return false;
+    }
+    if (type == int.class) {
+      return 0;
+    }
+    if (type == long.class) {
+      return 0L;
+    }
+    return null;
+  }
+}
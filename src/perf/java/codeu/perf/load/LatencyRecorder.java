@@ -0,0 +1,52 @@
+package codeu.perf.load;
+
+import java.util.Arrays;
+
+/**
+ * Records the latencies of one kind of request. Every latency is kept, so the percentiles are exact;
+ * a run of a few minutes records a few million at most.
+ */
+final class LatencyRecorder {
+
+  private final String name;
+  private long[] latencies = new long[1024];
+  private int count;
+  private int errors;
+
+  LatencyRecorder(String name) {
+    this.name = name;
+  }
+
+  String name() {
+    return name;
+  }
+
+  synchronized void record(long latencyNanos, boolean error) {
+    if (count == latencies.length) {
+      latencies = Arrays.copyOf(latencies, count * 2);
+    }
+    latencies[count++] = latencyNanos;
+    if (error) {
+      errors++;
+    }
+  }
+
+  synchronized int count() {
+    return count;
+  }
+
+  synchronized int errors() {
+    return errors;
+  }
+
+  /** Returns the latency in nanoseconds below which the given fraction of requests finished. */
+  synchronized long percentile(double fraction) {
+    if (count == 0) {
+      return 0;
+    }
+    long[] sorted = Arrays.copyOf(latencies, count);
+    Arrays.sort(sorted);
+    int index = (int) Math.ceil(fraction * count) - 1;
+    return sorted[Math.max(0, Math.min(count - 1, index))];
+  }
+}
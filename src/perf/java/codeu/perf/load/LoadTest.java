@@ -0,0 +1,362 @@
+package codeu.perf.load;
+
+import codeu.controller.ActivityFeedServlet;
+import codeu.controller.ChatServlet;
+import codeu.controller.ConversationServlet;
+import codeu.controller.LoginServlet;
+import codeu.controller.ProfileServlet;
+import codeu.controller.RegisterServlet;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.apphosting.api.ApiProxy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+/**
+ * Offline load generator. It starts the servlets in this process against the local Datastore from
+ * LocalServiceTestHelper, seeds some users and conversations, and then has a number of simulated
+ * clients send a weighted mix of requests for a fixed time. It reports the throughput and the
+ * p50/p95/p99 latency of each kind of request.
+ *
+ * <p>Requests go straight to the servlets' doGet() and doPost(), with no container or network, and
+ * JSP forwards are dropped. The numbers cover the servlets, the stores and Datastore, which is where
+ * an instance spends its time apart from rendering.
+ *
+ * <p>Run with the perf profile:
+ *
+ * <pre>
+ * mvn -P perf test-compile exec:java -Dexec.mainClass=codeu.perf.load.LoadTest \
+ *     -Dexec.args="--threads=8 --seconds=60"
+ * </pre>
+ *
+ * Options, with their defaults: --threads=8 simulated clients, --warmup=10 and --seconds=60 of
+ * unrecorded and recorded load, --users=50 and --rooms=20 seeded, --seed=1, and
+ * --mix=register:1,login:4,createConversation:2,chatPost:25,chatRead:40,feedRead:18,profileRead:10.
+ */
+public class LoadTest {
+
+  /** The kinds of request a simulated client sends. */
+  enum Operation {
+    register("RegisterServlet POST /register"),
+    login("LoginServlet POST /login"),
+    createConversation("ConversationServlet POST /conversations"),
+    chatPost("ChatServlet POST /chat/*"),
+    chatRead("ChatServlet GET /chat/*"),
+    feedRead("ActivityFeedServlet GET /activityfeed"),
+    profileRead("ProfileServlet GET /user/*");
+
+    final String label;
+
+    Operation(String label) {
+      this.label = label;
+    }
+  }
+
+  private static final String PASSWORD = "Load-test1";
+
+  private final Map<String, String> options;
+  private final Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+  private final Map<Operation, LatencyRecorder> recorders = new EnumMap<>(Operation.class);
+
+  private final RegisterServlet registerServlet = new RegisterServlet();
+  private final LoginServlet loginServlet = new LoginServlet();
+  private final ConversationServlet conversationServlet = new ConversationServlet();
+  private final ChatServlet chatServlet = new ChatServlet();
+  private final ActivityFeedServlet activityFeedServlet = new ActivityFeedServlet();
+  private final ProfileServlet profileServlet = new ProfileServlet();
+
+  /** Registered usernames; they all share PASSWORD. */
+  private final List<String> usernames = new CopyOnWriteArrayList<>();
+  private final List<String> rooms = new CopyOnWriteArrayList<>();
+  private final AtomicInteger nextUser = new AtomicInteger();
+  private final AtomicInteger nextRoom = new AtomicInteger();
+
+  /** Whether latencies are recorded; false while warming up. */
+  private volatile boolean recording;
+  private volatile boolean running = true;
+
+  LoadTest(Map<String, String> options) {
+    this.options = options;
+    for (Operation operation : Operation.values()) {
+      recorders.put(operation, new LatencyRecorder(operation.label));
+    }
+    String mixOption =
+        options.getOrDefault(
+            "mix",
+            "register:1,login:4,createConversation:2,chatPost:25,chatRead:40,feedRead:18,"
+                + "profileRead:10");
+    for (String weight : mixOption.split(",")) {
+      String[] parts = weight.split(":");
+      mix.put(Operation.valueOf(parts[0].trim()), Integer.parseInt(parts[1].trim()));
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (String arg : args) {
+      if (!arg.startsWith("--") || !arg.contains("=")) {
+        throw new IllegalArgumentException("Expected --name=value, got " + arg);
+      }
+      options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+    }
+    LocalServiceTestHelper helper =
+        new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig().setNoStorage(true));
+    helper.setUp();
+    try {
+      new LoadTest(options).run();
+    } finally {
+      helper.tearDown();
+    }
+  }
+
+  private int intOption(String name, int defaultValue) {
+    return options.containsKey(name) ? Integer.parseInt(options.get(name)) : defaultValue;
+  }
+
+  void run() throws Exception {
+    int threads = intOption("threads", 8);
+    int warmupSeconds = intOption("warmup", 10);
+    int seconds = intOption("seconds", 60);
+    long seed = intOption("seed", 1);
+    for (HttpServlet servlet :
+        new HttpServlet[] {
+          registerServlet, loginServlet, conversationServlet, chatServlet, activityFeedServlet,
+          profileServlet
+        }) {
+      servlet.init();
+    }
+
+    Random seedRandom = new Random(seed);
+    for (int i = intOption("users", 50); i > 0; i--) {
+      register();
+    }
+    HttpSession owner = login(usernames.get(0));
+    for (int i = intOption("rooms", 20); i > 0; i--) {
+      createConversation(owner);
+    }
+    System.out.println(
+        "Seeded " + usernames.size() + " users and " + rooms.size() + " conversations");
+
+    // Datastore calls need the App Engine environment LocalServiceTestHelper set up on this thread.
+    ApiProxy.Environment environment = ApiProxy.getCurrentEnvironment();
+    CountDownLatch finished = new CountDownLatch(threads);
+    for (int i = 0; i < threads; i++) {
+      long clientSeed = seedRandom.nextLong();
+      Thread client =
+          new Thread(
+              () -> {
+                ApiProxy.setEnvironmentForCurrentThread(environment);
+                try {
+                  runClient(new Random(clientSeed));
+                } finally {
+                  ApiProxy.clearEnvironmentForCurrentThread();
+                  finished.countDown();
+                }
+              },
+              "load-client-" + i);
+      client.setDaemon(true);
+      client.start();
+    }
+
+    Thread.sleep(TimeUnit.SECONDS.toMillis(warmupSeconds));
+    recording = true;
+    long start = System.nanoTime();
+    Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+    recording = false;
+    double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+    running = false;
+    finished.await();
+
+    report(threads, elapsedSeconds);
+  }
+
+  /**
+   * Sends requests from one simulated client until the run ends. A client whose login failed logs
+   * in again before anything else, so no request is sent anonymously.
+   */
+  private void runClient(Random random) {
+    int totalWeight = 0;
+    for (int weight : mix.values()) {
+      totalWeight += weight;
+    }
+    HttpSession session = login(pick(random, usernames));
+    while (running) {
+      Operation operation = null;
+      if (session == null) {
+        operation = Operation.login;
+      } else {
+        int roll = random.nextInt(totalWeight);
+        for (Map.Entry<Operation, Integer> weight : mix.entrySet()) {
+          roll -= weight.getValue();
+          if (roll < 0) {
+            operation = weight.getKey();
+            break;
+          }
+        }
+      }
+      long start = System.nanoTime();
+      boolean error;
+      try {
+        switch (operation) {
+          case register:
+            error = !register();
+            break;
+          case login:
+            session = login(pick(random, usernames));
+            error = session == null;
+            break;
+          case createConversation:
+            error = !createConversation(session);
+            break;
+          case chatPost:
+            String room = pick(random, rooms);
+            error =
+                !succeeded(chatServlet, "POST", "/chat/" + room,
+                    params("messageText", "load test message " + random.nextInt()), session,
+                    "/chat/" + room);
+            break;
+          case chatRead:
+            error =
+                !succeeded(chatServlet, "GET", "/chat/" + pick(random, rooms), null, session, null);
+            break;
+          case feedRead:
+            error = !succeeded(activityFeedServlet, "GET", "/activityfeed", null, session, null);
+            break;
+          case profileRead:
+            error =
+                !succeeded(profileServlet, "GET", "/user/" + pick(random, usernames), null, session,
+                    null);
+            break;
+          default:
+            throw new AssertionError(operation);
+        }
+      } catch (RuntimeException e) {
+        error = true;
+      }
+      if (recording) {
+        recorders.get(operation).record(System.nanoTime() - start, error);
+      }
+    }
+  }
+
+  /** Registers a new user and returns whether that succeeded. */
+  private boolean register() {
+    String username = "load_user_" + nextUser.getAndIncrement();
+    boolean succeeded =
+        succeeded(registerServlet, "POST", "/register",
+            params("username", username, "password", PASSWORD), FakeHttp.session(), "/login");
+    if (succeeded) {
+      usernames.add(username);
+    }
+    return succeeded;
+  }
+
+  /** Logs in as a user and returns the logged-in session, or null if the login failed. */
+  private HttpSession login(String username) {
+    HttpSession session = FakeHttp.session();
+    send(loginServlet, "POST", "/login", params("username", username, "password", PASSWORD),
+        session);
+    return session.getAttribute("user") == null ? null : session;
+  }
+
+  /** Creates a public conversation and returns whether that succeeded. */
+  private boolean createConversation(HttpSession session) {
+    String title = "load_room_" + nextRoom.getAndIncrement();
+    boolean succeeded =
+        succeeded(conversationServlet, "POST", "/conversations",
+            params(
+                "conversationTitle", title,
+                "conversationVisibility", "Public",
+                "conversationValidTimeDigit", "30",
+                "conversationValidTimeUnit", "DAYS",
+                "conversationDescription", "load test"),
+            session, "/chat/" + title);
+    if (succeeded) {
+      rooms.add(title);
+    }
+    return succeeded;
+  }
+
+  /**
+   * Sends one request to a servlet and returns whether it succeeded. The servlets answer some
+   * failures, such as a missing login or conversation, with a redirect and others by showing the
+   * form again with an error, so a request only succeeds if it has a status below 400, sets no
+   * error and redirects exactly where a success would.
+   *
+   * @param expectedRedirect where a successful request redirects, or null if it doesn't
+   */
+  private static boolean succeeded(
+      HttpServlet servlet, String method, String uri, Map<String, String> parameters,
+      HttpSession session, String expectedRedirect) {
+    HttpServletRequest request = FakeHttp.request(method, uri, parameters, session);
+    FakeHttp.Response response = send(servlet, request);
+    return response.status() < 400
+        && request.getAttribute("error") == null
+        && Objects.equals(expectedRedirect, response.redirect());
+  }
+
+  /** Sends one request to a servlet and returns the response. */
+  private static FakeHttp.Response send(
+      HttpServlet servlet, String method, String uri, Map<String, String> parameters,
+      HttpSession session) {
+    return send(servlet, FakeHttp.request(method, uri, parameters, session));
+  }
+
+  private static FakeHttp.Response send(HttpServlet servlet, HttpServletRequest request) {
+    FakeHttp.Response response = new FakeHttp.Response();
+    try {
+      servlet.service(request, response.servletResponse);
+    } catch (ServletException | IOException e) {
+      throw new RuntimeException(e);
+    }
+    return response;
+  }
+
+  private static Map<String, String> params(String... namesAndValues) {
+    Map<String, String> params = new HashMap<>();
+    for (int i = 0; i < namesAndValues.length; i += 2) {
+      params.put(namesAndValues[i], namesAndValues[i + 1]);
+    }
+    return params;
+  }
+
+  private static String pick(Random random, List<String> values) {
+    return values.get(random.nextInt(values.size()));
+  }
+
+  private void report(int threads, double elapsedSeconds) {
+    System.out.printf("%d clients for %.1f s%n%n", threads, elapsedSeconds);
+    System.out.printf("%-42s %9s %7s %9s %9s %9s %9s%n",
+        "request", "count", "errors", "req/s", "p50 ms", "p95 ms", "p99 ms");
+    List<LatencyRecorder> rows = new ArrayList<>(recorders.values());
+    int total = 0;
+    int errors = 0;
+    for (LatencyRecorder recorder : rows) {
+      total += recorder.count();
+      errors += recorder.errors();
+      System.out.printf("%-42s %9d %7d %9.1f %9.2f %9.2f %9.2f%n",
+          recorder.name(), recorder.count(), recorder.errors(), recorder.count() / elapsedSeconds,
+          millis(recorder.percentile(0.50)), millis(recorder.percentile(0.95)),
+          millis(recorder.percentile(0.99)));
+    }
+    System.out.printf("%-42s %9d %7d %9.1f%n", "total", total, errors, total / elapsedSeconds);
+  }
+
+  private static double millis(long nanos) {
+    return nanos / 1e6;
+  }
+}
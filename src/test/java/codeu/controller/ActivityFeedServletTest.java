@@ -1,11 +1,16 @@
 package codeu.controller;
 
 import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
 
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 
 import org.junit.Assert;
 import org.junit.Before;
@@ -17,10 +22,14 @@ import codeu.model.data.Conversation;
 import codeu.model.data.Message;
 import codeu.model.data.User;
 import codeu.model.data.Activity;
+import codeu.model.data.Activity.ActivityType;
+import codeu.model.data.FeedEntry;
 import codeu.model.store.basic.ConversationStore;
 import codeu.model.store.basic.MessageStore;
 import codeu.model.store.basic.UserStore;
+import codeu.model.store.basic.ActivityCursor;
 import codeu.model.store.basic.ActivityStore;
+import codeu.model.store.basic.FeedStore;
 
 public class ActivityFeedServletTest {
 	private ActivityFeedServlet activityFeedServlet;
@@ -32,6 +41,7 @@ public class ActivityFeedServletTest {
 	private MessageStore mockMessageStore;
 	private UserStore mockUserStore;
 	private ActivityStore mockActivityStore;
+	private FeedStore mockFeedStore;
 	
 	@Before
 	public void setup() {
@@ -53,6 +63,9 @@ public class ActivityFeedServletTest {
 		
 		mockActivityStore = Mockito.mock(ActivityStore.class);
 		activityFeedServlet.setActivityStore(mockActivityStore);
+
+		mockFeedStore = Mockito.mock(FeedStore.class);
+		activityFeedServlet.setFeedStore(mockFeedStore);
 	}
 	
 	@Test
@@ -60,4 +73,44 @@ public class ActivityFeedServletTest {
 		activityFeedServlet.doGet(mockRequest, mockResponse);
 		Mockito.verify(mockRequestDispatcher).forward(mockRequest, mockResponse);
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testDoGet_olderPage() throws IOException, ServletException {
+		String before = Instant.ofEpochMilli(100000) + "_" + UUID.randomUUID();
+		Mockito.when(mockRequest.getParameter("before")).thenReturn(before);
+		List<FeedEntry> fakeActivities = new ArrayList<>();
+		for (int i = 0; i < ActivityFeedServlet.ACTIVITIES_PER_PAGE; i++) {
+			fakeActivities.add(new FeedEntry(new Activity(ActivityType.MESSAGE, UUID.randomUUID(), UUID.randomUUID(),
+					UUID.randomUUID(), Instant.ofEpochMilli(90000 - i)), new FeedEntry.OwnerName("test_username")));
+		}
+		Mockito.when(mockActivityStore.feedPage(
+				ActivityCursor.parse(before), ActivityFeedServlet.ACTIVITIES_PER_PAGE))
+				.thenReturn(fakeActivities);
+
+		activityFeedServlet.doGet(mockRequest, mockResponse);
+
+		Mockito.verify(mockRequest).setAttribute("activities", fakeActivities);
+		Mockito.verify(mockRequest).setAttribute("olderActivitiesCursor",
+				ActivityCursor.of(fakeActivities.get(fakeActivities.size() - 1).getActivity()).toString());
+		Mockito.verify(mockRequestDispatcher).forward(mockRequest, mockResponse);
+	}
+
+	@Test
+	public void testDoGet_loggedInShowsPersonalizedFeed() throws IOException, ServletException {
+		UUID userId = UUID.randomUUID();
+		HttpSession mockSession = Mockito.mock(HttpSession.class);
+		Mockito.when(mockSession.getAttribute("id")).thenReturn(userId);
+		Mockito.when(mockRequest.getSession(false)).thenReturn(mockSession);
+		List<FeedEntry> fakeActivities = new ArrayList<>();
+		fakeActivities.add(new FeedEntry(new Activity(ActivityType.USER, UUID.randomUUID(), userId,
+				userId, Instant.ofEpochMilli(1000)), new FeedEntry.OwnerName("test_username")));
+		Mockito.when(mockFeedStore.feedPage(userId, null, ActivityFeedServlet.ACTIVITIES_PER_PAGE))
+				.thenReturn(fakeActivities);
+
+		activityFeedServlet.doGet(mockRequest, mockResponse);
+
+		Mockito.verify(mockRequest).setAttribute("activities", fakeActivities);
+		Mockito.verify(mockActivityStore, Mockito.never()).feedPage(Mockito.any(), Mockito.anyInt());
+		Mockito.verify(mockRequestDispatcher).forward(mockRequest, mockResponse);
+	}
+}
@@ -15,22 +15,19 @@
 package codeu.controller;
 
 import java.io.IOException;
+import java.time.Clock;
 import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.UUID;
 
 import codeu.model.data.User;
-import codeu.model.data.Conversation;
 import codeu.model.data.Message;
 
 import java.util.List;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.time.temporal.ChronoUnit;
-import codeu.model.data.Conversation.Type;
-import codeu.model.data.Conversation.Visibility;
+import codeu.model.store.basic.ActiveUsers;
+import codeu.model.store.basic.SiteStatistics;
 import codeu.model.store.basic.UserStore;
-import codeu.model.store.basic.ConversationStore;
-import codeu.model.store.basic.MessageStore;
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -38,7 +35,6 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
 import org.javatuples.Pair;
-import com.google.appengine.api.blobstore.BlobKey;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -46,15 +42,15 @@ import org.mockito.Mockito;
 
 public class AdminServletTest {
 
+  private static final Instant NOW = Instant.parse("2018-06-01T12:00:00Z");
+
   private AdminServlet adminServlet;
   private HttpServletRequest mockRequest;
   private HttpServletResponse mockResponse;
   private RequestDispatcher mockRequestDispatcher;
   private UserStore mockUserStore;
-  private ConversationStore mockConvoStore;
-  private MessageStore mockMessageStore;
-  private Message mockMessage;
-  private Conversation fakeConversation;
+  private SiteStatistics siteStatistics;
+  private ActiveUsers activeUsers;
   private UUID fakeUserID;
   private User mockUser;
 
@@ -66,27 +62,14 @@ public class AdminServletTest {
     mockRequestDispatcher = Mockito.mock(RequestDispatcher.class);
 
     mockUserStore = Mockito.mock(UserStore.class);
-    mockConvoStore = Mockito.mock(ConversationStore.class);
-    mockMessageStore = Mockito.mock(MessageStore.class);
+    siteStatistics = SiteStatistics.getTestInstance(Clock.fixed(NOW, ZoneOffset.UTC));
+    activeUsers = ActiveUsers.getTestInstance(Clock.fixed(NOW, ZoneOffset.UTC));
     fakeUserID = UUID.randomUUID();
     mockUser = Mockito.mock(User.class);
-    mockMessage = Mockito.mock(Message.class);
-
-    UUID fakeConversationId = UUID.randomUUID();
-		HashSet members = new HashSet<>();
-    fakeConversation =
-				new Conversation(
-						fakeConversationId, UUID.randomUUID(), "test_conversation", Instant.now(),
-						members, Type.TEXT, Visibility.PUBLIC,
-						"fakeURL", "5/DAYS", "fake :D");
-
-    mockUserStore.addUser(mockUser);
-    mockConvoStore.addConversation(fakeConversation);
-    mockMessageStore.addMessage(mockMessage);
 
     adminServlet.setUserStore(mockUserStore);
-    adminServlet.setConversationStore(mockConvoStore);
-    adminServlet.setMessageStore(mockMessageStore);
+    adminServlet.setSiteStatistics(siteStatistics);
+    adminServlet.setActiveUsers(activeUsers);
 
     Mockito.when(mockRequest.getRequestDispatcher("/WEB-INF/view/admin.jsp"))
         .thenReturn(mockRequestDispatcher);
@@ -103,37 +86,20 @@ public class AdminServletTest {
   public void testGetStats() throws IOException, ServletException {
     Mockito.when(mockRequest.getParameter("username")).thenReturn(null);
 
-    List<Conversation> fakeConversationList = new ArrayList<>();
-
-    fakeConversationList.add(fakeConversation);
+    siteStatistics.setUserCount(1);
+    siteStatistics.setConversationCount(1);
+    List<Message> loadedMessages = new ArrayList<>();
+    loadedMessages.add(newMessage(UUID.randomUUID(), NOW.minusSeconds(60 * 60 * 25)));
+    siteStatistics.setMessages(2, loadedMessages);
+    siteStatistics.messageAdded(newMessage(fakeUserID, NOW.minusSeconds(60)));
+    activeUsers.userActive(fakeUserID);
+    activeUsers.userActive(fakeUserID);
+    activeUsers.userActive(UUID.randomUUID());
 
-    Mockito.when(mockConvoStore.getAllConversations())
-        .thenReturn(fakeConversationList);
-
-    List<Message> fakeMessageList = new ArrayList<>();
-    fakeMessageList.add(mockMessage);
-
-    Mockito.when(mockMessageStore.getAllMessages())
-        .thenReturn(fakeMessageList);
-
-    List totalUsers = mockUserStore.getUsers();
-    List totalMessages = fakeMessageList;
-    List totalConvos = mockConvoStore.getAllConversations();
-
-    Mockito.when(mockUserStore.getUsers()).thenReturn(totalUsers);
-    Mockito.when(mockMessageStore.getAllMessages()).thenReturn(totalMessages);
-    Mockito.when(mockConvoStore.getAllConversations()).thenReturn(totalConvos);
-
-    fakeUserID = UUID.randomUUID();
-    Mockito.when(mockMessage.getAuthorId()).thenReturn(fakeUserID);
     Mockito.when(mockUserStore.getUser(fakeUserID)).thenReturn(mockUser);
     Mockito.when(mockUser.getName()).thenReturn("test username");
-
-    Mockito.when(mockMessage.getCreationTime()).thenReturn(Instant.now());
-
-    int numTotalUsers = totalUsers.size();
-    int numTotalMessages = totalMessages.size();
-    int numTotalConvos = totalConvos.size();
+    List<String> administrators = new ArrayList<>();
+    Mockito.when(mockUserStore.getAdmins()).thenReturn(administrators);
 
     HttpSession mockSession = Mockito.mock(HttpSession.class);
 
@@ -141,14 +107,31 @@ public class AdminServletTest {
 
     adminServlet.doPost(mockRequest, mockResponse);
 
-    Mockito.verify(mockSession).setAttribute("numUsers", numTotalUsers);
-    Mockito.verify(mockSession).setAttribute("numMessages", numTotalMessages);
-    Mockito.verify(mockSession).setAttribute("numConvos", numTotalConvos);
+    Mockito.verify(mockSession).setAttribute("numUsers", 1L);
+    Mockito.verify(mockSession).setAttribute("numMessages", 3L);
+    Mockito.verify(mockSession).setAttribute("numConvos", 1L);
     Mockito.verify(mockSession).setAttribute("mostActiveUser", "test username");
+    Mockito.verify(mockSession).setAttribute("activeUsersHour", 2L);
+    Mockito.verify(mockSession).setAttribute("activeUsersDay", 2L);
+    Mockito.verify(mockSession).setAttribute("activeUsersWeek", 2L);
 
     Mockito.verify(mockResponse).sendRedirect("/admin");
   }
 
+  @Test
+  public void testGetStats_noRecentMessages() throws IOException, ServletException {
+    List<String> administrators = new ArrayList<>();
+    Mockito.when(mockUserStore.getAdmins()).thenReturn(administrators);
+    HttpSession mockSession = Mockito.mock(HttpSession.class);
+    Mockito.when(mockRequest.getSession()).thenReturn(mockSession);
+
+    adminServlet.doPost(mockRequest, mockResponse);
+
+    Mockito.verify(mockSession)
+        .setAttribute("mostActiveUser", "There hasn't been an active user in the past 24 hours!");
+    Mockito.verify(mockUserStore, Mockito.never()).getUser(Mockito.any(UUID.class));
+  }
+
   @Test
   public void testDoPost_addAdmin() throws IOException, ServletException {
     Mockito.when(mockRequest.getParameter("username")).thenReturn("test username");
@@ -159,4 +142,9 @@ public class AdminServletTest {
     Mockito.verify(mockRequestDispatcher).forward(mockRequest, mockResponse);
   }
 
+  private static Message newMessage(UUID authorId, Instant creationTime) {
+    return new Message(UUID.randomUUID(), UUID.randomUUID(), authorId,
+        new Pair<>("test message", null), creationTime);
+  }
+
 }
@@ -24,10 +24,15 @@ import codeu.model.data.User;
 import codeu.model.data.Activity;
 import codeu.model.store.basic.ConversationStore;
 import codeu.model.store.basic.GroupConversationStore;
+import codeu.model.store.basic.MessageCursor;
 import codeu.model.store.basic.MessageStore;
 import codeu.model.store.basic.UserStore;
 import codeu.model.store.basic.ActivityStore;
+import codeu.model.store.basic.ActiveUsers;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Clock;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -89,6 +94,8 @@ public class ChatServletTest {
 
 		mockActivityStore = Mockito.mock(ActivityStore.class);
 		chatServlet.setActivityStore(mockActivityStore);
+
+		chatServlet.setActiveUsers(ActiveUsers.getTestInstance(Clock.systemUTC()));
 	}
 
 	@Test
@@ -122,16 +129,72 @@ public class ChatServletTest {
 
 		fakeMessageList.add(inputMessageOne);
 
-		Mockito.when(mockMessageStore.getMessagesInConversation(fakeConversationId))
+		Mockito.when(mockMessageStore.getMessagesInConversation(
+				fakeConversationId, null, ChatServlet.MESSAGES_PER_PAGE))
 				.thenReturn(fakeMessageList);
 
 		chatServlet.doGet(mockRequest, mockResponse);
 
 		Mockito.verify(mockRequest).setAttribute("conversation", fakeConversation);
 		Mockito.verify(mockRequest).setAttribute("messages", fakeMessageList);
+		Mockito.verify(mockRequest).setAttribute("olderMessagesCursor", null);
 		Mockito.verify(mockRequestDispatcher).forward(mockRequest, mockResponse);
 	}
 
+	@Test
+	public void testDoGet_olderPageAsJson() throws IOException, ServletException {
+		Mockito.when(mockRequest.getRequestURI()).thenReturn("/chat/test_conversation");
+		Conversation fakeConversation =
+				new Conversation(UUID.randomUUID(), UUID.randomUUID(), "test_conversation", Instant.now(),
+													new HashSet<>(), Type.TEXT, Visibility.PUBLIC, "fakeURL", "3/SECONDS", "fake :D");
+		Mockito.when(mockConversationStore.getConversationWithTitle("test_conversation"))
+				.thenReturn(fakeConversation);
+
+		User fakeUser =
+				new User(UUID.randomUUID(), UUID.randomUUID(), "test_username", "password", false, Instant.now());
+		Mockito.when(mockUserStore.getUser(fakeUser.getId())).thenReturn(fakeUser);
+		Message olderMessage =
+				new Message(UUID.randomUUID(), fakeConversation.getId(), fakeUser.getId(),
+						new Pair<>("say \"hi\"", (BlobKey) null), Instant.ofEpochMilli(1000));
+		List<Message> fakeMessageList = new ArrayList<>();
+		fakeMessageList.add(olderMessage);
+
+		MessageCursor cursor = MessageCursor.parse(
+				"1970-01-01T00:00:02Z_10000000-2222-3333-4444-555555555555");
+		Mockito.when(mockRequest.getParameter("before")).thenReturn(cursor.toString());
+		Mockito.when(mockMessageStore.getMessagesInConversation(
+				fakeConversation.getId(), cursor, ChatServlet.MESSAGES_PER_PAGE))
+				.thenReturn(fakeMessageList);
+		StringWriter responseBody = new StringWriter();
+		Mockito.when(mockResponse.getWriter()).thenReturn(new PrintWriter(responseBody));
+
+		chatServlet.doGet(mockRequest, mockResponse);
+
+		Mockito.verify(mockResponse).setContentType("application/json");
+		Assert.assertEquals(
+				"{\"messages\":[{\"id\":\"" + olderMessage.getId() + "\",\"author\":\"test_username\","
+						+ "\"text\":\"say \\\"hi\\\"\",\"creationTime\":\"1970-01-01T00:00:01Z\"}],"
+						+ "\"olderMessagesCursor\":null}",
+				responseBody.toString());
+		Mockito.verify(mockRequestDispatcher, Mockito.never()).forward(mockRequest, mockResponse);
+	}
+
+	@Test
+	public void testDoGet_invalidCursor() throws IOException, ServletException {
+		Mockito.when(mockRequest.getRequestURI()).thenReturn("/chat/test_conversation");
+		Conversation fakeConversation =
+				new Conversation(UUID.randomUUID(), UUID.randomUUID(), "test_conversation", Instant.now(),
+													new HashSet<>(), Type.TEXT, Visibility.PUBLIC, "fakeURL", "3/SECONDS", "fake :D");
+		Mockito.when(mockConversationStore.getConversationWithTitle("test_conversation"))
+				.thenReturn(fakeConversation);
+		Mockito.when(mockRequest.getParameter("before")).thenReturn("not-a-cursor");
+
+		chatServlet.doGet(mockRequest, mockResponse);
+
+		Mockito.verify(mockResponse)
+				.sendError(Mockito.eq(HttpServletResponse.SC_BAD_REQUEST), Mockito.anyString());
+	}
+
 	// @Test
 	// public void testDoGet_badConversation() throws IOException, ServletException {
 	// 	Mockito.when(mockRequest.getRequestURI()).thenReturn("/chat/bad_conversation");
@@ -0,0 +1,298 @@
+package codeu.controller;
+
+import codeu.model.data.Conversation;
+import codeu.model.data.Conversation.Type;
+import codeu.model.data.Conversation.Visibility;
+import codeu.model.data.Message;
+import codeu.model.data.User;
+import codeu.model.store.basic.ConversationStore;
+import codeu.model.store.basic.MessageCursor;
+import codeu.model.store.basic.MessageStore;
+import codeu.model.store.basic.UserStore;
+import codeu.model.store.persistence.PersistentStorageAgent;
+import com.google.appengine.api.blobstore.BlobKey;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import org.javatuples.Pair;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class ChatUpdatesServletTest {
+
+  private ChatUpdatesServlet chatUpdatesServlet;
+  private HttpServletRequest mockRequest;
+  private HttpServletResponse mockResponse;
+  private ConversationStore mockConversationStore;
+  private MessageStore mockMessageStore;
+  private UserStore mockUserStore;
+  private StringWriter responseBody;
+
+  private Conversation fakeConversation;
+  private User fakeUser;
+  private Message olderMessage;
+  private Message newerMessage;
+
+  @Before
+  public void setup() throws IOException {
+    chatUpdatesServlet = new ChatUpdatesServlet();
+
+    mockRequest = Mockito.mock(HttpServletRequest.class);
+    Mockito.when(mockRequest.getSession()).thenReturn(Mockito.mock(HttpSession.class));
+    Mockito.when(mockRequest.getRequestURI()).thenReturn("/chat-updates/test_conversation");
+
+    mockResponse = Mockito.mock(HttpServletResponse.class);
+    responseBody = new StringWriter();
+    Mockito.when(mockResponse.getWriter()).thenReturn(new PrintWriter(responseBody));
+
+    mockConversationStore = Mockito.mock(ConversationStore.class);
+    chatUpdatesServlet.setConversationStore(mockConversationStore);
+
+    mockMessageStore = Mockito.mock(MessageStore.class);
+    chatUpdatesServlet.setMessageStore(mockMessageStore);
+
+    mockUserStore = Mockito.mock(UserStore.class);
+    chatUpdatesServlet.setUserStore(mockUserStore);
+
+    fakeConversation =
+        new Conversation(
+            UUID.randomUUID(),
+            UUID.randomUUID(),
+            "test_conversation",
+            Instant.now(),
+            new HashSet<>(),
+            Type.TEXT,
+            Visibility.PUBLIC,
+            "fakeURL",
+            "3/SECONDS",
+            "fake :D");
+    Mockito.when(mockConversationStore.getConversationWithTitle("test_conversation"))
+        .thenReturn(fakeConversation);
+
+    fakeUser =
+        new User(
+            UUID.randomUUID(), UUID.randomUUID(), "test_username", "password", false, Instant.now());
+    Mockito.when(mockUserStore.getUser(fakeUser.getId())).thenReturn(fakeUser);
+
+    olderMessage = newMessage("older", Instant.ofEpochMilli(1000));
+    newerMessage = newMessage("newer", Instant.ofEpochMilli(2000));
+    List<Message> newest = new ArrayList<>();
+    newest.add(newerMessage);
+    Mockito.when(mockMessageStore.getMessagesInConversation(fakeConversation.getId(), null, 1))
+        .thenReturn(newest);
+  }
+
+  @Test
+  public void testDoGet_returnsOnlyNewMessages() throws IOException, ServletException {
+    MessageCursor after = MessageCursor.of(olderMessage);
+    Mockito.when(mockRequest.getParameter("after")).thenReturn(after.toString());
+    List<Message> newMessages = new ArrayList<>();
+    newMessages.add(newerMessage);
+    Mockito.when(
+            mockMessageStore.getMessagesInConversationAfter(
+                fakeConversation.getId(), after, ChatServlet.MESSAGES_PER_PAGE))
+        .thenReturn(newMessages);
+
+    chatUpdatesServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).setHeader("ETag", "\"" + MessageCursor.of(newerMessage) + "\"");
+    Assert.assertEquals(
+        "{\"messages\":[{\"id\":\""
+            + newerMessage.getId()
+            + "\",\"author\":\"test_username\",\"text\":\"newer\","
+            + "\"creationTime\":\"1970-01-01T00:00:02Z\"}],"
+            + "\"newestMessageCursor\":\""
+            + MessageCursor.of(newerMessage)
+            + "\"}",
+        responseBody.toString());
+  }
+
+  @Test
+  public void testDoGet_notModified() throws IOException, ServletException {
+    Mockito.when(mockRequest.getParameter("after"))
+        .thenReturn(MessageCursor.of(newerMessage).toString());
+    Mockito.when(mockRequest.getHeader("If-None-Match"))
+        .thenReturn("\"" + MessageCursor.of(newerMessage) + "\"");
+
+    chatUpdatesServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+    Mockito.verify(mockMessageStore, Mockito.never())
+        .getMessagesInConversationAfter(
+            Mockito.any(UUID.class), Mockito.any(MessageCursor.class), Mockito.anyInt());
+    Assert.assertEquals("", responseBody.toString());
+  }
+
+  @Test
+  public void testDoGet_invalidCursor() throws IOException, ServletException {
+    Mockito.when(mockRequest.getParameter("after")).thenReturn("not-a-cursor");
+
+    chatUpdatesServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse)
+        .sendError(Mockito.eq(HttpServletResponse.SC_BAD_REQUEST), Mockito.anyString());
+  }
+
+  @Test
+  public void testDoGet_privateConversation() throws IOException, ServletException {
+    Conversation groupConversation =
+        new Conversation(
+            UUID.randomUUID(),
+            UUID.randomUUID(),
+            "test_conversation",
+            Instant.now(),
+            new HashSet<>(),
+            Type.TEXT,
+            Visibility.GROUP,
+            "fakeURL",
+            "3/SECONDS",
+            "fake :D");
+    Mockito.when(mockConversationStore.getConversationWithTitle("test_conversation"))
+        .thenReturn(groupConversation);
+
+    chatUpdatesServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).sendError(HttpServletResponse.SC_FORBIDDEN);
+  }
+
+  @Test
+  public void testDoGet_longPollWaitsForNewMessage() throws IOException, ServletException {
+    MessageCursor after = MessageCursor.of(newerMessage);
+    Mockito.when(mockRequest.getParameter("after")).thenReturn(after.toString());
+    Mockito.when(mockRequest.getParameter("wait")).thenReturn("true");
+    Mockito.when(mockRequest.isAsyncSupported()).thenReturn(true);
+    Mockito.when(mockRequest.getDispatcherType()).thenReturn(DispatcherType.REQUEST);
+    AsyncContext mockAsyncContext = Mockito.mock(AsyncContext.class);
+    Mockito.when(mockRequest.startAsync()).thenReturn(mockAsyncContext);
+    Mockito.when(
+            mockMessageStore.getMessagesInConversationAfter(fakeConversation.getId(), after, 1))
+        .thenReturn(new ArrayList<>());
+
+    chatUpdatesServlet.doGet(mockRequest, mockResponse);
+
+    ArgumentCaptor<MessageStore.MessageListener> listener =
+        ArgumentCaptor.forClass(MessageStore.MessageListener.class);
+    Mockito.verify(mockMessageStore)
+        .addMessageListener(Mockito.eq(fakeConversation.getId()), listener.capture());
+    Mockito.verify(mockAsyncContext).setTimeout(ChatUpdatesServlet.LONG_POLL_TIMEOUT_MILLIS);
+    Mockito.verify(mockAsyncContext, Mockito.never()).dispatch();
+    Assert.assertEquals("", responseBody.toString());
+
+    // Two messages arrive; the poll is only woken once.
+    listener.getValue().messageAdded(newMessage("first", Instant.ofEpochMilli(3000)));
+    listener.getValue().messageAdded(newMessage("second", Instant.ofEpochMilli(4000)));
+
+    Mockito.verify(mockAsyncContext, Mockito.times(1)).dispatch();
+    Mockito.verify(mockMessageStore)
+        .removeMessageListener(fakeConversation.getId(), listener.getValue());
+  }
+
+  @Test
+  public void testDoGet_longPollTimesOut() throws IOException, ServletException {
+    Mockito.when(mockRequest.getParameter("after"))
+        .thenReturn(MessageCursor.of(newerMessage).toString());
+    Mockito.when(mockRequest.getParameter("wait")).thenReturn("true");
+    Mockito.when(mockRequest.isAsyncSupported()).thenReturn(true);
+    AsyncContext mockAsyncContext = Mockito.mock(AsyncContext.class);
+    Mockito.when(mockRequest.startAsync()).thenReturn(mockAsyncContext);
+
+    chatUpdatesServlet.doGet(mockRequest, mockResponse);
+
+    ArgumentCaptor<AsyncListener> asyncListener = ArgumentCaptor.forClass(AsyncListener.class);
+    Mockito.verify(mockAsyncContext).addListener(asyncListener.capture());
+    asyncListener.getValue().onTimeout(Mockito.mock(AsyncEvent.class));
+
+    Mockito.verify(mockAsyncContext).dispatch();
+    Mockito.verify(mockMessageStore)
+        .removeMessageListener(
+            Mockito.eq(fakeConversation.getId()), Mockito.any(MessageStore.MessageListener.class));
+  }
+
+  /**
+   * Parks thousands of long polls on one conversation, then times some out, completes some and
+   * sends a single message for the rest. Every poll is registered while it waits and released
+   * exactly once, however it ends, and the one message wakes every client still waiting.
+   */
+  @Test
+  public void testLongPoll_thousandsOfIdleSubscribers() throws IOException, ServletException {
+    final int subscribers = 5000;
+    MessageStore messageStore =
+        MessageStore.getTestInstance(Mockito.mock(PersistentStorageAgent.class));
+    chatUpdatesServlet.setMessageStore(messageStore);
+    messageStore.addMessage(olderMessage);
+    String after = MessageCursor.of(olderMessage).toString();
+
+    List<AsyncContext> asyncContexts = new ArrayList<>();
+    List<AsyncListener> asyncListeners = new ArrayList<>();
+    for (int i = 0; i < subscribers; i++) {
+      HttpServletRequest request = Mockito.mock(HttpServletRequest.class);
+      Mockito.when(request.getSession()).thenReturn(Mockito.mock(HttpSession.class));
+      Mockito.when(request.getRequestURI()).thenReturn("/chat-updates/test_conversation");
+      Mockito.when(request.getParameter("after")).thenReturn(after);
+      Mockito.when(request.getParameter("wait")).thenReturn("true");
+      Mockito.when(request.isAsyncSupported()).thenReturn(true);
+      AsyncContext asyncContext = Mockito.mock(AsyncContext.class);
+      Mockito.when(request.startAsync()).thenReturn(asyncContext);
+      asyncContexts.add(asyncContext);
+
+      chatUpdatesServlet.doGet(request, mockResponse);
+
+      ArgumentCaptor<AsyncListener> asyncListener = ArgumentCaptor.forClass(AsyncListener.class);
+      Mockito.verify(asyncContext).addListener(asyncListener.capture());
+      asyncListeners.add(asyncListener.getValue());
+    }
+
+    Assert.assertEquals(subscribers, chatUpdatesServlet.getWaitingPollCount());
+    Assert.assertEquals(
+        subscribers, messageStore.getMessageListenerCount(fakeConversation.getId()));
+
+    // The first hundred time out and the next hundred are completed by the container; each is
+    // released once even when told twice.
+    for (int i = 0; i < 200; i++) {
+      AsyncEvent event = Mockito.mock(AsyncEvent.class);
+      if (i < 100) {
+        asyncListeners.get(i).onTimeout(event);
+        asyncListeners.get(i).onComplete(event);
+      } else {
+        asyncListeners.get(i).onComplete(event);
+        asyncListeners.get(i).onComplete(event);
+      }
+    }
+    Assert.assertEquals(subscribers - 200, chatUpdatesServlet.getWaitingPollCount());
+    Assert.assertEquals(
+        subscribers - 200, messageStore.getMessageListenerCount(fakeConversation.getId()));
+
+    messageStore.addMessage(newerMessage);
+
+    for (int i = 0; i < subscribers; i++) {
+      Mockito.verify(asyncContexts.get(i), Mockito.times(i < 100 || i >= 200 ? 1 : 0)).dispatch();
+    }
+    Assert.assertEquals(0, chatUpdatesServlet.getWaitingPollCount());
+    Assert.assertEquals(0, messageStore.getMessageListenerCount(fakeConversation.getId()));
+  }
+
+  private Message newMessage(String text, Instant creationTime) {
+    return new Message(
+        UUID.randomUUID(),
+        fakeConversation.getId(),
+        fakeUser.getId(),
+        new Pair<>(text, (BlobKey) null),
+        creationTime);
+  }
+}
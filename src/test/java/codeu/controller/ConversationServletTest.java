@@ -25,6 +25,12 @@ import codeu.model.store.basic.ConversationStore;
 import codeu.model.store.basic.GroupConversationStore;
 import codeu.model.store.basic.UserStore;
 import codeu.model.store.basic.ActivityStore;
+import codeu.model.store.basic.TrendingConversations;
+import codeu.model.data.Message;
+import java.time.Clock;
+import java.time.ZoneOffset;
+import java.util.Map;
+import org.javatuples.Pair;
 import java.io.IOException;
 import java.time.Instant;
 import java.util.ArrayList;
@@ -54,6 +60,7 @@ public class ConversationServletTest {
 	private GroupConversationStore mockGroupConversationStore;
 	private UserStore mockUserStore;
 	private ActivityStore mockActivityStore;
+	private TrendingConversations trendingConversations;
 
 	@Before
 	public void setup() {
@@ -79,6 +86,10 @@ public class ConversationServletTest {
 
 		mockActivityStore = Mockito.mock(ActivityStore.class);
 		conversationServlet.setActivityStore(mockActivityStore);
+
+		trendingConversations =
+				TrendingConversations.getTestInstance(Clock.fixed(Instant.now(), ZoneOffset.UTC), 10);
+		conversationServlet.setTrendingConversations(trendingConversations);
 	}
 
 	@Test
@@ -103,6 +114,47 @@ public class ConversationServletTest {
 		Mockito.verify(mockRequestDispatcher).forward(mockRequest, mockResponse);
 	}
 
+	@Test
+	public void testDoGet_hotConversationsVisibleToUser() throws IOException, ServletException {
+		UUID userId = UUID.randomUUID();
+		Mockito.when(mockSession.getAttribute("id")).thenReturn(userId);
+		Conversation publicConversation =
+				new Conversation(
+						UUID.randomUUID(), UUID.randomUUID(), "public_one", Instant.now(),
+						new HashSet<>(), Type.TEXT, Visibility.PUBLIC,
+						"fakeURL", "3/SECONDS", "fake :D");
+		Conversation groupConversation =
+				new Conversation(
+						UUID.randomUUID(), UUID.randomUUID(), "group_one", Instant.now(),
+						new HashSet<>(), Type.TEXT, Visibility.GROUP,
+						"fakeURL", "3/SECONDS", "fake :D");
+		Mockito.when(mockConversationStore.getAllConversations())
+				.thenReturn(Arrays.asList(publicConversation, groupConversation));
+		Mockito.when(mockConversationStore.getConversation(publicConversation.getId()))
+				.thenReturn(publicConversation);
+		Mockito.when(mockConversationStore.getConversation(groupConversation.getId()))
+				.thenReturn(groupConversation);
+		for (int i = 0; i < 5; i++) {
+			trendingConversations.messageAdded(message(groupConversation.getId()));
+		}
+		for (int i = 0; i < 3; i++) {
+			trendingConversations.messageAdded(message(publicConversation.getId()));
+		}
+
+		conversationServlet.doGet(mockRequest, mockResponse);
+
+		ArgumentCaptor<Map> hot = ArgumentCaptor.forClass(Map.class);
+		Mockito.verify(mockRequest).setAttribute(Mockito.eq("hotConversations"), hot.capture());
+		// the busier group conversation is hidden from a user who isn't a member
+		Assert.assertEquals(1, hot.getValue().size());
+		Assert.assertTrue(hot.getValue().containsKey(publicConversation));
+	}
+
+	private static Message message(UUID conversationId) {
+		return new Message(UUID.randomUUID(), conversationId, UUID.randomUUID(),
+				new Pair<>("test message", null), Instant.now());
+	}
+
 	@Test
 	public void testDoPost_UserNotLoggedIn() throws IOException, ServletException {
 		Mockito.when(mockSession.getAttribute("user")).thenReturn(null);
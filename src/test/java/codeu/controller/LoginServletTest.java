@@ -15,16 +15,19 @@
 package codeu.controller;
 
 import java.io.IOException;
+import java.time.Clock;
 import java.time.Instant;
 import java.util.UUID;
 
 import codeu.model.data.User;
+import codeu.model.store.basic.ActiveUsers;
 import codeu.model.store.basic.UserStore;
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -35,6 +38,7 @@ public class LoginServletTest {
   private HttpServletRequest mockRequest;
   private HttpServletResponse mockResponse;
   private RequestDispatcher mockRequestDispatcher;
+  private ActiveUsers activeUsers;
 
   @Before
   public void setup() {
@@ -44,6 +48,8 @@ public class LoginServletTest {
     mockRequestDispatcher = Mockito.mock(RequestDispatcher.class);
     Mockito.when(mockRequest.getRequestDispatcher("/WEB-INF/view/login.jsp"))
         .thenReturn(mockRequestDispatcher);
+    activeUsers = ActiveUsers.getTestInstance(Clock.systemUTC());
+    loginServlet.setActiveUsers(activeUsers);
   }
 
   @Test
@@ -96,6 +102,7 @@ public class LoginServletTest {
     Mockito.verify(mockUserStore, Mockito.never()).addUser(Mockito.any(User.class));
     Mockito.verify(mockSession).setAttribute("user", "test username");
     Mockito.verify(mockResponse).sendRedirect("/conversations");
+    Assert.assertEquals(1, activeUsers.getActiveUserCount(ActiveUsers.Window.HOUR));
   }
 
   //Tests to check for the administrator functionality
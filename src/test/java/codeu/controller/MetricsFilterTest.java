@@ -0,0 +1,83 @@
+package codeu.controller;
+
+import codeu.metrics.Metrics;
+import java.io.IOException;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+public class MetricsFilterTest {
+
+  private MetricsFilter metricsFilter;
+  private Metrics metrics;
+  private HttpServletRequest mockRequest;
+  private HttpServletResponse mockResponse;
+  private FilterChain mockChain;
+
+  @Before
+  public void setup() {
+    metricsFilter = new MetricsFilter();
+    metrics = Metrics.getTestInstance();
+    metricsFilter.setMetrics(metrics);
+
+    mockRequest = Mockito.mock(HttpServletRequest.class);
+    Mockito.when(mockRequest.getMethod()).thenReturn("GET");
+    Mockito.when(mockRequest.getServletPath()).thenReturn("/chat");
+    mockResponse = Mockito.mock(HttpServletResponse.class);
+    mockChain = Mockito.mock(FilterChain.class);
+  }
+
+  @Test
+  public void testDoFilter_recordsRouteAndStatus() throws IOException, ServletException {
+    Mockito.when(mockResponse.getStatus()).thenReturn(200);
+
+    metricsFilter.doFilter(mockRequest, mockResponse, mockChain);
+
+    Mockito.verify(mockChain).doFilter(mockRequest, mockResponse);
+    Assert.assertEquals(1, metrics.getRequestLatencies().get("GET /chat").getCount());
+    Assert.assertEquals(Long.valueOf(1), metrics.getResponseCounts().get("GET /chat").get(200));
+  }
+
+  @Test
+  public void testDoFilter_exceptionCountsAsServerError() throws IOException, ServletException {
+    Mockito.when(mockResponse.getStatus()).thenReturn(200);
+    Mockito.doThrow(new ServletException("broken"))
+        .when(mockChain)
+        .doFilter(mockRequest, mockResponse);
+
+    try {
+      metricsFilter.doFilter(mockRequest, mockResponse, mockChain);
+      Assert.fail();
+    } catch (ServletException expected) {
+    }
+
+    Assert.assertEquals(Long.valueOf(1), metrics.getResponseCounts().get("GET /chat").get(500));
+  }
+
+  @Test
+  public void testDoFilter_asyncRequestRecordedOnComplete() throws IOException, ServletException {
+    AsyncContext mockAsyncContext = Mockito.mock(AsyncContext.class);
+    Mockito.when(mockRequest.isAsyncStarted()).thenReturn(true);
+    Mockito.when(mockRequest.getAsyncContext()).thenReturn(mockAsyncContext);
+
+    metricsFilter.doFilter(mockRequest, mockResponse, mockChain);
+
+    Assert.assertTrue(metrics.getRequestLatencies().isEmpty());
+
+    ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+    Mockito.verify(mockAsyncContext).addListener(listener.capture());
+    Mockito.when(mockResponse.getStatus()).thenReturn(304);
+    listener.getValue().onComplete(Mockito.mock(AsyncEvent.class));
+
+    Assert.assertEquals(Long.valueOf(1), metrics.getResponseCounts().get("GET /chat").get(304));
+  }
+}
@@ -0,0 +1,122 @@
+package codeu.controller;
+
+import codeu.metrics.Metrics;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class MetricsServletTest {
+
+  private MetricsServlet metricsServlet;
+  private HttpServletRequest mockRequest;
+  private HttpServletResponse mockResponse;
+  private HttpSession mockSession;
+  private StringWriter responseBody;
+  private Metrics metrics;
+
+  @Before
+  public void setup() throws IOException {
+    metricsServlet = new MetricsServlet();
+    metrics = Metrics.getTestInstance();
+    metricsServlet.setMetrics(metrics);
+
+    mockRequest = Mockito.mock(HttpServletRequest.class);
+    mockSession = Mockito.mock(HttpSession.class);
+    Mockito.when(mockRequest.getSession()).thenReturn(mockSession);
+
+    mockResponse = Mockito.mock(HttpServletResponse.class);
+    responseBody = new StringWriter();
+    Mockito.when(mockResponse.getWriter()).thenReturn(new PrintWriter(responseBody));
+
+    metrics.recordRequest("GET /chat", 200, TimeUnit.MILLISECONDS.toNanos(3));
+    metrics.recordRequest("GET /chat", 404, TimeUnit.MILLISECONDS.toNanos(30));
+    metrics.recordDatastore("load.users", TimeUnit.MILLISECONDS.toNanos(20), true);
+    metrics.registerGauge("codeu_store_size", "Objects held.", "store", "users", () -> 12);
+  }
+
+  @Test
+  public void testDoGet_notAdminIsForbidden() throws IOException, ServletException {
+    Mockito.when(mockRequest.getServletPath()).thenReturn("/admin/metrics");
+
+    metricsServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).sendError(HttpServletResponse.SC_FORBIDDEN);
+    Assert.assertEquals("", responseBody.toString());
+  }
+
+  @Test
+  public void testDoGet_json() throws IOException, ServletException {
+    Mockito.when(mockSession.getAttribute("admin")).thenReturn("test_admin");
+    Mockito.when(mockRequest.getServletPath()).thenReturn("/admin/metrics");
+
+    metricsServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).setContentType("application/json");
+    String json = responseBody.toString();
+    Assert.assertTrue(json.startsWith("{\"requests\":{\"GET /chat\":{\"count\":2,"));
+    Assert.assertTrue(json.contains("\"statuses\":{\"200\":1,\"404\":1}"));
+    Assert.assertTrue(json.contains("\"load.users\":{\"count\":1,"));
+    Assert.assertTrue(json.contains("\"errors\":1}"));
+    Assert.assertTrue(
+        json.endsWith(
+            "\"gauges\":[{\"name\":\"codeu_store_size\",\"labels\":{\"store\":\"users\"},"
+                + "\"value\":12}]}"));
+  }
+
+  @Test
+  public void testDoGet_prometheus() throws IOException, ServletException {
+    Mockito.when(mockSession.getAttribute("admin")).thenReturn("test_admin");
+    Mockito.when(mockRequest.getServletPath()).thenReturn("/metrics");
+
+    metricsServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).setContentType("text/plain; version=0.0.4");
+    String text = responseBody.toString();
+    Assert.assertTrue(text.contains("# TYPE codeu_http_request_duration_seconds histogram\n"));
+    Assert.assertTrue(text.contains(
+        "codeu_http_request_duration_seconds_bucket{route=\"GET /chat\",le=\"0.0025\"} 0\n"));
+    Assert.assertTrue(text.contains(
+        "codeu_http_request_duration_seconds_bucket{route=\"GET /chat\",le=\"0.005\"} 1\n"));
+    Assert.assertTrue(text.contains(
+        "codeu_http_request_duration_seconds_bucket{route=\"GET /chat\",le=\"+Inf\"} 2\n"));
+    Assert.assertTrue(text.contains(
+        "codeu_http_request_duration_seconds_count{route=\"GET /chat\"} 2\n"));
+    Assert.assertTrue(text.contains(
+        "codeu_http_responses_total{route=\"GET /chat\",status=\"404\"} 1\n"));
+    Assert.assertTrue(text.contains("codeu_datastore_errors_total{operation=\"load.users\"} 1\n"));
+    Assert.assertTrue(text.contains("# TYPE codeu_store_size gauge\n"));
+    Assert.assertTrue(text.contains("codeu_store_size{store=\"users\"} 12\n"));
+  }
+
+  @Test
+  public void testDoGet_scraperToken() throws IOException, ServletException {
+    metricsServlet.setToken("secret");
+    Mockito.when(mockRequest.getServletPath()).thenReturn("/metrics");
+    Mockito.when(mockRequest.getHeader("Authorization")).thenReturn("Bearer secret");
+
+    metricsServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse, Mockito.never()).sendError(Mockito.anyInt());
+    Assert.assertTrue(responseBody.toString().contains("codeu_store_size{store=\"users\"} 12\n"));
+  }
+
+  @Test
+  public void testDoGet_wrongScraperToken() throws IOException, ServletException {
+    metricsServlet.setToken("secret");
+    Mockito.when(mockRequest.getServletPath()).thenReturn("/metrics");
+    Mockito.when(mockRequest.getHeader("Authorization")).thenReturn("Bearer guess");
+
+    metricsServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).sendError(HttpServletResponse.SC_FORBIDDEN);
+  }
+}
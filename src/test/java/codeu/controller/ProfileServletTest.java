@@ -15,6 +15,7 @@ import java.util.List;
 import java.util.ArrayList;
 import codeu.model.store.basic.UserStore;
 import codeu.model.store.basic.ConversationStore;
+import codeu.model.store.basic.MessageCursor;
 import codeu.model.store.basic.MessageStore;
 import codeu.model.store.basic.ProfileStore;;
 import javax.servlet.RequestDispatcher;
@@ -109,7 +110,9 @@ public class ProfileServletTest {
             contentOne,
             Instant.now()));
 
-    Mockito.when(mockMessageStore.getMessagesByUser(fakeUserId))
+    Mockito.when(
+            mockMessageStore.getMessagesByUser(
+                fakeUserId, null, ProfileServlet.MESSAGES_PER_PAGE))
         .thenReturn(fakeMessageList);
 
     profileServlet.doGet(mockRequest, mockResponse);
@@ -121,6 +124,47 @@ public class ProfileServletTest {
   }
 
 
+  @Test
+  public void testDoGet_olderPage() throws IOException, ServletException {
+    Mockito.when(mockRequest.getRequestURI()).thenReturn("/user/test_user");
+    String before = "1970-01-01T00:00:05Z_" + UUID.randomUUID();
+    Mockito.when(mockRequest.getParameter("before")).thenReturn(before);
+
+    UUID fakeUserId = UUID.randomUUID();
+    User user =
+          new User(
+              fakeUserId,
+              UUID.randomUUID(),
+              "test_user",
+              "$2a$10$.e.4EEfngEXmxAO085XnYOmDntkqod0C384jOR9oagwxMnPNHaGLa",
+              false,
+              Instant.now());
+    Mockito.when(mockUserStore.getUser("test_user")).thenReturn(user);
+
+    List<Message> fakeMessageList = new ArrayList<>();
+    BlobKey blobkey = null;
+    for (int i = 0; i < ProfileServlet.MESSAGES_PER_PAGE; i++) {
+      fakeMessageList.add(
+          new Message(
+              UUID.randomUUID(),
+              UUID.randomUUID(),
+              fakeUserId,
+              new Pair<>("TestContent" + i, blobkey),
+              Instant.ofEpochMilli(i)));
+    }
+    Mockito.when(
+            mockMessageStore.getMessagesByUser(
+                fakeUserId, MessageCursor.parse(before), ProfileServlet.MESSAGES_PER_PAGE))
+        .thenReturn(fakeMessageList);
+
+    profileServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockRequest).setAttribute("messages", fakeMessageList);
+    Mockito.verify(mockRequest)
+        .setAttribute("olderMessagesCursor", MessageCursor.of(fakeMessageList.get(0)).toString());
+    Mockito.verify(mockRequestDispatcher).forward(mockRequest, mockResponse);
+  }
+
   @Test
   public void testDoGet_nullUser() throws IOException, ServletException {
     Mockito.when(mockRequest.getRequestURI()).thenReturn("/user/test_user");
@@ -149,7 +193,9 @@ public class ProfileServletTest {
               Instant.now());
 
     Mockito.when(mockUserStore.getUser("test_user")).thenReturn(user);
-    Mockito.when(mockMessageStore.getMessagesByUser(fakeUserId))
+    Mockito.when(
+            mockMessageStore.getMessagesByUser(
+                fakeUserId, null, ProfileServlet.MESSAGES_PER_PAGE))
         .thenReturn(null);
     Mockito.when(mockUser.getProfileID()).thenReturn(fakeProfileId);
 
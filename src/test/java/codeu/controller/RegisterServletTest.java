@@ -1,6 +1,8 @@
 package codeu.controller;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletException;
@@ -47,6 +49,54 @@ public class RegisterServletTest {
 		Mockito.verify(mockRequestDispatcher).forward(mockRequest, mockResponse);
 	}
 
+	@Test
+	public void testDoGet_UsernameAvailable() throws IOException, ServletException {
+		Mockito.when(mockRequest.getParameter("username")).thenReturn("testUsername");
+		UserStore mockUserStore = Mockito.mock(UserStore.class);
+		registerServlet.setUserStore(mockUserStore);
+		StringWriter responseBody = new StringWriter();
+		Mockito.when(mockResponse.getWriter()).thenReturn(new PrintWriter(responseBody));
+
+		registerServlet.doGet(mockRequest, mockResponse);
+
+		Assert.assertEquals(
+				"{\"username\":\"testUsername\",\"valid\":true,\"available\":true}",
+				responseBody.toString());
+		Mockito.verify(mockRequestDispatcher, Mockito.never()).forward(mockRequest, mockResponse);
+	}
+
+	@Test
+	public void testDoGet_UsernameTaken() throws IOException, ServletException {
+		Mockito.when(mockRequest.getParameter("username")).thenReturn("testUsername");
+		UserStore mockUserStore = Mockito.mock(UserStore.class);
+		Mockito.when(mockUserStore.isUserRegistered("testUsername")).thenReturn(true);
+		registerServlet.setUserStore(mockUserStore);
+		StringWriter responseBody = new StringWriter();
+		Mockito.when(mockResponse.getWriter()).thenReturn(new PrintWriter(responseBody));
+
+		registerServlet.doGet(mockRequest, mockResponse);
+
+		Assert.assertEquals(
+				"{\"username\":\"testUsername\",\"valid\":true,\"available\":false}",
+				responseBody.toString());
+	}
+
+	@Test
+	public void testDoGet_UsernameInvalid() throws IOException, ServletException {
+		Mockito.when(mockRequest.getParameter("username")).thenReturn("bad name");
+		UserStore mockUserStore = Mockito.mock(UserStore.class);
+		registerServlet.setUserStore(mockUserStore);
+		StringWriter responseBody = new StringWriter();
+		Mockito.when(mockResponse.getWriter()).thenReturn(new PrintWriter(responseBody));
+
+		registerServlet.doGet(mockRequest, mockResponse);
+
+		Assert.assertEquals(
+				"{\"username\":\"bad name\",\"valid\":false,\"available\":false}",
+				responseBody.toString());
+		Mockito.verify(mockUserStore, Mockito.never()).isUserRegistered("bad name");
+	}
+
 	@Test
 	public void testDoPost_BadUsername() throws IOException, ServletException {
 		Mockito.when(mockRequest.getParameter("username")).thenReturn("bad !usern@me");
@@ -0,0 +1,160 @@
+package codeu.controller;
+
+import codeu.model.data.Conversation;
+import codeu.model.data.Conversation.Type;
+import codeu.model.data.Conversation.Visibility;
+import codeu.model.data.Message;
+import codeu.model.store.basic.ConversationStore;
+import codeu.model.store.basic.MessageCursor;
+import codeu.model.store.basic.MessageSearchIndex;
+import codeu.model.store.basic.MessageStore;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.UUID;
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import org.javatuples.Pair;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class SearchServletTest {
+
+  private final UUID USER_ID = UUID.randomUUID();
+
+  private SearchServlet searchServlet;
+  private HttpServletRequest mockRequest;
+  private HttpSession mockSession;
+  private HttpServletResponse mockResponse;
+  private RequestDispatcher mockRequestDispatcher;
+  private MessageSearchIndex messageSearchIndex;
+  private MessageStore mockMessageStore;
+  private ConversationStore mockConversationStore;
+
+  private Conversation publicConversation;
+  private Conversation groupConversation;
+
+  @Before
+  public void setup() {
+    searchServlet = new SearchServlet();
+
+    mockRequest = Mockito.mock(HttpServletRequest.class);
+    mockSession = Mockito.mock(HttpSession.class);
+    Mockito.when(mockRequest.getSession()).thenReturn(mockSession);
+    Mockito.when(mockSession.getAttribute("id")).thenReturn(USER_ID);
+
+    mockResponse = Mockito.mock(HttpServletResponse.class);
+    mockRequestDispatcher = Mockito.mock(RequestDispatcher.class);
+    Mockito.when(mockRequest.getRequestDispatcher("/WEB-INF/view/search.jsp"))
+        .thenReturn(mockRequestDispatcher);
+
+    messageSearchIndex = MessageSearchIndex.getTestInstance();
+    searchServlet.setMessageSearchIndex(messageSearchIndex);
+    mockMessageStore = Mockito.mock(MessageStore.class);
+    searchServlet.setMessageStore(mockMessageStore);
+    mockConversationStore = Mockito.mock(ConversationStore.class);
+    searchServlet.setConversationStore(mockConversationStore);
+
+    publicConversation = newConversation("public_conversation", Visibility.PUBLIC);
+    groupConversation = newConversation("group_conversation", Visibility.GROUP);
+  }
+
+  @Test
+  public void testDoGet_onlyVisibleConversations() throws IOException, ServletException {
+    Message visible = indexMessage(publicConversation, "see you at the standup");
+    indexMessage(groupConversation, "standup is cancelled");
+    Mockito.when(mockRequest.getParameter("q")).thenReturn("Standup");
+
+    searchServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockRequest).setAttribute("query", "Standup");
+    Mockito.verify(mockRequest).setAttribute("messages", Arrays.asList(visible));
+    Mockito.verify(mockRequestDispatcher).forward(mockRequest, mockResponse);
+  }
+
+  @Test
+  public void testDoGet_memberSeesGroupConversation() throws IOException, ServletException {
+    groupConversation.getMembers().add(USER_ID);
+    Message message = indexMessage(groupConversation, "standup is cancelled");
+    Mockito.when(mockRequest.getParameter("q")).thenReturn("standup");
+
+    searchServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockRequest).setAttribute("messages", Arrays.asList(message));
+  }
+
+  @Test
+  public void testDoGet_withinConversation() throws IOException, ServletException {
+    indexMessage(publicConversation, "release notes");
+    Conversation otherConversation = newConversation("other_conversation", Visibility.PUBLIC);
+    Message message = indexMessage(otherConversation, "release date");
+    Mockito.when(mockRequest.getParameter("q")).thenReturn("release");
+    Mockito.when(mockRequest.getParameter("conversation")).thenReturn("other_conversation");
+
+    searchServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockRequest).setAttribute("messages", Arrays.asList(message));
+  }
+
+  @Test
+  public void testDoGet_unknownConversation() throws IOException, ServletException {
+    Mockito.when(mockRequest.getParameter("q")).thenReturn("release");
+    Mockito.when(mockRequest.getParameter("conversation")).thenReturn("missing_conversation");
+
+    searchServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockRequest).setAttribute("error", "That conversation was not found.");
+    Mockito.verify(mockRequestDispatcher).forward(mockRequest, mockResponse);
+  }
+
+  @Test
+  public void testDoGet_countsUnresolvedResults() throws IOException, ServletException {
+    Message found = indexMessage(publicConversation, "deploy finished");
+    Message missing =
+        new Message(UUID.randomUUID(), publicConversation.getId(), UUID.randomUUID(),
+            new Pair<>("deploy started", null), Instant.now());
+    messageSearchIndex.messageAdded(missing);
+    Mockito.when(mockRequest.getParameter("q")).thenReturn("deploy");
+
+    searchServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockRequest).setAttribute("messages", Arrays.asList(found));
+    Assert.assertEquals(1, searchServlet.getUnresolvedResultCount());
+  }
+
+  @Test
+  public void testDoGet_noQuery() throws IOException, ServletException {
+    searchServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockRequest, Mockito.never())
+        .setAttribute(Mockito.eq("messages"), Mockito.any());
+    Mockito.verify(mockRequestDispatcher).forward(mockRequest, mockResponse);
+    Assert.assertEquals(0, messageSearchIndex.getIndexedMessageCount());
+  }
+
+  private Conversation newConversation(String title, Visibility visibility) {
+    Conversation conversation =
+        new Conversation(UUID.randomUUID(), UUID.randomUUID(), title, Instant.now(),
+            new HashSet<>(), Type.TEXT, visibility, "fakeURL", "3/DAYS", "description");
+    Mockito.when(mockConversationStore.getConversation(conversation.getId()))
+        .thenReturn(conversation);
+    Mockito.when(mockConversationStore.getConversationWithTitle(title)).thenReturn(conversation);
+    return conversation;
+  }
+
+  private Message indexMessage(Conversation conversation, String text) {
+    Message message =
+        new Message(UUID.randomUUID(), conversation.getId(), UUID.randomUUID(),
+            new Pair<>(text, null), Instant.now());
+    messageSearchIndex.messageAdded(message);
+    Mockito.when(mockMessageStore.getMessage(conversation.getId(), MessageCursor.of(message)))
+        .thenReturn(message);
+    return message;
+  }
+}
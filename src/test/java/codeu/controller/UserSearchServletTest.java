@@ -0,0 +1,88 @@
+package codeu.controller;
+
+import codeu.model.data.User;
+import codeu.model.store.basic.UserStore;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.UUID;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class UserSearchServletTest {
+
+  private UserSearchServlet userSearchServlet;
+  private HttpServletRequest mockRequest;
+  private HttpSession mockSession;
+  private HttpServletResponse mockResponse;
+  private UserStore mockUserStore;
+  private StringWriter responseBody;
+
+  @Before
+  public void setup() throws IOException {
+    userSearchServlet = new UserSearchServlet();
+
+    mockRequest = Mockito.mock(HttpServletRequest.class);
+    mockSession = Mockito.mock(HttpSession.class);
+    Mockito.when(mockRequest.getSession()).thenReturn(mockSession);
+    Mockito.when(mockSession.getAttribute("user")).thenReturn("test_username");
+
+    mockResponse = Mockito.mock(HttpServletResponse.class);
+    responseBody = new StringWriter();
+    Mockito.when(mockResponse.getWriter()).thenReturn(new PrintWriter(responseBody));
+
+    mockUserStore = Mockito.mock(UserStore.class);
+    userSearchServlet.setUserStore(mockUserStore);
+  }
+
+  @Test
+  public void testDoGet() throws IOException, ServletException {
+    UUID id = UUID.randomUUID();
+    User user = new User(id, UUID.randomUUID(), "alice", "hash", false, Instant.now());
+    Mockito.when(mockRequest.getParameter("prefix")).thenReturn("al");
+    Mockito.when(mockUserStore.searchUsersByName("al", UserSearchServlet.DEFAULT_LIMIT))
+        .thenReturn(Arrays.asList(user));
+
+    userSearchServlet.doGet(mockRequest, mockResponse);
+
+    Assert.assertEquals(
+        "{\"users\":[{\"id\":\"" + id + "\",\"name\":\"alice\"}]}", responseBody.toString());
+  }
+
+  @Test
+  public void testDoGet_limitIsCapped() throws IOException, ServletException {
+    Mockito.when(mockRequest.getParameter("prefix")).thenReturn("al");
+    Mockito.when(mockRequest.getParameter("limit")).thenReturn("100000");
+
+    userSearchServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockUserStore).searchUsersByName("al", UserSearchServlet.MAX_LIMIT);
+  }
+
+  @Test
+  public void testDoGet_missingPrefix() throws IOException, ServletException {
+    userSearchServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).sendError(HttpServletResponse.SC_BAD_REQUEST, "Missing prefix");
+  }
+
+  @Test
+  public void testDoGet_notLoggedIn() throws IOException, ServletException {
+    Mockito.when(mockSession.getAttribute("user")).thenReturn(null);
+    Mockito.when(mockRequest.getParameter("prefix")).thenReturn("al");
+
+    userSearchServlet.doGet(mockRequest, mockResponse);
+
+    Mockito.verify(mockResponse).sendError(HttpServletResponse.SC_UNAUTHORIZED);
+    Mockito.verify(mockUserStore, Mockito.never())
+        .searchUsersByName(Mockito.anyString(), Mockito.anyInt());
+  }
+}
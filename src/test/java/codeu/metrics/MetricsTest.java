@@ -0,0 +1,109 @@
+package codeu.metrics;
+
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MetricsTest {
+
+  private Metrics metrics;
+
+  @Before
+  public void setup() {
+    metrics = Metrics.getTestInstance();
+  }
+
+  @Test
+  public void testRecordRequest() {
+    metrics.recordRequest("GET /chat", 200, millis(3));
+    metrics.recordRequest("GET /chat", 200, millis(40));
+    metrics.recordRequest("GET /chat", 404, millis(1));
+    metrics.recordRequest("POST /login", 302, millis(8));
+
+    LatencyHistogram.Snapshot chat = metrics.getRequestLatencies().get("GET /chat");
+    Assert.assertEquals(3, chat.getCount());
+    Assert.assertEquals(millis(44), chat.getSumNanos());
+    Assert.assertEquals(millis(40), chat.getMaxNanos());
+
+    SortedMap<String, SortedMap<Integer, Long>> responses = metrics.getResponseCounts();
+    Assert.assertEquals(Long.valueOf(2), responses.get("GET /chat").get(200));
+    Assert.assertEquals(Long.valueOf(1), responses.get("GET /chat").get(404));
+    Assert.assertEquals(Long.valueOf(1), responses.get("POST /login").get(302));
+  }
+
+  @Test
+  public void testRecordRequest_tooManyRoutesCountAsOther() {
+    for (int i = 0; i < Metrics.MAX_ROUTES; i++) {
+      metrics.recordRequest("GET /missing" + i, 404, millis(1));
+    }
+    metrics.recordRequest("GET /missing-again", 404, millis(1));
+    metrics.recordRequest("GET /missing0", 404, millis(1));
+
+    SortedMap<String, LatencyHistogram.Snapshot> latencies = metrics.getRequestLatencies();
+    Assert.assertEquals(Metrics.MAX_ROUTES + 1, latencies.size());
+    Assert.assertEquals(1, latencies.get(Metrics.OTHER_ROUTE).getCount());
+    Assert.assertEquals(2, latencies.get("GET /missing0").getCount());
+  }
+
+  @Test
+  public void testRecordDatastore() {
+    metrics.recordDatastore("load.users", millis(20), false);
+    metrics.recordDatastore("write.user", millis(5), false);
+    metrics.recordDatastore("write.user", millis(30), true);
+
+    Assert.assertEquals(1, metrics.getDatastoreLatencies().get("load.users").getCount());
+    Assert.assertEquals(2, metrics.getDatastoreLatencies().get("write.user").getCount());
+    Assert.assertEquals(Long.valueOf(0), metrics.getDatastoreErrors().get("load.users"));
+    Assert.assertEquals(Long.valueOf(1), metrics.getDatastoreErrors().get("write.user"));
+  }
+
+  @Test
+  public void testRegisterGauge() {
+    long[] size = {3};
+    metrics.registerGauge("codeu_store_size", "help", "store", "users", () -> size[0]);
+    metrics.registerGauge("codeu_store_size", "help", "store", "messages", () -> 7);
+    metrics.registerGauge("jvm_heap_used_bytes", "help", null, null, () -> 100);
+
+    List<Metrics.Gauge> gauges = metrics.getGauges();
+    Assert.assertEquals(3, gauges.size());
+    Assert.assertEquals("messages", gauges.get(0).getLabelValue());
+    Assert.assertEquals("users", gauges.get(1).getLabelValue());
+    Assert.assertEquals("jvm_heap_used_bytes", gauges.get(2).getName());
+    Assert.assertNull(gauges.get(2).getLabelName());
+
+    size[0] = 4;
+    Assert.assertEquals(4, gauges.get(1).getValue());
+  }
+
+  @Test
+  public void testPercentileNanos() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 90; i++) {
+      histogram.record(millis(2));
+    }
+    for (int i = 0; i < 9; i++) {
+      histogram.record(millis(200));
+    }
+    histogram.record(millis(60000));
+
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+    Assert.assertEquals(millis(2.5), snapshot.percentileNanos(0.50));
+    Assert.assertEquals(millis(250), snapshot.percentileNanos(0.95));
+    Assert.assertEquals(millis(250), snapshot.percentileNanos(0.99));
+    // the slowest falls past the last bound, so the largest latency seen is the estimate
+    Assert.assertEquals(millis(60000), snapshot.percentileNanos(1.0));
+    Assert.assertEquals(1, snapshot.bucketCount(snapshot.boundCount()));
+  }
+
+  @Test
+  public void testPercentileNanos_empty() {
+    Assert.assertEquals(0, new LatencyHistogram().snapshot().percentileNanos(0.99));
+  }
+
+  private static long millis(double millis) {
+    return (long) (millis * TimeUnit.MILLISECONDS.toNanos(1));
+  }
+}
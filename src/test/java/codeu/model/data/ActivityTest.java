@@ -5,6 +5,8 @@ package codeu.model.data;
 import codeu.model.data.Activity;
 import codeu.model.data.Activity.ActivityType;
 import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.UUID;
 import org.junit.Assert;
 import org.junit.Test;
@@ -58,4 +60,17 @@ public class ActivityTest {
 		Assert.assertEquals(activityId, activity.getActivityId());
 		Assert.assertEquals(creation, activity.getCreationTime());
 	}
+
+	@Test
+	public void testCreationTimeFormatted() {
+		Instant creation = Instant.ofEpochMilli(1500000000000L);
+		Activity activity = new Activity(ActivityType.USER, UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), creation);
+
+		String expected = DateTimeFormatter.ofPattern("MM/dd/yyyy h:m a zzz ")
+				.withZone(ZoneId.systemDefault()).format(creation);
+		String formatted = activity.getCreationTimeFormatted();
+		Assert.assertEquals(expected, formatted);
+		// formatted once, then reused
+		Assert.assertSame(formatted, activity.getCreationTimeFormatted());
+	}
 }
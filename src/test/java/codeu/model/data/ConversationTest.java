@@ -55,4 +55,24 @@ public class ConversationTest {
 		Assert.assertEquals(description, conversation.getDescription());
 
   }
+
+  @Test
+  public void testMembers_safeToChangeWhileIterated() {
+    HashSet<UUID> members = new HashSet<>();
+    members.add(UUID.randomUUID());
+    Conversation conversation = new Conversation(UUID.randomUUID(), UUID.randomUUID(),
+        "Test_Title", Instant.now(), members, Type.TEXT, Visibility.GROUP, "fakeURL", "7/HOURS",
+        "fake :D");
+
+    User joining =
+        new User(UUID.randomUUID(), UUID.randomUUID(), "test_username", "password", false,
+            Instant.now());
+    // a request joining the conversation while another checks access or saves it
+    for (UUID member : conversation.getMembers()) {
+      conversation.addMember(joining);
+    }
+
+    Assert.assertEquals(2, conversation.getMembers().size());
+    Assert.assertEquals(1, members.size());
+  }
 }
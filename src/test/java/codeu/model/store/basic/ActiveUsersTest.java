@@ -0,0 +1,120 @@
+package codeu.model.store.basic;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.UUID;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ActiveUsersTest {
+
+  private static final Instant START = Instant.parse("2018-06-01T12:00:00Z");
+
+  private final UUID ALICE = UUID.randomUUID();
+  private final UUID BOB = UUID.randomUUID();
+
+  private MutableClock clock;
+  private ActiveUsers activeUsers;
+
+  @Before
+  public void setup() {
+    clock = new MutableClock(START);
+    activeUsers = ActiveUsers.getTestInstance(clock);
+  }
+
+  @Test
+  public void testGetActiveUserCount_empty() {
+    for (ActiveUsers.Window window : ActiveUsers.Window.values()) {
+      Assert.assertEquals(0, activeUsers.getActiveUserCount(window));
+    }
+  }
+
+  @Test
+  public void testGetActiveUserCount_countsDistinctUsers() {
+    activeUsers.userActive(ALICE);
+    activeUsers.userActive(BOB);
+    activeUsers.userActive(ALICE);
+
+    for (ActiveUsers.Window window : ActiveUsers.Window.values()) {
+      Assert.assertEquals(2, activeUsers.getActiveUserCount(window));
+    }
+  }
+
+  @Test
+  public void testGetActiveUserCount_activityLeavesWindows() {
+    activeUsers.userActive(ALICE);
+    clock.advance(Duration.ofMinutes(30));
+    activeUsers.userActive(BOB);
+
+    clock.advance(Duration.ofMinutes(50));
+    Assert.assertEquals(1, activeUsers.getActiveUserCount(ActiveUsers.Window.HOUR));
+    Assert.assertEquals(2, activeUsers.getActiveUserCount(ActiveUsers.Window.DAY));
+
+    clock.advance(Duration.ofHours(2));
+    Assert.assertEquals(0, activeUsers.getActiveUserCount(ActiveUsers.Window.HOUR));
+
+    clock.advance(Duration.ofDays(2));
+    Assert.assertEquals(0, activeUsers.getActiveUserCount(ActiveUsers.Window.DAY));
+    Assert.assertEquals(2, activeUsers.getActiveUserCount(ActiveUsers.Window.WEEK));
+
+    clock.advance(Duration.ofDays(7));
+    Assert.assertEquals(0, activeUsers.getActiveUserCount(ActiveUsers.Window.WEEK));
+  }
+
+  @Test
+  public void testGetActiveUserCount_userActiveAgainStaysCounted() {
+    activeUsers.userActive(ALICE);
+    clock.advance(Duration.ofMinutes(50));
+    activeUsers.userActive(ALICE);
+    clock.advance(Duration.ofMinutes(50));
+
+    Assert.assertEquals(1, activeUsers.getActiveUserCount(ActiveUsers.Window.HOUR));
+  }
+
+  @Test
+  public void testGetActiveUserCount_manyUsersWithinError() {
+    int users = 100000;
+    for (int i = 0; i < users; i++) {
+      UUID userId = UUID.randomUUID();
+      activeUsers.userActive(userId);
+      activeUsers.userActive(userId);
+    }
+
+    // about four standard errors
+    long count = activeUsers.getActiveUserCount(ActiveUsers.Window.DAY);
+    Assert.assertEquals(users, count, users * 0.19);
+  }
+
+  /** A Clock that tests move forward by hand. */
+  private static class MutableClock extends Clock {
+
+    private Instant now;
+
+    MutableClock(Instant now) {
+      this.now = now;
+    }
+
+    void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+}
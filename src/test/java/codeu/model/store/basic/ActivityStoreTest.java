@@ -2,9 +2,13 @@ package codeu.model.store.basic;
 
 import codeu.model.data.Activity;
 import codeu.model.data.Activity.ActivityType;
+import codeu.model.data.FeedEntry;
+import codeu.model.data.User;
 import codeu.model.store.persistence.PersistentStorageAgent;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.UUID;
 import org.junit.Assert;
@@ -36,13 +40,163 @@ public class ActivityStoreTest {
 
 		List<Activity> expectedActivities = activityStore.getAllActivities();
 
-		assertEquals(expectedActivities.get(0), NEW_USER_ACTIVITY);
-		assertEquals(expectedActivities.get(1), NEW_CONVO_ACTIVITY);
-		assertEquals(expectedActivities.get(2), NEW_MSG_ACTIVITY);
+		// all three share a creation time, so they are held in ID order
+		List<Activity> added = new ArrayList<>();
+		added.add(NEW_USER_ACTIVITY);
+		added.add(NEW_CONVO_ACTIVITY);
+		added.add(NEW_MSG_ACTIVITY);
+		added.sort(Comparator.comparing(Activity::getId));
+		assertEquals(expectedActivities.get(0), added.get(0));
+		assertEquals(expectedActivities.get(1), added.get(1));
+		assertEquals(expectedActivities.get(2), added.get(2));
 
 
 	}
 
+	/* Pages through activities added out of order, newest first */
+	@Test
+	public void testPage() {
+		List<Activity> added = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			added.add(new Activity(ActivityType.MESSAGE, UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), Instant.ofEpochMilli(1000 * (i + 1))));
+		}
+		// loaded from Datastore newest first, then one more added later
+		List<Activity> loaded = new ArrayList<>(added.subList(0, 9));
+		Collections.reverse(loaded);
+		activityStore.setActivities(loaded);
+		activityStore.addActivity(added.get(9));
+
+		List<Activity> newest = activityStore.page(null, 4);
+		Assert.assertEquals(4, newest.size());
+		assertEquals(added.get(9), newest.get(0));
+		assertEquals(added.get(6), newest.get(3));
+
+		List<Activity> older = activityStore.page(ActivityCursor.of(newest.get(3)), 4);
+		Assert.assertEquals(4, older.size());
+		assertEquals(added.get(5), older.get(0));
+		assertEquals(added.get(2), older.get(3));
+
+		List<Activity> oldest = activityStore.page(ActivityCursor.of(older.get(3)), 4);
+		Assert.assertEquals(2, oldest.size());
+		assertEquals(added.get(0), oldest.get(1));
+	}
+
+	/* Pages through activities that share a creation time without skipping or repeating any */
+	@Test
+	public void testPage_throughTies() {
+		List<Activity> added = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			added.add(new Activity(ActivityType.MESSAGE, UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), Instant.ofEpochMilli(1000)));
+		}
+		activityStore.setActivities(added);
+		added.sort(Comparator.comparing(Activity::getId).reversed());
+
+		List<Activity> newest = activityStore.page(null, 4);
+		List<Activity> older = activityStore.page(ActivityCursor.of(newest.get(3)), 4);
+
+		Assert.assertEquals(added.subList(0, 4), newest);
+		Assert.assertEquals(added.subList(4, 6), older);
+	}
+
+	/* Bounded mode holds only the newest activities and reads older pages from Datastore */
+	@Test
+	public void testBoundedMode() throws Exception {
+		List<Activity> added = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			added.add(new Activity(ActivityType.MESSAGE, UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), Instant.ofEpochMilli(1000 * (i + 1))));
+		}
+		activityStore.enableBoundedMode(5);
+		activityStore.setActivities(new ArrayList<>());
+		for (Activity activity : added) {
+			activityStore.addActivity(activity);
+		}
+
+		List<Activity> held = activityStore.getAllActivities();
+		Assert.assertEquals(5, held.size());
+		assertEquals(added.get(3), held.get(0));
+		assertEquals(added.get(7), held.get(4));
+
+		// the first page is served from memory
+		List<Activity> newest = activityStore.page(null, 4);
+		Assert.assertEquals(4, newest.size());
+		assertEquals(added.get(7), newest.get(0));
+		Mockito.verify(mockPersistentStorageAgent, Mockito.never()).loadActivities(Mockito.any(), Mockito.any(), Mockito.anyInt());
+
+		// the next page runs past the oldest activity held, so the rest comes from Datastore
+		List<Activity> archived = new ArrayList<>();
+		archived.add(added.get(2));
+		archived.add(added.get(1));
+		archived.add(added.get(0));
+		Mockito.when(mockPersistentStorageAgent.loadActivities(added.get(3).getCreationTime(), added.get(3).getId(), 3)).thenReturn(archived);
+
+		List<Activity> older = activityStore.page(ActivityCursor.of(newest.get(3)), 4);
+		Assert.assertEquals(4, older.size());
+		assertEquals(added.get(3), older.get(0));
+		assertEquals(added.get(2), older.get(1));
+		assertEquals(added.get(0), older.get(3));
+	}
+
+	/* A ring buffer page carries the oldest entry held and whether any were dropped, read together */
+	@Test
+	public void testRingBufferPage() {
+		ActivityRingBuffer buffer = new ActivityRingBuffer(2);
+		List<FeedEntry> added = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			FeedEntry entry = new FeedEntry(new Activity(ActivityType.MESSAGE, UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), Instant.ofEpochMilli(1000 * (i + 1))), new FeedEntry.OwnerName("test_username"));
+			added.add(entry);
+			buffer.add(entry);
+			Assert.assertEquals(i == 2, buffer.page(null, 1).hasDropped());
+		}
+
+		ActivityRingBuffer.Page page = buffer.page(null, 1);
+		Assert.assertEquals(1, page.getEntries().size());
+		Assert.assertSame(added.get(2), page.getEntries().get(0));
+		Assert.assertEquals(ActivityCursor.of(added.get(1).getActivity()), page.getOldestHeld());
+	}
+
+	/* Bounded mode keeps the newest activities loaded at startup, whatever order they come in */
+	@Test
+	public void testBoundedMode_setActivities() {
+		List<Activity> loaded = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			loaded.add(new Activity(ActivityType.USER, UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), Instant.ofEpochMilli(3000 - 1000 * i)));
+		}
+		activityStore.enableBoundedMode(2);
+		activityStore.setActivities(loaded);
+
+		List<Activity> held = activityStore.getAllActivities();
+		Assert.assertEquals(2, held.size());
+		assertEquals(loaded.get(1), held.get(0));
+		assertEquals(loaded.get(0), held.get(1));
+	}
+
+	/* Feed entries carry their owner's name, and follow the owner's renames */
+	@Test
+	public void testFeedPage_ownerNames() {
+		UserStore userStore = UserStore.getTestInstance(mockPersistentStorageAgent);
+		User owner = new User(UUID.randomUUID(), UUID.randomUUID(), "test_username", "password", false, Instant.ofEpochMilli(500));
+		userStore.addUser(owner);
+		activityStore.setUserStore(userStore);
+
+		Activity first = new Activity(ActivityType.USER, UUID.randomUUID(), owner.getId(), owner.getId(), Instant.ofEpochMilli(1000));
+		Activity second = new Activity(ActivityType.MESSAGE, UUID.randomUUID(), owner.getId(), UUID.randomUUID(), Instant.ofEpochMilli(2000));
+		activityStore.addActivity(first);
+		activityStore.addActivity(second);
+
+		List<FeedEntry> page = activityStore.feedPage(null, 10);
+		Assert.assertEquals(2, page.size());
+		assertEquals(second, page.get(0).getActivity());
+		Assert.assertEquals("test_username", page.get(0).getOwnerName());
+		Assert.assertEquals(second.getCreationTimeFormatted(), page.get(0).getFormattedTime());
+		Assert.assertEquals("test_username", page.get(1).getOwnerName());
+
+		userStore.updateUser(new User(owner.getId(), owner.getProfileID(), "renamed_username", "password", false, Instant.ofEpochMilli(500)));
+
+		for (FeedEntry entry : activityStore.feedPage(null, 10)) {
+			Assert.assertEquals("renamed_username", entry.getOwnerName());
+		}
+	}
+
 	/* Check equivalence for activities */
 	private void assertEquals(Activity expectedActivity, Activity actualActivity) {
 		Assert.assertEquals(expectedActivity.getType(), actualActivity.getType());
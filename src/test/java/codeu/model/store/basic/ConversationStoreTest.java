@@ -3,6 +3,7 @@ package codeu.model.store.basic;
 import codeu.model.data.Conversation;
 import codeu.model.data.Conversation.Type;
 import codeu.model.data.Conversation.Visibility;
+import codeu.model.data.User;
 import codeu.model.store.persistence.PersistentStorageAgent;
 import java.time.Instant;
 import java.util.ArrayList;
@@ -53,6 +54,20 @@ public class ConversationStoreTest {
     Assert.assertNull(resultConversation);
   }
 
+  @Test
+  public void testGetConversation_found() {
+    Conversation resultConversation = conversationStore.getConversation(CONVERSATION_ONE.getId());
+
+    assertEquals(CONVERSATION_ONE, resultConversation);
+  }
+
+  @Test
+  public void testGetConversation_notFound() {
+    Conversation resultConversation = conversationStore.getConversation(UUID.randomUUID());
+
+    Assert.assertNull(resultConversation);
+  }
+
   @Test
   public void testIsTitleTaken_true() {
     boolean isTitleTaken = conversationStore.isTitleTaken(CONVERSATION_ONE.getTitle());
@@ -88,6 +103,42 @@ public class ConversationStoreTest {
     Mockito.verify(mockPersistentStorageAgent).writeThrough(inputConversation);
   }
 
+  @Test
+  public void testGetPrivateConversationsWithUser() {
+    User owner =
+        new User(UUID.randomUUID(), UUID.randomUUID(), "owner", "hash", false, Instant.now());
+    User member =
+        new User(UUID.randomUUID(), UUID.randomUUID(), "member", "hash", false, Instant.now());
+
+    HashSet<UUID> groupMembers = new HashSet<>();
+    groupMembers.add(owner.getId());
+    Conversation groupConversation =
+        new Conversation(UUID.randomUUID(), owner.getId(), "group_conversation",
+            Instant.ofEpochMilli(1000), groupMembers, Type.TEXT, Visibility.GROUP,
+            "fakeURL", "5/HOURS", "fake :D");
+    HashSet<UUID> publicMembers = new HashSet<>();
+    publicMembers.add(owner.getId());
+    Conversation publicConversation =
+        new Conversation(UUID.randomUUID(), owner.getId(), "public_conversation",
+            Instant.ofEpochMilli(2000), publicMembers, Type.TEXT, Visibility.PUBLIC,
+            "fakeURL", "5/HOURS", "fake :D");
+    conversationStore.addConversation(groupConversation);
+    conversationStore.addConversation(publicConversation);
+
+    List<Conversation> ownerConversations =
+        conversationStore.getPrivateConversationsWithUser(owner.getId());
+    Assert.assertEquals(1, ownerConversations.size());
+    assertEquals(groupConversation, ownerConversations.get(0));
+    Assert.assertTrue(conversationStore.getPrivateConversationsWithUser(member.getId()).isEmpty());
+
+    groupConversation.addMember(member);
+    Assert.assertEquals(
+        1, conversationStore.getPrivateConversationsWithUser(member.getId()).size());
+
+    groupConversation.removeMember(member);
+    Assert.assertTrue(conversationStore.getPrivateConversationsWithUser(member.getId()).isEmpty());
+  }
+
   private void assertEquals(Conversation expectedConversation, Conversation actualConversation) {
     Assert.assertEquals(expectedConversation.getId(), actualConversation.getId());
     Assert.assertEquals(expectedConversation.getOwnerId(), actualConversation.getOwnerId());
@@ -0,0 +1,227 @@
+package codeu.model.store.basic;
+
+import codeu.model.data.Activity;
+import codeu.model.data.Activity.ActivityType;
+import codeu.model.data.Conversation;
+import codeu.model.data.Conversation.Type;
+import codeu.model.data.Conversation.Visibility;
+import codeu.model.data.FeedEntry;
+import codeu.model.data.User;
+import codeu.model.store.persistence.PersistentStorageAgent;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class FeedStoreTest {
+
+  private static final int FAN_OUT_LIMIT = 3;
+
+  private FeedStore feedStore;
+  private ConversationStore conversationStore;
+
+  private final UUID ALICE = UUID.randomUUID();
+  private final UUID BOB = UUID.randomUUID();
+  private final UUID CAROL = UUID.randomUUID();
+
+  @Before
+  public void setup() {
+    conversationStore =
+        ConversationStore.getTestInstance(Mockito.mock(PersistentStorageAgent.class));
+    feedStore = FeedStore.getTestInstance(10, FAN_OUT_LIMIT);
+    feedStore.setConversationStore(conversationStore);
+  }
+
+  @Test
+  public void testPublish_ownActivityReachesOnlyTheOwner() {
+    FeedEntry entry = entry(ActivityType.USER, ALICE, 1000);
+    feedStore.publish(entry, null);
+
+    assertFeed(feedStore.feedPage(ALICE, null, 10), entry);
+    assertFeed(feedStore.feedPage(BOB, null, 10));
+  }
+
+  @Test
+  public void testPublish_smallConversationFansOutToMembers() {
+    Conversation group = conversation(Visibility.GROUP, ALICE, BOB);
+    FeedEntry first = entry(ActivityType.CONVERSATION, ALICE, 1000);
+    FeedEntry second = entry(ActivityType.MESSAGE, BOB, 2000);
+    feedStore.publish(first, group);
+    feedStore.publish(second, group);
+
+    assertFeed(feedStore.feedPage(ALICE, null, 10), second, first);
+    assertFeed(feedStore.feedPage(BOB, null, 10), second, first);
+    assertFeed(feedStore.feedPage(CAROL, null, 10));
+  }
+
+  @Test
+  public void testPublish_largeConversationIsReadFromItsTimeline() {
+    Conversation large = conversation(Visibility.GROUP, ALICE, BOB, UUID.randomUUID(), UUID.randomUUID());
+    FeedEntry own = entry(ActivityType.USER, ALICE, 1000);
+    FeedEntry message = entry(ActivityType.MESSAGE, BOB, 2000);
+    feedStore.publish(own, null);
+    feedStore.publish(message, large);
+
+    assertFeed(feedStore.feedPage(ALICE, null, 10), message, own);
+    assertFeed(feedStore.feedPage(CAROL, null, 10));
+
+    // members who join later see the timeline without any fan-out
+    large.addMember(user(CAROL));
+    assertFeed(feedStore.feedPage(CAROL, null, 10), message);
+    large.removeMember(user(CAROL));
+    assertFeed(feedStore.feedPage(CAROL, null, 10));
+  }
+
+  @Test
+  public void testPublish_publicConversationReachesEveryone() {
+    Conversation lobby = conversation(Visibility.PUBLIC);
+    FeedEntry message = entry(ActivityType.MESSAGE, ALICE, 1000);
+    feedStore.publish(message, lobby);
+
+    assertFeed(feedStore.feedPage(ALICE, null, 10), message);
+    assertFeed(feedStore.feedPage(CAROL, null, 10), message);
+  }
+
+  @Test
+  public void testFeedPage_pagesThroughMergedSources() {
+    Conversation group = conversation(Visibility.GROUP, ALICE, BOB);
+    Conversation lobby = conversation(Visibility.PUBLIC);
+    List<FeedEntry> published = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      FeedEntry entry = entry(ActivityType.MESSAGE, BOB, 1000 * (i + 1));
+      feedStore.publish(entry, i % 2 == 0 ? group : lobby);
+      published.add(entry);
+    }
+
+    List<FeedEntry> newest = feedStore.feedPage(ALICE, null, 4);
+    assertFeed(newest, published.get(5), published.get(4), published.get(3), published.get(2));
+    List<FeedEntry> older =
+        feedStore.feedPage(ALICE, ActivityCursor.of(newest.get(3).getActivity()), 4);
+    assertFeed(older, published.get(1), published.get(0));
+  }
+
+  @Test
+  public void testFeedPage_pagesThroughTies() {
+    Conversation group = conversation(Visibility.GROUP, ALICE, BOB);
+    Conversation lobby = conversation(Visibility.PUBLIC);
+    List<FeedEntry> published = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      // Every entry shares a creation time, so only the Activity ID tells the pages apart.
+      FeedEntry entry = entry(ActivityType.MESSAGE, BOB, 1000);
+      feedStore.publish(entry, i % 2 == 0 ? group : lobby);
+      published.add(entry);
+    }
+    published.sort(ActivityCursor.FEED_ORDER.reversed());
+
+    List<FeedEntry> newest = feedStore.feedPage(ALICE, null, 4);
+    List<FeedEntry> older =
+        feedStore.feedPage(ALICE, ActivityCursor.of(newest.get(3).getActivity()), 4);
+
+    Assert.assertEquals(published.subList(0, 4), newest);
+    Assert.assertEquals(published.subList(4, 6), older);
+  }
+
+  @Test
+  public void testFeedPage_continuesFromActivityStorePastTheInbox() {
+    // inboxes keep only the newest two entries, the rest is read from the shared feed
+    FeedStore smallFeedStore = FeedStore.getTestInstance(2, FAN_OUT_LIMIT);
+    smallFeedStore.setConversationStore(conversationStore);
+    ActivityStore activityStore =
+        ActivityStore.getTestInstance(Mockito.mock(PersistentStorageAgent.class));
+    activityStore.setFeedStore(smallFeedStore);
+    smallFeedStore.setActivityStore(activityStore);
+
+    Conversation group = conversation(Visibility.GROUP, ALICE, BOB);
+    Conversation others = conversation(Visibility.GROUP, BOB, CAROL);
+    List<Activity> visible = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      Activity activity = new Activity(ActivityType.MESSAGE, UUID.randomUUID(), BOB,
+          UUID.randomUUID(), Instant.ofEpochMilli(1000 * (i + 1)));
+      activityStore.addActivity(activity, i % 3 == 2 ? others : group);
+      if (i % 3 != 2) {
+        visible.add(0, activity);
+      }
+    }
+
+    List<Activity> paged = new ArrayList<>();
+    ActivityCursor before = null;
+    for (List<FeedEntry> page = smallFeedStore.feedPage(ALICE, null, 3);
+        !page.isEmpty();
+        page = smallFeedStore.feedPage(ALICE, before, 3)) {
+      for (FeedEntry entry : page) {
+        paged.add(entry.getActivity());
+      }
+      before = ActivityCursor.of(page.get(page.size() - 1).getActivity());
+    }
+
+    Assert.assertEquals(visible, paged);
+  }
+
+  @Test
+  public void testFeedPage_boundsTheScanPastTheInbox() {
+    FeedStore smallFeedStore = FeedStore.getTestInstance(2, FAN_OUT_LIMIT);
+    smallFeedStore.setConversationStore(conversationStore);
+    ActivityStore activityStore =
+        ActivityStore.getTestInstance(Mockito.mock(PersistentStorageAgent.class));
+    activityStore.setFeedStore(smallFeedStore);
+    smallFeedStore.setActivityStore(activityStore);
+
+    Conversation group = conversation(Visibility.GROUP, ALICE, BOB);
+    Conversation others = conversation(Visibility.GROUP, BOB, CAROL);
+    // three old entries Alice can see, behind more than a full scan of entries she can't
+    int hidden = FeedStore.MAX_SCAN_BATCHES * 3 + 1;
+    List<Activity> newest = new ArrayList<>();
+    for (int i = 0; i < 3 + hidden + 3; i++) {
+      boolean visible = i < 3 || i >= 3 + hidden;
+      Activity activity = new Activity(ActivityType.MESSAGE, UUID.randomUUID(), BOB,
+          UUID.randomUUID(), Instant.ofEpochMilli(1000 * (i + 1)));
+      activityStore.addActivity(activity, visible ? group : others);
+      if (i >= 3 + hidden) {
+        newest.add(0, activity);
+      }
+    }
+
+    List<FeedEntry> first = smallFeedStore.feedPage(ALICE, null, 3);
+    Assert.assertEquals(3, first.size());
+    for (int i = 0; i < 3; i++) {
+      Assert.assertEquals(newest.get(i), first.get(i).getActivity());
+    }
+    ActivityCursor before = ActivityCursor.of(first.get(2).getActivity());
+    Assert.assertTrue(smallFeedStore.feedPage(ALICE, before, 3).isEmpty());
+  }
+
+  private Conversation conversation(Visibility visibility, UUID... memberIds) {
+    HashSet<UUID> members = new HashSet<>();
+    for (UUID memberId : memberIds) {
+      members.add(memberId);
+    }
+    Conversation conversation =
+        new Conversation(UUID.randomUUID(), ALICE, "conversation_" + UUID.randomUUID(),
+            Instant.ofEpochMilli(500), members, Type.TEXT, visibility, "fakeURL", "5/DAYS",
+            "fake :D");
+    conversationStore.addConversation(conversation);
+    return conversation;
+  }
+
+  private static FeedEntry entry(ActivityType type, UUID ownerId, long creationMillis) {
+    Activity activity = new Activity(type, UUID.randomUUID(), ownerId, UUID.randomUUID(),
+        Instant.ofEpochMilli(creationMillis));
+    return new FeedEntry(activity, new FeedEntry.OwnerName("test_username"));
+  }
+
+  private static User user(UUID id) {
+    return new User(id, UUID.randomUUID(), "test_username", "password", false, Instant.now());
+  }
+
+  private static void assertFeed(List<FeedEntry> actual, FeedEntry... expected) {
+    Assert.assertEquals(expected.length, actual.size());
+    for (int i = 0; i < expected.length; i++) {
+      Assert.assertSame(expected[i], actual.get(i));
+    }
+  }
+}
@@ -0,0 +1,193 @@
+package codeu.model.store.basic;
+
+import codeu.model.data.Message;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import org.javatuples.Pair;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MessageSearchIndexTest {
+
+  private final UUID CONVERSATION_ONE = UUID.randomUUID();
+  private final UUID CONVERSATION_TWO = UUID.randomUUID();
+
+  private MessageSearchIndex messageSearchIndex;
+
+  @Before
+  public void setup() {
+    messageSearchIndex = MessageSearchIndex.getTestInstance();
+  }
+
+  @Test
+  public void testTokenize() {
+    Assert.assertEquals(
+        Arrays.asList("hello", "world", "it", "s", "2018"),
+        MessageSearchIndex.tokenize("Hello, WORLD! It's 2018..."));
+    Assert.assertTrue(MessageSearchIndex.tokenize(" ?! ").isEmpty());
+  }
+
+  @Test
+  public void testSearch_matchesEveryTerm() {
+    Message both = newMessage(CONVERSATION_ONE, "lunch at noon", 1000);
+    Message one = newMessage(CONVERSATION_ONE, "lunch tomorrow", 2000);
+    messageSearchIndex.messageAdded(both);
+    messageSearchIndex.messageAdded(one);
+
+    List<MessageSearchIndex.Result> results =
+        messageSearchIndex.search("Noon lunch", conversationId -> true, 10);
+
+    Assert.assertEquals(1, results.size());
+    assertFound(both, results.get(0));
+    Assert.assertEquals(2, messageSearchIndex.search("lunch", conversationId -> true, 10).size());
+    Assert.assertTrue(messageSearchIndex.search("dinner", conversationId -> true, 10).isEmpty());
+  }
+
+  @Test
+  public void testSearch_ranksBetterMatchesFirst() {
+    Message repeated = newMessage(CONVERSATION_ONE, "pizza pizza pizza", 1000);
+    Message diluted = newMessage(CONVERSATION_ONE, "who wants pizza for dinner tonight", 2000);
+    Message newerTie = newMessage(CONVERSATION_ONE, "who wants pizza for lunch tonight", 3000);
+    messageSearchIndex.messageAdded(repeated);
+    messageSearchIndex.messageAdded(diluted);
+    messageSearchIndex.messageAdded(newerTie);
+
+    List<MessageSearchIndex.Result> results =
+        messageSearchIndex.search("pizza", conversationId -> true, 10);
+
+    Assert.assertEquals(3, results.size());
+    assertFound(repeated, results.get(0));
+    assertFound(newerTie, results.get(1));
+    assertFound(diluted, results.get(2));
+    Assert.assertEquals(1, messageSearchIndex.search("pizza", conversationId -> true, 1).size());
+  }
+
+  @Test
+  public void testSearch_conversationFilter() {
+    Message inOne = newMessage(CONVERSATION_ONE, "meeting moved", 1000);
+    Message inTwo = newMessage(CONVERSATION_TWO, "meeting cancelled", 2000);
+    messageSearchIndex.messageAdded(inOne);
+    messageSearchIndex.messageAdded(inTwo);
+
+    List<MessageSearchIndex.Result> results =
+        messageSearchIndex.search("meeting", CONVERSATION_ONE::equals, 10);
+
+    Assert.assertEquals(1, results.size());
+    assertFound(inOne, results.get(0));
+  }
+
+  @Test
+  public void testSearch_keepsSubMillisecondTimes() {
+    Message message = new Message(UUID.randomUUID(), CONVERSATION_ONE, UUID.randomUUID(),
+        new Pair<>("precise timing", null), Instant.ofEpochSecond(5, 123_456_789));
+    messageSearchIndex.messageAdded(message);
+
+    List<MessageSearchIndex.Result> results =
+        messageSearchIndex.search("timing", conversationId -> true, 10);
+
+    Assert.assertEquals(1, results.size());
+    Assert.assertEquals(MessageCursor.of(message), results.get(0).getPosition());
+  }
+
+  @Test
+  public void testSetMessages_thenMessageAdded() {
+    List<Message> messages = new ArrayList<>();
+    // enough Messages to be tokenized in several chunks
+    for (int i = 0; i < 3 * MessageSearchIndex.MIN_CHUNK_SIZE; i++) {
+      UUID conversationId = i % 2 == 0 ? CONVERSATION_ONE : CONVERSATION_TWO;
+      messages.add(newMessage(conversationId, "message number " + i, i));
+    }
+    messages.add(new Message(UUID.randomUUID(), CONVERSATION_ONE, UUID.randomUUID(),
+        new Pair<>(null, null), Instant.ofEpochMilli(0)));
+    messageSearchIndex.messageAdded(newMessage(CONVERSATION_ONE, "replaced by the rebuild", 0));
+
+    messageSearchIndex.setMessages(messages);
+    Message added = newMessage(CONVERSATION_TWO, "message number 12345", 100000);
+    messageSearchIndex.messageAdded(added);
+
+    Assert.assertEquals(3 * MessageSearchIndex.MIN_CHUNK_SIZE + 1,
+        messageSearchIndex.getIndexedMessageCount());
+    Assert.assertTrue(
+        messageSearchIndex.search("rebuild", conversationId -> true, 10).isEmpty());
+    Assert.assertEquals(
+        3 * MessageSearchIndex.MIN_CHUNK_SIZE + 1,
+        messageSearchIndex.search("message", conversationId -> true, Integer.MAX_VALUE).size());
+
+    List<MessageSearchIndex.Result> results =
+        messageSearchIndex.search("12345", conversationId -> true, 10);
+    Assert.assertEquals(2, results.size());
+    assertFound(added, results.get(0));
+    assertFound(messages.get(12345), results.get(1));
+
+    List<MessageSearchIndex.Result> lastChunk =
+        messageSearchIndex.search("29999", conversationId -> true, 10);
+    Assert.assertEquals(1, lastChunk.size());
+    assertFound(messages.get(29999), lastChunk.get(0));
+  }
+
+  @Test
+  public void testRebuild_inBatches() {
+    Message old = newMessage(CONVERSATION_ONE, "replaced by the rebuild", 0);
+    messageSearchIndex.messageAdded(old);
+    Message first = newMessage(CONVERSATION_ONE, "quarterly planning", 1000);
+    Message second = newMessage(CONVERSATION_TWO, "planning poker", 2000);
+    Message noText = new Message(UUID.randomUUID(), CONVERSATION_ONE, UUID.randomUUID(),
+        new Pair<>(null, null), Instant.ofEpochMilli(3000));
+
+    MessageSearchIndex.Rebuild rebuild = messageSearchIndex.rebuild();
+    rebuild.add(Arrays.asList(first, noText));
+    rebuild.add(Arrays.asList(second));
+
+    Assert.assertEquals(1, messageSearchIndex.search("rebuild", conversationId -> true, 10).size());
+    rebuild.finish();
+    Assert.assertEquals(2, messageSearchIndex.getIndexedMessageCount());
+    Assert.assertTrue(
+        messageSearchIndex.search("rebuild", conversationId -> true, 10).isEmpty());
+    List<MessageSearchIndex.Result> results =
+        messageSearchIndex.search("planning", conversationId -> true, 10);
+    Assert.assertEquals(2, results.size());
+    assertFound(second, results.get(0));
+    assertFound(first, results.get(1));
+  }
+
+  @Test
+  public void testPostingList_roundTrip() {
+    PostingList postingList = new PostingList();
+    int[] documents = {0, 1, 127, 128, 20000, 5000000};
+    for (int document : documents) {
+      postingList.add(document, document % 300 + 1);
+    }
+
+    PostingList.Reader reader = new PostingList.Reader(postingList.buffer(), postingList.size());
+    for (int document : documents) {
+      Assert.assertTrue(reader.next());
+      Assert.assertEquals(document, reader.document());
+      Assert.assertEquals(document % 300 + 1, reader.count());
+    }
+    Assert.assertFalse(reader.next());
+
+    reader = new PostingList.Reader(postingList.buffer(), postingList.size());
+    Assert.assertTrue(reader.advanceTo(129));
+    Assert.assertEquals(20000, reader.document());
+    Assert.assertFalse(reader.advanceTo(5000001));
+    Assert.assertEquals(documents.length, postingList.documentCount());
+  }
+
+  private Message newMessage(UUID conversationId, String text, long creationMillis) {
+    return new Message(
+        UUID.randomUUID(),
+        conversationId,
+        UUID.randomUUID(),
+        new Pair<>(text, null),
+        Instant.ofEpochMilli(creationMillis));
+  }
+
+  private void assertFound(Message expected, MessageSearchIndex.Result result) {
+    Assert.assertEquals(expected.getConversationId(), result.getConversationId());
+    Assert.assertEquals(MessageCursor.of(expected), result.getPosition());
+  }
+}
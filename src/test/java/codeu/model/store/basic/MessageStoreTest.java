@@ -4,7 +4,10 @@ import codeu.model.data.Message;
 import codeu.model.store.persistence.PersistentStorageAgent;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
 import java.util.UUID;
 import org.junit.Assert;
 import org.junit.Before;
@@ -99,6 +102,257 @@ public class MessageStoreTest {
     Mockito.verify(mockPersistentStorageAgent).writeThrough(inputMessage);
   }
 
+  @Test
+  public void testGetMessagesInConversation_matchesLinearScan() {
+    Random random = new Random(42);
+    List<UUID> conversationIds = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      conversationIds.add(UUID.randomUUID());
+    }
+
+    List<Long> creationTimes = new ArrayList<>();
+    for (long i = 0; i < 2000; i++) {
+      creationTimes.add(i * 1000);
+    }
+    Collections.shuffle(creationTimes, random);
+
+    List<Message> corpus = new ArrayList<>();
+    for (long creationTime : creationTimes) {
+      corpus.add(
+          new Message(
+              UUID.randomUUID(),
+              conversationIds.get(random.nextInt(conversationIds.size())),
+              UUID.randomUUID(),
+              new Pair<>("content" + creationTime, blobkey),
+              Instant.ofEpochMilli(creationTime)));
+    }
+
+    // Load the first half as if from Datastore, then add the rest out of order.
+    List<Message> loaded = new ArrayList<>(corpus.subList(0, corpus.size() / 2));
+    loaded.sort(Comparator.comparing(Message::getCreationTime));
+    messageStore.setMessages(loaded);
+    for (Message message : corpus.subList(corpus.size() / 2, corpus.size())) {
+      messageStore.addMessage(message);
+    }
+
+    List<Message> sortedCorpus = new ArrayList<>(corpus);
+    sortedCorpus.sort(Comparator.comparing(Message::getCreationTime));
+    for (UUID conversationId : conversationIds) {
+      List<Message> expectedMessages = new ArrayList<>();
+      for (Message message : sortedCorpus) {
+        if (message.getConversationId().equals(conversationId)) {
+          expectedMessages.add(message);
+        }
+      }
+
+      List<Message> resultMessages = messageStore.getMessagesInConversation(conversationId);
+      Assert.assertEquals(expectedMessages.size(), resultMessages.size());
+      for (int i = 0; i < expectedMessages.size(); i++) {
+        assertEquals(expectedMessages.get(i), resultMessages.get(i));
+      }
+    }
+  }
+
+  @Test
+  public void testGetMessagesByUser_paged() {
+    UUID authorId = UUID.randomUUID();
+    List<Message> authorMessages = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      Message message =
+          new Message(
+              UUID.randomUUID(),
+              CONVERSATION_ID_ONE,
+              authorId,
+              new Pair<>("content" + i, blobkey),
+              Instant.ofEpochMilli(10000 + i * 1000));
+      authorMessages.add(message);
+      messageStore.addMessage(message);
+    }
+
+    List<Message> newest = messageStore.getMessagesByUser(authorId, null, 4);
+    Assert.assertEquals(4, newest.size());
+    assertEquals(authorMessages.get(6), newest.get(0));
+    assertEquals(authorMessages.get(9), newest.get(3));
+
+    List<Message> older =
+        messageStore.getMessagesByUser(authorId, MessageCursor.of(newest.get(0)), 4);
+    Assert.assertEquals(4, older.size());
+    assertEquals(authorMessages.get(2), older.get(0));
+    assertEquals(authorMessages.get(5), older.get(3));
+
+    List<Message> oldest =
+        messageStore.getMessagesByUser(authorId, MessageCursor.of(older.get(0)), 4);
+    Assert.assertEquals(2, oldest.size());
+    assertEquals(authorMessages.get(0), oldest.get(0));
+
+    Assert.assertTrue(messageStore.getMessagesByUser(UUID.randomUUID(), null, 4).isEmpty());
+  }
+
+  @Test
+  public void testGetMessagesByUser_pagedThroughTies() {
+    UUID authorId = UUID.randomUUID();
+    List<Message> authorMessages = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      // Every message shares a creation time, so only the ID tells the pages apart.
+      Message message =
+          new Message(
+              UUID.randomUUID(),
+              CONVERSATION_ID_ONE,
+              authorId,
+              new Pair<>("content" + i, blobkey),
+              Instant.ofEpochMilli(10000));
+      authorMessages.add(message);
+      messageStore.addMessage(message);
+    }
+    authorMessages.sort(MessageStore.HISTORY_ORDER);
+
+    List<Message> newest = messageStore.getMessagesByUser(authorId, null, 4);
+    List<Message> older =
+        messageStore.getMessagesByUser(authorId, MessageCursor.of(newest.get(0)), 4);
+
+    Assert.assertEquals(authorMessages.subList(2, 6), newest);
+    Assert.assertEquals(authorMessages.subList(0, 2), older);
+  }
+
+  @Test
+  public void testGetMessagesInConversation_paged() {
+    UUID conversationId = UUID.randomUUID();
+    List<Message> history = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      // Pairs of messages share a creation time, so the cursor has to break ties by ID.
+      Message message = newMessage(conversationId, Instant.ofEpochMilli(10000 + (i / 2) * 1000));
+      history.add(message);
+      messageStore.addMessage(message);
+    }
+    history.sort(MessageStore.HISTORY_ORDER);
+
+    List<Message> newest = messageStore.getMessagesInConversation(conversationId, null, 3);
+    Assert.assertEquals(3, newest.size());
+    assertEquals(history.get(7), newest.get(0));
+    assertEquals(history.get(9), newest.get(2));
+
+    List<Message> older =
+        messageStore.getMessagesInConversation(
+            conversationId, MessageCursor.of(newest.get(0)), 3);
+    Assert.assertEquals(3, older.size());
+    assertEquals(history.get(4), older.get(0));
+    assertEquals(history.get(6), older.get(2));
+
+    List<Message> oldest =
+        messageStore.getMessagesInConversation(
+            conversationId, MessageCursor.parse(MessageCursor.of(history.get(1)).toString()), 3);
+    Assert.assertEquals(1, oldest.size());
+    assertEquals(history.get(0), oldest.get(0));
+  }
+
+  @Test
+  public void testGetMessagesInConversationAfter() {
+    UUID conversationId = UUID.randomUUID();
+    List<Message> history = new ArrayList<>();
+    for (int i = 0; i < 6; i++) {
+      Message message = newMessage(conversationId, Instant.ofEpochMilli(10000 + (i / 2) * 1000));
+      history.add(message);
+      messageStore.addMessage(message);
+    }
+    history.sort(MessageStore.HISTORY_ORDER);
+
+    List<Message> newer =
+        messageStore.getMessagesInConversationAfter(
+            conversationId, MessageCursor.of(history.get(2)), 10);
+    Assert.assertEquals(3, newer.size());
+    assertEquals(history.get(3), newer.get(0));
+    assertEquals(history.get(5), newer.get(2));
+
+    List<Message> limited = messageStore.getMessagesInConversationAfter(conversationId, null, 2);
+    Assert.assertEquals(2, limited.size());
+    assertEquals(history.get(0), limited.get(0));
+
+    Assert.assertTrue(
+        messageStore
+            .getMessagesInConversationAfter(conversationId, MessageCursor.of(history.get(5)), 10)
+            .isEmpty());
+  }
+
+  @Test
+  public void testGetMessagesInConversation_unknownConversation() {
+    Assert.assertTrue(messageStore.getMessagesInConversation(UUID.randomUUID()).isEmpty());
+  }
+
+  @Test
+  public void testLazyLoading_loadsOnFirstAccessAndEvictsLeastRecentlyUsed() throws Exception {
+    UUID conversationA = UUID.randomUUID();
+    UUID conversationB = UUID.randomUUID();
+    List<Message> messagesA = new ArrayList<>();
+    List<Message> messagesB = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      messagesA.add(newMessage(conversationA, Instant.ofEpochMilli(1000 + i)));
+      messagesB.add(newMessage(conversationB, Instant.ofEpochMilli(2000 + i)));
+    }
+    Mockito.when(mockPersistentStorageAgent.loadMessagesInConversation(conversationA))
+        .thenReturn(messagesA);
+    Mockito.when(mockPersistentStorageAgent.loadMessagesInConversation(conversationB))
+        .thenReturn(messagesB);
+    messageStore.enableLazyLoading(3);
+
+    Assert.assertEquals(2, messageStore.getMessagesInConversation(conversationA).size());
+    Assert.assertEquals(2, messageStore.getMessagesInConversation(conversationA).size());
+    Mockito.verify(mockPersistentStorageAgent, Mockito.times(1))
+        .loadMessagesInConversation(conversationA);
+
+    // Loading B goes over budget, so A is evicted and loaded again on its next access.
+    Assert.assertEquals(2, messageStore.getMessagesInConversation(conversationB).size());
+    Assert.assertEquals(2, messageStore.getMessagesInConversation(conversationA).size());
+    Mockito.verify(mockPersistentStorageAgent, Mockito.times(2))
+        .loadMessagesInConversation(conversationA);
+    Mockito.verify(mockPersistentStorageAgent, Mockito.times(1))
+        .loadMessagesInConversation(conversationB);
+  }
+
+  @Test
+  public void testLazyLoading_addMessage() throws Exception {
+    UUID conversationId = UUID.randomUUID();
+    Message oldMessage = newMessage(conversationId, Instant.ofEpochMilli(1000));
+    Message newMessage = newMessage(conversationId, Instant.ofEpochMilli(2000));
+    // The load runs after the write, so Datastore may already return the new message.
+    List<Message> persisted = new ArrayList<>();
+    persisted.add(oldMessage);
+    persisted.add(newMessage);
+    Mockito.when(mockPersistentStorageAgent.loadMessagesInConversation(conversationId))
+        .thenReturn(persisted);
+    messageStore.enableLazyLoading(100);
+
+    messageStore.addMessage(newMessage);
+
+    List<Message> resultMessages = messageStore.getMessagesInConversation(conversationId);
+    Assert.assertEquals(2, resultMessages.size());
+    assertEquals(oldMessage, resultMessages.get(0));
+    assertEquals(newMessage, resultMessages.get(1));
+    Mockito.verify(mockPersistentStorageAgent).writeThrough(newMessage);
+  }
+
+  @Test
+  public void testGetMessage() {
+    assertEquals(
+        MESSAGE_TWO, messageStore.getMessage(CONVERSATION_ID_ONE, MessageCursor.of(MESSAGE_TWO)));
+  }
+
+  @Test
+  public void testGetMessage_notFound() {
+    Assert.assertNull(
+        messageStore.getMessage(CONVERSATION_ID_ONE, MessageCursor.of(MESSAGE_THREE)));
+    Assert.assertNull(
+        messageStore.getMessage(UUID.randomUUID(), MessageCursor.of(MESSAGE_ONE)));
+  }
+
+  private Message newMessage(UUID conversationId, Instant creationTime) {
+    return new Message(
+        UUID.randomUUID(),
+        conversationId,
+        UUID.randomUUID(),
+        new Pair<>("content", blobkey),
+        creationTime);
+  }
+
   private void assertEquals(Message expectedMessage, Message actualMessage) {
     Assert.assertEquals(expectedMessage.getId(), actualMessage.getId());
     Assert.assertEquals(expectedMessage.getConversationId(), actualMessage.getConversationId());
@@ -0,0 +1,134 @@
+package codeu.model.store.basic;
+
+import codeu.model.data.Message;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.javatuples.Pair;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SiteStatisticsTest {
+
+  private static final Instant START = Instant.parse("2018-06-01T12:00:00Z");
+
+  private final UUID ALICE = UUID.randomUUID();
+  private final UUID BOB = UUID.randomUUID();
+
+  private MutableClock clock;
+  private SiteStatistics siteStatistics;
+
+  @Before
+  public void setup() {
+    clock = new MutableClock(START);
+    siteStatistics = SiteStatistics.getTestInstance(clock);
+  }
+
+  @Test
+  public void testTotals() {
+    siteStatistics.setUserCount(10);
+    siteStatistics.setConversationCount(3);
+    siteStatistics.setMessages(100, new ArrayList<>());
+    siteStatistics.userAdded();
+    siteStatistics.conversationAdded();
+    siteStatistics.messageAdded(message(ALICE, START));
+
+    Assert.assertEquals(11, siteStatistics.getUserCount());
+    Assert.assertEquals(4, siteStatistics.getConversationCount());
+    Assert.assertEquals(101, siteStatistics.getMessageCount());
+  }
+
+  @Test
+  public void testGetMostActiveAuthor() {
+    Assert.assertNull(siteStatistics.getMostActiveAuthor());
+
+    siteStatistics.messageAdded(message(ALICE, START));
+    siteStatistics.messageAdded(message(BOB, START));
+    siteStatistics.messageAdded(message(BOB, START));
+
+    Assert.assertEquals(BOB, siteStatistics.getMostActiveAuthor());
+    Assert.assertEquals(2, siteStatistics.getMostActiveMessageCount());
+  }
+
+  @Test
+  public void testGetMostActiveAuthor_oldMessagesExpire() {
+    siteStatistics.messageAdded(message(BOB, START));
+    siteStatistics.messageAdded(message(BOB, START));
+    clock.advance(Duration.ofHours(12));
+    siteStatistics.messageAdded(message(ALICE, clock.instant()));
+
+    Assert.assertEquals(BOB, siteStatistics.getMostActiveAuthor());
+
+    // Bob's messages leave the window; Alice's is still in it
+    clock.advance(Duration.ofHours(12).plusMinutes(1));
+    Assert.assertEquals(ALICE, siteStatistics.getMostActiveAuthor());
+    Assert.assertEquals(1, siteStatistics.getMostActiveMessageCount());
+
+    clock.advance(Duration.ofDays(3));
+    Assert.assertNull(siteStatistics.getMostActiveAuthor());
+    Assert.assertEquals(0, siteStatistics.getMostActiveMessageCount());
+  }
+
+  @Test
+  public void testSetMessages_countsOnlyRecentMessages() {
+    List<Message> messages = new ArrayList<>();
+    messages.add(message(BOB, START.minus(Duration.ofDays(2))));
+    messages.add(message(BOB, START.minus(Duration.ofDays(2))));
+    messages.add(message(ALICE, START.minus(Duration.ofHours(1))));
+    siteStatistics.setMessages(messages.size(), messages);
+
+    Assert.assertEquals(3, siteStatistics.getMessageCount());
+    Assert.assertEquals(ALICE, siteStatistics.getMostActiveAuthor());
+    Assert.assertEquals(1, siteStatistics.getMostActiveMessageCount());
+  }
+
+  @Test
+  public void testMessageAdded_futureMessageCountsAsNow() {
+    siteStatistics.messageAdded(message(ALICE, START.plus(Duration.ofHours(1))));
+
+    clock.advance(Duration.ofHours(23));
+    Assert.assertEquals(ALICE, siteStatistics.getMostActiveAuthor());
+    clock.advance(Duration.ofHours(1));
+    Assert.assertNull(siteStatistics.getMostActiveAuthor());
+  }
+
+  private static Message message(UUID authorId, Instant creationTime) {
+    return new Message(UUID.randomUUID(), UUID.randomUUID(), authorId,
+        new Pair<>("test message", null), creationTime);
+  }
+
+  /** A Clock that tests move forward by hand. */
+  private static class MutableClock extends Clock {
+
+    private Instant now;
+
+    MutableClock(Instant now) {
+      this.now = now;
+    }
+
+    void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+}
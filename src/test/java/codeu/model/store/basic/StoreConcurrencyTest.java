@@ -0,0 +1,163 @@
+package codeu.model.store.basic;
+
+import codeu.model.data.Activity;
+import codeu.model.data.Activity.ActivityType;
+import codeu.model.data.Conversation;
+import codeu.model.data.Conversation.Type;
+import codeu.model.data.Conversation.Visibility;
+import codeu.model.data.Message;
+import codeu.model.store.persistence.PersistentStorageAgent;
+import com.google.appengine.api.blobstore.BlobKey;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.javatuples.Pair;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+/**
+ * Stress test for the in-memory stores. Writer threads add Messages, Conversations and Activities
+ * while reader threads iterate the stores, checking that no reader fails and no write is lost.
+ */
+public class StoreConcurrencyTest {
+
+  private static final int WRITERS = 8;
+  private static final int READERS = 4;
+  private static final int WRITES_PER_WRITER = 500;
+  private static final int CONVERSATIONS = 10;
+
+  private MessageStore messageStore;
+  private ConversationStore conversationStore;
+  private ActivityStore activityStore;
+  private List<UUID> conversationIds;
+
+  @Before
+  public void setup() {
+    PersistentStorageAgent mockPersistentStorageAgent = Mockito.mock(PersistentStorageAgent.class);
+    messageStore = MessageStore.getTestInstance(mockPersistentStorageAgent);
+    conversationStore = ConversationStore.getTestInstance(mockPersistentStorageAgent);
+    activityStore = ActivityStore.getTestInstance(mockPersistentStorageAgent);
+
+    conversationIds = new ArrayList<>();
+    for (int i = 0; i < CONVERSATIONS; i++) {
+      conversationIds.add(UUID.randomUUID());
+    }
+  }
+
+  @Test
+  public void testConcurrentWritesWithReaders() throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(WRITERS + READERS);
+    CountDownLatch start = new CountDownLatch(1);
+    CountDownLatch writersDone = new CountDownLatch(WRITERS);
+    AtomicBoolean writing = new AtomicBoolean(true);
+    ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+
+    for (int w = 0; w < WRITERS; w++) {
+      final int writer = w;
+      executor.execute(
+          () -> {
+            try {
+              start.await();
+              for (int i = 0; i < WRITES_PER_WRITER; i++) {
+                UUID authorId = UUID.randomUUID();
+                Message message =
+                    new Message(
+                        UUID.randomUUID(),
+                        conversationIds.get(i % CONVERSATIONS),
+                        authorId,
+                        new Pair<>("message " + writer + "/" + i, (BlobKey) null),
+                        Instant.ofEpochMilli(i));
+                messageStore.addMessage(message);
+                activityStore.addActivity(
+                    new Activity(
+                        ActivityType.MESSAGE,
+                        UUID.randomUUID(),
+                        authorId,
+                        message.getId(),
+                        message.getCreationTime()));
+                if (i % 10 == 0) {
+                  conversationStore.addConversation(
+                      new Conversation(
+                          UUID.randomUUID(),
+                          authorId,
+                          "conversation_" + writer + "_" + i,
+                          Instant.now(),
+                          new HashSet<>(),
+                          Type.TEXT,
+                          Visibility.PUBLIC,
+                          null,
+                          "5/HOURS",
+                          "stress"));
+                }
+              }
+            } catch (Throwable t) {
+              failures.add(t);
+            } finally {
+              writersDone.countDown();
+            }
+          });
+    }
+
+    for (int r = 0; r < READERS; r++) {
+      executor.execute(
+          () -> {
+            try {
+              start.await();
+              while (writing.get()) {
+                for (Object message : messageStore.getAllMessages()) {
+                  Assert.assertNotNull(message);
+                }
+                for (UUID conversationId : conversationIds) {
+                  for (Message message : messageStore.getMessagesInConversation(conversationId)) {
+                    Assert.assertEquals(conversationId, message.getConversationId());
+                  }
+                }
+                for (Conversation conversation : conversationStore.getAllConversations()) {
+                  Assert.assertNotNull(
+                      conversationStore.getConversationWithTitle(conversation.getTitle()));
+                }
+                for (Activity activity : activityStore.getAllActivities()) {
+                  Assert.assertNotNull(activity);
+                }
+              }
+            } catch (Throwable t) {
+              failures.add(t);
+            }
+          });
+    }
+
+    start.countDown();
+    Assert.assertTrue(writersDone.await(60, TimeUnit.SECONDS));
+    writing.set(false);
+    executor.shutdown();
+    Assert.assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+    Assert.assertTrue("Unexpected failures: " + failures, failures.isEmpty());
+
+    int totalWrites = WRITERS * WRITES_PER_WRITER;
+    Assert.assertEquals(totalWrites, messageStore.getAllMessages().size());
+    Assert.assertEquals(totalWrites, activityStore.getAllActivities().size());
+    Assert.assertEquals(totalWrites / 10, conversationStore.getAllConversations().size());
+
+    int indexedMessages = 0;
+    for (UUID conversationId : conversationIds) {
+      List<Message> messages = messageStore.getMessagesInConversation(conversationId);
+      for (int i = 1; i < messages.size(); i++) {
+        Assert.assertFalse(
+            messages.get(i - 1).getCreationTime().isAfter(messages.get(i).getCreationTime()));
+      }
+      indexedMessages += messages.size();
+    }
+    Assert.assertEquals(totalWrites, indexedMessages);
+  }
+}
@@ -0,0 +1,162 @@
+package codeu.model.store.basic;
+
+import codeu.model.data.Message;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.javatuples.Pair;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TrendingConversationsTest {
+
+  private static final Instant START = Instant.parse("2018-06-01T12:00:00Z");
+
+  private final UUID CONVERSATION_ONE = UUID.randomUUID();
+  private final UUID CONVERSATION_TWO = UUID.randomUUID();
+  private final UUID CONVERSATION_THREE = UUID.randomUUID();
+
+  private MutableClock clock;
+  private TrendingConversations trendingConversations;
+
+  @Before
+  public void setup() {
+    clock = new MutableClock(START);
+    trendingConversations = TrendingConversations.getTestInstance(clock, 2);
+  }
+
+  @Test
+  public void testGetTrending_busiestFirst() {
+    addMessages(CONVERSATION_ONE, 2);
+    addMessages(CONVERSATION_TWO, 5);
+
+    List<TrendingConversations.Trend> trending = trendingConversations.getTrending(10);
+
+    Assert.assertEquals(2, trending.size());
+    Assert.assertEquals(CONVERSATION_TWO, trending.get(0).getConversationId());
+    Assert.assertEquals(CONVERSATION_ONE, trending.get(1).getConversationId());
+    Assert.assertTrue(
+        trending.get(0).getMessagesPerMinute() > trending.get(1).getMessagesPerMinute());
+  }
+
+  @Test
+  public void testGetTrending_respectsLimit() {
+    addMessages(CONVERSATION_ONE, 2);
+    addMessages(CONVERSATION_TWO, 5);
+
+    List<TrendingConversations.Trend> trending = trendingConversations.getTrending(1);
+
+    Assert.assertEquals(1, trending.size());
+    Assert.assertEquals(CONVERSATION_TWO, trending.get(0).getConversationId());
+  }
+
+  @Test
+  public void testGetTrending_recentMessagesOutweighOld() {
+    addMessages(CONVERSATION_ONE, 8);
+    clock.advance(TrendingConversations.HALF_LIFE.multipliedBy(3));
+    addMessages(CONVERSATION_TWO, 2);
+
+    // one's 8 Messages have decayed to 1, below two's 2
+    List<TrendingConversations.Trend> trending = trendingConversations.getTrending(10);
+    Assert.assertEquals(CONVERSATION_TWO, trending.get(0).getConversationId());
+  }
+
+  @Test
+  public void testGetTrending_quietConversationsDropOut() {
+    addMessages(CONVERSATION_ONE, 4);
+    Assert.assertEquals(1, trendingConversations.getTrending(10).size());
+
+    clock.advance(TrendingConversations.HALF_LIFE.multipliedBy(3));
+    Assert.assertTrue(trendingConversations.getTrending(10).isEmpty());
+  }
+
+  @Test
+  public void testMessageAdded_evictsLowestBeyondCapacity() {
+    addMessages(CONVERSATION_ONE, 2);
+    addMessages(CONVERSATION_TWO, 3);
+    addMessages(CONVERSATION_THREE, 4);
+
+    List<TrendingConversations.Trend> trending = trendingConversations.getTrending(10);
+
+    Assert.assertEquals(2, trending.size());
+    Assert.assertEquals(CONVERSATION_THREE, trending.get(0).getConversationId());
+    Assert.assertEquals(CONVERSATION_TWO, trending.get(1).getConversationId());
+  }
+
+  @Test
+  public void testMessageAdded_longUptimeKeepsRanking() {
+    // enough half-lives to force the weights to be rescaled several times
+    for (int i = 0; i < 2000; i++) {
+      clock.advance(TrendingConversations.HALF_LIFE);
+      trendingConversations.messageAdded(message(CONVERSATION_ONE, clock.instant()));
+    }
+    addMessages(CONVERSATION_TWO, 3);
+
+    List<TrendingConversations.Trend> trending = trendingConversations.getTrending(10);
+    Assert.assertEquals(CONVERSATION_TWO, trending.get(0).getConversationId());
+    Assert.assertEquals(CONVERSATION_ONE, trending.get(1).getConversationId());
+  }
+
+  @Test
+  public void testSetMessages_replacesScores() {
+    addMessages(CONVERSATION_ONE, 5);
+
+    List<Message> messages = new ArrayList<>();
+    messages.add(message(CONVERSATION_TWO, START.minus(Duration.ofMinutes(1))));
+    messages.add(message(CONVERSATION_TWO, START.minus(Duration.ofMinutes(2))));
+    for (int i = 0; i < 10; i++) {
+      messages.add(message(CONVERSATION_THREE, START.minus(Duration.ofDays(1))));
+    }
+    trendingConversations.setMessages(messages);
+
+    List<TrendingConversations.Trend> trending = trendingConversations.getTrending(10);
+    Assert.assertEquals(1, trending.size());
+    Assert.assertEquals(CONVERSATION_TWO, trending.get(0).getConversationId());
+  }
+
+  private void addMessages(UUID conversationId, int count) {
+    for (int i = 0; i < count; i++) {
+      trendingConversations.messageAdded(message(conversationId, clock.instant()));
+    }
+  }
+
+  private static Message message(UUID conversationId, Instant creationTime) {
+    return new Message(UUID.randomUUID(), conversationId, UUID.randomUUID(),
+        new Pair<>("test message", null), creationTime);
+  }
+
+  /** A Clock that tests move forward by hand. */
+  private static class MutableClock extends Clock {
+
+    private Instant now;
+
+    MutableClock(Instant now) {
+      this.now = now;
+    }
+
+    void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+}
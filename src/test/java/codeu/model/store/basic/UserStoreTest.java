@@ -109,6 +109,84 @@ public class UserStoreTest {
     Assert.assertFalse(userStore.isUserRegistered("fake username"));
   }
 
+  @Test
+  public void testUpdateUser_renamed() {
+    User renamedUser =
+        new User(
+            USER_ONE.getId(),
+            USER_ONE.getProfileID(),
+            "renamed_username",
+            USER_ONE.getPasswordHash(),
+            false,
+            USER_ONE.getCreationTime());
+
+    userStore.updateUser(renamedUser);
+
+    Assert.assertFalse(userStore.isUserRegistered(USER_ONE.getName()));
+    Assert.assertNull(userStore.getUser(USER_ONE.getName()));
+    assertEquals(renamedUser, userStore.getUser("renamed_username"));
+    assertEquals(renamedUser, userStore.getUser(USER_ONE.getId()));
+    Assert.assertEquals(3, userStore.getUsers().size());
+    Mockito.verify(mockPersistentStorageAgent).writeThrough(renamedUser);
+  }
+
+  @Test
+  public void testSetUsers_replacesIndexes() {
+    List<User> userList = new ArrayList<>();
+    userList.add(USER_TWO);
+    userStore.setUsers(userList);
+
+    Assert.assertNull(userStore.getUser(USER_ONE.getId()));
+    Assert.assertFalse(userStore.isUserRegistered(USER_ONE.getName()));
+    assertEquals(USER_TWO, userStore.getUser(USER_TWO.getName()));
+    assertEquals(USER_TWO, userStore.getUser(USER_TWO.getId()));
+  }
+
+  @Test
+  public void testSearchUsersByName_sortedAndLimited() {
+    List<User> results = userStore.searchUsersByName("test_username_t", 10);
+
+    Assert.assertEquals(2, results.size());
+    assertEquals(USER_THREE, results.get(0));
+    assertEquals(USER_TWO, results.get(1));
+
+    results = userStore.searchUsersByName("test_username", 2);
+
+    Assert.assertEquals(2, results.size());
+    assertEquals(USER_ONE, results.get(0));
+    assertEquals(USER_THREE, results.get(1));
+  }
+
+  @Test
+  public void testSearchUsersByName_ignoresCase() {
+    User upperCaseUser =
+        new User(UUID.randomUUID(), UUID.randomUUID(), "TEST_User", "hash", false, Instant.now());
+    userStore.addUser(upperCaseUser);
+
+    List<User> results = userStore.searchUsersByName("Test_u", 10);
+
+    Assert.assertEquals(4, results.size());
+    assertEquals(upperCaseUser, results.get(0));
+    Assert.assertTrue(userStore.searchUsersByName("test_z", 10).isEmpty());
+  }
+
+  @Test
+  public void testSearchUsersByName_followsRename() {
+    User renamedUser =
+        new User(
+            USER_ONE.getId(),
+            USER_ONE.getProfileID(),
+            "renamed_username",
+            USER_ONE.getPasswordHash(),
+            false,
+            USER_ONE.getCreationTime());
+
+    userStore.updateUser(renamedUser);
+
+    Assert.assertEquals(2, userStore.searchUsersByName("test_", 10).size());
+    assertEquals(renamedUser, userStore.searchUsersByName("ren", 10).get(0));
+  }
+
   private void assertEquals(User expectedUser, User actualUser) {
     Assert.assertEquals(expectedUser.getId(), actualUser.getId());
     Assert.assertEquals(expectedUser.getName(), actualUser.getName());
@@ -9,6 +9,7 @@ import org.javatuples.Pair;
 import java.time.temporal.ChronoUnit;
 import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashSet;
 import codeu.model.data.User;
 import codeu.model.data.Activity;
@@ -26,6 +27,8 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.google.appengine.api.blobstore.BlobKey;
+import com.google.appengine.api.datastore.DatastoreServiceFactory;
+import com.google.appengine.api.datastore.Entity;
 
 
 /**
@@ -264,4 +267,100 @@ public class PersistentDataStoreTest {
     Assert.assertEquals(idNine, resultMsgAct.getActivityId());
 		Assert.assertEquals(creationThree, resultMsgAct.getCreationTime());
 	}
+
+	@Test
+	public void testLoadMessagesByAuthor_beforeFollowsTimeOrder() throws Exception {
+		UUID author = UUID.randomUUID();
+		Message wholeSecond = newMessage(author, Instant.ofEpochSecond(5));
+		Message fraction = newMessage(author, Instant.ofEpochSecond(5, 123_000_000));
+		Message later = newMessage(author, Instant.ofEpochSecond(6));
+		persistentDataStore.writeThrough(later);
+		persistentDataStore.writeThrough(fraction);
+		persistentDataStore.writeThrough(wholeSecond);
+
+		// As strings, "...:05Z" sorts after "...:05.500Z", so a string filter would drop wholeSecond.
+		List<Message> resultMessages = persistentDataStore.loadMessagesByAuthor(
+				author, Instant.ofEpochSecond(5, 500_000_000), UUID.randomUUID(), 10);
+
+		Assert.assertEquals(2, resultMessages.size());
+		Assert.assertEquals(wholeSecond.getId(), resultMessages.get(0).getId());
+		Assert.assertEquals(fraction.getId(), resultMessages.get(1).getId());
+	}
+
+	@Test
+	public void testLoadMessagesByAuthor_pagesThroughTies() throws Exception {
+		UUID author = UUID.randomUUID();
+		List<Message> written = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			Message message = newMessage(author, Instant.ofEpochSecond(5));
+			written.add(message);
+			persistentDataStore.writeThrough(message);
+		}
+		written.sort(Comparator.comparing(Message::getId));
+
+		List<Message> newest = persistentDataStore.loadMessagesByAuthor(author, null, null, 3);
+		Message oldestShown = newest.get(0);
+		List<Message> older = persistentDataStore.loadMessagesByAuthor(
+				author, oldestShown.getCreationTime(), oldestShown.getId(), 3);
+
+		Assert.assertEquals(3, newest.size());
+		Assert.assertEquals(written.get(2).getId(), newest.get(0).getId());
+		Assert.assertEquals(written.get(4).getId(), newest.get(2).getId());
+		Assert.assertEquals(2, older.size());
+		Assert.assertEquals(written.get(0).getId(), older.get(0).getId());
+		Assert.assertEquals(written.get(1).getId(), older.get(1).getId());
+	}
+
+	@Test
+	public void testBackfillCreationNanos() throws Exception {
+		Message message = newMessage(UUID.randomUUID(), Instant.ofEpochMilli(1000));
+		Entity legacy = persistentDataStore.toEntity(message);
+		legacy.removeProperty("creation_nanos");
+		DatastoreServiceFactory.getDatastoreService().put(legacy);
+		Assert.assertTrue(persistentDataStore.loadMessagesSince(Instant.EPOCH).isEmpty());
+
+		persistentDataStore.backfillCreationNanos();
+
+		List<Message> resultMessages = persistentDataStore.loadMessagesSince(Instant.EPOCH);
+		Assert.assertEquals(1, resultMessages.size());
+		Assert.assertEquals(message.getId(), resultMessages.get(0).getId());
+		Assert.assertEquals(message.getCreationTime(), resultMessages.get(0).getCreationTime());
+	}
+
+	@Test
+	public void testCountMessages_withoutStatisticsCountsKeys() throws Exception {
+		// The local datastore computes no __Stat_Kind__ statistics, so every key is counted.
+		for (int i = 0; i < 3; i++) {
+			persistentDataStore.writeThrough(newMessage(UUID.randomUUID(), Instant.ofEpochSecond(i)));
+		}
+
+		Assert.assertEquals(3, persistentDataStore.countMessages());
+	}
+
+	@Test
+	public void testActivityConversation_savedAndBackfilled() throws Exception {
+		Message message = newMessage(UUID.randomUUID(), Instant.ofEpochSecond(1));
+		persistentDataStore.writeThrough(message);
+		Activity current = new Activity(ActivityType.MESSAGE, UUID.randomUUID(),
+				message.getAuthorId(), message.getId(), Instant.ofEpochSecond(2),
+				message.getConversationId());
+		persistentDataStore.writeThrough(current);
+		Activity legacy = new Activity(ActivityType.MESSAGE, UUID.randomUUID(),
+				message.getAuthorId(), message.getId(), Instant.ofEpochSecond(3));
+		persistentDataStore.writeThrough(legacy);
+		Assert.assertNull(persistentDataStore.loadActivities().get(0).getConversationId());
+
+		persistentDataStore.backfillActivityConversations();
+
+		List<Activity> resultActivities = persistentDataStore.loadActivities();
+		Assert.assertEquals(legacy.getId(), resultActivities.get(0).getId());
+		Assert.assertEquals(message.getConversationId(), resultActivities.get(0).getConversationId());
+		Assert.assertEquals(current.getId(), resultActivities.get(1).getId());
+		Assert.assertEquals(message.getConversationId(), resultActivities.get(1).getConversationId());
+	}
+
+	private static Message newMessage(UUID author, Instant creationTime) {
+		return new Message(UUID.randomUUID(), UUID.randomUUID(), author,
+				new Pair<String, BlobKey>("TestText", null), creationTime);
+	}
 }
@@ -8,6 +8,7 @@ import codeu.model.data.Activity;
 import codeu.model.data.Activity.ActivityType;
 import java.time.Instant;
 import java.util.UUID;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mockito;
@@ -131,4 +132,24 @@ public class PersistentStorageAgentTest {
 		catch(InterruptedException e) {}
 		catch(ExecutionException e) {}
 	}
+
+	@Test
+	public void testWriteThrough_interruptedEnqueueStillWrites() throws Exception {
+		WriteBehindQueue mockQueue = Mockito.mock(WriteBehindQueue.class);
+		Mockito.doThrow(new InterruptedException()).when(mockQueue).enqueue(Mockito.any());
+		persistentStorageAgent.enableWriteBehind(mockQueue);
+		boolean[] interruptedDuringWrite = {true};
+		Mockito.doAnswer(invocation -> {
+			interruptedDuringWrite[0] = Thread.currentThread().isInterrupted();
+			return null;
+		}).when(mockPersistentDataStore).writeThrough(Mockito.any(Activity.class));
+		Activity activity =
+				new Activity(ActivityType.USER, UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), Instant.now());
+
+		persistentStorageAgent.writeThrough(activity);
+
+		Assert.assertTrue(Thread.interrupted());
+		Mockito.verify(mockPersistentDataStore).writeThrough(activity);
+		Assert.assertFalse(interruptedDuringWrite[0]);
+	}
 }
@@ -0,0 +1,263 @@
+package codeu.model.store.persistence;
+
+import codeu.model.data.Activity;
+import codeu.model.data.Activity.ActivityType;
+import codeu.model.data.Message;
+import codeu.model.data.User;
+import com.google.appengine.api.blobstore.BlobKey;
+import com.google.appengine.api.datastore.Entity;
+import com.google.appengine.tools.development.testing.LocalDatastoreServiceTestConfig;
+import com.google.appengine.tools.development.testing.LocalServiceTestHelper;
+import com.google.apphosting.api.ApiProxy;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.javatuples.Pair;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test class for PersistentStorageAgent in write-behind mode. Most tests don't start the flusher
+ * thread, so the test decides when buffered entities are written and all Datastore calls happen on
+ * the test thread, where LocalServiceTestHelper has set up the AppEngine environment. The flusher
+ * test hands that environment to the flusher, as ThreadManager does in production.
+ */
+public class WriteBehindQueueTest {
+
+  private final LocalServiceTestHelper appEngineTestHelper =
+      new LocalServiceTestHelper(new LocalDatastoreServiceTestConfig());
+
+  private PersistentDataStore persistentDataStore;
+  private PersistentStorageAgent persistentStorageAgent;
+
+  @Before
+  public void setup() {
+    appEngineTestHelper.setUp();
+    persistentDataStore = new PersistentDataStore();
+    persistentStorageAgent = PersistentStorageAgent.getTestInstance(persistentDataStore);
+  }
+
+  @After
+  public void tearDown() {
+    appEngineTestHelper.tearDown();
+  }
+
+  @Test
+  public void testWritesAreBufferedUntilFlushed() throws PersistentDataStoreException {
+    WriteBehindQueue queue = new WriteBehindQueue(persistentDataStore, 100, 10, 500);
+    persistentStorageAgent.enableWriteBehind(queue);
+
+    for (int i = 0; i < 25; i++) {
+      persistentStorageAgent.writeThrough(newUser("test_username_" + i));
+      persistentStorageAgent.writeThrough(newActivity());
+    }
+
+    // writeThrough returned without putting anything, so requests don't wait on Datastore.
+    Assert.assertEquals(50, queue.size());
+    Assert.assertTrue(persistentDataStore.loadUsers().isEmpty());
+    Assert.assertTrue(persistentDataStore.loadActivities().isEmpty());
+
+    persistentStorageAgent.flush();
+
+    Assert.assertEquals(0, queue.size());
+    Assert.assertEquals(25, persistentDataStore.loadUsers().size());
+    Assert.assertEquals(25, persistentDataStore.loadActivities().size());
+  }
+
+  @Test
+  public void testRepeatedWritesKeepLatestVersion() throws PersistentDataStoreException {
+    persistentStorageAgent.enableWriteBehind(
+        new WriteBehindQueue(persistentDataStore, 100, 10, 500));
+
+    User user = newUser("test_username");
+    User renamedUser =
+        new User(
+            user.getId(),
+            user.getProfileID(),
+            "renamed_username",
+            user.getPasswordHash(),
+            false,
+            user.getCreationTime());
+    persistentStorageAgent.writeThrough(user);
+    persistentStorageAgent.writeThrough(renamedUser);
+    persistentStorageAgent.flush();
+
+    Assert.assertEquals(1, persistentDataStore.loadUsers().size());
+    Assert.assertEquals("renamed_username", persistentDataStore.loadUsers().get(0).getName());
+  }
+
+  @Test
+  public void testFullQueueBlocksWriters() throws Exception {
+    WriteBehindQueue queue = new WriteBehindQueue(persistentDataStore, 2, 10, 500);
+    persistentStorageAgent.enableWriteBehind(queue);
+    persistentStorageAgent.writeThrough(newActivity());
+    persistentStorageAgent.writeThrough(newActivity());
+
+    CountDownLatch written = new CountDownLatch(1);
+    Thread writer =
+        new Thread(
+            () -> {
+              persistentStorageAgent.writeThrough(newActivity());
+              written.countDown();
+            });
+    writer.start();
+
+    Assert.assertFalse(written.await(200, TimeUnit.MILLISECONDS));
+
+    persistentStorageAgent.flush();
+    Assert.assertTrue(written.await(5, TimeUnit.SECONDS));
+    writer.join();
+
+    persistentStorageAgent.shutdown();
+    Assert.assertEquals(3, persistentDataStore.loadActivities().size());
+  }
+
+  @Test
+  public void testFailedBatchFallsBackToEntityPuts() throws Exception {
+    Activity rejected = newActivity();
+    PersistentDataStore failingDataStore =
+        new PersistentDataStore() {
+          @Override
+          public void writeThrough(List<Entity> entities)
+              throws InterruptedException, ExecutionException {
+            for (Entity entity : entities) {
+              if (rejected.getId().toString().equals(entity.getProperty("uuid"))) {
+                throw new ExecutionException(new IllegalArgumentException("rejected"));
+              }
+            }
+            super.writeThrough(entities);
+          }
+        };
+    WriteBehindQueue queue = new WriteBehindQueue(failingDataStore, 100, 10, 500);
+    for (int i = 0; i < 3; i++) {
+      queue.enqueue(failingDataStore.toEntity(newActivity()));
+    }
+    queue.enqueue(failingDataStore.toEntity(rejected));
+
+    queue.flush();
+
+    // the good entities are saved one by one; the bad one is retried, then dropped and counted
+    Assert.assertEquals(3, persistentDataStore.loadActivities().size());
+    Assert.assertEquals(0, queue.size());
+    Assert.assertEquals(1, queue.droppedCount());
+  }
+
+  @Test
+  public void testFlusherWritesInTheBackground() throws Exception {
+    ApiProxy.Environment environment = ApiProxy.getCurrentEnvironment();
+    WriteBehindQueue queue =
+        new WriteBehindQueue(persistentDataStore, 100, 10, 50,
+            runnable -> new Thread(() -> {
+              ApiProxy.setEnvironmentForCurrentThread(environment);
+              try {
+                runnable.run();
+              } finally {
+                ApiProxy.clearEnvironmentForCurrentThread();
+              }
+            }));
+    persistentStorageAgent.enableWriteBehind(queue);
+    queue.start();
+
+    for (int i = 0; i < 25; i++) {
+      persistentStorageAgent.writeThrough(newActivity());
+    }
+
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (persistentDataStore.loadActivities().size() < 25 && System.nanoTime() < deadline) {
+      Thread.sleep(20);
+    }
+    Assert.assertEquals(25, persistentDataStore.loadActivities().size());
+    Assert.assertEquals(0, queue.size());
+    Assert.assertEquals(0, queue.droppedCount());
+    queue.shutdown();
+  }
+
+  @Test
+  public void testFailedPutDoesNotOverwriteNewerVersion() throws Exception {
+    User user = newUser("test_username");
+    User renamedUser =
+        new User(
+            user.getId(),
+            user.getProfileID(),
+            "renamed_username",
+            user.getPasswordHash(),
+            false,
+            user.getCreationTime());
+    WriteBehindQueue[] queue = new WriteBehindQueue[1];
+    int[] calls = {0};
+    PersistentDataStore failingDataStore =
+        new PersistentDataStore() {
+          @Override
+          public void writeThrough(List<Entity> entities)
+              throws InterruptedException, ExecutionException {
+            // every batched try and the single put of the first version fail; the rename arrives
+            // while the last of them is under way
+            calls[0]++;
+            if (calls[0] <= WriteBehindQueue.MAX_ATTEMPTS + 1) {
+              if (calls[0] == WriteBehindQueue.MAX_ATTEMPTS + 1) {
+                queue[0].enqueue(toEntity(renamedUser));
+              }
+              throw new ExecutionException(new IllegalStateException("unavailable"));
+            }
+            super.writeThrough(entities);
+          }
+        };
+    queue[0] = new WriteBehindQueue(failingDataStore, 100, 10, 500);
+    queue[0].enqueue(failingDataStore.toEntity(user));
+
+    queue[0].flush();
+
+    Assert.assertEquals(1, persistentDataStore.loadUsers().size());
+    Assert.assertEquals("renamed_username", persistentDataStore.loadUsers().get(0).getName());
+    Assert.assertEquals(0, queue[0].size());
+    Assert.assertEquals(0, queue[0].droppedCount());
+  }
+
+  @Test
+  public void testBufferedMessagesAreLoaded() throws PersistentDataStoreException {
+    persistentStorageAgent.enableWriteBehind(
+        new WriteBehindQueue(persistentDataStore, 100, 10, 500));
+    UUID conversationId = UUID.randomUUID();
+    Message flushed = newMessage(conversationId, Instant.ofEpochMilli(1000));
+    Message buffered = newMessage(conversationId, Instant.ofEpochMilli(2000));
+    persistentStorageAgent.writeThrough(flushed);
+    persistentStorageAgent.flush();
+    persistentStorageAgent.writeThrough(buffered);
+    persistentStorageAgent.writeThrough(newMessage(UUID.randomUUID(), Instant.ofEpochMilli(3000)));
+
+    // a Conversation loaded before the buffer is flushed still has its newest Message
+    List<Message> loaded = persistentStorageAgent.loadMessagesInConversation(conversationId);
+    Assert.assertEquals(2, loaded.size());
+    Assert.assertEquals(flushed.getId(), loaded.get(0).getId());
+    Assert.assertEquals(buffered.getId(), loaded.get(1).getId());
+
+    persistentStorageAgent.flush();
+    Assert.assertEquals(
+        2, persistentStorageAgent.loadMessagesInConversation(conversationId).size());
+  }
+
+  private static User newUser(String name) {
+    return new User(
+        UUID.randomUUID(),
+        UUID.randomUUID(),
+        name,
+        "$2a$10$5GNCbSPS1sqqM9.hdiE2hexn1w.vnNoR.CaHIztFEhdAD7h82tqX.",
+        false,
+        Instant.now());
+  }
+
+  private static Message newMessage(UUID conversationId, Instant creationTime) {
+    return new Message(UUID.randomUUID(), conversationId, UUID.randomUUID(),
+        new Pair<String, BlobKey>("test message", null), creationTime);
+  }
+
+  private static Activity newActivity() {
+    return new Activity(
+        ActivityType.MESSAGE, UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), Instant.now());
+  }
+}